@@ -0,0 +1,33 @@
+package com.example.ruleengine.benchmarks;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.service.ScanCompletionWriter;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * Minimal Spring context with the application's entities, repositories and persistence
+ * components on an in-memory database, shared by the benchmarks that measure database writes.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@EntityScan(basePackageClasses = DependencyUpload.class)
+@EnableJpaRepositories(basePackageClasses = DependencyUploadRepository.class)
+@Import(ScanCompletionWriter.class)
+public class BenchmarkPersistence {
+
+    /**
+     * Starts the context; settings come from benchmark.properties instead of the
+     * application's own configuration.
+     */
+    public static ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(BenchmarkPersistence.class)
+                .run("--spring.config.name=benchmark");
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.ruleengine.benchmarks;
+
+import com.example.ruleengine.AppConfig;
+import com.example.ruleengine.client.DebrickedClient;
+import com.example.ruleengine.client.DebrickedRateGovernor;
+import com.example.ruleengine.rules.RuleRegistry;
+import com.example.ruleengine.service.DebrickedTokenProvider;
+import com.example.ruleengine.service.FindingsStore;
+import com.example.ruleengine.service.NotificationService;
+import com.example.ruleengine.service.PollSchedule;
+import com.example.ruleengine.service.ScanResultWaiters;
+import com.example.ruleengine.service.ScanStatusCheckerService;
+import com.example.ruleengine.service.TenantPolicyIndex;
+import com.example.ruleengine.service.UploadClaimer;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+/**
+ * The scan status poller with everything it calls, on top of {@link BenchmarkPersistence}:
+ * the real client, governor, rules, policies and findings store, with Debricked replaced by
+ * {@link StubDebrickedTransport}. Nothing is scheduled, the benchmark runs the cycles itself.
+ *
+ * Deliberately not a {@code @Configuration}: the application's component scan covers this
+ * package and would otherwise add the stub transport when a load test starts the application.
+ */
+@Import({AppConfig.class, ScanStatusCheckerService.class, DebrickedClient.class, DebrickedRateGovernor.class,
+        DebrickedTokenProvider.class, NotificationService.class, PollSchedule.class, UploadClaimer.class,
+        RuleRegistry.class, TenantPolicyIndex.class, FindingsStore.class, ScanResultWaiters.class})
+public class BenchmarkPoller {
+
+    @Bean
+    public CloseableHttpClient debrickedHttpClient(@Value("${benchmark.complete-every:10}") int completeEvery) {
+        return new StubDebrickedTransport(completeEvery);
+    }
+
+    /**
+     * Starts the context with the settings of benchmark.properties; the rate limit is lifted,
+     * so the cycle is not paced by the governor.
+     */
+    public static ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(BenchmarkPersistence.class, BenchmarkPoller.class)
+                .run("--spring.config.name=benchmark",
+                        "--debricked.api.url=http://debricked.invalid/api/1.0/open/",
+                        "--debricked.api.login-url=http://debricked.invalid/api/login_check",
+                        "--debricked.api.username=benchmark",
+                        "--debricked.api.password=benchmark",
+                        "--debricked.api.vulnerabilities.threshold=5",
+                        "--debricked.rate.permits-per-second=1000000000",
+                        "--debricked.rate.burst=1000000000");
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.ruleengine.benchmarks;
+
+import com.example.ruleengine.client.DebrickedJson;
+import com.example.ruleengine.client.ScanStatus;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of reading Debricked responses: the former way, a new ObjectMapper per call
+ * reading the body into a String and then a tree or a Map, against the shared readers of
+ * {@link DebrickedJson} binding the stream to a record. Run with {@code -prof gc} to see the
+ * allocation per call next to the time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DebrickedJsonBenchmark {
+
+    // Status of a finished scan as Debricked returns it, with the fields the service ignores
+    private static final byte[] STATUS = ("{\"progress\": 100, \"vulnerabilitiesFound\": 42,"
+            + " \"unaffectedVulnerabilitiesFound\": 3, \"automationsAction\": \"none\","
+            + " \"policyEngineAction\": \"none\", \"detailsUrl\": \"https://debricked.com/app/en/repository/1/commit/2\","
+            + " \"automationRules\": [{\"ruleDescription\": \"If a vulnerability is found, notify\","
+            + " \"ruleActions\": [\"sendEmail\"], \"ruleLink\": \"https://debricked.com/app/en/automations\","
+            + " \"hasCves\": true, \"triggered\": false}]}").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] UPLOAD = "{\"ciUploadId\": 471108, \"uploadProgramsFileId\": 99}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    // Response of login_check with a JWT whose payload carries the "exp" claim the token cache reads
+    private static final byte[] LOGIN = ("{\"token\": \"eyJhbGciOiJSUzI1NiJ9."
+            + Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    "{\"iat\": 1760000000, \"exp\": 1760003600, \"roles\": [\"ROLE_USER\"], \"email\": \"ci@example.com\"}"
+                            .getBytes(StandardCharsets.UTF_8))
+            + ".c2lnbmF0dXJl\", \"refresh_token\": \"d41d8cd98f00b204e9800998ecf8427e\"}").getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public int statusPerCallMapper() throws IOException {
+        // As the checker did through RestTemplate: a Map of the whole body, then casts
+        Map<String, Object> body = new ObjectMapper().readValue(new String(STATUS, StandardCharsets.UTF_8), Map.class);
+        return (int) body.get("progress") + (int) body.get("vulnerabilitiesFound");
+    }
+
+    @Benchmark
+    public int statusSharedReader() throws IOException {
+        ScanStatus status = DebrickedJson.readScanStatus(new ByteArrayInputStream(STATUS));
+        return status.progress() + status.vulnerabilitiesFound();
+    }
+
+    @Benchmark
+    public String uploadPerCallMapper() throws IOException {
+        // As the upload did: the body as a String, then a tree of nodes
+        JsonNode node = new ObjectMapper().readTree(new String(UPLOAD, StandardCharsets.UTF_8));
+        return node.get("ciUploadId").asText();
+    }
+
+    @Benchmark
+    public String uploadSharedReader() throws IOException {
+        return DebrickedJson.readCiUploadId(new ByteArrayInputStream(UPLOAD));
+    }
+
+    @Benchmark
+    public String loginPerCallMapper() throws IOException {
+        // As the token provider did: the body as a String, then a tree of nodes
+        JsonNode node = new ObjectMapper().readTree(new String(LOGIN, StandardCharsets.UTF_8));
+        return node.get("token").asText();
+    }
+
+    @Benchmark
+    public Instant loginSharedReader() throws IOException {
+        // The token and its expiry, as the token provider caches them
+        return DebrickedJson.tokenExpiry(DebrickedJson.readToken(new ByteArrayInputStream(LOGIN)));
+    }
+}
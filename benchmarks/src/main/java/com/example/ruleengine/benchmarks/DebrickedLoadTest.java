@@ -0,0 +1,212 @@
+package com.example.ruleengine.benchmarks;
+
+import com.example.ruleengine.RuleengineApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test of the application against a {@link FakeDebricked}: uploads are sent to
+ * {@code /api/dependencies/upload} at {@code load.rate} uploads per second for
+ * {@code load.duration-seconds}, then the test waits up to {@code load.drain-seconds} for the
+ * poller to see the scans complete and for their notifications to be mailed. Mails are
+ * recorded instead of sent, so the time from an upload to its notification can be measured.
+ *
+ * Reports throughput, upload latency percentiles, time-to-notification percentiles, the answers
+ * of the application and the calls the fake received, printed and written to
+ * target/debricked-load-result.json. Run with
+ * {@code mvn package exec:java -Dexec.mainClass=com.example.ruleengine.benchmarks.DebrickedLoadTest};
+ * settings are system properties, e.g. {@code -Dload.rate=50 -Dfake.latency-ms=80/600
+ * -Dfake.throttle-rate=0.05 -Dfake.scan-seconds=20 -Dfake.progress-curve=ease_out}, see
+ * {@link FakeDebricked.Settings#fromSystemProperties()} for the fake. The application's rate
+ * limit on Debricked calls is lifted unless {@code -Dload.debricked-rate} sets one, e.g. 10
+ * for the production default.
+ */
+public class DebrickedLoadTest {
+
+    private static final int RATE = Integer.getInteger("load.rate", 20);
+    private static final int DURATION_SECONDS = Integer.getInteger("load.duration-seconds", 60);
+    private static final int DRAIN_SECONDS = Integer.getInteger("load.drain-seconds", 120);
+    private static final int HTTP_POOL = Integer.getInteger("load.http-pool", 50);
+    private static final List<String> PROFILES = Arrays.stream(System.getProperty("load.profiles", "").split(","))
+            .filter(profile -> !profile.isBlank()).toList();
+
+    // Subjects of the scan notification and of a digest holding it
+    private static final List<String> NOTIFICATION_SUBJECTS =
+            List.of("Vulnerabilities Detected in Your Dependencies", "Dependency scan notifications");
+
+    public static void main(String[] args) throws Exception {
+        FakeDebricked.Settings settings = FakeDebricked.Settings.fromSystemProperties();
+        Result result;
+        try (FakeDebricked debricked = FakeDebricked.start(settings)) {
+            result = run(debricked);
+        }
+        System.out.println("Debricked rate limit: " + UploadLoadTest.DEBRICKED_RATE + " calls/s");
+        System.out.printf("%d uploads at %d/s: %.1f uploads/s, p50 %d ms, p99 %d ms, %d failed%n", result.uploads(), RATE,
+                result.throughputPerSecond(), result.p50Ms(), result.p99Ms(), result.failed());
+        System.out.printf("%d notified: time to notification p50 %d ms, p99 %d ms%n", result.notified(),
+                result.notificationP50Ms(), result.notificationP99Ms());
+        System.out.println("Answers: " + result.answers());
+        System.out.println("Debricked calls: " + result.debrickedCalls());
+
+        Path out = Path.of("target", "debricked-load-result.json");
+        Files.createDirectories(out.getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(out.toFile(), Map.of("settings", settings.toString(), "result", result));
+        System.out.println("Results written to " + out.toAbsolutePath());
+    }
+
+    private static Result run(FakeDebricked debricked) throws Exception {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(RuleengineApplication.class, RecordingMail.class)
+                .profiles(PROFILES.toArray(new String[0]));
+        try (ConfigurableApplicationContext context = builder.run(
+                // The application's settings, with the database and logging of the benchmarks on top
+                "--spring.config.name=application,benchmark",
+                "--spring.main.web-application-type=servlet",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--server.port=0",
+                "--debricked.api.url=" + debricked.apiUrl(),
+                "--debricked.api.login-url=" + debricked.loginUrl(),
+                "--debricked.http.max-total=" + HTTP_POOL,
+                "--debricked.http.max-per-route=" + HTTP_POOL,
+                "--debricked.upload.dedup-ttl-minutes=0",
+                "--debricked.rate.permits-per-second=" + UploadLoadTest.DEBRICKED_RATE,
+                "--debricked.rate.burst=" + UploadLoadTest.DEBRICKED_RATE,
+                // Scans are checked and notified as soon as the application allows, so the delays measured are its own
+                "--debricked.poll.interval-ms=200",
+                "--debricked.poll.min-interval-seconds=1",
+                "--notification.outbox.poll-interval-ms=200",
+                "--notification.coalesce-window-seconds=0")) {
+            URI uploadUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                    + "/api/dependencies/upload");
+            RecordingMailSender mail = context.getBean(RecordingMailSender.class);
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+            int uploads = RATE * DURATION_SECONDS;
+            long[] sentAt = new long[uploads];
+            long[] latencies = new long[uploads];
+            int[] statuses = new int[uploads];
+            List<CompletableFuture<Void>> requests = new ArrayList<>(uploads);
+            long start = System.nanoTime();
+            for (int i = 0; i < uploads; i++) {
+                // Open loop: every upload leaves on schedule, however slow the previous ones are
+                LockSupport.parkNanos(start + i * 1_000_000_000L / RATE - System.nanoTime());
+                int index = i;
+                sentAt[i] = System.nanoTime();
+                HttpRequest request = HttpRequest.newBuilder(uploadUri)
+                        .header("Content-Type", "multipart/form-data; boundary=" + UploadLoadTest.BOUNDARY)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(UploadLoadTest.multipartBody(i)))
+                        .build();
+                requests.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                        .handle((response, error) -> {
+                            latencies[index] = System.nanoTime() - sentAt[index];
+                            statuses[index] = error != null ? -1 : response.statusCode();
+                            return null;
+                        }));
+            }
+            CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).join();
+            long elapsed = System.nanoTime() - start;
+
+            Map<String, Long> answers = new TreeMap<>();
+            int accepted = 0;
+            for (int status : statuses) {
+                answers.merge(status < 0 ? "error" : String.valueOf(status), 1L, Long::sum);
+                accepted += status / 100 == 2 ? 1 : 0;
+            }
+
+            // Every accepted upload is expected to be notified, its scan finds more than the threshold
+            long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_SECONDS);
+            while (mail.notifiedCount() < accepted && System.nanoTime() < drainUntil) {
+                Thread.sleep(200);
+            }
+
+            List<Long> notificationTimes = new ArrayList<>();
+            for (int i = 0; i < uploads; i++) {
+                Long notifiedAt = mail.notifiedAt("load-" + i + "@example.com");
+                if (notifiedAt != null) {
+                    notificationTimes.add(notifiedAt - sentAt[i]);
+                }
+            }
+            long[] toNotification = notificationTimes.stream().mapToLong(Long::longValue).sorted().toArray();
+            Arrays.sort(latencies);
+            return new Result(uploads, uploads - accepted, accepted / (elapsed / 1e9),
+                    UploadLoadTest.percentileMs(latencies, 0.50), UploadLoadTest.percentileMs(latencies, 0.99),
+                    toNotification.length,
+                    toNotification.length > 0 ? UploadLoadTest.percentileMs(toNotification, 0.50) : -1,
+                    toNotification.length > 0 ? UploadLoadTest.percentileMs(toNotification, 0.99) : -1,
+                    answers, debricked.calls());
+        }
+    }
+
+    /**
+     * Replaces the mail server of the application, which the mail auto-configuration backs off for.
+     * Not a {@code @Configuration}, so only this test gets it and not every start of the application.
+     */
+    static class RecordingMail {
+
+        @Bean
+        public RecordingMailSender javaMailSender() {
+            return new RecordingMailSender();
+        }
+    }
+
+    /**
+     * A {@link JavaMailSender} that sends nothing and keeps when each recipient first got a
+     * scan notification.
+     */
+    static class RecordingMailSender extends JavaMailSenderImpl {
+
+        private final ConcurrentMap<String, Long> notifiedAt = new ConcurrentHashMap<>(); // recipient -> nanoTime
+
+        @Override
+        public void send(SimpleMailMessage... simpleMessages) {
+            long now = System.nanoTime();
+            for (SimpleMailMessage mail : simpleMessages) {
+                if (mail.getTo() != null && NOTIFICATION_SUBJECTS.contains(mail.getSubject())) {
+                    for (String recipient : mail.getTo()) {
+                        notifiedAt.putIfAbsent(recipient, now);
+                    }
+                }
+            }
+        }
+
+        int notifiedCount() {
+            return notifiedAt.size();
+        }
+
+        Long notifiedAt(String recipient) {
+            return notifiedAt.get(recipient);
+        }
+    }
+
+    /**
+     * The outcome of one load test.
+     */
+    public record Result(int uploads, long failed, double throughputPerSecond, long p50Ms, long p99Ms, int notified,
+                         long notificationP50Ms, long notificationP99Ms, Map<String, Long> answers,
+                         Map<String, Long> debrickedCalls) {
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.ruleengine.benchmarks;
+
+import com.example.ruleengine.client.DebrickedJson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A fake Debricked API on a local port, for load tests that cannot run against the real one.
+ * It serves login_check, the file upload, the scan start, the scan status and the vulnerability
+ * list the application calls, and counts every call by endpoint and answer.
+ *
+ * Every answer is delayed by a latency drawn from {@link Latency}; a share of the calls is
+ * throttled with 429 and a Retry-After or fails with 503. Tokens carry an "exp" claim and
+ * calls with an expired token are rejected with 401. A scan progresses along a
+ * {@link ProgressCurve} from its start until it completes after {@code scanSeconds}.
+ *
+ * Embed it with {@link #start(Settings)}, or run it on its own with
+ * {@code mvn package exec:java -Dexec.mainClass=com.example.ruleengine.benchmarks.FakeDebricked}
+ * and point {@code debricked.api.url} and {@code debricked.api.login-url} at the printed URLs;
+ * settings are system properties, see {@link Settings#fromSystemProperties()}.
+ */
+public class FakeDebricked implements AutoCloseable {
+
+    private static final Pattern CI_UPLOAD_ID = Pattern.compile("name=\"ciUploadId\"\r\n(?:[^\r\n]+\r\n)*\r\n([^\r\n]*)");
+
+    /**
+     * Log-normal latency given by its median and 99th percentile; both equal gives a fixed latency.
+     */
+    public record Latency(long medianMs, long p99Ms) {
+
+        public static Latency fixed(long ms) {
+            return new Latency(ms, ms);
+        }
+
+        /**
+         * Parses "50" as a fixed latency and "50/400" as median and 99th percentile.
+         */
+        public static Latency parse(String text) {
+            int slash = text.indexOf('/');
+            if (slash < 0) {
+                return fixed(Long.parseLong(text.trim()));
+            }
+            return new Latency(Long.parseLong(text.substring(0, slash).trim()), Long.parseLong(text.substring(slash + 1).trim()));
+        }
+
+        long sampleMs() {
+            if (p99Ms <= medianMs) {
+                return medianMs;
+            }
+            // The 99th percentile of the standard normal distribution is 2.326 standard deviations
+            double sigma = Math.log((double) p99Ms / Math.max(1, medianMs)) / 2.326;
+            return Math.round(Math.max(1, medianMs) * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+    }
+
+    /**
+     * How the progress of a scan grows from its start to its completion.
+     */
+    public enum ProgressCurve {
+        /** 0 until the scan is done */
+        STEP,
+        /** Evenly from 0 to 100 */
+        LINEAR,
+        /** Quickly to 90, then slowly to the end */
+        EASE_OUT;
+
+        /**
+         * @param elapsed Share of the scan time that has passed, 1 or more when the scan is done
+         */
+        int progress(double elapsed) {
+            if (elapsed >= 1) {
+                return 100;
+            }
+            return switch (this) {
+                case STEP -> 0;
+                case LINEAR -> (int) (100 * elapsed);
+                case EASE_OUT -> (int) (100 * (1 - Math.pow(1 - elapsed, 3)));
+            };
+        }
+    }
+
+    /**
+     * How the fake behaves.
+     *
+     * @param latency           Latency of every answer
+     * @param errorRate         Share of the calls that fail with 503
+     * @param throttleRate      Share of the calls that are throttled with 429
+     * @param retryAfterSeconds Retry-After of a throttled call
+     * @param tokenTtlSeconds   Lifetime of a token from its login
+     * @param scanSeconds       Time from the start of a scan until it is complete
+     * @param progressCurve     Progress of a running scan
+     * @param vulnerabilities   Vulnerabilities every completed scan finds
+     */
+    public record Settings(Latency latency, double errorRate, double throttleRate, long retryAfterSeconds,
+                           long tokenTtlSeconds, long scanSeconds, ProgressCurve progressCurve, int vulnerabilities) {
+
+        /**
+         * Settings from the system properties, e.g. {@code -Dfake.latency-ms=50/400 -Dfake.error-rate=0.01
+         * -Dfake.throttle-rate=0.02 -Dfake.retry-after-seconds=1 -Dfake.token-ttl-seconds=3600
+         * -Dfake.scan-seconds=10 -Dfake.progress-curve=linear -Dfake.vulnerabilities=10}.
+         */
+        public static Settings fromSystemProperties() {
+            return new Settings(
+                    Latency.parse(System.getProperty("fake.latency-ms", "50")),
+                    Double.parseDouble(System.getProperty("fake.error-rate", "0")),
+                    Double.parseDouble(System.getProperty("fake.throttle-rate", "0")),
+                    Long.getLong("fake.retry-after-seconds", 1),
+                    Long.getLong("fake.token-ttl-seconds", 3600),
+                    Long.getLong("fake.scan-seconds", 10),
+                    ProgressCurve.valueOf(System.getProperty("fake.progress-curve", "linear").toUpperCase(Locale.ROOT)),
+                    Integer.getInteger("fake.vulnerabilities", 10));
+        }
+    }
+
+    /**
+     * Answers one call that got through, null for 404.
+     */
+    @FunctionalInterface
+    private interface Answer {
+        String answer(String body, String query);
+    }
+
+    private final Settings settings;
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private final AtomicLong ciUploadIds = new AtomicLong(1000);
+    private final ConcurrentMap<String, Long> scanStarts = new ConcurrentHashMap<>(); // ciUploadId -> nanoTime of the start
+    private final ConcurrentMap<String, LongAdder> calls = new ConcurrentHashMap<>(); // "endpoint status" -> calls
+
+    private FakeDebricked(Settings settings) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.createContext("/api/login_check", exchange -> handle(exchange, "login", false, (body, query) -> token()));
+        server.createContext("/api/1.0/open/uploads/dependencies/files", exchange -> handle(exchange, "upload", true,
+                (body, query) -> {
+                    // A file joins the upload it names, the first file of an upload starts a new one
+                    String ciUploadId = formField(body);
+                    return "{\"ciUploadId\": " + (ciUploadId != null ? ciUploadId : ciUploadIds.incrementAndGet()) + "}";
+                }));
+        server.createContext("/api/1.0/open/finishes/dependencies/files/uploads", exchange -> handle(exchange, "start", true,
+                (body, query) -> {
+                    String ciUploadId = formField(body);
+                    if (ciUploadId == null) {
+                        return null;
+                    }
+                    scanStarts.putIfAbsent(ciUploadId, System.nanoTime());
+                    return "{}";
+                }));
+        server.createContext("/api/1.0/open/ci/upload/status", exchange -> handle(exchange, "status", true,
+                (body, query) -> {
+                    int progress = progress(queryParameter(query));
+                    return "{\"progress\": " + progress + ", \"vulnerabilitiesFound\": "
+                            + (progress == 100 ? settings.vulnerabilities() : 0) + "}";
+                }));
+        server.createContext("/api/1.0/open/ci/upload/vulnerabilities", exchange -> handle(exchange, "findings", true,
+                (body, query) -> progress(queryParameter(query)) == 100 ? findings() : null));
+        server.setExecutor(handlers);
+    }
+
+    /**
+     * Starts a fake on a free local port.
+     */
+    public static FakeDebricked start(Settings settings) throws IOException {
+        FakeDebricked fake = new FakeDebricked(settings);
+        fake.server.start();
+        return fake;
+    }
+
+    /**
+     * The URL for {@code debricked.api.url}.
+     */
+    public String apiUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/api/1.0/open/";
+    }
+
+    /**
+     * The URL for {@code debricked.api.login-url}.
+     */
+    public String loginUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/api/login_check";
+    }
+
+    /**
+     * The calls so far by endpoint and answer, e.g. {@code "status 200"} or {@code "upload 429"}.
+     */
+    public Map<String, Long> calls() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        calls.forEach((call, count) -> snapshot.put(call, count.sum()));
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.fromSystemProperties();
+        FakeDebricked fake = start(settings);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("Calls: " + fake.calls());
+            fake.close();
+        }));
+        System.out.println("Fake Debricked running with " + settings);
+        System.out.println("--debricked.api.url=" + fake.apiUrl() + " --debricked.api.login-url=" + fake.loginUrl());
+        Thread.currentThread().join();
+    }
+
+    private void handle(HttpExchange exchange, String endpoint, boolean authorized, Answer answer) throws IOException {
+        String body;
+        try (InputStream request = exchange.getRequestBody()) {
+            body = new String(request.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try {
+            Thread.sleep(settings.latency().sampleMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (authorized && !validToken(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            respond(exchange, endpoint, 401, "{\"message\": \"Expired JWT Token\"}");
+        } else if (roll < settings.throttleRate()) {
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(settings.retryAfterSeconds()));
+            respond(exchange, endpoint, 429, "{\"message\": \"Too many requests\"}");
+        } else if (roll < settings.throttleRate() + settings.errorRate()) {
+            respond(exchange, endpoint, 503, "{\"message\": \"Service unavailable\"}");
+        } else {
+            String json = answer.answer(body, exchange.getRequestURI().getRawQuery());
+            respond(exchange, endpoint, json != null ? 200 : 404, json != null ? json : "{\"message\": \"Not found\"}");
+        }
+    }
+
+    private void respond(HttpExchange exchange, String endpoint, int status, String json) throws IOException {
+        calls.computeIfAbsent(endpoint + " " + status, call -> new LongAdder()).increment();
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream response = exchange.getResponseBody()) {
+            response.write(body);
+        }
+    }
+
+    // An unsigned JWT expiring after the token lifetime, which is all the application reads of it
+    private String token() {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        long exp = Instant.now().plusSeconds(settings.tokenTtlSeconds()).getEpochSecond();
+        String payload = encoder.encodeToString(("{\"exp\": " + exp + ", \"username\": \"fake\"}").getBytes(StandardCharsets.UTF_8));
+        return "{\"token\": \"" + encoder.encodeToString("{\"alg\": \"none\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + payload + ".fake\"}";
+    }
+
+    private static boolean validToken(String authorization) {
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        Instant expiry = DebrickedJson.tokenExpiry(authorization.substring("Bearer ".length()));
+        return expiry != null && expiry.isAfter(Instant.now());
+    }
+
+    private int progress(String ciUploadId) {
+        Long started = ciUploadId != null ? scanStarts.get(ciUploadId) : null;
+        if (started == null) {
+            return 0; // Not started yet
+        }
+        double elapsed = (System.nanoTime() - started) / 1e9 / Math.max(1, settings.scanSeconds());
+        return settings.progressCurve().progress(elapsed);
+    }
+
+    private String findings() {
+        StringBuilder json = new StringBuilder("{\"vulnerabilities\": [");
+        for (int i = 0; i < settings.vulnerabilities(); i++) {
+            json.append(i == 0 ? "" : ",").append("{\"cveId\": \"CVE-2024-").append(10000 + i).append("\", \"cvss\": ")
+                    .append((i * 37 % 100) / 10.0).append(", \"dependencies\": [{\"name\": \"package-").append(i)
+                    .append("\", \"version\": \"1.0.").append(i).append("\", \"licenses\": [\"MIT\"]}]}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String formField(String multipartBody) {
+        Matcher matcher = CI_UPLOAD_ID.matcher(multipartBody);
+        return matcher.find() ? matcher.group(1).trim() : null;
+    }
+
+    private static String queryParameter(String query) {
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("ciUploadId=")) {
+                return parameter.substring("ciUploadId=".length());
+            }
+        }
+        return null;
+    }
+}
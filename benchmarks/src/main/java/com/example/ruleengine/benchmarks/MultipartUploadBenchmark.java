@@ -0,0 +1,90 @@
+package com.example.ruleengine.benchmarks;
+
+import com.example.ruleengine.client.DebrickedClient;
+import com.example.ruleengine.service.DependencyFile;
+import com.example.ruleengine.service.UploadTarget;
+import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building and writing the multipart body of one file upload for a dependency file
+ * of {@code fileSize} bytes: the streaming body {@link DebrickedClient} sends, against the
+ * former way of reading the whole file onto the heap first. The body is written to a null
+ * stream, so the network is left out. Run with {@code -prof gc} to see the allocation per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultipartUploadBenchmark {
+
+    @Param({"4096", "1048576"})
+    private int fileSize;
+
+    private final DebrickedClient client = new DebrickedClient();
+    private final UploadTarget target = new UploadTarget("payments", "a1b2c3");
+    private Path lockFile;
+    private DependencyFile file;
+
+    @Setup(Level.Trial)
+    public void writeLockFile() throws IOException {
+        // A package-lock.json like file of the given size
+        StringBuilder content = new StringBuilder("{\"lockfileVersion\": 3, \"packages\": {");
+        for (int i = 0; content.length() < fileSize; i++) {
+            content.append("\"node_modules/package-").append(i).append("\": {\"version\": \"1.0.").append(i)
+                    .append("\", \"integrity\": \"sha512-").append(Integer.toHexString(i * 31)).append("\"},");
+        }
+        byte[] bytes = content.substring(0, fileSize).getBytes(StandardCharsets.UTF_8);
+        lockFile = Files.createTempFile("package-lock", ".json");
+        Files.write(lockFile, bytes);
+        file = DependencyFile.of("package-lock.json", lockFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLockFile() throws IOException {
+        Files.deleteIfExists(lockFile);
+    }
+
+    @Benchmark
+    public HttpEntity streamingBody() throws IOException {
+        HttpEntity entity = client.buildUploadEntity(file, "471108", target);
+        entity.writeTo(OutputStream.nullOutputStream());
+        return entity;
+    }
+
+    @Benchmark
+    public HttpEntity inMemoryBody() throws IOException {
+        // As the upload did with MultipartFile.getBytes(): the whole file on the heap, then copied into the body
+        HttpEntity entity = MultipartEntityBuilder.create()
+                .addBinaryBody("fileData", Files.readAllBytes(lockFile), ContentType.DEFAULT_BINARY, "package-lock.json")
+                .addTextBody("commitName", target.commitName())
+                .addTextBody("repositoryName", target.repositoryName())
+                .addTextBody("ciUploadId", "471108")
+                .build();
+        entity.writeTo(OutputStream.nullOutputStream());
+        return entity;
+    }
+}
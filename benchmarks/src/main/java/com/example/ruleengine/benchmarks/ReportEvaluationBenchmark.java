@@ -0,0 +1,83 @@
+package com.example.ruleengine.benchmarks;
+
+import com.example.ruleengine.rules.Rule;
+import com.example.ruleengine.rules.RuleSet;
+import com.example.ruleengine.rules.ScanFacts;
+import com.example.ruleengine.service.Finding;
+import com.example.ruleengine.service.FindingsSummary;
+import com.example.ruleengine.service.VulnerabilityReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the poller does for one completed scan once its status is known: summarizing its
+ * {@code findings} findings, deciding with the default threshold rule whether it is reported,
+ * and composing the report of the notification.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReportEvaluationBenchmark {
+
+    private static final String[] LICENSES = {"MIT", "Apache-2.0", "BSD-3-Clause", "GPL-3.0-only", "ISC"};
+
+    @Param({"10", "1000"})
+    private int findings;
+
+    private List<Finding> scanFindings;
+    private RuleSet thresholdRule;
+    private FindingsSummary summary;
+    private Rule matchedRule;
+
+    @Setup
+    public void createFindings() {
+        scanFindings = new ArrayList<>(findings);
+        for (int i = 0; i < findings; i++) {
+            Double cvss = i % 7 == 0 ? null : (i * 37 % 100) / 10.0;
+            scanFindings.add(new Finding("CVE-2024-" + (10000 + i), cvss, Finding.severityOf(cvss), "package-" + (i % 300),
+                    "1." + (i % 10) + ".0", List.of(LICENSES[i % LICENSES.length])));
+        }
+        // The rule a tenant without a rules file gets
+        thresholdRule = RuleSet.parse("threshold: vulnerabilities > threshold");
+        summary = summarize();
+        matchedRule = thresholdRule.firstMatch(facts(summary));
+    }
+
+    @Benchmark
+    public FindingsSummary summarize() {
+        FindingsSummary summary = new FindingsSummary(10);
+        summary.addAll(scanFindings);
+        return summary;
+    }
+
+    @Benchmark
+    public Rule threshold() {
+        return thresholdRule.firstMatch(facts(summary));
+    }
+
+    @Benchmark
+    public String report() {
+        return VulnerabilityReport.compose(findings, matchedRule, summary);
+    }
+
+    private ScanFacts facts(FindingsSummary summary) {
+        return new ScanFacts(findings, -1, 5, summary.getCritical(), summary.getHigh(), summary.getMedium(),
+                summary.getLow(), summary.getMaxCvss(), summary.getLicenses(), "payments", "a1b2c3", "dev@example.com");
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.ruleengine.benchmarks;
+
+import com.example.ruleengine.rules.Rule;
+import com.example.ruleengine.rules.RuleSet;
+import com.example.ruleengine.rules.ScanFacts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of deciding whether one completed scan is reported, against a rule set of
+ * {@code rules} rules of which none matches, so every rule is evaluated.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleEvaluationBenchmark {
+
+    @Param({"1000"})
+    private int rules;
+
+    private RuleSet ruleSet;
+    private ScanFacts facts;
+
+    @Setup
+    public void compileRules() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < rules; i++) {
+            // A mix of the rule shapes teams write: thresholds per repository, deltas and combinations
+            switch (i % 4) {
+                case 0 -> text.append("repo-").append(i).append(": repository == \"repo-").append(i)
+                        .append("\" and vulnerabilities > ").append(i % 50).append('\n');
+                case 1 -> text.append("delta-").append(i).append(": new_vulnerabilities > ").append(100 + i).append('\n');
+                case 2 -> text.append("domain-").append(i).append(": email.domain in [\"team").append(i)
+                        .append(".example.com\", \"ops").append(i).append(".example.com\"] and vulnerabilities >= 1\n");
+                default -> text.append("combined-").append(i).append(": not (vulnerabilities < ").append(1000 + i)
+                        .append(" or commit == \"main\")\n");
+            }
+        }
+        ruleSet = RuleSet.parse(text.toString());
+        facts = ScanFacts.of(42, 40, 5, "payments", "a1b2c3", "dev@example.com");
+    }
+
+    @Benchmark
+    public Rule firstMatch() {
+        return ruleSet.firstMatch(facts);
+    }
+}
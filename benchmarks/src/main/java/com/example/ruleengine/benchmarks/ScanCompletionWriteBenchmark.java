@@ -0,0 +1,116 @@
+package com.example.ruleengine.benchmarks;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.service.ScanCompletionWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write cost of one poll cycle that finds {@code completions} scans finished: the old
+ * load-and-save per row, a targeted UPDATE per row, and the single bulk transition.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScanCompletionWriteBenchmark {
+
+    @Param({"1000"})
+    private int completions;
+
+    private ConfigurableApplicationContext context;
+    private DependencyUploadRepository repository;
+    private ScanCompletionWriter completionWriter;
+    private TransactionTemplate transactionTemplate;
+    private List<Long> ids;
+    private Map<Long, Integer> vulnerabilitiesById;
+
+    @Setup(Level.Trial)
+    public void startDatabase() {
+        context = BenchmarkPersistence.start();
+        repository = context.getBean(DependencyUploadRepository.class);
+        completionWriter = context.getBean(ScanCompletionWriter.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+
+        List<DependencyUpload> uploads = new ArrayList<>(completions);
+        for (int i = 0; i < completions; i++) {
+            DependencyUpload upload = new DependencyUpload();
+            upload.setCiUploadId("upload-" + i);
+            upload.setEmail("user" + i + "@example.com");
+            upload.setStatus(DependencyUpload.Status.IN_PROGRESS);
+            upload.setCreatedAt(Instant.now());
+            upload.setNextCheckAt(upload.getCreatedAt());
+            uploads.add(upload);
+        }
+        ids = repository.saveAll(uploads).stream().map(DependencyUpload::getId).toList();
+        vulnerabilitiesById = new HashMap<>();
+        for (Long id : ids) {
+            vulnerabilitiesById.put(id, (int) (id % 20));
+        }
+    }
+
+    // Every cycle starts with all rows in progress again
+    @Setup(Level.Iteration)
+    public void resetUploads() {
+        transactionTemplate.executeWithoutResult(status -> repository.transitionAll(ids,
+                DependencyUpload.Status.COMPLETED, DependencyUpload.Status.IN_PROGRESS));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDatabase() {
+        context.close();
+    }
+
+    @Benchmark
+    public int perRowSave() {
+        // One transaction per row, loading the managed entity and saving it back
+        int saved = 0;
+        for (Long id : ids) {
+            DependencyUpload upload = repository.findById(id).orElseThrow();
+            upload.setStatus(DependencyUpload.Status.COMPLETED);
+            repository.save(upload);
+            saved++;
+        }
+        return saved;
+    }
+
+    @Benchmark
+    public int perRowUpdate() {
+        // One transaction and one UPDATE per row
+        int updated = 0;
+        for (Long id : ids) {
+            updated += repository.transition(id, DependencyUpload.Status.IN_PROGRESS, DependencyUpload.Status.COMPLETED);
+        }
+        return updated;
+    }
+
+    @Benchmark
+    public int bulkTransition() {
+        // One transaction: lock the rows still in progress, a single UPDATE ... WHERE id IN (...)
+        // and one JDBC batch storing the vulnerability counts
+        return completionWriter.complete(vulnerabilitiesById, id -> { }).size();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.ruleengine.benchmarks;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.service.ScanStatusCheckerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One full {@code checkScanStatus} cycle over {@code uploads} due uploads: loading the pages,
+ * leasing them, a status call per upload on the worker pool, rescheduling the scans still
+ * running and completing the one in ten that finished, with its findings, rules and
+ * notifications. Debricked is {@link StubDebrickedTransport}, so only the service is measured.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScanStatusCycleBenchmark {
+
+    @Param({"1000", "10000"})
+    private int uploads;
+
+    private ConfigurableApplicationContext context;
+    private ScanStatusCheckerService checker;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void startPoller() {
+        context = BenchmarkPoller.start();
+        checker = context.getBean(ScanStatusCheckerService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        List<DependencyUpload> due = new ArrayList<>(uploads);
+        for (int i = 0; i < uploads; i++) {
+            DependencyUpload upload = new DependencyUpload();
+            upload.setCiUploadId("scan-" + i);
+            upload.setEmail("user" + i + "@team" + (i % 50) + ".example.com");
+            upload.setRepositoryName("repo-" + (i % 200));
+            upload.setCommitName("commit-" + i);
+            upload.setStatus(DependencyUpload.Status.IN_PROGRESS);
+            upload.setCreatedAt(Instant.now());
+            upload.setNextCheckAt(upload.getCreatedAt());
+            due.add(upload);
+        }
+        context.getBean(DependencyUploadRepository.class).saveAll(due);
+    }
+
+    // Every cycle starts with all uploads in progress, due and unleased, and an empty outbox
+    @Setup(Level.Iteration)
+    public void resetUploads() {
+        jdbcTemplate.update("UPDATE dependency_upload SET status = 'IN_PROGRESS', next_check_at = ?, check_attempts = 0,"
+                + " last_progress = NULL, last_progress_at = NULL, lease_owner = NULL, lease_expires_at = NULL",
+                Timestamp.from(Instant.now().minusSeconds(1)));
+        jdbcTemplate.update("DELETE FROM notification_outbox");
+    }
+
+    @TearDown(Level.Trial)
+    public void stopPoller() {
+        context.close();
+    }
+
+    @Benchmark
+    public void cycle() {
+        checker.checkScanStatus();
+    }
+}
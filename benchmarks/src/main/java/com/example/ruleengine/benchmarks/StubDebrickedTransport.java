@@ -0,0 +1,79 @@
+package com.example.ruleengine.benchmarks;
+
+import org.apache.hc.client5.http.ClientProtocolException;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+
+import java.io.IOException;
+
+/**
+ * Debricked as seen by the status poller, answered in memory without a socket, so a benchmark
+ * measures the service and not the network. The scan {@code scan-<n>} is complete for every
+ * {@code completeEvery}-th n and half done for all others; a complete scan has three findings.
+ */
+public class StubDebrickedTransport extends CloseableHttpClient {
+
+    private static final String FINDINGS = "{\"vulnerabilities\": ["
+            + "{\"cveId\": \"CVE-2021-44228\", \"cvss\": 10.0, \"dependencies\": [{\"name\": \"log4j-core\", \"version\": \"2.14.1\","
+            + " \"licenses\": [\"Apache-2.0\"]}]},"
+            + "{\"cveId\": \"CVE-2022-22965\", \"cvss\": {\"score\": 9.8}, \"dependencies\": [{\"name\": \"spring-beans\","
+            + " \"version\": \"5.3.17\", \"licenses\": [\"Apache-2.0\"]}]},"
+            + "{\"cveId\": \"CVE-2020-8203\", \"cvss\": 7.4, \"dependencies\": [{\"name\": \"lodash\", \"version\": \"4.17.15\","
+            + " \"licenses\": [\"MIT\"]}]}]}";
+
+    private final int completeEvery;
+
+    public StubDebrickedTransport(int completeEvery) {
+        this.completeEvery = completeEvery;
+    }
+
+    @Override
+    public <T> T execute(ClassicHttpRequest request, HttpClientResponseHandler<? extends T> responseHandler)
+            throws IOException {
+        BasicClassicHttpResponse response = new BasicClassicHttpResponse(200);
+        response.setEntity(new StringEntity(answer(request.getRequestUri()), ContentType.APPLICATION_JSON));
+        try {
+            return responseHandler.handleResponse(response);
+        } catch (HttpException e) {
+            throw new ClientProtocolException(e);
+        }
+    }
+
+    private String answer(String uri) {
+        if (uri.contains("login_check")) {
+            return "{\"token\": \"benchmark\"}";
+        }
+        if (uri.contains("ci/upload/status")) {
+            int scan = Integer.parseInt(uri.substring(uri.lastIndexOf('-') + 1));
+            return scan % completeEvery == 0
+                    ? "{\"progress\": 100, \"vulnerabilitiesFound\": " + (scan % 20) + "}"
+                    : "{\"progress\": 50, \"vulnerabilitiesFound\": 0}";
+        }
+        if (uri.contains("ci/upload/vulnerabilities")) {
+            return FINDINGS;
+        }
+        return "{}";
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, ClassicHttpRequest request, HttpContext context) {
+        throw new UnsupportedOperationException("Only calls with a response handler are answered");
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void close(CloseMode closeMode) {
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.ruleengine.benchmarks;
+
+import com.example.ruleengine.RuleengineApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the upload endpoint in the platform thread mode (the default) and in the
+ * "virtual" profile: {@code load.concurrency} uploads are sent at once to the running
+ * application, which talks to an in-process Debricked stub that answers every call after
+ * {@code load.latency-ms}, a {@link FakeDebricked}. Throughput and latency percentiles are printed per mode and written
+ * to target/upload-load-result.json.
+ *
+ * Both modes get the same HTTP pool and Tomcat accept queue, so only the thread model differs.
+ * The rate limit on Debricked calls is {@code load.debricked-rate} calls per second with a
+ * burst of as many; it is lifted by default, so the modes are not compared on permit waits.
+ * The virtual mode needs Java 21 and is skipped on older runtimes. Run with
+ * {@code mvn package exec:java -Dexec.mainClass=com.example.ruleengine.benchmarks.UploadLoadTest};
+ * settings are system properties, e.g. {@code -Dload.concurrency=2000 -Dload.modes=virtual,platform}.
+ */
+public class UploadLoadTest {
+
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 2000);
+    private static final int FILES_PER_UPLOAD = Integer.getInteger("load.files", 2);
+    private static final long LATENCY_MS = Long.getLong("load.latency-ms", 50);
+    private static final int WARMUP_UPLOADS = Integer.getInteger("load.warmup", 500);
+    private static final int HTTP_POOL = Integer.getInteger("load.http-pool", 200);
+    static final int DEBRICKED_RATE = Integer.getInteger("load.debricked-rate", 1_000_000_000);
+    private static final List<String> MODES = Arrays.asList(System.getProperty("load.modes", "platform,virtual").split(","));
+
+    static final String BOUNDARY = "ruleengine-load-test";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Object> results = new LinkedHashMap<>();
+        // Debricked as seen by the upload path, every call answered after the same latency
+        try (FakeDebricked debricked = FakeDebricked.start(new FakeDebricked.Settings(
+                FakeDebricked.Latency.fixed(LATENCY_MS), 0, 0, 1, 3600, 3600, FakeDebricked.ProgressCurve.STEP, 0))) {
+            for (String mode : MODES) {
+                if (mode.equals("virtual") && Runtime.version().feature() < 21) {
+                    System.out.println("Skipping the virtual mode, it needs Java 21 and this is " + Runtime.version());
+                    continue;
+                }
+                results.put(mode, run(mode, debricked));
+            }
+        }
+        Path out = Path.of("target", "upload-load-result.json");
+        Files.createDirectories(out.getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(out.toFile(), results);
+        System.out.println("Results written to " + out.toAbsolutePath());
+    }
+
+    /**
+     * Starts the application in the given mode, warms it up and measures one burst of uploads.
+     */
+    private static Result run(String mode, FakeDebricked debricked) throws Exception {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(RuleengineApplication.class);
+        if (mode.equals("virtual")) {
+            builder.profiles("virtual");
+        }
+        try (ConfigurableApplicationContext context = builder.run(
+                // The application's settings, with the database and logging of the benchmarks on top
+                "--spring.config.name=application,benchmark",
+                "--spring.main.web-application-type=servlet",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--server.port=0",
+                "--server.tomcat.accept-count=" + CONCURRENCY,
+                "--debricked.api.url=" + debricked.apiUrl(),
+                "--debricked.api.login-url=" + debricked.loginUrl(),
+                "--debricked.http.max-total=" + HTTP_POOL,
+                "--debricked.http.max-per-route=" + HTTP_POOL,
+                "--debricked.upload.dedup-ttl-minutes=0",
+                "--debricked.rate.permits-per-second=" + DEBRICKED_RATE,
+                "--debricked.rate.burst=" + DEBRICKED_RATE,
+                // Only the upload path is measured, the poller and the mail delivery stay idle
+                "--debricked.poll.interval-ms=3600000",
+                "--notification.outbox.poll-interval-ms=3600000")) {
+            URI uploadUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                    + "/api/dependencies/upload");
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+            burst(client, uploadUri, WARMUP_UPLOADS);
+            Result result = burst(client, uploadUri, CONCURRENCY);
+            System.out.printf("%-8s %d uploads: %.1f uploads/s, p50 %d ms, p99 %d ms, max %d ms, %d failed%n", mode,
+                    CONCURRENCY, result.throughputPerSecond(), result.p50Ms(), result.p99Ms(), result.maxMs(), result.failed());
+            return result;
+        }
+    }
+
+    /**
+     * Sends the given number of uploads at once and waits for all of them.
+     */
+    private static Result burst(HttpClient client, URI uploadUri, int uploads) {
+        long[] latencies = new long[uploads];
+        AtomicLong failed = new AtomicLong();
+        List<CompletableFuture<Void>> requests = new ArrayList<>(uploads);
+        long start = System.nanoTime();
+        for (int i = 0; i < uploads; i++) {
+            int index = i;
+            long sent = System.nanoTime();
+            HttpRequest request = HttpRequest.newBuilder(uploadUri)
+                    .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(multipartBody(i)))
+                    .build();
+            requests.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .handle((response, error) -> {
+                        latencies[index] = System.nanoTime() - sent;
+                        if (error != null || response.statusCode() != 200) {
+                            failed.incrementAndGet();
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).join();
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result(uploads, failed.get(), (uploads - failed.get()) / (elapsed / 1e9),
+                percentileMs(latencies, 0.50), percentileMs(latencies, 0.99), latencies[uploads - 1] / 1_000_000);
+    }
+
+    static long percentileMs(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000;
+    }
+
+    // Distinct files per upload, so no two uploads look alike
+    static byte[] multipartBody(int upload) {
+        StringBuilder body = new StringBuilder();
+        for (int file = 0; file < FILES_PER_UPLOAD; file++) {
+            body.append("--").append(BOUNDARY).append("\r\n")
+                    .append("Content-Disposition: form-data; name=\"files\"; filename=\"package-").append(file).append(".json\"\r\n")
+                    .append("Content-Type: application/json\r\n\r\n")
+                    .append("{\"name\": \"load-").append(upload).append("\", \"dependencies\": {\"lodash\": \"4.17.").append(file)
+                    .append("\"}}\r\n");
+        }
+        body.append("--").append(BOUNDARY).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"email\"\r\n\r\n")
+                .append("load-").append(upload).append("@example.com\r\n")
+                .append("--").append(BOUNDARY).append("--\r\n");
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The outcome of one burst of uploads.
+     */
+    public record Result(int uploads, long failed, double throughputPerSecond, long p50Ms, long p99Ms, long maxMs) {
+    }
+}
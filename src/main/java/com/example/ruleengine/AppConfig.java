@@ -1,15 +1,117 @@
 package com.example.ruleengine;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 public class AppConfig {
 
+    // Enables virtual threads through spring.threads.virtual.enabled, set by the "virtual" profile
+    @Autowired
+    private Environment environment;
+
+    // Every pool below carries the current observation and span over to its tasks, so the work of
+    // a request or a poll cycle shows up in its trace
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public AsyncTaskExecutor statusCheckExecutor(@Value("${debricked.poll.workers:8}") int workers) {
+        if (virtualThreads()) {
+            // The workers setting caps the checks in flight, a caller beyond it waits for a slot
+            return virtualThreadExecutor("status-check-", workers);
+        }
+        // Runs the scan status checks of one poll cycle in parallel
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setThreadNamePrefix("status-check-");
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        return executor;
+    }
+
+    @Bean
+    public AsyncTaskExecutor debrickedUploadExecutor(@Value("${debricked.upload.concurrency:1}") int concurrency,
+                                                     @Value("${debricked.upload.queue-capacity:500}") int queueCapacity) {
+        if (virtualThreads()) {
+            // No shared cap across requests, the HTTP pool bounds the uploads in flight
+            return virtualThreadExecutor("debricked-upload-", SimpleAsyncTaskExecutor.UNBOUNDED_CONCURRENCY);
+        }
+        // Bounds the number of files uploaded in parallel across all requests
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, concurrency));
+        executor.setMaxPoolSize(Math.max(1, concurrency));
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("debricked-upload-");
+        // When the queue is full the request thread uploads the file itself
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor uploadJobExecutor(@Value("${debricked.jobs.workers:4}") int workers,
+                                                    @Value("${debricked.jobs.queue-capacity:100}") int queueCapacity) {
+        // Runs accepted upload jobs; a full queue rejects new jobs instead of growing without bound
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("upload-job-");
+        // The job continues the trace of the request that accepted it
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        return executor;
     }
-}
 
+    @Bean
+    public AsyncTaskExecutor notificationSenderExecutor(@Value("${notification.outbox.workers:2}") int workers) {
+        if (virtualThreads()) {
+            // Still one SMTP connection per worker, the carrier is freed while the server answers
+            return virtualThreadExecutor("notification-sender-", workers);
+        }
+        // Delivers outbox batches, so SMTP latency never reaches the request or poller threads
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setThreadNamePrefix("notification-sender-");
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        return executor;
+    }
+
+    @Bean
+    public AsyncTaskExecutor scanResultExecutor(@Value("${debricked.result.workers:2}") int workers) {
+        if (virtualThreads()) {
+            return virtualThreadExecutor("scan-result-", SimpleAsyncTaskExecutor.UNBOUNDED_CONCURRENCY);
+        }
+        // Answers the clients waiting for a scan result, so a slow client never holds up the poller
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setThreadNamePrefix("scan-result-");
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        return executor;
+    }
+
+    // Whether the status checks, the upload fan-out, the mail delivery and the result waiters get a
+    // virtual thread per task instead of a pooled platform thread; only on Java 21+, so the
+    // "virtual" profile falls back to the platform pools on older runtimes
+    private boolean virtualThreads() {
+        return Threading.VIRTUAL.isActive(environment);
+    }
+
+    private static AsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix, int concurrencyLimit) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(concurrencyLimit);
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        return executor;
+    }
+}
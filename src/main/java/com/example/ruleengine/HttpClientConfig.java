@@ -0,0 +1,101 @@
+package com.example.ruleengine;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Shared, connection-pooled HTTP transport used for all outbound Debricked calls.
+ * Every call of the DebrickedClient goes through the same pool, so keep-alive
+ * connections are reused instead of handshaking per request.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    // Maximum number of pooled connections across all routes
+    @Value("${debricked.http.max-total:50}")
+    private int maxTotal;
+
+    // Maximum number of pooled connections per route (host)
+    @Value("${debricked.http.max-per-route:20}")
+    private int maxPerRoute;
+
+    // Time allowed for establishing a TCP+TLS connection
+    @Value("${debricked.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    // Time allowed between two packets of a response
+    @Value("${debricked.http.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    // Time allowed for leasing a connection from the pool
+    @Value("${debricked.http.pool-acquire-timeout-ms:2000}")
+    private long poolAcquireTimeoutMs;
+
+    // Pooled connections idle for longer than this are closed
+    @Value("${debricked.http.idle-eviction-seconds:30}")
+    private long idleEvictionSeconds;
+
+    @Bean
+    public PoolingHttpClientConnectionManager debrickedConnectionManager() {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+    }
+
+    @Bean
+    public CloseableHttpClient debrickedHttpClient(PoolingHttpClientConnectionManager connectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolAcquireTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(idleEvictionSeconds))
+                .build();
+    }
+
+    /**
+     * Publishes the pool statistics as gauges.
+     */
+    @Bean
+    public MeterBinder debrickedConnectionPoolMetrics(PoolingHttpClientConnectionManager connectionManager) {
+        return registry -> {
+            registerPoolGauge(registry, connectionManager, "leased", PoolStats::getLeased);
+            registerPoolGauge(registry, connectionManager, "available", PoolStats::getAvailable);
+            registerPoolGauge(registry, connectionManager, "pending", PoolStats::getPending);
+            registerPoolGauge(registry, connectionManager, "max", PoolStats::getMax);
+        };
+    }
+
+    private void registerPoolGauge(MeterRegistry registry,
+                                   PoolingHttpClientConnectionManager connectionManager,
+                                   String state, ToIntFunction<PoolStats> value) {
+        Gauge.builder("debricked.http.pool.connections", connectionManager,
+                        manager -> value.applyAsInt(manager.getTotalStats()))
+                .tag("state", state)
+                .description("Connections in the Debricked HTTP pool")
+                .register(registry);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.ruleengine;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.reactive.config.BlockingExecutionConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Non-blocking stack of the "reactive" profile: requests are served by Netty's event loops
+ * and Debricked is called through a WebClient on the same loops. The blocking beans stay in
+ * the context, only the request handling and the outbound calls of the hot paths change.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig implements WebFluxConfigurer {
+
+    // Maximum number of pooled connections to Debricked
+    @Value("${debricked.http.max-total:50}")
+    private int maxTotal;
+
+    // Time allowed for establishing a TCP+TLS connection
+    @Value("${debricked.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    // Time allowed between two packets of a response
+    @Value("${debricked.http.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    // Time a call may wait for a pooled connection
+    @Value("${debricked.http.pool-acquire-timeout-ms:2000}")
+    private long poolAcquireTimeoutMs;
+
+    // Pooled connections idle for longer than this are closed
+    @Value("${debricked.http.idle-eviction-seconds:30}")
+    private long idleEvictionSeconds;
+
+    // Calls waiting for a connection beyond this fail fast instead of queueing without bound
+    @Value("${debricked.reactive.max-pending-acquires:10000}")
+    private int maxPendingAcquires;
+
+    // Threads running the controller methods that are not reactive
+    @Value("${debricked.reactive.blocking-workers:16}")
+    private int blockingWorkers;
+
+    @Bean
+    public WebClient debrickedWebClient(WebClient.Builder builder) {
+        ConnectionProvider connections = ConnectionProvider.builder("debricked")
+                .maxConnections(maxTotal)
+                .pendingAcquireMaxCount(maxPendingAcquires)
+                .pendingAcquireTimeout(Duration.ofMillis(poolAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(idleEvictionSeconds))
+                .build();
+        HttpClient httpClient = HttpClient.create(connections)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(readTimeoutMs));
+        return builder.clientConnector(new ReactorClientHttpConnector(httpClient)).build();
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor blockingHandlerExecutor() {
+        // Runs the controller methods that are not reactive, e.g. the JPA backed policy and
+        // findings endpoints, so they never block an event loop
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(blockingWorkers);
+        executor.setMaxPoolSize(blockingWorkers);
+        executor.setThreadNamePrefix("blocking-handler-");
+        return executor;
+    }
+
+    @Override
+    public void configureBlockingExecution(BlockingExecutionConfigurer configurer) {
+        configurer.setExecutor(blockingHandlerExecutor());
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.ruleengine;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reports virtual threads that block while pinned to their carrier thread, e.g. in a
+ * synchronized block around socket I/O, which turns a virtual thread back into a platform
+ * thread for the duration of the call.
+ *
+ * The JFR event jdk.VirtualThreadPinned is streamed in-process; every event is attributed to
+ * the HTTP client, the JDBC path or other code by the first known frame of its stack, counted
+ * per path, and the first stacks of each path are printed.
+ */
+@Component
+@Profile("virtual")
+public class VirtualThreadPinningMonitor implements MeterBinder {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    // Frames printed per stack
+    private static final int FRAMES_LOGGED = 12;
+
+    // Frames that attribute a pinned stack to a path, checked from the innermost frame outwards
+    private static final Map<String, String> PATHS_BY_PACKAGE = new LinkedHashMap<>();
+
+    static {
+        PATHS_BY_PACKAGE.put("org.apache.hc.", "http-client");
+        PATHS_BY_PACKAGE.put("com.mysql.", "jdbc");
+        PATHS_BY_PACKAGE.put("com.zaxxer.hikari.", "jdbc");
+        PATHS_BY_PACKAGE.put("org.h2.", "jdbc");
+        PATHS_BY_PACKAGE.put("java.sql.", "jdbc");
+        PATHS_BY_PACKAGE.put("org.hibernate.", "jdbc");
+        PATHS_BY_PACKAGE.put("jakarta.mail.", "mail");
+        PATHS_BY_PACKAGE.put("org.eclipse.angus.mail.", "mail");
+    }
+
+    // Pinned periods shorter than this are not reported
+    @Value("${debricked.virtual.pinning-threshold-ms:20}")
+    private long thresholdMs = 20;
+
+    // Stacks printed per path, so a pinning hot spot does not flood the log
+    @Value("${debricked.virtual.pinning-stacks-logged:5}")
+    private int stacksLogged = 5;
+
+    private final Map<String, LongAdder> pinnedByPath = new LinkedHashMap<>();
+    private final Map<String, LongAdder> pinnedNanosByPath = new LinkedHashMap<>();
+    private final Map<String, AtomicInteger> loggedByPath = new LinkedHashMap<>();
+
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor() {
+        for (String path : List.of("http-client", "jdbc", "mail", "other")) {
+            pinnedByPath.put(path, new LongAdder());
+            pinnedNanosByPath.put(path, new LongAdder());
+            loggedByPath.put(path, new AtomicInteger());
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (Runtime.version().feature() < 21) {
+            System.out.println("Virtual threads need Java 21, running on " + Runtime.version() + "; pinning is not monitored");
+            return;
+        }
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::onPinned);
+        stream.startAsync();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        List<String> frames = new ArrayList<>();
+        if (stackTrace != null) {
+            for (RecordedFrame frame : stackTrace.getFrames()) {
+                frames.add(frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                        + ":" + frame.getLineNumber());
+            }
+        }
+        String path = record(frames, event.getDuration());
+        if (loggedByPath.get(path).getAndIncrement() < stacksLogged) {
+            System.out.println("Virtual thread pinned for " + event.getDuration().toMillis() + " ms in " + path + ":\n  at "
+                    + String.join("\n  at ", frames.subList(0, Math.min(FRAMES_LOGGED, frames.size()))));
+        }
+    }
+
+    /**
+     * Counts one pinned period against the path its stack belongs to.
+     *
+     * @param frames The frames of the pinned stack, innermost first, as "class.method:line"
+     * @return The path
+     */
+    String record(List<String> frames, Duration duration) {
+        String path = pathOf(frames);
+        pinnedByPath.get(path).increment();
+        pinnedNanosByPath.get(path).add(duration.toNanos());
+        return path;
+    }
+
+    /**
+     * The path of the innermost frame from a known package, "other" if there is none.
+     */
+    static String pathOf(List<String> frames) {
+        for (String frame : frames) {
+            for (Map.Entry<String, String> entry : PATHS_BY_PACKAGE.entrySet()) {
+                if (frame.startsWith(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return "other";
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String path : pinnedByPath.keySet()) {
+            FunctionCounter.builder("jvm.threads.virtual.pinned", pinnedByPath.get(path), LongAdder::sum)
+                    .tag("path", path).description("Virtual threads that blocked while pinned to their carrier")
+                    .register(registry);
+            FunctionCounter.builder("jvm.threads.virtual.pinned.duration", pinnedNanosByPath.get(path), nanos -> nanos.sum() / 1e9)
+                    .tag("path", path).baseUnit("seconds").description("Time virtual threads spent pinned")
+                    .register(registry);
+        }
+    }
+
+    public long getPinnedCount(String path) {
+        return pinnedByPath.get(path).sum();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.ruleengine.client;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Debricked answered a call with a status other than 2xx. It is an {@link IOException} so
+ * callers handle it with the transport errors, but unlike those it is not worth retrying
+ * unless the status says so.
+ */
+public class DebrickedApiException extends IOException {
+
+    private final String operation;
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public DebrickedApiException(String operation, int statusCode, String reason) {
+        this(operation, statusCode, reason, null);
+    }
+
+    public DebrickedApiException(String operation, int statusCode, String reason, Duration retryAfter) {
+        super("Debricked " + operation + " failed: HTTP " + statusCode + (reason != null ? " " + reason : ""));
+        this.operation = operation;
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getOperation() { return operation; }
+    public int getStatusCode() { return statusCode; }
+
+    /**
+     * The wait Debricked asked for in its Retry-After header, null if it sent none.
+     */
+    public Duration getRetryAfter() { return retryAfter; }
+
+    /**
+     * Whether the same call may succeed later: the server failed or asked the caller to slow down.
+     */
+    public boolean isRetryable() {
+        return statusCode >= 500 || statusCode == 429;
+    }
+
+    /**
+     * Whether Debricked refused the JWT the call was made with, for example because it was revoked.
+     */
+    public boolean isUnauthorized() {
+        return statusCode == 401;
+    }
+}
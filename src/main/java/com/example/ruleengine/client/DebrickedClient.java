@@ -0,0 +1,226 @@
+package com.example.ruleengine.client;
+
+import com.example.ruleengine.client.DebrickedRateGovernor.Priority;
+import com.example.ruleengine.service.DependencyFile;
+import com.example.ruleengine.service.UploadTarget;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.entity.UrlEncodedFormEntity;
+import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.message.BasicNameValuePair;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The calls this service makes to the Debricked API, in one place: login, file upload, scan
+ * start, scan status and the vulnerability list of a scan. Responses are read into typed
+ * records by {@link DebrickedJson}, and every answer other than 2xx becomes a
+ * {@link DebrickedApiException}, so callers never look at status codes or raw JSON. Every
+ * call first takes a permit from the {@link DebrickedRateGovernor}.
+ */
+@Component
+public class DebrickedClient {
+
+    // URL of the Debricked API, loaded from application properties
+    @Value("${debricked.api.url}")
+    private String debrickedApiUrl;
+
+    // Login endpoint, which lives outside the versioned API
+    @Value("${debricked.api.login-url:https://debricked.com/api/login_check}")
+    private String loginUrl = "https://debricked.com/api/login_check";
+
+    // Path of the vulnerability list of a scan below the API URL, followed by the ciUploadId
+    @Value("${debricked.findings.path:ci/upload/vulnerabilities?ciUploadId=}")
+    private String findingsPath = "ci/upload/vulnerabilities?ciUploadId=";
+
+    // Time allowed for leasing a connection from the pool
+    @Value("${debricked.http.pool-acquire-timeout-ms:2000}")
+    private long poolAcquireTimeoutMs = 2000;
+
+    // Status calls get a short response timeout so that one hung call cannot stall a poll cycle; it bounds
+    // each wait for response data, the pool acquire and connect timeouts come on top of it
+    @Value("${debricked.poll.call-timeout-ms:5000}")
+    private long pollCallTimeoutMs = 5000;
+
+    @Autowired
+    private CloseableHttpClient httpClient; // Shared, pooled HTTP transport
+
+    @Autowired
+    private DebrickedRateGovernor governor; // Rate limit and circuit breaker shared by all calls
+
+    private volatile RequestConfig pollCallConfig;
+
+    /**
+     * Reads the body of a successful response. The stream is closed by the client.
+     */
+    @FunctionalInterface
+    public interface BodyReader<T> {
+        T read(InputStream body) throws IOException;
+    }
+
+    /**
+     * Logs in with the API credentials.
+     *
+     * @return The JWT to authorize the other calls with
+     * @throws IOException If the login is rejected or the call fails
+     */
+    public String login(String username, String password) throws IOException {
+        HttpPost post = new HttpPost(loginUrl);
+        // Form encoded, so credentials with '&', '=' or non-ASCII characters arrive intact
+        post.setEntity(new UrlEncodedFormEntity(List.of(
+                new BasicNameValuePair("_username", username),
+                new BasicNameValuePair("_password", password)), StandardCharsets.UTF_8));
+        String token = execute(post, "login", Priority.UPLOAD, DebrickedJson::readToken);
+        if (token == null) {
+            throw new IOException("Debricked login returned no token");
+        }
+        return token;
+    }
+
+    /**
+     * Uploads one dependency file, starting a new upload or joining an existing one.
+     *
+     * @param ciUploadId The upload to join, null to start a new one
+     * @return The ciUploadId the file was added to, null if Debricked returned none
+     * @throws DebrickedApiException If Debricked rejects the file
+     * @throws IOException           If the call fails
+     */
+    public String uploadFile(DependencyFile file, String ciUploadId, UploadTarget target, String token) throws IOException {
+        HttpPost post = new HttpPost(debrickedApiUrl + "uploads/dependencies/files");
+        authorize(post, token, "*/*");
+        post.setEntity(buildUploadEntity(file, ciUploadId, target));
+        return execute(post, "upload", Priority.UPLOAD, DebrickedJson::readCiUploadId);
+    }
+
+    /**
+     * Builds the multipart body for a file upload. The file content is streamed from its
+     * source while the request is written, so it is never held in memory as a whole.
+     */
+    public HttpEntity buildUploadEntity(DependencyFile file, String ciUploadId, UploadTarget target) {
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        builder.addPart("fileData", new StreamingContentBody(file));  // Binary body streamed from the source
+        builder.addTextBody("commitName", target.commitName());
+        builder.addTextBody("repositoryName", target.repositoryName());
+        if (ciUploadId != null) {
+            builder.addTextBody("ciUploadId", ciUploadId);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Starts the scan of an upload once all of its files are uploaded.
+     *
+     * @throws IOException If the scan cannot be started
+     */
+    public void startScan(String ciUploadId, String token) throws IOException {
+        HttpPost post = new HttpPost(debrickedApiUrl + "finishes/dependencies/files/uploads");
+        authorize(post, token, "application/json");
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        builder.addTextBody("ciUploadId", ciUploadId, ContentType.TEXT_PLAIN);
+        builder.addTextBody("returnCommitData", "false", ContentType.TEXT_PLAIN); // Do not return commit data
+        post.setEntity(builder.build());
+        execute(post, "start scan", Priority.UPLOAD, body -> null);
+    }
+
+    /**
+     * Fetches the status of a scan, bounded by the poll call timeout.
+     *
+     * @throws IOException If the status cannot be fetched
+     */
+    public ScanStatus getScanStatus(String ciUploadId, String token) throws IOException {
+        HttpGet get = new HttpGet(debrickedApiUrl + "ci/upload/status?ciUploadId=" + encode(ciUploadId));
+        authorize(get, token, "*/*");
+        get.setConfig(pollCallConfig());
+        return execute(get, "scan status", Priority.POLL, DebrickedJson::readScanStatus);
+    }
+
+    /**
+     * Streams the vulnerability list of a completed scan to the given reader while it is
+     * received, so its size does not matter.
+     *
+     * @return What the reader returned
+     * @throws IOException If the list cannot be fetched or read
+     */
+    public <T> T readFindings(String ciUploadId, String token, BodyReader<T> reader) throws IOException {
+        HttpGet get = new HttpGet(debrickedApiUrl + findingsPath + encode(ciUploadId));
+        authorize(get, token, "application/json");
+        get.setConfig(pollCallConfig());
+        return execute(get, "findings", Priority.POLL, reader);
+    }
+
+    /**
+     * Executes a call on the pooled client once the governor lets it through, mapping every
+     * answer other than 2xx to a {@link DebrickedApiException}. The connection is released
+     * once the body has been read. The outcome is reported to the governor; a body that cannot
+     * be read still counts as an answer.
+     */
+    private <T> T execute(ClassicHttpRequest request, String operation, Priority priority, BodyReader<T> reader)
+            throws IOException {
+        governor.acquire(priority);
+        AtomicBoolean answered = new AtomicBoolean();
+        try {
+            T result = httpClient.execute(request, response -> {
+                int status = response.getCode();
+                HttpEntity entity = response.getEntity();
+                if (status < 200 || status >= 300) {
+                    EntityUtils.consume(entity);
+                    Header retryAfter = response.getFirstHeader("Retry-After");
+                    throw new DebrickedApiException(operation, status, response.getReasonPhrase(),
+                            DebrickedRateGovernor.parseRetryAfter(retryAfter != null ? retryAfter.getValue() : null, Instant.now()));
+                }
+                answered.set(true);
+                try (InputStream body = entity != null ? entity.getContent() : InputStream.nullInputStream()) {
+                    return reader.read(body);
+                }
+            });
+            governor.recordSuccess();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            if (answered.get()) {
+                governor.recordSuccess();
+            } else {
+                governor.recordFailure(e);
+            }
+            throw e;
+        }
+    }
+
+    private static void authorize(ClassicHttpRequest request, String token, String accept) {
+        request.addHeader("Authorization", "Bearer " + token);
+        request.addHeader("accept", accept);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    // Built on first use, the timeouts are fixed once the properties are injected
+    private RequestConfig pollCallConfig() {
+        RequestConfig config = pollCallConfig;
+        if (config == null) {
+            config = RequestConfig.custom()
+                    .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolAcquireTimeoutMs))
+                    .setResponseTimeout(Timeout.ofMilliseconds(pollCallTimeoutMs))
+                    .build();
+            pollCallConfig = config;
+        }
+        return config;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.ruleengine.client;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * The JSON bodies exchanged with Debricked, read straight from the response stream into
+ * records. The readers are built once and shared, they are immutable and thread safe, so a
+ * call costs no mapper construction, no intermediate String and no tree of nodes.
+ */
+public final class DebrickedJson {
+
+    // Debricked adds fields over time, only the ones declared below are read
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private static final ObjectReader SCAN_STATUS = MAPPER.readerFor(ScanStatus.class);
+    private static final ObjectReader UPLOAD_RESPONSE = MAPPER.readerFor(UploadResponse.class);
+    private static final ObjectReader LOGIN_RESPONSE = MAPPER.readerFor(LoginResponse.class);
+    private static final ObjectReader TOKEN_CLAIMS = MAPPER.readerFor(TokenClaims.class);
+
+    private DebrickedJson() {
+    }
+
+    /**
+     * Reads the response of ci/upload/status.
+     */
+    public static ScanStatus readScanStatus(InputStream body) throws IOException {
+        return SCAN_STATUS.readValue(body);
+    }
+
+    /**
+     * Reads the ciUploadId from the response of a file upload, null if there is none.
+     */
+    public static String readCiUploadId(InputStream body) throws IOException {
+        UploadResponse response = UPLOAD_RESPONSE.readValue(body);
+        return response != null ? response.ciUploadId() : null;
+    }
+
+    /**
+     * Reads the JWT from the response of login_check, null if there is none.
+     */
+    public static String readToken(InputStream body) throws IOException {
+        LoginResponse response = LOGIN_RESPONSE.readValue(body);
+        return response != null ? response.token() : null;
+    }
+
+    /**
+     * Reads the "exp" claim of a JWT without verifying it.
+     *
+     * @return The expiry, or null if the token has no readable "exp" claim
+     */
+    public static Instant tokenExpiry(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length < 2) {
+            return null;
+        }
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(parts[1]);
+            TokenClaims claims = TOKEN_CLAIMS.readValue(new String(payload, StandardCharsets.UTF_8));
+            return claims != null && claims.exp() != null ? Instant.ofEpochSecond(claims.exp()) : null;
+        } catch (IllegalArgumentException | IOException e) {
+            return null; // Not a readable JWT payload
+        }
+    }
+
+    private record UploadResponse(String ciUploadId) {
+    }
+
+    private record LoginResponse(String token) {
+    }
+
+    private record TokenClaims(Long exp) {
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.ruleengine.client;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Gate in front of every call to Debricked, shared by the blocking and the reactive client.
+ *
+ * A token bucket keeps the calls at the configured rate, with a reserve of permits that only
+ * uploads, scan starts and logins may use, and polls give way while an upload is waiting. A 429
+ * or a Retry-After header pauses all calls for the time Debricked asked for. After a run of
+ * failed calls the circuit opens and calls fail immediately, without reaching Debricked, until
+ * a single trial call succeeds.
+ */
+@Component
+public class DebrickedRateGovernor implements MeterBinder {
+
+    /**
+     * Who is asking for a permit. Uploads are work a user waits for, polls can be done later.
+     */
+    public enum Priority { UPLOAD, POLL }
+
+    enum CircuitState { CLOSED, OPEN, HALF_OPEN }
+
+    // Sustained calls per second Debricked allows
+    @Value("${debricked.rate.permits-per-second:10}")
+    private double permitsPerSecond = 10;
+
+    // Calls that may be sent at once after a quiet period
+    @Value("${debricked.rate.burst:20}")
+    private int burst = 20;
+
+    // Permits of the bucket that polls leave for uploads
+    @Value("${debricked.rate.upload-reserve:5}")
+    private int uploadReserve = 5;
+
+    // How long an upload waits for a permit before it fails
+    @Value("${debricked.rate.upload-max-wait-ms:30000}")
+    private long uploadMaxWaitMs = 30000;
+
+    // How long a poll waits for a permit; the upload stays due when it gives up
+    @Value("${debricked.rate.poll-max-wait-ms:1000}")
+    private long pollMaxWaitMs = 1000;
+
+    // Pause after a 429 without a Retry-After header
+    @Value("${debricked.rate.default-retry-after-seconds:30}")
+    private long defaultRetryAfterSeconds = 30;
+
+    // Consecutive failed calls that open the circuit
+    @Value("${debricked.circuit.failure-threshold:5}")
+    private int failureThreshold = 5;
+
+    // How long the circuit stays open before a trial call is let through
+    @Value("${debricked.circuit.open-seconds:30}")
+    private long openSeconds = 30;
+
+    private LongSupplier nanoClock = System::nanoTime;
+
+    // Bucket and circuit state, guarded by this; no call is made while holding the lock
+    private double permits = -1;
+    private long refilledAt;
+    private long pausedUntil;
+    private int uploadsWaiting;
+    private CircuitState circuit = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+    private long trialStartedAt;
+
+    private final Map<Priority, LongAdder> granted = new EnumMap<>(Priority.class);
+    private final Map<Priority, LongAdder> timedOut = new EnumMap<>(Priority.class);
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder circuitOpened = new LongAdder();
+
+    public DebrickedRateGovernor() {
+        for (Priority priority : Priority.values()) {
+            granted.put(priority, new LongAdder());
+            timedOut.put(priority, new LongAdder());
+        }
+    }
+
+    /**
+     * Waits for a permit to make one call.
+     *
+     * @throws DebrickedUnavailableException If the circuit is open, or no permit became
+     *                                       available within the wait allowed for the priority
+     */
+    public void acquire(Priority priority) throws DebrickedUnavailableException {
+        long start = nanoClock.getAsLong();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxWaitMs(priority));
+        boolean waiting = false;
+        try {
+            while (true) {
+                long wait = tryAcquire(priority);
+                if (wait == 0) {
+                    return;
+                }
+                long now = nanoClock.getAsLong();
+                if (now + wait > deadline) {
+                    throw timedOut(priority, wait);
+                }
+                if (!waiting && priority == Priority.UPLOAD) {
+                    waiting = true;
+                    changeUploadsWaiting(1);
+                }
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DebrickedUnavailableException("Interrupted while waiting for a Debricked permit", Duration.ZERO);
+                }
+            }
+        } finally {
+            if (waiting) {
+                changeUploadsWaiting(-1);
+            }
+            waits.increment();
+            waitNanos.add(nanoClock.getAsLong() - start);
+        }
+    }
+
+    /**
+     * Takes a permit if one is available right now, without waiting.
+     *
+     * @return 0 if the permit was taken, otherwise the nanoseconds to wait before asking again
+     * @throws DebrickedUnavailableException If the circuit is open
+     */
+    public synchronized long tryAcquire(Priority priority) throws DebrickedUnavailableException {
+        long now = nanoClock.getAsLong();
+        if (circuit == CircuitState.OPEN && now < openUntil
+                || circuit == CircuitState.HALF_OPEN && now - trialStartedAt < TimeUnit.SECONDS.toNanos(openSeconds)) {
+            shed.increment();
+            long retryIn = circuit == CircuitState.OPEN ? openUntil - now : TimeUnit.SECONDS.toNanos(1);
+            throw new DebrickedUnavailableException("Debricked is unavailable, calls are suspended for "
+                    + TimeUnit.NANOSECONDS.toMillis(retryIn) + " ms", Duration.ofNanos(retryIn));
+        }
+        if (now < pausedUntil) {
+            return pausedUntil - now;
+        }
+        refill(now);
+        // Polls keep the reserve for uploads and give way to any upload waiting for a permit
+        double needed = priority == Priority.POLL ? 1 + uploadReserve : 1;
+        if (priority == Priority.POLL && uploadsWaiting > 0) {
+            needed = Math.max(needed, permits + 1);
+        }
+        if (permits < needed) {
+            return Math.max(1, (long) Math.ceil((needed - permits) / permitsPerSecond * 1e9));
+        }
+        permits -= 1;
+        if (circuit != CircuitState.CLOSED) {
+            // The open period is over: this call is the trial, the others wait for its outcome
+            circuit = CircuitState.HALF_OPEN;
+            trialStartedAt = now;
+        }
+        granted.get(priority).increment();
+        return 0;
+    }
+
+    /**
+     * Records a call that Debricked answered, closing the circuit if it was the trial.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        circuit = CircuitState.CLOSED;
+    }
+
+    /**
+     * Records a call that failed. A 429 pauses all calls and says nothing about the health of
+     * Debricked; server errors and transport failures count towards opening the circuit, and
+     * a Retry-After sent with them is honored as well. Other answers show Debricked is up.
+     */
+    public void recordFailure(Throwable failure) {
+        if (failure instanceof DebrickedUnavailableException) {
+            return; // Never sent
+        }
+        if (failure instanceof DebrickedApiException api) {
+            if (api.getRetryAfter() != null || api.getStatusCode() == 429) {
+                pause(api.getRetryAfter() != null ? api.getRetryAfter() : Duration.ofSeconds(defaultRetryAfterSeconds));
+            }
+            if (api.getStatusCode() < 500) {
+                recordSuccess();
+                return;
+            }
+        }
+        synchronized (this) {
+            consecutiveFailures++;
+            if (circuit == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold && circuit == CircuitState.CLOSED) {
+                circuit = CircuitState.OPEN;
+                openUntil = nanoClock.getAsLong() + TimeUnit.SECONDS.toNanos(openSeconds);
+                circuitOpened.increment();
+                System.out.println("Debricked circuit opened after " + consecutiveFailures + " failed calls: "
+                        + failure.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Whether calls are currently let through, neither paused nor shed, so callers can skip
+     * work that would only wait or fail.
+     */
+    public synchronized boolean isAvailable() {
+        long now = nanoClock.getAsLong();
+        return now >= pausedUntil
+                && (circuit == CircuitState.CLOSED || circuit == CircuitState.OPEN && now >= openUntil);
+    }
+
+    /**
+     * How many polls could be let through now and within the wait a poll accepts, keeping the
+     * reserve for uploads. Pollers claim no more uploads than this, so the rest stay unleased.
+     *
+     * @return The number of polls, 0 while calls are paused or shed
+     */
+    public synchronized int pollCapacity() {
+        if (!isAvailable()) {
+            return 0;
+        }
+        refill(nanoClock.getAsLong());
+        double capacity = permits - uploadReserve + permitsPerSecond * pollMaxWaitMs / 1000.0;
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, Math.floor(capacity)));
+    }
+
+    /**
+     * Reads a Retry-After header, given either in seconds or as an HTTP date.
+     *
+     * @return The wait, null if the header is missing or unreadable
+     */
+    public static Duration parseRetryAfter(String header, Instant now) {
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        String value = header.trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, try the date form
+        }
+        try {
+            Duration wait = Duration.between(now, ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+            return wait.isNegative() ? Duration.ZERO : wait;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private synchronized void pause(Duration wait) {
+        throttled.increment();
+        pausedUntil = Math.max(pausedUntil, nanoClock.getAsLong() + wait.toNanos());
+        System.out.println("Debricked asked to slow down, calls are paused for " + wait.toMillis() + " ms");
+    }
+
+    private synchronized void changeUploadsWaiting(int delta) {
+        uploadsWaiting += delta;
+    }
+
+    // Adds the permits earned since the last refill, up to the burst size; the bucket starts full
+    private void refill(long now) {
+        if (permits < 0) {
+            permits = burst;
+        } else {
+            permits = Math.min(burst, permits + (now - refilledAt) / 1e9 * permitsPerSecond);
+        }
+        refilledAt = now;
+    }
+
+    /**
+     * How long a caller of the given priority waits for a permit before giving up.
+     */
+    public Duration maxWait(Priority priority) {
+        return Duration.ofMillis(maxWaitMs(priority));
+    }
+
+    private long maxWaitMs(Priority priority) {
+        return priority == Priority.UPLOAD ? uploadMaxWaitMs : pollMaxWaitMs;
+    }
+
+    DebrickedUnavailableException timedOut(Priority priority, long wait) {
+        timedOut.get(priority).increment();
+        return new DebrickedUnavailableException("No Debricked permit for " + priority.name().toLowerCase()
+                + " within " + maxWaitMs(priority) + " ms", Duration.ofNanos(wait));
+    }
+
+    synchronized CircuitState getCircuitState() {
+        return circuit;
+    }
+
+    private synchronized double availablePermits() {
+        refill(nanoClock.getAsLong());
+        return permits;
+    }
+
+    void setNanoClock(LongSupplier nanoClock) { this.nanoClock = nanoClock; }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Priority priority : Priority.values()) {
+            String tag = priority.name().toLowerCase();
+            FunctionCounter.builder("debricked.rate.permits", granted.get(priority), LongAdder::sum)
+                    .tag("priority", tag).description("Calls let through to Debricked").register(registry);
+            FunctionCounter.builder("debricked.rate.timeouts", timedOut.get(priority), LongAdder::sum)
+                    .tag("priority", tag).description("Calls given up waiting for a permit").register(registry);
+        }
+        FunctionTimer.builder("debricked.rate.wait", this, governor -> governor.waits.sum(),
+                        governor -> governor.waitNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Time calls waited for a permit").register(registry);
+        Gauge.builder("debricked.rate.available", this, DebrickedRateGovernor::availablePermits)
+                .description("Permits currently in the bucket").register(registry);
+        FunctionCounter.builder("debricked.rate.throttled", throttled, LongAdder::sum)
+                .description("429 or Retry-After answers that paused all calls").register(registry);
+        FunctionCounter.builder("debricked.circuit.shed", shed, LongAdder::sum)
+                .description("Calls failed immediately because the circuit was open").register(registry);
+        FunctionCounter.builder("debricked.circuit.opened", circuitOpened, LongAdder::sum)
+                .description("Times the circuit opened").register(registry);
+        Gauge.builder("debricked.circuit.state", this, governor -> governor.getCircuitState().ordinal())
+                .description("Circuit state: 0 closed, 1 open, 2 half open").register(registry);
+    }
+}
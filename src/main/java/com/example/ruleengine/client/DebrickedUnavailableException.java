@@ -0,0 +1,23 @@
+package com.example.ruleengine.client;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * A call was not sent to Debricked: the circuit breaker is open, or no permit of the rate limit
+ * became available in time. Nothing reached Debricked, so the call can be repeated later as it is.
+ */
+public class DebrickedUnavailableException extends IOException {
+
+    private final Duration retryAfter;
+
+    public DebrickedUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * How long until a call has a chance to be let through.
+     */
+    public Duration getRetryAfter() { return retryAfter; }
+}
@@ -0,0 +1,172 @@
+package com.example.ruleengine.client;
+
+import com.example.ruleengine.client.DebrickedRateGovernor.Priority;
+import com.example.ruleengine.service.DependencyFile;
+import com.example.ruleengine.service.UploadTarget;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking counterpart of {@link DebrickedClient} for the "reactive" profile. The calls,
+ * the records they return and the error mapping are the same, but every call returns a
+ * {@link Mono} and waits on an event loop instead of a thread, also while it waits for a permit
+ * of the shared {@link DebrickedRateGovernor}.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveDebrickedClient {
+
+    // Buffer size used when streaming a file from disk into the request
+    private static final int BUFFER_SIZE = 8192;
+
+    // URL of the Debricked API, loaded from application properties
+    @Value("${debricked.api.url}")
+    private String debrickedApiUrl;
+
+    // Login endpoint, which lives outside the versioned API
+    @Value("${debricked.api.login-url:https://debricked.com/api/login_check}")
+    private String loginUrl = "https://debricked.com/api/login_check";
+
+    // Status calls get a short deadline, for the whole call, so that one hung call cannot stall a poll cycle
+    @Value("${debricked.poll.call-timeout-ms:5000}")
+    private long pollCallTimeoutMs = 5000;
+
+    @Autowired
+    private WebClient webClient; // Pooled, event loop based HTTP transport
+
+    @Autowired
+    private DebrickedRateGovernor governor; // Rate limit and circuit breaker shared by all calls
+
+    /**
+     * Logs in with the API credentials and emits the JWT.
+     */
+    public Mono<String> login(String username, String password) {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("_username", username);
+        form.add("_password", password);
+        return exchange(webClient.post().uri(loginUrl).contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                        .body(BodyInserters.fromFormData(form)), "login", Priority.UPLOAD, DebrickedJson::readToken)
+                .switchIfEmpty(Mono.error(() -> new DebrickedApiException("login", 200, "no token")));
+    }
+
+    /**
+     * Uploads one dependency file, streaming its content from its source.
+     *
+     * @param ciUploadId The upload to join, null to start a new one
+     * @return The ciUploadId the file was added to; empty if Debricked returned none
+     */
+    public Mono<String> uploadFile(DependencyFile file, String ciUploadId, UploadTarget target, String token) {
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.asyncPart("fileData", DataBufferUtils.readInputStream(file.content()::getInputStream,
+                        DefaultDataBufferFactory.sharedInstance, BUFFER_SIZE), DataBuffer.class)
+                .filename(file.filename());
+        body.part("commitName", target.commitName());
+        body.part("repositoryName", target.repositoryName());
+        if (ciUploadId != null) {
+            body.part("ciUploadId", ciUploadId);
+        }
+        return exchange(webClient.post().uri(debrickedApiUrl + "uploads/dependencies/files")
+                        .headers(headers -> headers.setBearerAuth(token))
+                        .accept(MediaType.ALL)
+                        .body(BodyInserters.fromMultipartData(body.build())),
+                "upload", Priority.UPLOAD, DebrickedJson::readCiUploadId);
+    }
+
+    /**
+     * Starts the scan of an upload once all of its files are uploaded.
+     */
+    public Mono<Void> startScan(String ciUploadId, String token) {
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("ciUploadId", ciUploadId);
+        body.part("returnCommitData", "false"); // Do not return commit data
+        return exchange(webClient.post().uri(debrickedApiUrl + "finishes/dependencies/files/uploads")
+                        .headers(headers -> headers.setBearerAuth(token))
+                        .accept(MediaType.APPLICATION_JSON)
+                        .body(BodyInserters.fromMultipartData(body.build())),
+                "start scan", Priority.UPLOAD, in -> null).then();
+    }
+
+    /**
+     * Fetches the status of a scan, bounded by the poll call timeout.
+     */
+    public Mono<ScanStatus> getScanStatus(String ciUploadId, String token) {
+        return exchange(webClient.get()
+                        .uri(debrickedApiUrl + "ci/upload/status?ciUploadId={ciUploadId}", ciUploadId)
+                        .headers(headers -> headers.setBearerAuth(token))
+                        .accept(MediaType.ALL),
+                "scan status", Priority.POLL, DebrickedJson::readScanStatus)
+                .timeout(Duration.ofMillis(pollCallTimeoutMs));
+    }
+
+    /**
+     * Sends a request once the governor lets it through and reads its body with the shared
+     * readers, mapping every answer other than 2xx to a {@link DebrickedApiException}. Bodies
+     * are small and read as one buffer. The outcome is reported to the governor.
+     */
+    private <T> Mono<T> exchange(WebClient.RequestHeadersSpec<?> request, String operation, Priority priority,
+                                 DebrickedClient.BodyReader<T> reader) {
+        return Mono.defer(() -> {
+            AtomicBoolean answered = new AtomicBoolean();
+            return permit(priority, System.nanoTime() + governor.maxWait(priority).toNanos())
+                    .then(request.exchangeToMono(response -> {
+                        if (!response.statusCode().is2xxSuccessful()) {
+                            HttpStatus status = HttpStatus.resolve(response.statusCode().value());
+                            Duration retryAfter = DebrickedRateGovernor.parseRetryAfter(
+                                    response.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER), Instant.now());
+                            return response.releaseBody().then(Mono.error(new DebrickedApiException(operation,
+                                    response.statusCode().value(), status != null ? status.getReasonPhrase() : null, retryAfter)));
+                        }
+                        answered.set(true);
+                        return response.bodyToMono(byte[].class)
+                                .defaultIfEmpty(new byte[0])
+                                .flatMap(body -> Mono.fromCallable(() -> reader.read(new ByteArrayInputStream(body))));
+                    }))
+                    .doOnSuccess(result -> governor.recordSuccess())
+                    .doOnError(e -> {
+                        if (answered.get()) {
+                            governor.recordSuccess();
+                        } else {
+                            governor.recordFailure(e);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Completes once the governor hands out a permit, waiting on a timer instead of a thread.
+     */
+    private Mono<Void> permit(Priority priority, long deadline) {
+        long wait;
+        try {
+            wait = governor.tryAcquire(priority);
+        } catch (DebrickedUnavailableException e) {
+            return Mono.error(e);
+        }
+        if (wait == 0) {
+            return Mono.empty();
+        }
+        if (System.nanoTime() + wait > deadline) {
+            return Mono.error(governor.timedOut(priority, wait));
+        }
+        return Mono.delay(Duration.ofNanos(wait)).then(Mono.defer(() -> permit(priority, deadline)));
+    }
+}
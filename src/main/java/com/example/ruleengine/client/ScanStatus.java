@@ -0,0 +1,14 @@
+package com.example.ruleengine.client;
+
+/**
+ * Status of a scan as reported by Debricked's ci/upload/status endpoint.
+ *
+ * @param progress             Scan progress in percent, 100 once the scan has finished
+ * @param vulnerabilitiesFound Vulnerabilities found so far
+ */
+public record ScanStatus(int progress, int vulnerabilitiesFound) {
+
+    public boolean isComplete() {
+        return progress == 100;
+    }
+}
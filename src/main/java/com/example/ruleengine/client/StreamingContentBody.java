@@ -0,0 +1,47 @@
+package com.example.ruleengine.client;
+
+import com.example.ruleengine.service.DependencyFile;
+import org.apache.hc.client5.http.entity.mime.AbstractContentBody;
+import org.apache.hc.core5.http.ContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Multipart body part that copies a {@link DependencyFile} to the request through a small
+ * fixed buffer. The source is opened anew for every write, so a request whose content
+ * lives on disk can be retried without keeping a copy on the heap.
+ */
+class StreamingContentBody extends AbstractContentBody {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final DependencyFile file;
+
+    StreamingContentBody(DependencyFile file) {
+        super(ContentType.DEFAULT_BINARY);
+        this.file = file;
+    }
+
+    @Override
+    public String getFilename() {
+        return file.filename();
+    }
+
+    @Override
+    public long getContentLength() {
+        return file.size(); // -1 when unknown, which makes the request chunked
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (InputStream in = file.content().getInputStream()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+}
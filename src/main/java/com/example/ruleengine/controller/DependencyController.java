@@ -1,17 +1,42 @@
 package com.example.ruleengine.controller;
 
+import com.example.ruleengine.client.DebrickedUnavailableException;
+import com.example.ruleengine.entity.UploadJob;
+import com.example.ruleengine.repository.FindingView;
+import com.example.ruleengine.repository.ScanResult;
 import com.example.ruleengine.service.DebrickedService;
+import com.example.ruleengine.service.FindingsStore;
 import com.example.ruleengine.service.NotificationService;
+import com.example.ruleengine.service.ScanResultWaiters;
+import com.example.ruleengine.service.UploadJobService;
+import com.example.ruleengine.service.UploadTarget;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
+@Profile("!reactive") // Served by ReactiveDependencyController in the reactive profile
 @RequestMapping("/api/dependencies") // Base URL for dependency-related API endpoints
 public class DependencyController {
 
@@ -21,24 +46,62 @@ public class DependencyController {
     @Autowired
     private NotificationService notificationService; // Service for sending notifications
 
+    @Autowired
+    private UploadJobService uploadJobService; // Service for background upload jobs
+
+    @Autowired
+    private FindingsStore findingsStore; // Stored vulnerability findings of completed scans
+
+    @Autowired
+    private ScanResultWaiters resultWaiters; // Clients waiting for the outcome of a scan
+
+    // When enabled, uploads are accepted with 202 and processed in the background
+    @Value("${debricked.upload.async:false}")
+    private boolean asyncUploads;
+
     /**
      * Endpoint for uploading dependency files.
      *
      * @param files An array of files to be uploaded
      * @param email The email address to notify upon success or failure
-     * @return ResponseEntity containing the status of the upload
+     * @param repositoryName Optional repository the files belong to, used by the notification rules
+     * @param commitName Optional commit the files belong to
+     * @return ResponseEntity containing the status of the upload, with the result URL of the scan in
+     * the Location header; in async mode the job id, with the job URL in the Location header
      */
     @PostMapping("/upload") // Maps HTTP POST requests to this method
-    public ResponseEntity<String> uploadFiles(@RequestParam("files") MultipartFile[] files, @RequestParam("email") String email) {
+    public ResponseEntity<String> uploadFiles(@RequestParam("files") MultipartFile[] files, @RequestParam("email") String email,
+                                              @RequestParam(value = "repositoryName", required = false) String repositoryName,
+                                              @RequestParam(value = "commitName", required = false) String commitName) {
+        UploadTarget target = UploadTarget.of(repositoryName, commitName);
         try {
+            if (asyncUploads) {
+                // Spool the files and let a background worker talk to Debricked
+                UploadJob job = uploadJobService.submit(files, email, target);
+                return ResponseEntity.accepted()
+                        .location(URI.create("/api/dependencies/jobs/" + job.getId()))
+                        .body(job.getId()); // Return the job id to poll for the result
+            }
+
             // Call service to handle the file upload
-            boolean status = debrickedService.uploadDependencies(files, email);
-            if(status) {
-                return ResponseEntity.ok("Files uploaded successfully"); // Return success response
+            String ciUploadId = debrickedService.uploadDependencies(files, email, target);
+            if(ciUploadId != null) {
+                return ResponseEntity.ok()
+                        .location(resultUri(ciUploadId)) // Where the client waits for the outcome of the scan
+                        .body("Files uploaded successfully"); // Return success response
             } else {
                 return ResponseEntity.badRequest().body("File Upload Failed"); // Return failed response
             }
 
+        } catch (RejectedExecutionException e) {
+            // The background queue is full, ask the client to retry later
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Upload queue is full, please retry later");
+        } catch (DebrickedUnavailableException e) {
+            // Debricked is throttling us or down, nothing was lost, so the client just retries
+            System.out.println("File upload deferred: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                    .body("Debricked is unavailable, please retry later");
         } catch (Exception e) {
             // Log error message for debugging
             System.out.println("File upload failed: " + e.getMessage());
@@ -49,4 +112,106 @@ public class DependencyController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("File upload failed: " + e.getMessage());
         }
     }
+
+    /**
+     * Endpoint for checking the state of an asynchronous upload job.
+     *
+     * @param id The job id returned by the upload endpoint
+     * @return The job, or 404 if it is unknown
+     */
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<UploadJob> getJob(@PathVariable("id") String id) {
+        return uploadJobService.findJob(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Endpoint listing the vulnerability findings stored for a completed scan, without
+     * calling Debricked again.
+     *
+     * @param ciUploadId The scan
+     * @return The findings, most severe first; empty if none are stored
+     */
+    @GetMapping("/{ciUploadId}/findings")
+    public List<FindingView> getFindings(@PathVariable("ciUploadId") String ciUploadId) {
+        return findingsStore.findFindings(ciUploadId);
+    }
+
+    /**
+     * Endpoint for the outcome of a scan, for CI jobs. With a wait the request is held until the
+     * scan is done or the wait ends (long polling), without any call to Debricked.
+     *
+     * @param ciUploadId  The scan
+     * @param waitSeconds How long to wait for the scan to be done, capped at debricked.result.max-wait-seconds;
+     *                    0 answers right away
+     * @return 200 with the outcome of a finished scan, 202 with the state of a running one to ask
+     * again, or 404 if the scan is unknown
+     */
+    @GetMapping("/{ciUploadId}/result")
+    public DeferredResult<ResponseEntity<ScanResult>> getResult(@PathVariable("ciUploadId") String ciUploadId,
+                                                                @RequestParam(value = "wait", defaultValue = "0") long waitSeconds) {
+        // Outlives the longest wait, so it is always answered by the waiter and not the container
+        DeferredResult<ResponseEntity<ScanResult>> response =
+                new DeferredResult<>(resultWaiters.getMaxWait().plusSeconds(10).toMillis());
+        Optional<ScanResult> current = resultWaiters.find(ciUploadId);
+        if (current.isEmpty()) {
+            response.setResult(ResponseEntity.notFound().build());
+            return response;
+        }
+        resultWaiters.await(current.get(), Duration.ofSeconds(waitSeconds)).whenComplete((result, error) -> {
+            if (error != null) {
+                response.setErrorResult(error);
+            } else {
+                response.setResult(result.done() ? ResponseEntity.ok(result) : ResponseEntity.accepted().body(result));
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Endpoint streaming the outcome of a scan as server-sent events: a "status" event with the
+     * state of a running scan, then a "result" event once it is done. A stream that ends after
+     * the maximum wait with only a "status" event is to be opened again.
+     *
+     * @param ciUploadId The scan
+     * @return The event stream, or 404 if the scan is unknown
+     */
+    @GetMapping(value = "/{ciUploadId}/result", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamResult(@PathVariable("ciUploadId") String ciUploadId) {
+        Optional<ScanResult> current = resultWaiters.find(ciUploadId);
+        if (current.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        SseEmitter emitter = new SseEmitter(resultWaiters.getMaxWait().plusSeconds(10).toMillis());
+        if (!current.get().done()) {
+            sendResult(emitter, current.get());
+        }
+        resultWaiters.await(current.get(), resultWaiters.getMaxWait()).whenComplete((result, error) -> {
+            if (error != null) {
+                emitter.completeWithError(error);
+            } else if (sendResult(emitter, result)) {
+                emitter.complete();
+            }
+        });
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * The URL of the outcome of a scan, long polled or streamed by CI clients.
+     */
+    static URI resultUri(String ciUploadId) {
+        return UriComponentsBuilder.fromPath("/api/dependencies/{ciUploadId}/result").build(ciUploadId);
+    }
+
+    // Sends the state of a scan as a "status" or "result" event; false if the client is gone
+    private static boolean sendResult(SseEmitter emitter, ScanResult result) {
+        try {
+            emitter.send(SseEmitter.event().name(result.done() ? "result" : "status").data(result, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
 }
@@ -0,0 +1,175 @@
+package com.example.ruleengine.controller;
+
+import com.example.ruleengine.client.DebrickedUnavailableException;
+import com.example.ruleengine.entity.UploadJob;
+import com.example.ruleengine.repository.FindingView;
+import com.example.ruleengine.repository.ScanResult;
+import com.example.ruleengine.service.FindingsStore;
+import com.example.ruleengine.service.NotificationService;
+import com.example.ruleengine.service.ReactiveUploadService;
+import com.example.ruleengine.service.ScanResultWaiters;
+import com.example.ruleengine.service.UploadJobService;
+import com.example.ruleengine.service.UploadTarget;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.codec.multipart.FormFieldPart;
+import org.springframework.http.codec.multipart.Part;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The endpoints of {@link DependencyController} for the "reactive" profile. The upload is
+ * handled without blocking; the lookups are plain JPA calls, which WebFlux runs on the
+ * blocking handler executor of {@link com.example.ruleengine.ReactiveConfig}.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/dependencies") // Base URL for dependency-related API endpoints
+public class ReactiveDependencyController {
+
+    @Autowired
+    private ReactiveUploadService uploadService; // Non-blocking upload pipeline
+
+    @Autowired
+    private NotificationService notificationService; // Service for sending notifications
+
+    @Autowired
+    private UploadJobService uploadJobService; // Jobs accepted by an instance running the blocking mode
+
+    @Autowired
+    private FindingsStore findingsStore; // Stored vulnerability findings of completed scans
+
+    @Autowired
+    private ScanResultWaiters resultWaiters; // Clients waiting for the outcome of a scan
+
+    /**
+     * Endpoint for uploading dependency files, taking the same multipart request as the
+     * blocking endpoint: the parts "files", "email" and the optional "repositoryName" and
+     * "commitName", the latter three also accepted as query parameters.
+     *
+     * @return ResponseEntity containing the status of the upload, with the result URL of the scan in
+     * the Location header
+     */
+    @PostMapping("/upload") // Maps HTTP POST requests to this method
+    public Mono<ResponseEntity<String>> uploadFiles(ServerWebExchange exchange) {
+        return exchange.getMultipartData().flatMap(parts -> {
+            String email = field(parts, "email", exchange);
+            if (email == null) {
+                return Mono.just(ResponseEntity.badRequest().body("Missing email"));
+            }
+            UploadTarget target = UploadTarget.of(field(parts, "repositoryName", exchange),
+                    field(parts, "commitName", exchange));
+            Flux<FilePart> files = Flux.fromIterable(parts.getOrDefault("files", List.of())).ofType(FilePart.class);
+
+            return uploadService.upload(files, email, target)
+                    .map(ciUploadId -> ResponseEntity.ok()
+                            .location(DependencyController.resultUri(ciUploadId)) // Where the client waits for the outcome
+                            .body("Files uploaded successfully")) // Return success response
+                    .defaultIfEmpty(ResponseEntity.badRequest().body("File Upload Failed")) // Return failed response
+                    .onErrorResume(DebrickedUnavailableException.class, e -> {
+                        // Debricked is throttling us or down, nothing was lost, so the client just retries
+                        System.out.println("File upload deferred: " + e.getMessage());
+                        return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                                .body("Debricked is unavailable, please retry later"));
+                    })
+                    .onErrorResume(e -> {
+                        // Log error message for debugging
+                        System.out.println("File upload failed: " + e.getMessage());
+
+                        // Send email notification about the failure
+                        return Mono.fromRunnable(() -> notificationService.sendEmail(email, "File upload failed", e.getMessage()))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .thenReturn(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                        .body("File upload failed: " + e.getMessage()));
+                    });
+        });
+    }
+
+    /**
+     * Endpoint for checking the state of an asynchronous upload job.
+     *
+     * @param id The job id returned by the upload endpoint
+     * @return The job, or 404 if it is unknown
+     */
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<UploadJob> getJob(@PathVariable("id") String id) {
+        return uploadJobService.findJob(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Endpoint listing the vulnerability findings stored for a completed scan, without
+     * calling Debricked again.
+     *
+     * @param ciUploadId The scan
+     * @return The findings, most severe first; empty if none are stored
+     */
+    @GetMapping("/{ciUploadId}/findings")
+    public List<FindingView> getFindings(@PathVariable("ciUploadId") String ciUploadId) {
+        return findingsStore.findFindings(ciUploadId);
+    }
+
+    /**
+     * Endpoint for the outcome of a scan, held until the scan is done or the wait ends.
+     *
+     * @see DependencyController#getResult(String, long)
+     */
+    @GetMapping("/{ciUploadId}/result")
+    public Mono<ResponseEntity<ScanResult>> getResult(@PathVariable("ciUploadId") String ciUploadId,
+                                                      @RequestParam(value = "wait", defaultValue = "0") long waitSeconds) {
+        return findResult(ciUploadId)
+                .flatMap(current -> Mono.fromFuture(resultWaiters.await(current, Duration.ofSeconds(waitSeconds))))
+                .map(result -> result.done() ? ResponseEntity.ok(result) : ResponseEntity.accepted().body(result))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Endpoint streaming the outcome of a scan as server-sent events.
+     *
+     * @see DependencyController#streamResult(String)
+     */
+    @GetMapping(value = "/{ciUploadId}/result", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Mono<ResponseEntity<Flux<ServerSentEvent<ScanResult>>>> streamResult(@PathVariable("ciUploadId") String ciUploadId) {
+        return findResult(ciUploadId)
+                .map(current -> ResponseEntity.ok(Flux.concat(
+                        current.done() ? Flux.<ScanResult>empty() : Flux.just(current),
+                        Mono.fromFuture(resultWaiters.await(current, resultWaiters.getMaxWait())))
+                        .map(result -> ServerSentEvent.builder(result).event(result.done() ? "result" : "status").build())))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    // The current state of a scan, read off the event loop; empty if the scan is unknown
+    private Mono<ScanResult> findResult(String ciUploadId) {
+        return Mono.fromCallable(() -> resultWaiters.find(ciUploadId).orElse(null))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // A form field of the multipart body, falling back to the query parameter of the same name
+    private static String field(MultiValueMap<String, Part> parts, String name, ServerWebExchange exchange) {
+        Part part = parts.getFirst(name);
+        if (part instanceof FormFieldPart formField) {
+            return formField.value();
+        }
+        return exchange.getRequest().getQueryParams().getFirst(name);
+    }
+}
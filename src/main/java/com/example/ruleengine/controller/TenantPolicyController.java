@@ -0,0 +1,70 @@
+package com.example.ruleengine.controller;
+
+import com.example.ruleengine.entity.TenantPolicy;
+import com.example.ruleengine.service.TenantPolicyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/policies") // Base URL for the alerting policies of the teams
+public class TenantPolicyController {
+
+    @Autowired
+    private TenantPolicyService policyService; // Service for managing tenant policies
+
+    /**
+     * Endpoint listing the policies in effect.
+     */
+    @GetMapping
+    public List<TenantPolicy> listPolicies() {
+        return policyService.findAll();
+    }
+
+    /**
+     * Endpoint creating or replacing the policy of a tenant.
+     *
+     * @param scope                    REPOSITORY, EMAIL_DOMAIN or DEFAULT
+     * @param tenantKey                The repository name or email domain, a request parameter since
+     *                                 repository names contain slashes; not needed for DEFAULT
+     * @param vulnerabilitiesThreshold Optional threshold, inherited from the wildcard policy when missing
+     * @param recipients               Optional comma separated addresses notified in addition to the uploader
+     * @return The stored policy, or 400 if the tenant is invalid
+     */
+    @PutMapping("/{scope}")
+    public ResponseEntity<?> savePolicy(@PathVariable("scope") TenantPolicy.Scope scope,
+                                        @RequestParam(value = "tenantKey", required = false) String tenantKey,
+                                        @RequestParam(value = "vulnerabilitiesThreshold", required = false) Integer vulnerabilitiesThreshold,
+                                        @RequestParam(value = "recipients", required = false) String recipients) {
+        try {
+            return ResponseEntity.ok(policyService.save(scope, tenantKey, vulnerabilitiesThreshold, recipients));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Endpoint deleting the policy of a tenant, which then falls back to the wildcard policy.
+     *
+     * @return 204 when deleted, 404 if the tenant has no policy, 400 for the wildcard policy
+     */
+    @DeleteMapping("/{scope}")
+    public ResponseEntity<String> deletePolicy(@PathVariable("scope") TenantPolicy.Scope scope,
+                                               @RequestParam(value = "tenantKey", required = false) String tenantKey) {
+        try {
+            return policyService.delete(scope, tenantKey)
+                    ? ResponseEntity.noContent().build()
+                    : ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
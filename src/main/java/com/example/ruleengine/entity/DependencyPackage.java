@@ -0,0 +1,36 @@
+package com.example.ruleengine.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * A package version affected by a vulnerability, stored once however many scans contain it.
+ */
+@Entity
+@Table(name = "dependency_package", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_dependency_package", columnNames = {"name", "version"})
+})
+public class DependencyPackage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String name;
+
+    @Column(length = 128)
+    private String version;
+
+    // Comma separated licenses of the package
+    @Column(length = 512)
+    private String licenses;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public String getVersion() { return version; }
+    public void setVersion(String version) { this.version = version; }
+    public String getLicenses() { return licenses; }
+    public void setLicenses(String licenses) { this.licenses = licenses; }
+}
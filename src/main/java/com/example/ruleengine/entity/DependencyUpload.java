@@ -4,15 +4,26 @@ package com.example.ruleengine.entity;
 //import javax.persistence.*;
 import jakarta.persistence.*;
 
-import javax.persistence.Table;
+import java.time.Instant;
 
 @jakarta.persistence.Entity
-@Table(name = "dependency_upload")
+@Table(name = "dependency_upload", indexes = {
+        @Index(name = "idx_content_hash", columnList = "content_hash, created_at"),
+        @Index(name = "idx_status_next_check", columnList = "status, next_check_at, id"),
+        @Index(name = "idx_repository_status", columnList = "repository_name, status, id")
+})
 public class DependencyUpload {
 
+    // An upload moves down this list; every state up to SCAN_STARTED can be resumed after a restart
     public enum Status {
-        IN_PROGRESS,
-        COMPLETED
+        RECEIVED,     // Files spooled, nothing sent to Debricked yet
+        UPLOADING,    // Files being sent; ciUploadId is set once the first one is accepted
+        UPLOADED,     // Every file accepted or rejected, scan not started yet
+        SCAN_STARTED, // Scan started, spooled files not released yet
+        IN_PROGRESS,  // Handed to the status poller
+        COMPLETED,
+        STALE,        // Still not completed after the maximum polling age
+        FAILED        // Given up before a scan was started
     }
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -22,9 +33,44 @@ public class DependencyUpload {
 
     private String email;
 
+    // Repository and commit the files were uploaded for
+    private String repositoryName;
+
+    private String commitName;
+
     @Enumerated(EnumType.STRING)
     private Status status;
 
+    // SHA-256 over the sorted names and contents of the uploaded files
+    @Column(length = 64)
+    private String contentHash;
+
+    private Instant createdAt;
+
+    // When the scan status should be checked next, set to the creation time on insert
+    private Instant nextCheckAt;
+
+    // Number of consecutive status checks that saw no progress
+    private int checkAttempts;
+
+    // Progress reported by the last status check that saw a change, and when it was seen
+    private Integer lastProgress;
+
+    private Instant lastProgressAt;
+
+    // Instance currently uploading or checking this upload, and until when its claim holds
+    @Column(length = 64)
+    private String leaseOwner;
+
+    private Instant leaseExpiresAt;
+
+    // Vulnerabilities reported by the completed scan
+    private Integer vulnerabilitiesFound;
+
+    // Trace of the upload request, which the span completing the scan links to
+    @Column(length = 55)
+    private String traceparent;
+
     // Getters and Setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -32,6 +78,30 @@ public class DependencyUpload {
     public void setCiUploadId(String ciUploadId) { this.ciUploadId = ciUploadId; }
     public String getEmail() { return email; }
     public void setEmail(String email) { this.email = email; }
+    public String getRepositoryName() { return repositoryName; }
+    public void setRepositoryName(String repositoryName) { this.repositoryName = repositoryName; }
+    public String getCommitName() { return commitName; }
+    public void setCommitName(String commitName) { this.commitName = commitName; }
     public Status getStatus() { return status; }
     public void setStatus(Status status) { this.status = status; }
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public Instant getNextCheckAt() { return nextCheckAt; }
+    public void setNextCheckAt(Instant nextCheckAt) { this.nextCheckAt = nextCheckAt; }
+    public int getCheckAttempts() { return checkAttempts; }
+    public void setCheckAttempts(int checkAttempts) { this.checkAttempts = checkAttempts; }
+    public Integer getLastProgress() { return lastProgress; }
+    public void setLastProgress(Integer lastProgress) { this.lastProgress = lastProgress; }
+    public Instant getLastProgressAt() { return lastProgressAt; }
+    public void setLastProgressAt(Instant lastProgressAt) { this.lastProgressAt = lastProgressAt; }
+    public String getLeaseOwner() { return leaseOwner; }
+    public void setLeaseOwner(String leaseOwner) { this.leaseOwner = leaseOwner; }
+    public Instant getLeaseExpiresAt() { return leaseExpiresAt; }
+    public void setLeaseExpiresAt(Instant leaseExpiresAt) { this.leaseExpiresAt = leaseExpiresAt; }
+    public Integer getVulnerabilitiesFound() { return vulnerabilitiesFound; }
+    public void setVulnerabilitiesFound(Integer vulnerabilitiesFound) { this.vulnerabilitiesFound = vulnerabilitiesFound; }
+    public String getTraceparent() { return traceparent; }
+    public void setTraceparent(String traceparent) { this.traceparent = traceparent; }
 }
@@ -0,0 +1,109 @@
+package com.example.ruleengine.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * An email notification waiting in the outbox. It is written in the transaction of the change
+ * it reports and delivered later by the outbox sender.
+ */
+@Entity
+@Table(name = "notification_outbox", indexes = {
+        @Index(name = "idx_outbox_state_next_attempt", columnList = "state, next_attempt_at, id"),
+        @Index(name = "idx_outbox_batch", columnList = "batch_id"),
+        @Index(name = "idx_outbox_recipient_state", columnList = "recipient, state, next_attempt_at")
+})
+public class OutboxMessage {
+
+    public enum State {
+        PENDING,
+        SENDING, // Claimed by a sender; never picked up again, so a message goes out at most once
+        SENT,
+        FAILED   // Gave up after the maximum number of attempts
+    }
+
+    // What the message reports, so several messages to one recipient can be merged into a digest
+    public enum Kind {
+        GENERAL,
+        UPLOAD_FAILED,
+        SCAN_COMPLETED,
+        SCAN_STALE
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String recipient;
+
+    private String subject;
+
+    @Lob
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    private Kind kind;
+
+    // The failed file name or the ciUploadId of the scan, depending on the kind
+    private String detail;
+
+    // Vulnerabilities found by a completed scan
+    private Integer vulnerabilities;
+
+    @Enumerated(EnumType.STRING)
+    private State state;
+
+    // Delivery attempts that failed so far
+    private int attempts;
+
+    // Earliest time of the next delivery attempt
+    private Instant nextAttemptAt;
+
+    // Identifies the sender batch that claimed the message
+    @Column(length = 36)
+    private String batchId;
+
+    @Column(length = 1024)
+    private String lastError;
+
+    private Instant createdAt;
+
+    private Instant sentAt;
+
+    // Trace that queued the message, which the span sending it links to
+    @Column(length = 55)
+    private String traceparent;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getRecipient() { return recipient; }
+    public void setRecipient(String recipient) { this.recipient = recipient; }
+    public String getSubject() { return subject; }
+    public void setSubject(String subject) { this.subject = subject; }
+    public String getBody() { return body; }
+    public void setBody(String body) { this.body = body; }
+    public Kind getKind() { return kind; }
+    public void setKind(Kind kind) { this.kind = kind; }
+    public String getDetail() { return detail; }
+    public void setDetail(String detail) { this.detail = detail; }
+    public Integer getVulnerabilities() { return vulnerabilities; }
+    public void setVulnerabilities(Integer vulnerabilities) { this.vulnerabilities = vulnerabilities; }
+    public State getState() { return state; }
+    public void setState(State state) { this.state = state; }
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    public Instant getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(Instant nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+    public String getBatchId() { return batchId; }
+    public void setBatchId(String batchId) { this.batchId = batchId; }
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public Instant getSentAt() { return sentAt; }
+    public void setSentAt(Instant sentAt) { this.sentAt = sentAt; }
+    public String getTraceparent() { return traceparent; }
+    public void setTraceparent(String traceparent) { this.traceparent = traceparent; }
+}
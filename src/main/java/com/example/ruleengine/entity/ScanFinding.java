@@ -0,0 +1,35 @@
+package com.example.ruleengine.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * Links a scan to a vulnerability and the package it affects. Only ids are stored, the
+ * details live once in the vulnerability and dependency_package tables.
+ */
+@Entity
+@Table(name = "scan_finding", indexes = {
+        @Index(name = "idx_scan_finding_upload", columnList = "ci_upload_id")
+})
+public class ScanFinding {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String ciUploadId;
+
+    private Long vulnerabilityId;
+
+    // Null when Debricked did not name the affected package
+    private Long packageId;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getCiUploadId() { return ciUploadId; }
+    public void setCiUploadId(String ciUploadId) { this.ciUploadId = ciUploadId; }
+    public Long getVulnerabilityId() { return vulnerabilityId; }
+    public void setVulnerabilityId(Long vulnerabilityId) { this.vulnerabilityId = vulnerabilityId; }
+    public Long getPackageId() { return packageId; }
+    public void setPackageId(Long packageId) { this.packageId = packageId; }
+}
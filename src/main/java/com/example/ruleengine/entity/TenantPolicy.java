@@ -0,0 +1,70 @@
+package com.example.ruleengine.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Alerting settings of one team, matched by the repository of an upload or the email domain
+ * of the uploader. Every change stamps the row with a new revision, which is how the
+ * in-memory policy index finds the rows it has to refresh.
+ */
+@Entity
+@Table(name = "tenant_policy", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_tenant_policy", columnNames = {"scope", "tenant_key"})
+}, indexes = {
+        @Index(name = "idx_tenant_policy_revision", columnList = "revision")
+})
+public class TenantPolicy {
+
+    public enum Scope {
+        REPOSITORY,   // Matches uploads for the repository named by the key
+        EMAIL_DOMAIN, // Matches uploads by users of the email domain named by the key
+        DEFAULT       // The single wildcard row '*', used when nothing more specific matches
+    }
+
+    // Key of the wildcard policy
+    public static final String WILDCARD = "*";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private Scope scope;
+
+    private String tenantKey;
+
+    // Scans with more vulnerabilities are reported, null inherits the wildcard or global threshold
+    private Integer vulnerabilitiesThreshold;
+
+    // Comma separated addresses notified in addition to the uploader
+    @Column(length = 1024)
+    private String recipients;
+
+    // Version stamp of the last change, increasing across all rows
+    private long revision;
+
+    // Deleted policies are kept as tombstones so that the index learns about the deletion
+    private boolean deleted;
+
+    private Instant updatedAt;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Scope getScope() { return scope; }
+    public void setScope(Scope scope) { this.scope = scope; }
+    public String getTenantKey() { return tenantKey; }
+    public void setTenantKey(String tenantKey) { this.tenantKey = tenantKey; }
+    public Integer getVulnerabilitiesThreshold() { return vulnerabilitiesThreshold; }
+    public void setVulnerabilitiesThreshold(Integer vulnerabilitiesThreshold) { this.vulnerabilitiesThreshold = vulnerabilitiesThreshold; }
+    public String getRecipients() { return recipients; }
+    public void setRecipients(String recipients) { this.recipients = recipients; }
+    public long getRevision() { return revision; }
+    public void setRevision(long revision) { this.revision = revision; }
+    public boolean isDeleted() { return deleted; }
+    public void setDeleted(boolean deleted) { this.deleted = deleted; }
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
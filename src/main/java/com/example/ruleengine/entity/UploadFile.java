@@ -0,0 +1,75 @@
+package com.example.ruleengine.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * One file of a dependency upload, with its spooled content and how far it got. An upload that
+ * is resumed after a restart only sends the files that are not UPLOADED or REJECTED yet.
+ */
+@Entity
+@Table(name = "upload_file", indexes = {
+        @Index(name = "idx_upload_file_upload", columnList = "upload_id, file_index")
+})
+public class UploadFile {
+
+    public enum Status {
+        PENDING,  // Spooled, not sent yet
+        UPLOADED, // Accepted by Debricked
+        REJECTED, // Refused by Debricked, sending it again would not help
+        FAILED    // Could not be sent; sent again when the upload is resumed
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // The dependency_upload row the file belongs to
+    private Long uploadId;
+
+    // Order of the file within the request
+    private int fileIndex;
+
+    // The original name, as sent to Debricked
+    private String filename;
+
+    // Where the content is spooled until the scan has started
+    @Column(length = 1024)
+    private String spoolPath;
+
+    private long size;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    // Attempts of this file across resumptions
+    private int attempts;
+
+    @Column(length = 1024)
+    private String lastError;
+
+    private Instant updatedAt;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Long getUploadId() { return uploadId; }
+    public void setUploadId(Long uploadId) { this.uploadId = uploadId; }
+    public int getFileIndex() { return fileIndex; }
+    public void setFileIndex(int fileIndex) { this.fileIndex = fileIndex; }
+    public String getFilename() { return filename; }
+    public void setFilename(String filename) { this.filename = filename; }
+    public String getSpoolPath() { return spoolPath; }
+    public void setSpoolPath(String spoolPath) { this.spoolPath = spoolPath; }
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,57 @@
+package com.example.ruleengine.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * An upload accepted by the asynchronous upload endpoint and processed in the background.
+ */
+@Entity
+@Table(name = "upload_job")
+public class UploadJob {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    @Id
+    private String id;
+
+    private String email;
+
+    @Enumerated(EnumType.STRING)
+    private State state;
+
+    private String ciUploadId;
+
+    // The upload recorded for the job's files, whose progress the job reports
+    private Long uploadId;
+
+    private String message;
+
+    private Instant createdAt;
+
+    private Instant updatedAt;
+
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+    public State getState() { return state; }
+    public void setState(State state) { this.state = state; }
+    public String getCiUploadId() { return ciUploadId; }
+    public void setCiUploadId(String ciUploadId) { this.ciUploadId = ciUploadId; }
+    public Long getUploadId() { return uploadId; }
+    public void setUploadId(Long uploadId) { this.uploadId = uploadId; }
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,35 @@
+package com.example.ruleengine.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * A vulnerability known from any scan, stored once however many scans report it.
+ */
+@Entity
+@Table(name = "vulnerability", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_vulnerability_cve", columnNames = "cve_id")
+})
+public class Vulnerability {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 64)
+    private String cveId;
+
+    private Double cvss;
+
+    @Column(length = 16)
+    private String severity;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getCveId() { return cveId; }
+    public void setCveId(String cveId) { this.cveId = cveId; }
+    public Double getCvss() { return cvss; }
+    public void setCvss(Double cvss) { this.cvss = cvss; }
+    public String getSeverity() { return severity; }
+    public void setSeverity(String severity) { this.severity = severity; }
+}
@@ -1,12 +1,177 @@
 package com.example.ruleengine.repository;
 
 import com.example.ruleengine.entity.DependencyUpload;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface DependencyUploadRepository extends JpaRepository<DependencyUpload, Long> {
     List<DependencyUpload> findAllByStatus(DependencyUpload.Status status);
+
+    // One page of uploads in the given status whose next check is due and that no poller holds a
+    // lease on, ordered by (nextCheckAt, id) and starting after the last row of the previous page;
+    // served by idx_status_next_check
+    @Query("select new com.example.ruleengine.repository.PendingUpload(u.id, u.ciUploadId, u.email, u.repositoryName,"
+            + " u.commitName, u.createdAt, u.nextCheckAt, u.checkAttempts, u.lastProgress, u.lastProgressAt,"
+            + " u.traceparent)"
+            + " from DependencyUpload u"
+            + " where u.status = :status and u.nextCheckAt <= :now"
+            + " and (u.leaseExpiresAt is null or u.leaseExpiresAt <= :now)"
+            + " and (u.nextCheckAt > :afterCheckAt or (u.nextCheckAt = :afterCheckAt and u.id > :afterId))"
+            + " order by u.nextCheckAt, u.id")
+    List<PendingUpload> findDueForCheck(@Param("status") DependencyUpload.Status status, @Param("now") Instant now,
+                                        @Param("afterCheckAt") Instant afterCheckAt, @Param("afterId") Long afterId,
+                                        Limit limit);
+
+    // Leases the given uploads to one poller, skipping those another poller holds a live lease on
+    // or that are no longer due; a concurrent claim of the same row can succeed only once
+    @Transactional
+    @Modifying
+    @Query("update DependencyUpload u set u.leaseOwner = :owner, u.leaseExpiresAt = :leaseExpiresAt"
+            + " where u.id in :ids and u.status = :status and u.nextCheckAt <= :now"
+            + " and (u.leaseExpiresAt is null or u.leaseExpiresAt <= :now)")
+    int claim(@Param("ids") Collection<Long> ids, @Param("status") DependencyUpload.Status status,
+              @Param("owner") String owner, @Param("leaseExpiresAt") Instant leaseExpiresAt, @Param("now") Instant now);
+
+    // Leases to one poller the uploads in the given status attached to the given scans that no
+    // poller holds a live lease on, whether their next check is due or not; served by idx_ci_upload_id
+    @Transactional
+    @Modifying
+    @Query("update DependencyUpload u set u.leaseOwner = :owner, u.leaseExpiresAt = :leaseExpiresAt"
+            + " where u.ciUploadId in :ciUploadIds and u.status = :status"
+            + " and (u.leaseExpiresAt is null or u.leaseExpiresAt <= :now)")
+    int claimAttached(@Param("ciUploadIds") Collection<String> ciUploadIds, @Param("status") DependencyUpload.Status status,
+                      @Param("owner") String owner, @Param("leaseExpiresAt") Instant leaseExpiresAt, @Param("now") Instant now);
+
+    // Uploads in the given status attached to the given scans that are leased to the given poller
+    @Query("select new com.example.ruleengine.repository.PendingUpload(u.id, u.ciUploadId, u.email, u.repositoryName,"
+            + " u.commitName, u.createdAt, u.nextCheckAt, u.checkAttempts, u.lastProgress, u.lastProgressAt,"
+            + " u.traceparent)"
+            + " from DependencyUpload u"
+            + " where u.ciUploadId in :ciUploadIds and u.status = :status and u.leaseOwner = :owner"
+            + " order by u.id")
+    List<PendingUpload> findAttachedLeasedBy(@Param("ciUploadIds") Collection<String> ciUploadIds,
+                                             @Param("status") DependencyUpload.Status status,
+                                             @Param("owner") String owner);
+
+    // Ids among the given ones currently leased to the given poller
+    @Query("select u.id from DependencyUpload u where u.id in :ids and u.leaseOwner = :owner")
+    List<Long> findIdsLeasedBy(@Param("ids") Collection<Long> ids, @Param("owner") String owner);
+
+    // Moves an upload that is still in the expected status to another one without loading it
+    @Transactional
+    @Modifying
+    @Query("update DependencyUpload u set u.status = :to, u.leaseOwner = null, u.leaseExpiresAt = null"
+            + " where u.id = :id and u.status = :from")
+    int transition(@Param("id") Long id, @Param("from") DependencyUpload.Status from,
+                   @Param("to") DependencyUpload.Status to);
+
+    // Stores the outcome of a status check that found the scan still running and releases the
+    // lease, unless the lease has meanwhile passed to another poller
+    @Transactional
+    @Modifying
+    @Query("update DependencyUpload u set u.nextCheckAt = :nextCheckAt, u.checkAttempts = :checkAttempts,"
+            + " u.lastProgress = :lastProgress, u.lastProgressAt = :lastProgressAt,"
+            + " u.leaseOwner = null, u.leaseExpiresAt = null"
+            + " where u.id = :id and u.leaseOwner = :owner")
+    int reschedule(@Param("id") Long id, @Param("nextCheckAt") Instant nextCheckAt,
+                   @Param("checkAttempts") int checkAttempts, @Param("lastProgress") Integer lastProgress,
+                   @Param("lastProgressAt") Instant lastProgressAt, @Param("owner") String owner);
+
+    // Ids among the given ones that are still in the given status, locked until the transaction ends
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select u.id from DependencyUpload u where u.id in :ids and u.status = :status")
+    List<Long> lockIdsInStatus(@Param("ids") Collection<Long> ids, @Param("status") DependencyUpload.Status status);
+
+    // Moves all given uploads that are still in the expected status with a single UPDATE
+    @Modifying
+    @Query("update DependencyUpload u set u.status = :to, u.leaseOwner = null, u.leaseExpiresAt = null"
+            + " where u.id in :ids and u.status = :from")
+    int transitionAll(@Param("ids") Collection<Long> ids, @Param("from") DependencyUpload.Status from,
+                      @Param("to") DependencyUpload.Status to);
+
+    // Completed scans of a repository before the given upload with their vulnerability counts,
+    // newest first; served by idx_repository_status
+    @Query("select new com.example.ruleengine.repository.PreviousScan(u.ciUploadId, u.vulnerabilitiesFound)"
+            + " from DependencyUpload u where u.repositoryName = :repositoryName"
+            + " and u.status = :status and u.id < :beforeId and u.vulnerabilitiesFound is not null order by u.id desc")
+    List<PreviousScan> findPreviousScans(@Param("repositoryName") String repositoryName,
+                                         @Param("status") DependencyUpload.Status status,
+                                         @Param("beforeId") Long beforeId, Limit limit);
+
+    Optional<DependencyUpload> findFirstByContentHashAndStatusInAndCreatedAtAfterOrderByIdDesc(
+            String contentHash, Collection<DependencyUpload.Status> statuses, Instant createdAfter);
+
+    // Uploads in one of the given states that no instance holds a live lease on, oldest first
+    @Query("select u.id from DependencyUpload u where u.status in :statuses"
+            + " and (u.leaseExpiresAt is null or u.leaseExpiresAt <= :now) order by u.id")
+    List<Long> findUnleasedIds(@Param("statuses") Collection<DependencyUpload.Status> statuses,
+                               @Param("now") Instant now, Limit limit);
+
+    // Leases an upload in one of the given states to an instance, unless another one holds a live lease
+    @Transactional
+    @Modifying
+    @Query("update DependencyUpload u set u.leaseOwner = :owner, u.leaseExpiresAt = :leaseExpiresAt"
+            + " where u.id = :id and u.status in :statuses and (u.leaseExpiresAt is null or u.leaseExpiresAt <= :now)")
+    int claimUpload(@Param("id") Long id, @Param("statuses") Collection<DependencyUpload.Status> statuses,
+                    @Param("owner") String owner, @Param("leaseExpiresAt") Instant leaseExpiresAt, @Param("now") Instant now);
+
+    // Moves an upload leased to the given instance on to the next state, storing its ciUploadId
+    // and extending the lease; does nothing if the lease has passed to another instance
+    @Transactional
+    @Modifying
+    @Query("update DependencyUpload u set u.status = :to, u.ciUploadId = :ciUploadId, u.leaseExpiresAt = :leaseExpiresAt"
+            + " where u.id = :id and u.status = :from and u.leaseOwner = :owner")
+    int advance(@Param("id") Long id, @Param("from") DependencyUpload.Status from, @Param("to") DependencyUpload.Status to,
+                @Param("ciUploadId") String ciUploadId, @Param("owner") String owner,
+                @Param("leaseExpiresAt") Instant leaseExpiresAt);
+
+    // Extends the lease of an upload while it is still live and held by the given instance; does
+    // nothing once it has run out, as another instance may be resuming the upload by then
+    @Transactional
+    @Modifying
+    @Query("update DependencyUpload u set u.leaseExpiresAt = :leaseExpiresAt"
+            + " where u.id = :id and u.leaseOwner = :owner and u.leaseExpiresAt > :now")
+    int renewLease(@Param("id") Long id, @Param("owner") String owner, @Param("leaseExpiresAt") Instant leaseExpiresAt,
+                   @Param("now") Instant now);
+
+    // Removes an upload leased to the given instance
+    @Transactional
+    @Modifying
+    @Query("delete from DependencyUpload u where u.id = :id and u.leaseOwner = :owner")
+    int deleteLeased(@Param("id") Long id, @Param("owner") String owner);
+
+    // Hands a started scan to the status poller: due right away and no longer leased
+    @Transactional
+    @Modifying
+    @Query("update DependencyUpload u set u.status = :to, u.nextCheckAt = :nextCheckAt,"
+            + " u.leaseOwner = null, u.leaseExpiresAt = null"
+            + " where u.id = :id and u.status = :from and u.leaseOwner = :owner")
+    int release(@Param("id") Long id, @Param("from") DependencyUpload.Status from, @Param("to") DependencyUpload.Status to,
+                @Param("nextCheckAt") Instant nextCheckAt, @Param("owner") String owner);
+
+    // Size and age of the uploads in the given status; counted on the status prefix of idx_status_next_check
+    @Query("select new com.example.ruleengine.repository.UploadBacklog(count(u), min(u.createdAt))"
+            + " from DependencyUpload u where u.status = :status")
+    UploadBacklog findBacklog(@Param("status") DependencyUpload.Status status);
+
+    boolean existsByCiUploadIdAndEmail(String ciUploadId, String email);
+
+    // State of the uploads of one scan, newest first, as uploads joining a scan share its
+    // ciUploadId; served by idx_ci_upload_id
+    @Query("select new com.example.ruleengine.repository.ScanResult(u.ciUploadId, u.status, u.vulnerabilitiesFound,"
+            + " u.lastProgress) from DependencyUpload u where u.ciUploadId = :ciUploadId order by u.id desc")
+    List<ScanResult> findScanResults(@Param("ciUploadId") String ciUploadId, Limit limit);
 }
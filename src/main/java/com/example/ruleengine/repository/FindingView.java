@@ -0,0 +1,8 @@
+package com.example.ruleengine.repository;
+
+/**
+ * A stored finding of a scan with its vulnerability and package details.
+ */
+public record FindingView(String cveId, Double cvss, String severity, String packageName, String packageVersion,
+                          String licenses) {
+}
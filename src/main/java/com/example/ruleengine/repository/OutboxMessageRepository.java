@@ -0,0 +1,54 @@
+package com.example.ruleengine.repository;
+
+import com.example.ruleengine.entity.OutboxMessage;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    // Pending messages whose next attempt is due, messages released together kept next to each
+    // other; served by idx_outbox_state_next_attempt
+    @Query("select m.id from OutboxMessage m where m.state = :state and m.nextAttemptAt <= :now"
+            + " order by m.nextAttemptAt, m.id")
+    List<Long> findDueIds(@Param("state") OutboxMessage.State state, @Param("now") Instant now, Limit limit);
+
+    // When the first not yet attempted pending message to a recipient goes out, null if there is none
+    @Query("select min(m.nextAttemptAt) from OutboxMessage m"
+            + " where m.recipient = :recipient and m.state = :state and m.attempts = 0")
+    Instant findFirstAttemptAt(@Param("recipient") String recipient, @Param("state") OutboxMessage.State state);
+
+    // Marks the given pending messages as being sent by one batch; a message can be claimed only once
+    @Transactional
+    @Modifying
+    @Query("update OutboxMessage m set m.state = :sending, m.batchId = :batchId"
+            + " where m.id in :ids and m.state = :pending")
+    int claim(@Param("ids") Collection<Long> ids, @Param("batchId") String batchId,
+              @Param("pending") OutboxMessage.State pending, @Param("sending") OutboxMessage.State sending);
+
+    List<OutboxMessage> findAllByBatchId(String batchId);
+
+    @Transactional
+    @Modifying
+    @Query("update OutboxMessage m set m.state = :sent, m.sentAt = :sentAt where m.id in :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sent") OutboxMessage.State sent,
+                 @Param("sentAt") Instant sentAt);
+
+    // Puts a message that the mail server did not accept back in the queue, or gives up on it
+    @Transactional
+    @Modifying
+    @Query("update OutboxMessage m set m.state = :state, m.attempts = :attempts, m.nextAttemptAt = :nextAttemptAt,"
+            + " m.lastError = :lastError, m.batchId = null where m.id = :id")
+    int markFailedAttempt(@Param("id") Long id, @Param("state") OutboxMessage.State state,
+                          @Param("attempts") int attempts, @Param("nextAttemptAt") Instant nextAttemptAt,
+                          @Param("lastError") String lastError);
+}
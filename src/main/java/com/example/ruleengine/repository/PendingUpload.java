@@ -0,0 +1,12 @@
+package com.example.ruleengine.repository;
+
+import java.time.Instant;
+
+/**
+ * Read-only view of an in-progress upload with just the fields the scan status poller
+ * needs. Loaded through a constructor expression, so it is never managed or dirty-checked.
+ */
+public record PendingUpload(Long id, String ciUploadId, String email, String repositoryName, String commitName,
+                            Instant createdAt, Instant nextCheckAt, int checkAttempts, Integer lastProgress,
+                            Instant lastProgressAt, String traceparent) {
+}
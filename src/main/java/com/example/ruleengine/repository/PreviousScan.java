@@ -0,0 +1,10 @@
+package com.example.ruleengine.repository;
+
+/**
+ * A completed scan of a repository that a newer scan of it is compared against.
+ *
+ * @param ciUploadId           The scan, whose findings are stored under this id
+ * @param vulnerabilitiesFound Vulnerabilities the scan found
+ */
+public record PreviousScan(String ciUploadId, int vulnerabilitiesFound) {
+}
@@ -0,0 +1,24 @@
+package com.example.ruleengine.repository;
+
+import com.example.ruleengine.entity.ScanFinding;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ScanFindingRepository extends JpaRepository<ScanFinding, Long> {
+
+    // The findings of a scan joined with their details, most severe first; served by idx_scan_finding_upload
+    @Query("select new com.example.ruleengine.repository.FindingView(v.cveId, v.cvss, v.severity, p.name, p.version,"
+            + " p.licenses)"
+            + " from ScanFinding f join Vulnerability v on v.id = f.vulnerabilityId"
+            + " left join DependencyPackage p on p.id = f.packageId"
+            + " where f.ciUploadId = :ciUploadId"
+            + " order by v.cvss desc nulls last, v.cveId, p.name")
+    List<FindingView> findViewsByCiUploadId(@Param("ciUploadId") String ciUploadId);
+
+    boolean existsByCiUploadId(String ciUploadId);
+}
@@ -0,0 +1,23 @@
+package com.example.ruleengine.repository;
+
+import com.example.ruleengine.entity.DependencyUpload;
+
+/**
+ * The state of a scan as reported to CI clients.
+ *
+ * @param ciUploadId           The scan
+ * @param status               Status of its upload
+ * @param vulnerabilitiesFound Vulnerabilities the scan found, null until it is completed
+ * @param progress             Progress of the scan at its last status check, null before the first one
+ */
+public record ScanResult(String ciUploadId, DependencyUpload.Status status, Integer vulnerabilitiesFound,
+                         Integer progress) {
+
+    /**
+     * Whether the scan has reached its outcome and will not change any more.
+     */
+    public boolean done() {
+        return status == DependencyUpload.Status.COMPLETED || status == DependencyUpload.Status.STALE
+                || status == DependencyUpload.Status.FAILED;
+    }
+}
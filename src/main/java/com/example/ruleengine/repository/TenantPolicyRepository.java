@@ -0,0 +1,34 @@
+package com.example.ruleengine.repository;
+
+import com.example.ruleengine.entity.TenantPolicy;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TenantPolicyRepository extends JpaRepository<TenantPolicy, Long> {
+
+    Optional<TenantPolicy> findByScopeAndTenantKey(TenantPolicy.Scope scope, String tenantKey);
+
+    // The same row, locked until the transaction ends; writers lock the wildcard row so that
+    // revisions are handed out and committed one at a time
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from TenantPolicy p where p.scope = :scope and p.tenantKey = :tenantKey")
+    Optional<TenantPolicy> lockByScopeAndTenantKey(@Param("scope") TenantPolicy.Scope scope,
+                                                   @Param("tenantKey") String tenantKey);
+
+    // Highest revision handed out so far, -1 for an empty table
+    @Query("select coalesce(max(p.revision), -1) from TenantPolicy p")
+    long findMaxRevision();
+
+    // Rows changed after the given revision, in the order they were changed; served by idx_tenant_policy_revision
+    List<TenantPolicy> findByRevisionGreaterThanOrderByRevisionAsc(long revision);
+
+    List<TenantPolicy> findAllByDeletedFalseOrderByScopeAscTenantKeyAsc();
+}
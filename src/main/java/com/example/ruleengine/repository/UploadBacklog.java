@@ -0,0 +1,10 @@
+package com.example.ruleengine.repository;
+
+import java.time.Instant;
+
+/**
+ * Number of uploads in one status and when the oldest of them was created, null if there
+ * are none.
+ */
+public record UploadBacklog(Long count, Instant oldestCreatedAt) {
+}
@@ -0,0 +1,23 @@
+package com.example.ruleengine.repository;
+
+import com.example.ruleengine.entity.UploadFile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface UploadFileRepository extends JpaRepository<UploadFile, Long> {
+
+    // The files of an upload in request order; served by idx_upload_file_upload
+    List<UploadFile> findAllByUploadIdOrderByFileIndex(Long uploadId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from UploadFile f where f.uploadId = :uploadId")
+    int deleteAllByUploadId(@Param("uploadId") Long uploadId);
+}
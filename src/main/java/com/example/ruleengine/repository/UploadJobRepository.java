@@ -0,0 +1,9 @@
+package com.example.ruleengine.repository;
+
+import com.example.ruleengine.entity.UploadJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UploadJobRepository extends JpaRepository<UploadJob, String> {
+}
@@ -0,0 +1,11 @@
+package com.example.ruleengine.rules;
+
+/**
+ * A compiled rule expression. Implementations are immutable and evaluate without allocating,
+ * so one compiled tree can be shared by all threads.
+ */
+@FunctionalInterface
+public interface Condition {
+
+    boolean test(ScanFacts facts);
+}
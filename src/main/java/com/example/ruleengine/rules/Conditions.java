@@ -0,0 +1,112 @@
+package com.example.ruleengine.rules;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The node types a rule expression is compiled into.
+ */
+final class Conditions {
+
+    private Conditions() {
+    }
+
+    enum Comparison {
+        LT("<"), LE("<="), GT(">"), GE(">="), EQ("=="), NE("!=");
+
+        final String symbol;
+
+        Comparison(String symbol) {
+            this.symbol = symbol;
+        }
+
+        boolean holds(double left, double right) {
+            return switch (this) {
+                case LT -> left < right;
+                case LE -> left <= right;
+                case GT -> left > right;
+                case GE -> left >= right;
+                case EQ -> left == right;
+                case NE -> left != right;
+            };
+        }
+    }
+
+    record All(Condition[] conditions) implements Condition {
+        @Override
+        public boolean test(ScanFacts facts) {
+            for (Condition condition : conditions) {
+                if (!condition.test(facts)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    record Any(Condition[] conditions) implements Condition {
+        @Override
+        public boolean test(ScanFacts facts) {
+            for (Condition condition : conditions) {
+                if (condition.test(facts)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    record Not(Condition condition) implements Condition {
+        @Override
+        public boolean test(ScanFacts facts) {
+            return !condition.test(facts);
+        }
+    }
+
+    // numeric fact compared with a constant, e.g. severity.critical > 0
+    record CompareToNumber(Fact fact, Comparison comparison, double value) implements Condition {
+        @Override
+        public boolean test(ScanFacts facts) {
+            return comparison.holds(fact.number(facts), value);
+        }
+    }
+
+    // numeric fact compared with another one, e.g. vulnerabilities > previous_vulnerabilities
+    record CompareToFact(Fact fact, Comparison comparison, Fact other) implements Condition {
+        @Override
+        public boolean test(ScanFacts facts) {
+            return comparison.holds(fact.number(facts), other.number(facts));
+        }
+    }
+
+    // text fact equal to a constant, e.g. repository == "payments"
+    record TextEquals(Fact fact, String value) implements Condition {
+        @Override
+        public boolean test(ScanFacts facts) {
+            return value.equals(fact.text(facts));
+        }
+    }
+
+    // text fact in a set of constants, e.g. repository in ["a", "b"]
+    record TextIn(Fact fact, Set<String> values) implements Condition {
+        @Override
+        public boolean test(ScanFacts facts) {
+            String text = fact.text(facts);
+            return text != null && values.contains(text);
+        }
+    }
+
+    // any value of a list fact in a set of constants, e.g. license in ["GPL-3.0-only"]
+    record AnyIn(Fact fact, Set<String> values) implements Condition {
+        @Override
+        public boolean test(ScanFacts facts) {
+            List<String> texts = fact.texts(facts);
+            for (int i = 0; i < texts.size(); i++) {
+                if (values.contains(texts.get(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
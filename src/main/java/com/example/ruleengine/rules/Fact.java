@@ -0,0 +1,90 @@
+package com.example.ruleengine.rules;
+
+import java.util.List;
+
+/**
+ * The facts a rule can refer to, with the name used for them in the rule language.
+ */
+public enum Fact {
+    VULNERABILITIES("vulnerabilities", true),
+    PREVIOUS_VULNERABILITIES("previous_vulnerabilities", true),
+    NEW_VULNERABILITIES("new_vulnerabilities", true),
+    THRESHOLD("threshold", true),
+    CRITICAL("severity.critical", true),
+    HIGH("severity.high", true),
+    MEDIUM("severity.medium", true),
+    LOW("severity.low", true),
+    MAX_CVSS("cvss.max", true),
+    LICENSE("license", false),
+    REPOSITORY("repository", false),
+    COMMIT("commit", false),
+    EMAIL_DOMAIN("email.domain", false);
+
+    private final String ruleName;
+    private final boolean numeric;
+
+    Fact(String ruleName, boolean numeric) {
+        this.ruleName = ruleName;
+        this.numeric = numeric;
+    }
+
+    public String ruleName() {
+        return ruleName;
+    }
+
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    /**
+     * Finds a fact by its name in the rule language, null if there is none.
+     */
+    static Fact byRuleName(String name) {
+        for (Fact fact : values()) {
+            if (fact.ruleName.equals(name)) {
+                return fact;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Value of a numeric fact.
+     */
+    double number(ScanFacts facts) {
+        return switch (this) {
+            case VULNERABILITIES -> facts.vulnerabilities();
+            case PREVIOUS_VULNERABILITIES -> facts.previousVulnerabilities();
+            case NEW_VULNERABILITIES -> facts.newVulnerabilities();
+            case THRESHOLD -> facts.threshold();
+            case CRITICAL -> facts.critical();
+            case HIGH -> facts.high();
+            case MEDIUM -> facts.medium();
+            case LOW -> facts.low();
+            case MAX_CVSS -> facts.maxCvss();
+            default -> throw new IllegalStateException(ruleName + " is not numeric");
+        };
+    }
+
+    /**
+     * Value of a single valued text fact.
+     */
+    String text(ScanFacts facts) {
+        return switch (this) {
+            case REPOSITORY -> facts.repository();
+            case COMMIT -> facts.commit();
+            case EMAIL_DOMAIN -> facts.emailDomain();
+            default -> throw new IllegalStateException(ruleName + " is not a single text value");
+        };
+    }
+
+    /**
+     * Values of the multi valued text fact.
+     */
+    List<String> texts(ScanFacts facts) {
+        if (this != LICENSE) {
+            throw new IllegalStateException(ruleName + " is not a list");
+        }
+        return facts.licenses();
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.ruleengine.rules;
+
+/**
+ * A named, compiled alerting rule.
+ *
+ * @param name       Name of the rule, reported in notifications
+ * @param condition  The compiled expression
+ * @param expression The expression as written
+ */
+public record Rule(String name, Condition condition, String expression) {
+
+    public boolean matches(ScanFacts facts) {
+        return condition.test(facts);
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.ruleengine.rules;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parses rule definitions and compiles their expressions into {@link Condition} trees.
+ *
+ * <p>Every non-blank line that does not start with {@code #} defines one rule as
+ * {@code name: expression}. Expressions combine comparisons with {@code and}, {@code or},
+ * {@code not} and parentheses:
+ * <pre>
+ * critical:   severity.critical > 0 or cvss.max >= 9.0
+ * regression: new_vulnerabilities > 0 and repository != "sandbox"
+ * licenses:   license in ["GPL-3.0-only", "AGPL-3.0-only"]
+ * default:    vulnerabilities > threshold
+ * </pre>
+ * Numeric facts are compared with numbers or other numeric facts using {@code < <= > >= == !=};
+ * text facts with strings using {@code == !=} or {@code in [...]}.
+ */
+final class RuleParser {
+
+    private final String source;
+    private final int line;
+    private final int column; // Column of the expression within its line, for error messages
+    private final Set<Fact> referenced;
+    private int position;
+
+    private RuleParser(String source, int line, int column, Set<Fact> referenced) {
+        this.source = source;
+        this.line = line;
+        this.column = column;
+        this.referenced = referenced;
+    }
+
+    /**
+     * Parses all rules of a rule file.
+     *
+     * @param referenced Receives every fact the rules refer to
+     * @throws RuleSyntaxException If a rule is malformed or a rule name is used twice
+     */
+    static List<Rule> parseRules(String text, Set<Fact> referenced) {
+        List<Rule> rules = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        String[] lines = text.split("\r?\n");
+        for (int i = 0; i < lines.length; i++) {
+            String definition = lines[i].strip();
+            if (definition.isEmpty() || definition.startsWith("#")) {
+                continue;
+            }
+            int colon = definition.indexOf(':');
+            if (colon <= 0) {
+                throw new RuleSyntaxException(i + 1, 1, "expected 'name: expression'");
+            }
+            String name = definition.substring(0, colon).strip();
+            if (!name.matches("[A-Za-z0-9_.-]+")) {
+                throw new RuleSyntaxException(i + 1, 1, "invalid rule name '" + name + "'");
+            }
+            if (!names.add(name)) {
+                throw new RuleSyntaxException(i + 1, 1, "duplicate rule name '" + name + "'");
+            }
+            String expression = definition.substring(colon + 1);
+            int column = lines[i].indexOf(definition) + colon + 2;
+            rules.add(new Rule(name, parseExpression(expression, i + 1, column, referenced), expression.strip()));
+        }
+        return rules;
+    }
+
+    /**
+     * Compiles a single expression.
+     *
+     * @param line       Line of the expression, for error messages
+     * @param column     Column the expression starts at within that line, for error messages
+     * @param referenced Receives every fact the expression refers to
+     * @throws RuleSyntaxException If the expression is malformed
+     */
+    static Condition parseExpression(String expression, int line, int column, Set<Fact> referenced) {
+        RuleParser parser = new RuleParser(expression, line, column, referenced);
+        Condition condition = parser.or();
+        parser.skipWhitespace();
+        if (parser.position < parser.source.length()) {
+            throw parser.error("unexpected '" + parser.source.substring(parser.position) + "'");
+        }
+        return condition;
+    }
+
+    private Condition or() {
+        List<Condition> operands = new ArrayList<>();
+        operands.add(and());
+        while (keyword("or")) {
+            operands.add(and());
+        }
+        return operands.size() == 1 ? operands.get(0) : new Conditions.Any(operands.toArray(new Condition[0]));
+    }
+
+    private Condition and() {
+        List<Condition> operands = new ArrayList<>();
+        operands.add(unary());
+        while (keyword("and")) {
+            operands.add(unary());
+        }
+        return operands.size() == 1 ? operands.get(0) : new Conditions.All(operands.toArray(new Condition[0]));
+    }
+
+    private Condition unary() {
+        if (keyword("not")) {
+            return new Conditions.Not(unary());
+        }
+        if (symbol("(")) {
+            Condition inner = or();
+            expect(")");
+            return inner;
+        }
+        return comparison();
+    }
+
+    private Condition comparison() {
+        int start = skipWhitespace();
+        Fact fact = fact();
+        if (keyword("in")) {
+            Set<String> values = stringList();
+            if (fact == Fact.LICENSE) {
+                return new Conditions.AnyIn(fact, values);
+            }
+            if (fact.isNumeric()) {
+                throw error(start, fact.ruleName() + " is numeric and cannot be used with 'in'");
+            }
+            return new Conditions.TextIn(fact, values);
+        }
+
+        Conditions.Comparison comparison = comparisonOperator();
+        if (!fact.isNumeric()) {
+            if (comparison != Conditions.Comparison.EQ && comparison != Conditions.Comparison.NE) {
+                throw error(start, fact.ruleName() + " is text and can only be compared with == or !=");
+            }
+            if (fact == Fact.LICENSE) {
+                // license == "x" means the scan contains a package with that license
+                Condition contains = new Conditions.AnyIn(fact, Set.of(string()));
+                return comparison == Conditions.Comparison.EQ ? contains : new Conditions.Not(contains);
+            }
+            Condition equals = new Conditions.TextEquals(fact, string());
+            return comparison == Conditions.Comparison.EQ ? equals : new Conditions.Not(equals);
+        }
+
+        skipWhitespace();
+        if (position < source.length() && Character.isLetter(source.charAt(position))) {
+            int otherStart = position;
+            Fact other = fact();
+            if (!other.isNumeric()) {
+                throw error(otherStart, other.ruleName() + " is text and cannot be compared with " + fact.ruleName());
+            }
+            return new Conditions.CompareToFact(fact, comparison, other);
+        }
+        return new Conditions.CompareToNumber(fact, comparison, number());
+    }
+
+    private Fact fact() {
+        int start = skipWhitespace();
+        while (position < source.length()
+                && (Character.isLetterOrDigit(source.charAt(position)) || source.charAt(position) == '_' || source.charAt(position) == '.')) {
+            position++;
+        }
+        String name = source.substring(start, position);
+        if (name.isEmpty()) {
+            throw error(start, "expected a fact");
+        }
+        Fact fact = Fact.byRuleName(name);
+        if (fact == null) {
+            throw error(start, "unknown fact '" + name + "'");
+        }
+        referenced.add(fact);
+        return fact;
+    }
+
+    private Conditions.Comparison comparisonOperator() {
+        int start = skipWhitespace();
+        for (String operator : new String[]{"<=", ">=", "==", "!=", "<", ">"}) {
+            if (source.startsWith(operator, position)) {
+                position += operator.length();
+                for (Conditions.Comparison comparison : Conditions.Comparison.values()) {
+                    if (comparison.symbol.equals(operator)) {
+                        return comparison;
+                    }
+                }
+            }
+        }
+        throw error(start, "expected a comparison operator");
+    }
+
+    private double number() {
+        int start = skipWhitespace();
+        if (position < source.length() && source.charAt(position) == '-') {
+            position++;
+        }
+        while (position < source.length() && (Character.isDigit(source.charAt(position)) || source.charAt(position) == '.')) {
+            position++;
+        }
+        try {
+            return Double.parseDouble(source.substring(start, position));
+        } catch (NumberFormatException e) {
+            throw error(start, "expected a number or a numeric fact");
+        }
+    }
+
+    private String string() {
+        int start = skipWhitespace();
+        if (position >= source.length() || source.charAt(position) != '"') {
+            throw error(start, "expected a string in double quotes");
+        }
+        int end = source.indexOf('"', position + 1);
+        if (end < 0) {
+            throw error(start, "unterminated string");
+        }
+        String value = source.substring(position + 1, end);
+        position = end + 1;
+        return value;
+    }
+
+    private Set<String> stringList() {
+        expect("[");
+        Set<String> values = new HashSet<>();
+        values.add(string());
+        while (symbol(",")) {
+            values.add(string());
+        }
+        expect("]");
+        return Set.copyOf(values);
+    }
+
+    // Consumes the keyword if it comes next as a whole word
+    private boolean keyword(String keyword) {
+        skipWhitespace();
+        int end = position + keyword.length();
+        if (source.regionMatches(true, position, keyword, 0, keyword.length())
+                && (end == source.length() || !Character.isLetterOrDigit(source.charAt(end)))) {
+            position = end;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean symbol(String symbol) {
+        skipWhitespace();
+        if (source.startsWith(symbol, position)) {
+            position += symbol.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String symbol) {
+        if (!symbol(symbol)) {
+            throw error("expected '" + symbol + "'");
+        }
+    }
+
+    private int skipWhitespace() {
+        while (position < source.length() && Character.isWhitespace(source.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private RuleSyntaxException error(String message) {
+        return error(position, message);
+    }
+
+    private RuleSyntaxException error(int at, String message) {
+        return new RuleSyntaxException(line, column + at, message);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.ruleengine.rules;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Holds the active alerting rules. Rules are read from the configured rule file and reloaded
+ * when the file changes, without a restart; a file that does not parse is reported and the
+ * previous rules stay active. Without a rule file a scan is reported when it exceeds the
+ * threshold of its tenant policy.
+ */
+@Component
+public class RuleRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(RuleRegistry.class);
+
+    // Rule applied when no rule file is configured or the first one could not be loaded
+    static final String THRESHOLD_RULE = "threshold: vulnerabilities > threshold";
+
+    // Rule file, one 'name: expression' per line; empty uses the threshold rule
+    @Value("${rules.file:}")
+    private String rulesFile = "";
+
+    private volatile RuleSet current;
+
+    // Modification time and size of the rule file at the last load attempt
+    private FileTime loadedModified;
+    private long loadedSize = -1;
+
+    // Whether the last attempt failed, so that a rule file that stays missing is reported once
+    private boolean loadFailed;
+
+    /**
+     * Returns the active rules.
+     */
+    public RuleSet current() {
+        RuleSet rules = current;
+        if (rules == null) {
+            reloadIfChanged();
+            rules = current;
+        }
+        return rules;
+    }
+
+    // Scheduled method picking up changes of the rule file
+    @Scheduled(fixedDelayString = "${rules.reload-interval-ms:5000}")
+    public synchronized void reloadIfChanged() {
+        if (rulesFile == null || rulesFile.isBlank()) {
+            if (current == null) {
+                current = RuleSet.parse(THRESHOLD_RULE);
+            }
+            return;
+        }
+
+        Path path = Path.of(rulesFile);
+        try {
+            FileTime modified = Files.getLastModifiedTime(path);
+            long size = Files.size(path);
+            if (current != null && modified.equals(loadedModified) && size == loadedSize) {
+                return; // Unchanged since the last attempt
+            }
+            loadedModified = modified;
+            loadedSize = size;
+            RuleSet rules = RuleSet.parse(Files.readString(path, StandardCharsets.UTF_8));
+            current = rules;
+            loadFailed = false;
+            log.info("Loaded {} rules from {}", rules.size(), path);
+        } catch (IOException | RuleSyntaxException e) {
+            if (!loadFailed) {
+                log.warn("Keeping the previous rules, {} could not be loaded: {}", path, e.getMessage());
+            } else {
+                log.debug("Keeping the previous rules, {} could not be loaded: {}", path, e.getMessage());
+            }
+            loadFailed = true;
+            if (current == null) {
+                // Nothing loaded yet, fall back to the threshold so scans are still reported
+                current = RuleSet.parse(THRESHOLD_RULE);
+            }
+        }
+    }
+}
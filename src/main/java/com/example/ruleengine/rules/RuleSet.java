@@ -0,0 +1,58 @@
+package com.example.ruleengine.rules;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable, compiled set of alerting rules. A scan is reported when any rule matches.
+ */
+public final class RuleSet {
+
+    private final Rule[] rules;
+    private final Set<Fact> referenced;
+
+    private RuleSet(List<Rule> rules, Set<Fact> referenced) {
+        this.rules = rules.toArray(new Rule[0]);
+        this.referenced = referenced;
+    }
+
+    /**
+     * Parses and compiles rule definitions, one {@code name: expression} per line.
+     *
+     * @throws RuleSyntaxException If a rule is malformed
+     */
+    public static RuleSet parse(String text) {
+        Set<Fact> referenced = EnumSet.noneOf(Fact.class);
+        List<Rule> rules = RuleParser.parseRules(text, referenced);
+        return new RuleSet(rules, referenced);
+    }
+
+    /**
+     * Returns the first rule that matches the scan, or null if none does.
+     */
+    public Rule firstMatch(ScanFacts facts) {
+        for (Rule rule : rules) {
+            if (rule.matches(facts)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether any rule refers to the previous scan of the repository, so that it has to be
+     * looked up before evaluating.
+     */
+    public boolean needsHistory() {
+        return referenced.contains(Fact.PREVIOUS_VULNERABILITIES) || referenced.contains(Fact.NEW_VULNERABILITIES);
+    }
+
+    public List<Rule> rules() {
+        return List.of(rules);
+    }
+
+    public int size() {
+        return rules.length;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.ruleengine.rules;
+
+/**
+ * Thrown when a rule cannot be parsed.
+ */
+public class RuleSyntaxException extends IllegalArgumentException {
+
+    public RuleSyntaxException(int line, int column, String message) {
+        super("line " + line + ", column " + column + ": " + message);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.ruleengine.rules;
+
+import java.util.List;
+
+/**
+ * What is known about a completed scan when the alerting rules are evaluated.
+ *
+ * @param vulnerabilities         Vulnerabilities found by the scan
+ * @param previousVulnerabilities Vulnerabilities found by the previous scan of the same repository, -1 if unknown
+ * @param newVulnerabilities      Vulnerabilities the previous scan of the repository did not have, all of them if
+ *                                there was no previous scan
+ * @param threshold               Vulnerability threshold of the tenant policy that applies to the scan
+ * @param critical                Findings with critical severity
+ * @param high                    Findings with high severity
+ * @param medium                  Findings with medium severity
+ * @param low                     Findings with low severity
+ * @param maxCvss                 Highest CVSS score among the findings, 0 if unknown
+ * @param licenses                Licenses of the scanned packages
+ * @param repository              Repository the files were uploaded for
+ * @param commit                  Commit the files were uploaded for
+ * @param email                   Address of the user who uploaded the files
+ * @param emailDomain             The domain part of the email address, empty if there is none
+ */
+public record ScanFacts(int vulnerabilities, int previousVulnerabilities, int newVulnerabilities, int threshold,
+                        int critical, int high, int medium, int low, double maxCvss, List<String> licenses,
+                        String repository, String commit, String email, String emailDomain) {
+
+    /**
+     * Facts of a scan whose new vulnerabilities are known, for example by comparing the CVEs of
+     * its findings with those of the previous scan.
+     */
+    public ScanFacts(int vulnerabilities, int previousVulnerabilities, int newVulnerabilities, int threshold,
+                     int critical, int high, int medium, int low, double maxCvss, List<String> licenses,
+                     String repository, String commit, String email) {
+        this(vulnerabilities, previousVulnerabilities, newVulnerabilities, threshold, critical, high, medium, low,
+                maxCvss, licenses, repository, commit, email, emailDomain(email));
+    }
+
+    /**
+     * Facts of a scan whose new vulnerabilities are told by the increase in count over the
+     * previous scan.
+     */
+    public ScanFacts(int vulnerabilities, int previousVulnerabilities, int threshold, int critical, int high,
+                     int medium, int low, double maxCvss, List<String> licenses, String repository, String commit,
+                     String email) {
+        this(vulnerabilities, previousVulnerabilities, newByCount(vulnerabilities, previousVulnerabilities), threshold,
+                critical, high, medium, low, maxCvss, licenses, repository, commit, email);
+    }
+
+    /**
+     * Facts of a scan for which only the vulnerability count is known.
+     */
+    public static ScanFacts of(int vulnerabilities, int previousVulnerabilities, int threshold, String repository,
+                               String commit, String email) {
+        return new ScanFacts(vulnerabilities, previousVulnerabilities, threshold, 0, 0, 0, 0, 0, List.of(), repository,
+                commit, email);
+    }
+
+    /**
+     * The increase in vulnerabilities over the previous scan of the repository; all of them if
+     * there was no previous scan.
+     */
+    public static int newByCount(int vulnerabilities, int previousVulnerabilities) {
+        return previousVulnerabilities < 0 ? vulnerabilities : Math.max(0, vulnerabilities - previousVulnerabilities);
+    }
+
+    private static String emailDomain(String email) {
+        int at = email == null ? -1 : email.lastIndexOf('@');
+        return at < 0 ? "" : email.substring(at + 1);
+    }
+}
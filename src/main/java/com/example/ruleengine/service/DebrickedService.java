@@ -1,188 +1,574 @@
 package com.example.ruleengine.service;
 
+import com.example.ruleengine.client.DebrickedApiException;
+import com.example.ruleengine.client.DebrickedUnavailableException;
+import com.example.ruleengine.client.DebrickedClient;
 import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.entity.UploadFile;
 import com.example.ruleengine.repository.DependencyUploadRepository;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.http.HttpStatus;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.Tracer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.beans.factory.annotation.Value;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
 @Service
 public class DebrickedService {
 
-    // URL of the Debricked API, loaded from application properties
-    @Value("${debricked.api.url}")
-    private String debrickedApiUrl;
+    @Autowired
+    private NotificationService notificationService; // Service for sending notifications
 
-    // Username for API access, loaded from application properties
-    @Value("${debricked.api.username}")
-    private String apiUsername;
+    @Autowired
+    private DependencyUploadRepository repository; // Repository for dependency uploads
 
-    // Password for API access, loaded from application properties
-    @Value("${debricked.api.password}")
-    private String apiPassword;
+    @Autowired
+    private DebrickedTokenProvider tokenProvider; // Shared, cached source of JWT tokens
 
     @Autowired
-    private NotificationService notificationService; // Service for sending notifications
+    private DebrickedClient debrickedClient; // Typed calls to the Debricked API
 
     @Autowired
-    private DependencyUploadRepository repository; // Repository for dependency uploads
+    private UploadStateStore uploadStore; // Persists each step of an upload so it can be resumed
+
+    @Autowired
+    private ScanStatusCheckerService scanStatusChecker; // Reports repeats of finished scans without asking Debricked
+
+    @Autowired
+    @Qualifier("debrickedUploadExecutor")
+    private Executor uploadExecutor; // Runs the parallel part of multi-file uploads
+
+    @Autowired(required = false)
+    private ObservationRegistry observationRegistry = ObservationRegistry.NOOP; // Timers and spans of the upload stages
+
+    @Autowired(required = false)
+    private Tracer tracer = Tracer.NOOP; // Trace of the request, stored with the upload
+
+    // Number of times a file upload is retried after an I/O error
+    @Value("${debricked.upload.retries:1}")
+    private int uploadRetries;
+
+    // Attempts at sending a file, across resumes, before it is given up like a rejected file
+    @Value("${debricked.upload.max-file-attempts:5}")
+    private int maxFileAttempts = 5;
+
+    // Maximum number of files uploaded in parallel, 1 uploads strictly one after another
+    @Value("${debricked.upload.concurrency:1}")
+    private int uploadConcurrency;
+
+    // How long an identical upload reuses an earlier scan, 0 disables deduplication
+    @Value("${debricked.upload.dedup-ttl-minutes:0}")
+    private long dedupTtlMinutes;
+
+    // States of uploads whose scan was started, and can be shared by an identical upload
+    private static final Set<DependencyUpload.Status> SCANNED = EnumSet.of(DependencyUpload.Status.SCAN_STARTED,
+            DependencyUpload.Status.IN_PROGRESS, DependencyUpload.Status.COMPLETED, DependencyUpload.Status.STALE);
+
+    // Uploads currently in progress, keyed by the content hash of their file set
+    private final ConcurrentMap<String, CompletableFuture<String>> inFlightUploads = new ConcurrentHashMap<>();
 
     /**
      * Uploads dependency files to Debricked API and initiates a scan.
      * @param files Array of files to be uploaded
      * @param email Email address for notifications
+     * @return The ciUploadId of the scan, or null if no file could be uploaded
+     * @throws IOException If any I/O errors occur
+     */
+    public String uploadDependencies(MultipartFile[] files, String email) throws IOException {
+        return uploadDependencies(files, email, UploadTarget.DEFAULT);
+    }
+
+    /**
+     * Uploads dependency files to Debricked API for the given repository and commit and initiates a scan.
+     * @param files Array of files to be uploaded
+     * @param email Email address for notifications
+     * @param target Repository and commit the files belong to
+     * @return The ciUploadId of the scan, or null if no file could be uploaded
+     * @throws IOException If any I/O errors occur
+     */
+    public String uploadDependencies(MultipartFile[] files, String email, UploadTarget target) throws IOException {
+        List<DependencyFile> dependencyFiles = new ArrayList<>();
+        for (MultipartFile file : files) {
+            dependencyFiles.add(DependencyFile.of(file));
+        }
+        return uploadDependencies(dependencyFiles, email, target);
+    }
+
+    /**
+     * Uploads dependency files to Debricked API and initiates a scan.
+     *
+     * Identical file sets are only sent once: a request for a set that is currently being
+     * uploaded waits for and shares that upload, and a set uploaded within the configured
+     * TTL reuses the stored ciUploadId instead of triggering a new scan.
+     *
+     * @param files Files to be uploaded
+     * @param email Email address for notifications
+     * @return The ciUploadId of the started scan, or null if no file could be uploaded
+     * @throws IOException If any I/O errors occur
+     */
+    public String uploadDependencies(List<DependencyFile> files, String email) throws IOException {
+        return uploadDependencies(files, email, UploadTarget.DEFAULT);
+    }
+
+    /**
+     * Uploads dependency files to Debricked API for the given repository and commit and
+     * initiates a scan, sharing the scan of identical file sets as described above.
+     *
+     * @param files  Files to be uploaded
+     * @param email  Email address for notifications
+     * @param target Repository and commit the files belong to
+     * @return The ciUploadId of the started scan, or null if no file could be uploaded
      * @throws IOException If any I/O errors occur
      */
-    public boolean uploadDependencies(MultipartFile[] files, String email) throws IOException {
-        String uploadId = null;
-        boolean retval = false;
+    public String uploadDependencies(List<DependencyFile> files, String email, UploadTarget target) throws IOException {
+        if (dedupTtlMinutes <= 0) {
+            return uploadAndScan(files, email, null, target);
+        }
+        String contentHash = UploadFingerprint.sha256(files);
+        return shareScan(contentHash, email, target, () -> uploadAndScan(files, email, contentHash, target), null);
+    }
+
+    /**
+     * Records an upload with its spooled files, to be taken to a scan later by
+     * {@link #uploadReceived}. Once recorded, {@link UploadRecoveryService} resumes it if this
+     * instance stops before.
+     *
+     * @throws IOException If a file cannot be spooled; the upload is then FAILED
+     */
+    public UploadStateStore.StoredUpload receive(List<DependencyFile> files, String email, UploadTarget target)
+            throws IOException {
+        String contentHash = dedupTtlMinutes > 0 ? UploadFingerprint.sha256(files) : null;
+        return uploadStore.receive(files, email, contentHash, target);
+    }
 
-        String filednames[];
+    /**
+     * Takes an upload recorded by {@link #receive} to a started scan, sharing the scan of an
+     * identical upload as {@link #uploadDependencies(List, String, UploadTarget)} does; the
+     * recorded upload is then discarded. As nobody waits for the answer, an upload that cannot
+     * get further for now is released for {@link UploadRecoveryService} instead of given up.
+     *
+     * @param stored An upload leased to this instance, with its files
+     * @return The ciUploadId of the scan, or of the upload left to be resumed; null if every file
+     * was rejected, or if the upload was left to be resumed before any file was accepted
+     * @throws IOException If the upload was refused; it is then FAILED
+     */
+    public String uploadReceived(UploadStateStore.StoredUpload stored) throws IOException {
+        DependencyUpload upload = stored.upload();
+        if (upload.getContentHash() == null) {
+            return resumeReceived(stored);
+        }
+        UploadTarget target = new UploadTarget(upload.getRepositoryName(), upload.getCommitName());
+        return shareScan(upload.getContentHash(), upload.getEmail(), target, () -> resumeReceived(stored),
+                () -> uploadStore.discard(upload));
+    }
 
+    private String resumeReceived(UploadStateStore.StoredUpload stored) throws IOException {
+        DependencyUpload upload = stored.upload();
+        try {
+            return resume(stored);
+        } catch (IOException e) {
+            if (e instanceof DebrickedApiException apiError && !apiError.isRetryable()) {
+                uploadStore.fail(upload);
+                throw e;
+            }
+            // Nothing is lost, the recovery sends what is missing once Debricked can be reached
+            System.out.println("Upload " + upload.getId() + " is resumed later: " + e.getMessage());
+            uploadStore.defer(upload);
+            return upload.getCiUploadId();
+        } catch (RuntimeException e) {
+            uploadStore.fail(upload);
+            throw e;
+        }
+    }
 
-        // Step 1: Get JWT token based on username and password
-        String token = getJwtToken(apiUsername, apiPassword);
+    /**
+     * Sends a file set only if no identical one is being uploaded right now or was uploaded
+     * within the TTL; otherwise the requester is attached to that scan.
+     *
+     * @param upload   Sends the files and starts their scan
+     * @param onShared Called when the scan of an identical upload is shared instead, may be null
+     */
+    private String shareScan(String contentHash, String email, UploadTarget target, ScanStart upload, Runnable onShared)
+            throws IOException {
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlightUploads.putIfAbsent(contentHash, mine);
+        if (running != null) {
+            // The same files are being uploaded right now, attach to that scan
+            String ciUploadId = await(running);
+            if (ciUploadId != null) {
+                attachToExistingScan(ciUploadId, null, contentHash, email, target);
+                if (onShared != null) {
+                    onShared.run();
+                }
+            }
+            return ciUploadId;
+        }
 
-        // Step 2: Upload the files
-        for (MultipartFile file : files) {
-            if (uploadId == null) {
-                uploadId = uploadFileToDebricked(file, email, token, uploadId);
-                if (uploadId != null) {
-                    retval = true;
+        try {
+            String ciUploadId;
+            Optional<DependencyUpload> recent = findRecentScan(contentHash);
+            if (recent.isPresent()) {
+                // The same files were uploaded recently, reuse that scan
+                ciUploadId = recent.get().getCiUploadId();
+                attachToExistingScan(ciUploadId, recent.get(), contentHash, email, target);
+                if (onShared != null) {
+                    onShared.run();
                 }
             } else {
-                uploadId = uploadFileToDebricked(file, email, token, uploadId);
+                ciUploadId = upload.start();
             }
+            mine.complete(ciUploadId);
+            return ciUploadId;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightUploads.remove(contentHash, mine);
+        }
+    }
 
+    /**
+     * Attaches a received upload to the scan of an identical one started within the TTL, and
+     * discards it. For pipelines that send the files themselves; unlike
+     * {@link #uploadReceived(UploadStateStore.StoredUpload)}, an identical upload that is still
+     * being sent is not waited for.
+     *
+     * @param stored An upload leased to this instance, with its files
+     * @return The ciUploadId of the shared scan; empty if the files have to be sent
+     */
+    public Optional<String> shareRecentScan(UploadStateStore.StoredUpload stored) {
+        DependencyUpload upload = stored.upload();
+        if (upload.getContentHash() == null) {
+            return Optional.empty(); // Deduplication is disabled
         }
+        Optional<DependencyUpload> recent = findRecentScan(upload.getContentHash());
+        recent.ifPresent(matched -> {
+            attachToExistingScan(matched.getCiUploadId(), matched, upload.getContentHash(), upload.getEmail(),
+                    new UploadTarget(upload.getRepositoryName(), upload.getCommitName()));
+            uploadStore.discard(upload);
+        });
+        return recent.map(DependencyUpload::getCiUploadId);
+    }
 
+    // The latest upload of the same files whose scan was started within the TTL
+    private Optional<DependencyUpload> findRecentScan(String contentHash) {
+        return repository.findFirstByContentHashAndStatusInAndCreatedAtAfterOrderByIdDesc(
+                contentHash, SCANNED, Instant.now().minus(Duration.ofMinutes(dedupTtlMinutes)));
+    }
 
+    // Sends the files of an upload and starts their scan
+    @FunctionalInterface
+    private interface ScanStart {
+        String start() throws IOException;
+    }
 
-        // Step 3: Start scan if upload is successful/partially successful
-        if (uploadId != null) {
-            startScan(uploadId, token);
-            // Save upload info in the database with IN_PROGRESS status
-            DependencyUpload upload = new DependencyUpload();
-            upload.setCiUploadId(uploadId);
-            upload.setEmail(email);
-            upload.setStatus(DependencyUpload.Status.IN_PROGRESS); // Set status to IN_PROGRESS
-            repository.save(upload);
+    /**
+     * Records that a requester is interested in a scan started for an identical upload. Nothing
+     * is sent to Debricked: while the scan runs the status checker notifies them as well, and
+     * once it has finished they are notified of its stored outcome right away.
+     *
+     * @param matched The earlier upload of the same files, null if it is still being uploaded
+     */
+    private void attachToExistingScan(String ciUploadId, DependencyUpload matched, String contentHash, String email,
+                                      UploadTarget target) {
+        if (repository.existsByCiUploadIdAndEmail(ciUploadId, email)) {
+            return; // This requester is already tracking the scan
+        }
+        // Rules are evaluated against the requester's repository
+        if (matched != null && isFinished(matched)) {
+            DependencyUpload upload = newUpload(ciUploadId, email, contentHash, target);
+            upload.setStatus(matched.getStatus());
+            upload.setVulnerabilitiesFound(matched.getVulnerabilitiesFound());
+            scanStatusChecker.completeRepeat(upload);
+            return;
         }
+        saveInProgressUpload(ciUploadId, email, contentHash, target);
+    }
 
-       return retval;
+    // Whether the scan of an upload has an outcome that a repeat of its files can be given without asking Debricked
+    private static boolean isFinished(DependencyUpload upload) {
+        return upload.getStatus() == DependencyUpload.Status.STALE
+                || (upload.getStatus() == DependencyUpload.Status.COMPLETED && upload.getVulnerabilitiesFound() != null);
     }
 
     /**
-     * Uploads a single file to Debricked API.
-     * @param file The file to upload
-     * @param email Email address for notifications
-     * @param token JWT token for authentication
-     * @return The upload ID if successful, null otherwise
-     * @throws IOException If any I/O errors occur
+     * Saves a scan that was started on Debricked with IN_PROGRESS status, due for its first
+     * status check right away.
      */
-    private String uploadFileToDebricked(MultipartFile file, String email, String token, String ciUploadID) throws IOException {
-        // Create a POST request for uploading dependencies
-        HttpPost post = new HttpPost(debrickedApiUrl + "uploads/dependencies/files");
-        post.addHeader("Authorization", "Bearer " + token);
-        post.addHeader("accept", "*/*");  // Add the accept header
+    void saveInProgressUpload(String ciUploadId, String email, String contentHash, UploadTarget target) {
+        DependencyUpload upload = newUpload(ciUploadId, email, contentHash, target);
+        upload.setStatus(DependencyUpload.Status.IN_PROGRESS); // Set status to IN_PROGRESS
+        upload.setNextCheckAt(upload.getCreatedAt()); // Due for its first status check right away
+        Observation.createNotStarted("ruleengine.db.write", observationRegistry)
+                .lowCardinalityKeyValue("operation", "upload.save")
+                .observe(() -> repository.save(upload));
+    }
+
+    private DependencyUpload newUpload(String ciUploadId, String email, String contentHash, UploadTarget target) {
+        DependencyUpload upload = new DependencyUpload();
+        upload.setCiUploadId(ciUploadId);
+        upload.setEmail(email);
+        upload.setRepositoryName(target.repositoryName());
+        upload.setCommitName(target.commitName());
+        upload.setContentHash(contentHash);
+        upload.setCreatedAt(Instant.now());
+        upload.setTraceparent(TraceLinks.traceparent(tracer));
+        return upload;
+    }
+
+    private String await(CompletableFuture<String> upload) throws IOException {
+        try {
+            return upload.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
 
-        // Build the multipart entity with file data
-        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-        builder.addBinaryBody("fileData", file.getInputStream(), ContentType.DEFAULT_BINARY, file.getOriginalFilename());  // Proper binary body for file upload
-        builder.addTextBody("commitName", "commit6");  // Sample commit name
-        builder.addTextBody("repositoryName", "repo6"); // Sample repository name
-        if (ciUploadID != null) {
-            builder.addTextBody("ciUploadId", ciUploadID);
+    /**
+     * Records the upload with its spooled files and takes it to a started scan. If that fails
+     * before Debricked accepted any file the upload is FAILED, as the caller reports the error
+     * and may send the files again; once a file was accepted, a retryable failure leaves the
+     * upload to {@link UploadRecoveryService} instead.
+     */
+    private String uploadAndScan(List<DependencyFile> files, String email, String contentHash, UploadTarget target) throws IOException {
+        // Step 1: Persist the upload and spool its files, so a restart does not lose them
+        UploadStateStore.StoredUpload stored = uploadStore.receive(files, email, contentHash, target);
+        try {
+            return resume(stored);
+        } catch (IOException | RuntimeException e) {
+            uploadStore.fail(stored.upload());
+            throw e;
         }
+    }
 
+    /**
+     * Takes an upload from its last persisted state to a scan handed to the status poller.
+     *
+     * Files are uploaded one at a time until the first one succeeds; its ciUploadId is
+     * then used to upload the remaining files in parallel. Files accepted or rejected before,
+     * e.g. ahead of a restart, are not sent again. The scan is only started once every file
+     * has been accepted or rejected.
+     *
+     * Once Debricked holds a ciUploadId, a file that could not be sent or a scan that could
+     * not be started does not give the upload up: it is released in its current state, and
+     * {@link UploadRecoveryService} resumes it with only what is still missing.
+     *
+     * @param stored An upload leased to this instance, with its files
+     * @return The ciUploadId of the started scan, or of the upload left to be resumed; null if
+     * every file was rejected
+     * @throws IOException If no file was accepted and one could not be sent, or the scan was
+     *                     refused; the upload is then still leased to this instance
+     */
+    String resume(UploadStateStore.StoredUpload stored) throws IOException {
+        DependencyUpload upload = stored.upload();
 
-        post.setEntity(builder.build());  // Set the entity in the request
+        // Step 2: Get JWT token, reusing the cached one when still valid. The calls below go
+        // through the provider, which logs in again if Debricked refuses this token.
+        tokenProvider.getToken();
 
-        try (CloseableHttpClient client = HttpClients.createDefault();
-             CloseableHttpResponse response = client.execute(post)) {
+        if (upload.getStatus() == DependencyUpload.Status.RECEIVED || upload.getStatus() == DependencyUpload.Status.UPLOADING) {
+            uploadStore.advance(upload, DependencyUpload.Status.UPLOADING);
+            List<UploadFile> unsent = stored.files().stream().filter(DebrickedService::isUnsent).toList();
+            List<FileUploadOutcome> outcomes = new ArrayList<>();
 
-            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                // Parse the response and return uploadId
-                String jsonResponse = EntityUtils.toString(response.getEntity());
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode node = mapper.readTree(jsonResponse);
-                return node.get("ciUploadId").asText(); // Extract ciUploadId from the response
-            } else {
-                // Notify user if file upload fails
-                notificationService.sendEmail(email, "Failed to upload file ", file.getOriginalFilename());
+            // Step 3: Upload files until one succeeds, which yields the ciUploadId for the rest.
+            // A file that could not be sent is left for later and the next one is tried.
+            IOException sendError = null;
+            int next = 0;
+            while (upload.getCiUploadId() == null && next < unsent.size()) {
+                UploadFile file = unsent.get(next++);
+                String uploadId = null;
+                try {
+                    uploadId = sendFile(file, upload, null);
+                } catch (DebrickedUnavailableException e) {
+                    throw e; // Every other file would wait for the governor as well
+                } catch (IOException e) {
+                    sendError = e;
+                }
+                if (uploadId != null) {
+                    uploadStore.recordCiUploadId(upload, uploadId); // Persisted before anything else is sent
+                }
+                outcomes.add(new FileUploadOutcome(file.getFilename(), uploadId != null));
+            }
+
+            // Step 4: Upload the remaining files, chained to the same ciUploadId
+            if (upload.getCiUploadId() != null && next < unsent.size()) {
+                outcomes.addAll(uploadRemainingFiles(unsent.subList(next, unsent.size()), upload));
+            }
+
+            long failed = outcomes.stream().filter(outcome -> !outcome.uploaded()).count();
+            if (failed > 0) {
+                System.out.println(failed + " of " + outcomes.size() + " files failed to upload for ciUploadId: " + upload.getCiUploadId());
+            }
+            if (upload.getCiUploadId() == null) {
+                if (sendError != null) {
+                    throw sendError; // Nothing reached Debricked, the files can be sent again as they are
+                }
+                uploadStore.fail(upload); // Debricked rejected every file, there is nothing to scan
                 return null;
             }
+            long missing = stored.files().stream().filter(DebrickedService::isUnsent).count();
+            if (missing > 0) {
+                // The scan would miss these files, so it waits until they are sent on resume
+                System.out.println(missing + " files of ciUploadId " + upload.getCiUploadId() + " are sent again later");
+                uploadStore.defer(upload);
+                return upload.getCiUploadId();
+            }
+            uploadStore.advance(upload, DependencyUpload.Status.UPLOADED);
+        }
+
+        // Step 5: Start the scan once every file is uploaded
+        if (upload.getStatus() == DependencyUpload.Status.UPLOADED) {
+            try {
+                Observation.createNotStarted("debricked.scan.start", observationRegistry)
+                        .observeChecked(() -> tokenProvider.withToken(token -> {
+                            debrickedClient.startScan(upload.getCiUploadId(), token);
+                            return null;
+                        }));
+            } catch (IOException e) {
+                if (e instanceof DebrickedApiException apiError && !apiError.isRetryable()) {
+                    throw e;
+                }
+                // The files are with Debricked, only the scan start is repeated on resume
+                System.out.println("Scan of ciUploadId " + upload.getCiUploadId() + " is started later: " + e.getMessage());
+                uploadStore.defer(upload);
+                return upload.getCiUploadId();
+            }
+            uploadStore.advance(upload, DependencyUpload.Status.SCAN_STARTED);
         }
+
+        // Step 6: Hand the scan to the status poller, which checks it right away
+        uploadStore.handOver(upload);
+        return upload.getCiUploadId();
     }
 
     /**
-     * Starts the scan for the uploaded file.
-     * @param ciUploadId The ID of the upload
-     * @param token JWT token for authentication
-     * @throws IOException If any I/O errors occur
+     * Uploads files that join an existing ciUploadId, using up to the configured number of
+     * parallel uploads. A failure of one file does not affect the others.
+     *
+     * @return The outcome of every file, in the order of the given list
      */
-    protected void startScan(String ciUploadId, String token) throws IOException {
-        // Create a POST request to start the scan
-        HttpPost post = new HttpPost(debrickedApiUrl + "finishes/dependencies/files/uploads");
-        post.addHeader("Authorization", "Bearer " + token);
-        post.addHeader("accept", "application/json");
-
-        // Build the entity with necessary parameters
-        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-        builder.addTextBody("ciUploadId", ciUploadId, ContentType.TEXT_PLAIN);
-        builder.addTextBody("returnCommitData", "false", ContentType.TEXT_PLAIN); // Do not return commit data
-
-        post.setEntity(builder.build());
-
-        try (CloseableHttpClient client = HttpClients.createDefault();
-             CloseableHttpResponse response = client.execute(post)) {
-            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-                throw new IOException("Failed to start scan: " + response.getStatusLine().getReasonPhrase());
+    private List<FileUploadOutcome> uploadRemainingFiles(List<UploadFile> files, DependencyUpload upload) {
+        if (uploadConcurrency <= 1) {
+            List<FileUploadOutcome> outcomes = new ArrayList<>();
+            for (UploadFile file : files) {
+                outcomes.add(uploadChainedFile(file, upload));
             }
+            return outcomes;
         }
+
+        List<CompletableFuture<FileUploadOutcome>> uploads = new ArrayList<>();
+        for (UploadFile file : files) {
+            uploads.add(CompletableFuture.supplyAsync(() -> uploadChainedFile(file, upload), uploadExecutor));
+        }
+        return uploads.stream().map(CompletableFuture::join).toList();
+    }
+
+    private FileUploadOutcome uploadChainedFile(UploadFile file, DependencyUpload upload) {
+        try {
+            return new FileUploadOutcome(file.getFilename(), sendFile(file, upload, upload.getCiUploadId()) != null);
+        } catch (IOException e) {
+            // The file keeps its state and is sent again when the upload is resumed
+            return new FileUploadOutcome(file.getFilename(), false);
+        }
+    }
+
+    // Whether a file still has to be sent: not yet tried, or its last attempt failed
+    static boolean isUnsent(UploadFile file) {
+        return file.getStatus() == UploadFile.Status.PENDING || file.getStatus() == UploadFile.Status.FAILED;
     }
 
     /**
-     * Retrieves a JWT token for authentication.
-     * @param username The username for the API
-     * @param password The password for the API
-     * @return The JWT token
-     * @throws IOException If any I/O errors occur
+     * Sends the spooled content of a file and records its outcome. A file that failed on its
+     * last allowed attempt is given up and recorded as REJECTED.
+     *
+     * @return The upload ID if Debricked accepted the file, null if it was rejected or given up
+     * @throws IOException If the file could not be sent this time
      */
-    protected String getJwtToken(String username, String password) throws IOException {
-        // Create a POST request for authentication
-        HttpPost post = new HttpPost("https://debricked.com/api/login_check");
-        post.setHeader("Content-Type", "application/x-www-form-urlencoded");
-
-        // Set up form data
-        StringEntity entity = new StringEntity("_username=" + username + "&_password=" + password);
-        post.setEntity(entity);
-
-        try (CloseableHttpClient client = HttpClients.createDefault();
-             CloseableHttpResponse response = client.execute(post)) {
-            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                // Parse response and return token
-                String jsonResponse = EntityUtils.toString(response.getEntity());
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode node = mapper.readTree(jsonResponse);
-                return node.get("token").asText(); // Extract token from response
-            } else {
-                throw new IOException("Failed to retrieve JWT token: " + response.getStatusLine().getReasonPhrase());
+    private String sendFile(UploadFile file, DependencyUpload upload, String ciUploadId) throws IOException {
+        UploadTarget target = new UploadTarget(upload.getRepositoryName(), upload.getCommitName());
+        try {
+            String uploadId = uploadFileToDebricked(uploadStore.content(file), upload.getEmail(), ciUploadId, target);
+            uploadStore.recordFile(file, uploadId != null ? UploadFile.Status.UPLOADED : UploadFile.Status.REJECTED, null);
+            return uploadId;
+        } catch (DebrickedUnavailableException e) {
+            throw e; // Nothing was sent, so the file keeps its state and attempts
+        } catch (IOException e) {
+            if (file.getAttempts() + 1 >= maxFileAttempts) {
+                System.out.println("Giving up " + file.getFilename() + " after " + maxFileAttempts + " attempts: " + e.getMessage());
+                uploadStore.recordFile(file, UploadFile.Status.REJECTED, e.getMessage());
+                notificationService.notifyUploadFailed(upload.getEmail(), file.getFilename());
+                return null;
+            }
+            uploadStore.recordFile(file, UploadFile.Status.FAILED, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads a single file to Debricked API.
+     * @param file The file to upload
+     * @param email Email address for notifications
+     * @param target Repository and commit the file belongs to
+     * @return The upload ID if successful, null if Debricked rejected the file
+     * @throws IOException If any I/O errors occur, Debricked kept failing, or the rate governor
+     *                     did not let the call through
+     */
+    private String uploadFileToDebricked(DependencyFile file, String email, String ciUploadID,
+                                         UploadTarget target) throws IOException {
+        String uploadId;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                uploadId = Observation.createNotStarted("debricked.upload.file", observationRegistry)
+                        .lowCardinalityKeyValue("chained", String.valueOf(ciUploadID != null))
+                        .observeChecked(() -> tokenProvider.withToken(token -> debrickedClient.uploadFile(file, ciUploadID, target, token)));
+                break;
+            } catch (DebrickedUnavailableException e) {
+                throw e; // Not sent at all, retrying here would only wait for the governor again
+            } catch (DebrickedApiException e) {
+                if (e.isRetryable() && attempt < uploadRetries) {
+                    System.out.println("Retrying upload of " + file.filename() + " after: " + e.getMessage());
+                    continue;
+                }
+                if (e.isRetryable()) {
+                    throw e;
+                }
+                // Rejected by Debricked, sending the same file again would not help
+                System.out.println("Upload of " + file.filename() + " rejected: " + e.getMessage());
+                uploadId = null;
+                break;
+            } catch (IOException e) {
+                // The content is re-read from disk, so a broken connection can simply be retried
+                if (attempt >= uploadRetries) {
+                    throw e;
+                }
+                System.out.println("Retrying upload of " + file.filename() + " after: " + e.getMessage());
             }
         }
+
+        if (uploadId == null) {
+            // Notify user if file upload fails
+            notificationService.notifyUploadFailed(email, file.filename());
+        }
+        return uploadId;
     }
 }
@@ -0,0 +1,242 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.client.DebrickedApiException;
+import com.example.ruleengine.client.DebrickedClient;
+import com.example.ruleengine.client.DebrickedJson;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared source of Debricked JWT tokens.
+ *
+ * The token is cached until shortly before it expires and is refreshed ahead of time
+ * in the background. Concurrent callers that find no usable token share a single
+ * in-flight login instead of each sending their own login_check request. A token Debricked
+ * refuses is dropped from the cache, see {@link #withToken(TokenCall)}.
+ */
+@Component
+public class DebrickedTokenProvider implements MeterBinder {
+
+    // A cached token is not handed out during its last few seconds of validity
+    private static final Duration EXPIRY_SKEW = Duration.ofSeconds(5);
+
+    // Username for API access, loaded from application properties
+    @Value("${debricked.api.username}")
+    private String apiUsername;
+
+    // Password for API access, loaded from application properties
+    @Value("${debricked.api.password}")
+    private String apiPassword;
+
+    // How long before expiry the background refresh replaces the token
+    @Value("${debricked.token.refresh-ahead-seconds:60}")
+    private long refreshAheadSeconds = 60;
+
+    // Lifetime assumed when the token carries no readable "exp" claim
+    @Value("${debricked.token.default-ttl-seconds:3600}")
+    private long defaultTtlSeconds = 3600;
+
+    @Autowired
+    private DebrickedClient debrickedClient; // Typed calls to the Debricked API
+
+    @Autowired(required = false)
+    private ObservationRegistry observationRegistry = ObservationRegistry.NOOP; // Timer and span of the waits for a login
+
+    private Clock clock = Clock.systemUTC();
+
+    private volatile CachedToken cached;
+
+    private final AtomicReference<CompletableFuture<CachedToken>> inFlight = new AtomicReference<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Returns a valid JWT token, logging in only if no usable token is cached.
+     *
+     * @return The JWT token
+     * @throws IOException If the login fails
+     */
+    public String getToken() throws IOException {
+        CachedToken current = cached;
+        if (current != null && current.isUsableAt(clock.instant())) {
+            hits.increment();
+            return current.value();
+        }
+        misses.increment();
+        // Only the misses are observed, a hit costs less than the timer would
+        return Observation.createNotStarted("debricked.token.fetch", observationRegistry)
+                .observeChecked(() -> await(refresh(current)).value());
+    }
+
+    /**
+     * Makes a Debricked call with the cached token. If Debricked answers 401, because the
+     * token was revoked or outlived the lifetime assumed for it, the token is dropped from the
+     * cache and the call is made once more with a freshly logged-in one.
+     *
+     * @return What the call returned
+     * @throws IOException If the login or the call fails
+     */
+    public <T> T withToken(TokenCall<T> call) throws IOException {
+        String token = getToken();
+        try {
+            return call.call(token);
+        } catch (DebrickedApiException e) {
+            if (!e.isUnauthorized()) {
+                throw e;
+            }
+            invalidate(token);
+            return call.call(getToken());
+        }
+    }
+
+    /**
+     * Drops the given token from the cache, unless it has been replaced already.
+     */
+    void invalidate(String token) {
+        CachedToken current = cached;
+        if (current != null && current.value().equals(token)) {
+            System.out.println("Debricked refused the cached JWT token, logging in again");
+            cached = null;
+        }
+    }
+
+    /**
+     * Refreshes the cached token when it is about to expire, so that callers keep
+     * hitting the cache. Nothing is done before the first token has been requested.
+     */
+    @Scheduled(fixedDelayString = "${debricked.token.refresh-check-interval-ms:15000}")
+    public void refreshAheadOfExpiry() {
+        CachedToken current = cached;
+        if (current == null) {
+            return;
+        }
+        Instant refreshAt = current.expiresAt().minusSeconds(refreshAheadSeconds);
+        if (!clock.instant().isBefore(refreshAt)) {
+            try {
+                await(refresh(current));
+            } catch (IOException e) {
+                System.out.println("Background JWT token refresh failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Starts a login unless one is already running, in which case the running one is joined.
+     *
+     * @param seen The cached token the caller found unfit, null if there was none
+     */
+    CompletableFuture<CachedToken> refresh(CachedToken seen) {
+        while (true) {
+            CompletableFuture<CachedToken> running = inFlight.get();
+            if (running != null) {
+                return running;
+            }
+            CompletableFuture<CachedToken> mine = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, mine)) {
+                try {
+                    // A login that finished between the caller's look at the cache and here already replaced it
+                    CachedToken current = cached;
+                    if (current != null && current != seen && current.isUsableAt(clock.instant())) {
+                        mine.complete(current);
+                        return mine;
+                    }
+                    CachedToken token = login();
+                    cached = token;
+                    refreshes.increment();
+                    mine.complete(token);
+                } catch (IOException | RuntimeException e) {
+                    failures.increment();
+                    mine.completeExceptionally(e);
+                } finally {
+                    inFlight.set(null);
+                }
+                return mine;
+            }
+        }
+    }
+
+    private CachedToken await(CompletableFuture<CachedToken> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Performs the login_check request against the Debricked API.
+     *
+     * @return The token together with its expiry
+     * @throws IOException If any I/O errors occur or the login is rejected
+     */
+    protected CachedToken login() throws IOException {
+        String token = debrickedClient.login(apiUsername, apiPassword);
+        return new CachedToken(token, expiryOf(token));
+    }
+
+    /**
+     * Reads the "exp" claim of a JWT, falling back to the configured default lifetime.
+     */
+    Instant expiryOf(String token) {
+        Instant expiry = DebrickedJson.tokenExpiry(token);
+        return expiry != null ? expiry : clock.instant().plusSeconds(defaultTtlSeconds);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("debricked.token.requests", hits, LongAdder::sum)
+                .tag("result", "hit").description("Token requests served from the cache").register(registry);
+        FunctionCounter.builder("debricked.token.requests", misses, LongAdder::sum)
+                .tag("result", "miss").description("Token requests that had to wait for a login").register(registry);
+        FunctionCounter.builder("debricked.token.refreshes", refreshes, LongAdder::sum)
+                .description("Successful logins").register(registry);
+        FunctionCounter.builder("debricked.token.refresh.failures", failures, LongAdder::sum)
+                .description("Failed logins").register(registry);
+    }
+
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getRefreshCount() { return refreshes.sum(); }
+    public long getFailureCount() { return failures.sum(); }
+
+    void setClock(Clock clock) { this.clock = clock; }
+
+    /**
+     * A Debricked call made with a JWT token.
+     */
+    @FunctionalInterface
+    public interface TokenCall<T> {
+        T call(String token) throws IOException;
+    }
+
+    /**
+     * A JWT token and the instant it stops being valid.
+     */
+    protected record CachedToken(String value, Instant expiresAt) {
+        boolean isUsableAt(Instant now) {
+            return now.isBefore(expiresAt.minus(EXPIRY_SKEW));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.ruleengine.service;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A dependency file to be uploaded to Debricked, independent of where its content lives
+ * (an incoming multipart request or a spooled file on disk).
+ *
+ * @param filename The original name of the file, as sent to Debricked
+ * @param content  Source of the file content; may be opened more than once
+ * @param size     The content length in bytes, or -1 if unknown
+ */
+public record DependencyFile(String filename, InputStreamSource content, long size) {
+
+    public static DependencyFile of(MultipartFile file) {
+        return new DependencyFile(file.getOriginalFilename(), file, file.getSize());
+    }
+
+    public static DependencyFile of(String filename, Path path) throws IOException {
+        return new DependencyFile(filename, new FileSystemResource(path), Files.size(path));
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.ruleengine.service;
+
+/**
+ * Result of uploading a single dependency file to Debricked.
+ *
+ * @param filename The original name of the file
+ * @param uploaded Whether Debricked accepted the file
+ */
+public record FileUploadOutcome(String filename, boolean uploaded) {
+}
@@ -0,0 +1,36 @@
+package com.example.ruleengine.service;
+
+import java.util.List;
+
+/**
+ * One vulnerability affecting one package of a scan, as reported by Debricked.
+ *
+ * @param cveId          Identifier of the vulnerability, e.g. CVE-2021-44228
+ * @param cvss           CVSS score, null if Debricked has none
+ * @param severity       Severity, derived from the CVSS score when not reported
+ * @param packageName    Name of the affected package, null if not reported
+ * @param packageVersion Version of the affected package, null if not reported
+ * @param licenses       Licenses of the affected package
+ */
+public record Finding(String cveId, Double cvss, String severity, String packageName, String packageVersion,
+                      List<String> licenses) {
+
+    /**
+     * Severity band of a CVSS v3 score.
+     */
+    public static String severityOf(Double cvss) {
+        if (cvss == null) {
+            return "unknown";
+        }
+        if (cvss >= 9.0) {
+            return "critical";
+        }
+        if (cvss >= 7.0) {
+            return "high";
+        }
+        if (cvss >= 4.0) {
+            return "medium";
+        }
+        return cvss > 0 ? "low" : "none";
+    }
+}
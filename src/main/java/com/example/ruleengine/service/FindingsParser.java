@@ -0,0 +1,194 @@
+package com.example.ruleengine.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Reads the vulnerability list of a scan with Jackson's streaming parser. Findings are handed
+ * out in chunks while the response is read, so memory stays bounded by the chunk size however
+ * large the report is.
+ *
+ * <p>The report is either an array of vulnerabilities or an object holding it in a
+ * {@code vulnerabilities} field. Every vulnerability has a {@code cveId} (or {@code name}),
+ * an optional {@code cvss} (a number or an object with a {@code score}), an optional
+ * {@code severity} and a list of affected {@code dependencies} with {@code name},
+ * {@code version} and {@code licenses}. Other fields are skipped without being read into memory.
+ */
+final class FindingsParser {
+
+    // Thread safe and expensive to create, shared by all parses
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private FindingsParser() {
+    }
+
+    /**
+     * Parses a report, passing findings to the consumer in chunks of at most {@code chunkSize}.
+     *
+     * @return The number of findings read
+     * @throws IOException If the report cannot be read or is not valid JSON
+     */
+    static int parse(InputStream in, int chunkSize, Consumer<List<Finding>> onChunk) throws IOException {
+        int count = 0;
+        try (JsonParser parser = JSON.createParser(in)) {
+            if (!moveToVulnerabilities(parser)) {
+                return 0;
+            }
+            List<Finding> chunk = new ArrayList<>(chunkSize);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                count += readVulnerability(parser, chunk);
+                if (chunk.size() >= chunkSize) {
+                    onChunk.accept(chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                onChunk.accept(chunk);
+            }
+        }
+        return count;
+    }
+
+    // Positions the parser on the start of the vulnerability array
+    private static boolean moveToVulnerabilities(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            return true;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("vulnerabilities".equals(field) && value == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    // Reads one vulnerability object and adds a finding per affected dependency
+    private static int readVulnerability(JsonParser parser, List<Finding> chunk) throws IOException {
+        String cveId = null;
+        Double cvss = null;
+        String severity = null;
+        List<String[]> dependencies = new ArrayList<>(1);
+        List<List<String>> licenses = new ArrayList<>(1);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "cveId", "name" -> {
+                    if (cveId == null || "cveId".equals(field)) {
+                        cveId = parser.getValueAsString();
+                    }
+                }
+                case "cvss" -> cvss = readScore(parser, value);
+                case "severity" -> severity = parser.getValueAsString();
+                case "dependencies" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            readDependency(parser, dependencies, licenses);
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        if (cveId == null) {
+            return 0;
+        }
+        String band = severity != null ? severity.toLowerCase(Locale.ROOT) : Finding.severityOf(cvss);
+        if (dependencies.isEmpty()) {
+            chunk.add(new Finding(cveId, cvss, band, null, null, List.of()));
+            return 1;
+        }
+        for (int i = 0; i < dependencies.size(); i++) {
+            chunk.add(new Finding(cveId, cvss, band, dependencies.get(i)[0], dependencies.get(i)[1], licenses.get(i)));
+        }
+        return dependencies.size();
+    }
+
+    private static Double readScore(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isNumeric()) {
+            return parser.getDoubleValue();
+        }
+        if (value == JsonToken.START_OBJECT) {
+            Double score = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                JsonToken field = parser.nextToken();
+                if ("score".equals(parser.currentName()) && field.isNumeric()) {
+                    score = parser.getDoubleValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return score;
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static void readDependency(JsonParser parser, List<String[]> dependencies, List<List<String>> licenses)
+            throws IOException {
+        String name = null;
+        String version = null;
+        List<String> packageLicenses = List.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "name" -> name = parser.getValueAsString();
+                case "version" -> version = parser.getValueAsString();
+                case "licenses" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        List<String> read = new ArrayList<>(2);
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            // Licenses are either plain strings or objects with a name
+                            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                                String license = null;
+                                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                    parser.nextToken();
+                                    if ("name".equals(parser.currentName())) {
+                                        license = parser.getValueAsString();
+                                    } else {
+                                        parser.skipChildren();
+                                    }
+                                }
+                                if (license != null) {
+                                    read.add(license);
+                                }
+                            } else {
+                                String license = parser.getValueAsString();
+                                if (license != null) {
+                                    read.add(license);
+                                } else {
+                                    parser.skipChildren();
+                                }
+                            }
+                        }
+                        packageLicenses = List.copyOf(read);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        dependencies.add(new String[]{name, version});
+        licenses.add(packageLicenses);
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.repository.FindingView;
+import com.example.ruleengine.repository.ScanFindingRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the findings of a scan in the normalized form: every vulnerability and package is
+ * stored once and a scan only links to their ids. Each chunk of findings costs a few set based
+ * statements and JDBC batches, independent of how many scans share its vulnerabilities.
+ */
+@Component
+public class FindingsStore {
+
+    // Attempts to resolve the ids of a chunk when another instance inserts the same rows concurrently
+    private static final int ID_RESOLUTION_ATTEMPTS = 3;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate; // Named parameters for the IN lists, batches via getJdbcTemplate()
+
+    @Autowired
+    private ScanFindingRepository findingRepository; // Reads the stored findings back
+
+    /**
+     * Returns the stored findings of a scan with their details, most severe first.
+     */
+    public List<FindingView> findFindings(String ciUploadId) {
+        return findingRepository.findViewsByCiUploadId(ciUploadId);
+    }
+
+    /**
+     * Summarizes the stored findings of a scan the way they were summarized when they were
+     * fetched, for an upload that repeats the files of that scan.
+     *
+     * @param topLimit Most severe findings kept in the summary
+     */
+    public FindingsSummary summarize(String ciUploadId, int topLimit) {
+        FindingsSummary summary = new FindingsSummary(topLimit);
+        for (FindingView view : findFindings(ciUploadId)) {
+            List<String> licenses = view.licenses() == null || view.licenses().isEmpty()
+                    ? List.of() : List.of(view.licenses().split(","));
+            summary.add(new Finding(view.cveId(), view.cvss(), view.severity(), view.packageName(),
+                    view.packageVersion(), licenses));
+        }
+        return summary;
+    }
+
+    /**
+     * Removes the stored findings of a scan, so a report can be stored again from the start.
+     */
+    public void deleteFindings(String ciUploadId) {
+        jdbcTemplate.update("DELETE FROM scan_finding WHERE ci_upload_id = :ciUploadId", Map.of("ciUploadId", ciUploadId));
+    }
+
+    /**
+     * Counts the vulnerabilities among the stored findings of a scan that another scan did not
+     * have, compared by CVE.
+     *
+     * @return The count, or -1 if no findings of the other scan are stored
+     */
+    public int countNewVulnerabilities(String ciUploadId, String previousCiUploadId) {
+        Map<String, String> scans = Map.of("ciUploadId", ciUploadId, "previousCiUploadId", previousCiUploadId);
+        if (!findingRepository.existsByCiUploadId(previousCiUploadId)) {
+            return -1;
+        }
+        Integer added = jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT f.vulnerability_id) FROM scan_finding f"
+                + " WHERE f.ci_upload_id = :ciUploadId AND NOT EXISTS (SELECT 1 FROM scan_finding p"
+                + " WHERE p.ci_upload_id = :previousCiUploadId AND p.vulnerability_id = f.vulnerability_id)",
+                scans, Integer.class);
+        return added == null ? 0 : added;
+    }
+
+    /**
+     * Stores one chunk of findings of a scan, adding the vulnerabilities and packages that are
+     * not known yet.
+     */
+    public void store(String ciUploadId, List<Finding> chunk) {
+        Map<String, Long> vulnerabilityIds = vulnerabilityIds(chunk);
+        Map<PackageKey, Long> packageIds = packageIds(chunk);
+        jdbcTemplate.getJdbcTemplate().batchUpdate(
+                "INSERT INTO scan_finding (ci_upload_id, vulnerability_id, package_id) VALUES (?, ?, ?)",
+                chunk, chunk.size(), (statement, finding) -> {
+                    statement.setString(1, ciUploadId);
+                    statement.setLong(2, vulnerabilityIds.get(finding.cveId()));
+                    Long packageId = finding.packageName() == null ? null
+                            : packageIds.get(new PackageKey(finding.packageName(), finding.packageVersion()));
+                    statement.setObject(3, packageId);
+                });
+    }
+
+    // Ids of the vulnerabilities of a chunk, inserting the unknown ones
+    private Map<String, Long> vulnerabilityIds(List<Finding> chunk) {
+        Map<String, Finding> byCve = new LinkedHashMap<>();
+        for (Finding finding : chunk) {
+            byCve.putIfAbsent(finding.cveId(), finding);
+        }
+        Map<String, Long> ids = new HashMap<>();
+        for (int attempt = 1; ; attempt++) {
+            jdbcTemplate.query("SELECT id, cve_id FROM vulnerability WHERE cve_id IN (:cveIds)",
+                    Map.of("cveIds", byCve.keySet()),
+                    row -> { ids.put(row.getString("cve_id"), row.getLong("id")); });
+            List<Finding> missing = new ArrayList<>();
+            for (Finding finding : byCve.values()) {
+                if (!ids.containsKey(finding.cveId())) {
+                    missing.add(finding);
+                }
+            }
+            if (missing.isEmpty()) {
+                return ids;
+            }
+            try {
+                jdbcTemplate.getJdbcTemplate().batchUpdate(
+                        "INSERT INTO vulnerability (cve_id, cvss, severity) VALUES (?, ?, ?)",
+                        missing, missing.size(), (statement, finding) -> {
+                            statement.setString(1, finding.cveId());
+                            statement.setObject(2, finding.cvss());
+                            statement.setString(3, finding.severity());
+                        });
+            } catch (DuplicateKeyException e) {
+                // Another scan added some of them meanwhile; read again and insert the rest
+                if (attempt >= ID_RESOLUTION_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // Ids of the packages of a chunk, inserting the unknown ones
+    private Map<PackageKey, Long> packageIds(List<Finding> chunk) {
+        Map<PackageKey, Finding> byKey = new LinkedHashMap<>();
+        for (Finding finding : chunk) {
+            if (finding.packageName() != null) {
+                byKey.putIfAbsent(new PackageKey(finding.packageName(), finding.packageVersion()), finding);
+            }
+        }
+        Map<PackageKey, Long> ids = new HashMap<>();
+        if (byKey.isEmpty()) {
+            return ids;
+        }
+        List<String> names = byKey.keySet().stream().map(PackageKey::name).distinct().toList();
+        for (int attempt = 1; ; attempt++) {
+            // Selected by name only, the versions of a name are few and filtered here
+            jdbcTemplate.query("SELECT id, name, version FROM dependency_package WHERE name IN (:names)",
+                    Map.of("names", names), row -> {
+                        PackageKey key = new PackageKey(row.getString("name"), row.getString("version"));
+                        if (byKey.containsKey(key)) {
+                            ids.put(key, row.getLong("id"));
+                        }
+                    });
+            List<Map.Entry<PackageKey, Finding>> missing = new ArrayList<>();
+            for (Map.Entry<PackageKey, Finding> entry : byKey.entrySet()) {
+                if (!ids.containsKey(entry.getKey())) {
+                    missing.add(entry);
+                }
+            }
+            if (missing.isEmpty()) {
+                return ids;
+            }
+            try {
+                jdbcTemplate.getJdbcTemplate().batchUpdate(
+                        "INSERT INTO dependency_package (name, version, licenses) VALUES (?, ?, ?)",
+                        missing, missing.size(), (statement, entry) -> {
+                            statement.setString(1, entry.getKey().name());
+                            statement.setString(2, entry.getKey().version());
+                            statement.setString(3, String.join(",", entry.getValue().licenses()));
+                        });
+            } catch (DuplicateKeyException e) {
+                if (attempt >= ID_RESOLUTION_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private record PackageKey(String name, String version) {
+    }
+}
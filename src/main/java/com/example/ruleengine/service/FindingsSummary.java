@@ -0,0 +1,83 @@
+package com.example.ruleengine.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Aggregates the findings of a scan while they stream by: counts per severity, the highest
+ * CVSS score, the licenses seen and the most severe findings for the notification. Only the
+ * aggregates are kept, never the findings themselves.
+ */
+public class FindingsSummary {
+
+    // Most severe first; findings without a score sort last
+    private static final Comparator<Finding> BY_SEVERITY = Comparator.comparing(
+            (Finding finding) -> finding.cvss() == null ? -1.0 : finding.cvss()).reversed()
+            .thenComparing(Finding::cveId);
+
+    private final int topLimit;
+    private final PriorityQueue<Finding> top; // Least severe of the kept findings at the head
+    private final Set<String> licenses = new TreeSet<>();
+    private int findings;
+    private int critical;
+    private int high;
+    private int medium;
+    private int low;
+    private double maxCvss;
+
+    /**
+     * @param topLimit Number of most severe findings kept for the report
+     */
+    public FindingsSummary(int topLimit) {
+        this.topLimit = topLimit;
+        this.top = new PriorityQueue<>(Math.max(1, topLimit + 1), BY_SEVERITY.reversed());
+    }
+
+    public void add(Finding finding) {
+        findings++;
+        switch (finding.severity()) {
+            case "critical" -> critical++;
+            case "high" -> high++;
+            case "medium" -> medium++;
+            case "low" -> low++;
+            default -> { }
+        }
+        if (finding.cvss() != null) {
+            maxCvss = Math.max(maxCvss, finding.cvss());
+        }
+        licenses.addAll(finding.licenses());
+        if (topLimit > 0) {
+            top.add(finding);
+            if (top.size() > topLimit) {
+                top.poll();
+            }
+        }
+    }
+
+    public void addAll(List<Finding> chunk) {
+        for (Finding finding : chunk) {
+            add(finding);
+        }
+    }
+
+    public int getFindings() { return findings; }
+    public int getCritical() { return critical; }
+    public int getHigh() { return high; }
+    public int getMedium() { return medium; }
+    public int getLow() { return low; }
+    public double getMaxCvss() { return maxCvss; }
+    public List<String> getLicenses() { return List.copyOf(licenses); }
+
+    /**
+     * The most severe findings, most severe first.
+     */
+    public List<Finding> getTopFindings() {
+        List<Finding> sorted = new ArrayList<>(top);
+        sorted.sort(BY_SEVERITY);
+        return sorted;
+    }
+}
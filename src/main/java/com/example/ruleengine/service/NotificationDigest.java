@@ -0,0 +1,62 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.OutboxMessage;
+import org.springframework.mail.SimpleMailMessage;
+
+import java.util.List;
+
+/**
+ * Merges the outbox messages to one recipient into a single email.
+ */
+final class NotificationDigest {
+
+    private NotificationDigest() {
+    }
+
+    /**
+     * Builds the email for the given messages, which all go to the same recipient. A single
+     * message is sent as it is; several become a digest listing the failed files, the
+     * completed scans with their vulnerability counts, the scans that did not complete and
+     * any other messages.
+     */
+    static SimpleMailMessage compose(List<OutboxMessage> messages) {
+        SimpleMailMessage mail = new SimpleMailMessage();
+        mail.setTo(messages.get(0).getRecipient());
+        if (messages.size() == 1) {
+            mail.setSubject(messages.get(0).getSubject());
+            mail.setText(messages.get(0).getBody());
+            return mail;
+        }
+
+        StringBuilder failedFiles = new StringBuilder();
+        StringBuilder completedScans = new StringBuilder();
+        StringBuilder staleScans = new StringBuilder();
+        StringBuilder other = new StringBuilder();
+        for (OutboxMessage message : messages) {
+            OutboxMessage.Kind kind = message.getKind() == null ? OutboxMessage.Kind.GENERAL : message.getKind();
+            switch (kind) {
+                case UPLOAD_FAILED -> failedFiles.append("  - ").append(message.getDetail()).append('\n');
+                case SCAN_COMPLETED -> completedScans.append("  - ciUploadId ").append(message.getDetail())
+                        .append(": ").append(message.getVulnerabilities()).append(" vulnerabilities\n");
+                case SCAN_STALE -> staleScans.append("  - ciUploadId ").append(message.getDetail()).append('\n');
+                default -> other.append(message.getSubject()).append('\n').append(message.getBody()).append("\n\n");
+            }
+        }
+
+        StringBuilder text = new StringBuilder();
+        appendSection(text, "Files that failed to upload:", failedFiles);
+        appendSection(text, "Scans completed with vulnerabilities above your threshold:", completedScans);
+        appendSection(text, "Scans that did not complete in time:", staleScans);
+        appendSection(text, "Other notifications:", other);
+
+        mail.setSubject("Dependency scan notifications (" + messages.size() + ")");
+        mail.setText(text.toString().trim());
+        return mail;
+    }
+
+    private static void appendSection(StringBuilder text, String title, StringBuilder lines) {
+        if (!lines.isEmpty()) {
+            text.append(title).append('\n').append(lines).append('\n');
+        }
+    }
+}
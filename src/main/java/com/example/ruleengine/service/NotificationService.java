@@ -1,38 +1,119 @@
 package com.example.ruleengine.service;
 
+import com.example.ruleengine.entity.OutboxMessage;
+import com.example.ruleengine.repository.OutboxMessageRepository;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.Tracer;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
 
 @Service
 public class NotificationService {
 
-    // Injecting the JavaMailSender to enable sending emails
+    // Outbox the notifications are written to; OutboxSender delivers them
     @Autowired
-    private JavaMailSender mailSender;
+    private OutboxMessageRepository outboxRepository;
+
+    // Messages to one recipient within this window are sent together as one digest, 0 sends right away
+    @Value("${notification.coalesce-window-seconds:0}")
+    private long coalesceWindowSeconds = 0;
+
+    @Autowired(required = false)
+    private ObservationRegistry observationRegistry = ObservationRegistry.NOOP; // Timer and span of the outbox write
+
+    @Autowired(required = false)
+    private Tracer tracer = Tracer.NOOP; // Trace that queued a message, linked by the span sending it
 
     /**
-     * Sends an email notification.
+     * Queues an email notification. The message is stored in the outbox as part of the
+     * caller's transaction, if there is one, and sent asynchronously by {@link OutboxSender},
+     * so a slow mail server never holds up the caller.
      *
      * @param to      The recipient's email address
      * @param subject The subject of the email
      * @param body    The body content of the email
      */
+    @Transactional
     public void sendEmail(String to, String subject, String body) {
-        // Create a SimpleMailMessage object to construct the email
-        SimpleMailMessage message = new SimpleMailMessage();
+        queue(to, subject, body, OutboxMessage.Kind.GENERAL, null, null);
+    }
+
+    /**
+     * Queues the notification that a file could not be uploaded to Debricked.
+     *
+     * @param to       The recipient's email address
+     * @param filename The name of the file that failed
+     */
+    @Transactional
+    public void notifyUploadFailed(String to, String filename) {
+        queue(to, "Failed to upload file ", filename, OutboxMessage.Kind.UPLOAD_FAILED, filename, null);
+    }
+
+    /**
+     * Queues the notification that a scan completed with vulnerabilities above the threshold.
+     *
+     * @param to                   The recipient's email address
+     * @param ciUploadId           The scan that completed
+     * @param vulnerabilitiesFound The number of vulnerabilities the scan found
+     * @param report               The report sent when the message is not merged into a digest
+     */
+    @Transactional
+    public void notifyScanCompleted(String to, String ciUploadId, int vulnerabilitiesFound, String report) {
+        queue(to, "Vulnerabilities Detected in Your Dependencies", report,
+                OutboxMessage.Kind.SCAN_COMPLETED, ciUploadId, vulnerabilitiesFound);
+    }
+
+    /**
+     * Queues the notification that a scan did not complete within the maximum polling age.
+     *
+     * @param to         The recipient's email address
+     * @param ciUploadId The scan that was given up on
+     */
+    @Transactional
+    public void notifyScanStale(String to, String ciUploadId) {
+        queue(to, "Dependency scan did not complete",
+                "The scan of your dependencies (ciUploadId " + ciUploadId + ") did not complete in time.",
+                OutboxMessage.Kind.SCAN_STALE, ciUploadId, null);
+    }
 
-        // Set the recipient of the email
-        message.setTo(to);
+    private void queue(String to, String subject, String body, OutboxMessage.Kind kind, String detail, Integer vulnerabilities) {
+        OutboxMessage message = new OutboxMessage();
 
-        // Set the subject of the email
+        // Set the recipient, subject and body text of the email
+        message.setRecipient(to);
         message.setSubject(subject);
+        message.setBody(body);
+        message.setKind(kind);
+        message.setDetail(detail);
+        message.setVulnerabilities(vulnerabilities);
+
+        message.setState(OutboxMessage.State.PENDING);
+        message.setCreatedAt(Instant.now());
+        message.setNextAttemptAt(firstAttemptAt(to, message.getCreatedAt()));
+        message.setTraceparent(TraceLinks.traceparent(tracer));
 
-        // Set the body text of the email
-        message.setText(body);
+        Observation.createNotStarted("ruleengine.db.write", observationRegistry)
+                .lowCardinalityKeyValue("operation", "outbox.queue")
+                .observe(() -> outboxRepository.save(message));
+    }
 
-        // Send the email using the mailSender
-        mailSender.send(message);
+    /**
+     * Joins the window already open for the recipient, or opens a new one. All messages of a
+     * window become due at the same time, so the sender picks them up together.
+     */
+    private Instant firstAttemptAt(String to, Instant now) {
+        if (coalesceWindowSeconds <= 0) {
+            return now;
+        }
+        Instant openWindow = outboxRepository.findFirstAttemptAt(to, OutboxMessage.State.PENDING);
+        if (openWindow != null) {
+            return openWindow.isAfter(now) ? openWindow : now;
+        }
+        return now.plusSeconds(coalesceWindowSeconds);
     }
 }
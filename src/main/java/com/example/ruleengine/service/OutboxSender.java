@@ -0,0 +1,201 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.OutboxMessage;
+import com.example.ruleengine.repository.OutboxMessageRepository;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Drains the notification outbox. Due messages are claimed in batches, and every batch is
+ * delivered over a single SMTP connection on the sender pool.
+ *
+ * <p>Messages to the same recipient that are due together, see the coalescing window in
+ * {@link NotificationService}, are merged into one digest.
+ *
+ * <p>A message is marked SENDING before it is handed to the mail server and is never claimed
+ * again, so it is sent at most once. Messages the server rejects go back to PENDING with an
+ * exponential backoff until the maximum number of attempts is reached.
+ */
+@Service
+public class OutboxSender {
+
+    @Autowired
+    private OutboxMessageRepository outboxRepository;
+
+    @Autowired
+    private JavaMailSender mailSender; // Sends the emails
+
+    @Autowired
+    @Qualifier("notificationSenderExecutor")
+    private Executor senderExecutor; // Dedicated pool delivering the batches
+
+    @Autowired(required = false)
+    private ObservationRegistry observationRegistry = ObservationRegistry.NOOP; // Timer and span of the SMTP sends
+
+    @Autowired(required = false)
+    private Tracer tracer = Tracer.NOOP; // Links each batch to the traces that queued its messages
+
+    // Messages sent over one SMTP connection
+    @Value("${notification.outbox.batch-size:50}")
+    private int batchSize = 50;
+
+    // Batches claimed per drain, at most one per sender thread
+    @Value("${notification.outbox.workers:2}")
+    private int workers = 2;
+
+    @Value("${notification.outbox.max-attempts:5}")
+    private int maxAttempts = 5;
+
+    // Delay before the first retry, doubled after every further failed attempt
+    @Value("${notification.outbox.retry-base-seconds:30}")
+    private long retryBaseSeconds = 30;
+
+    @Value("${notification.outbox.retry-max-seconds:3600}")
+    private long retryMaxSeconds = 3600;
+
+    // Scheduled method delivering the due outbox messages
+    @Scheduled(fixedDelayString = "${notification.outbox.poll-interval-ms:1000}")
+    public void drain() {
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            List<OutboxMessage> batch = claimBatch();
+            if (batch.isEmpty()) {
+                break;
+            }
+            batches.add(CompletableFuture.runAsync(() -> send(batch), senderExecutor)
+                    .exceptionally(e -> {
+                        // The batch stays SENDING, it is not retried because part of it may have gone out
+                        System.out.println("Failed to deliver " + batch.size() + " notifications: " + e.getMessage());
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * Claims up to one batch of due messages for this sender.
+     */
+    private List<OutboxMessage> claimBatch() {
+        List<Long> due = outboxRepository.findDueIds(OutboxMessage.State.PENDING, Instant.now(), Limit.of(batchSize));
+        if (due.isEmpty()) {
+            return List.of();
+        }
+        String batchId = UUID.randomUUID().toString();
+        if (outboxRepository.claim(due, batchId, OutboxMessage.State.PENDING, OutboxMessage.State.SENDING) == 0) {
+            return List.of(); // Another sender was faster
+        }
+        return outboxRepository.findAllByBatchId(batchId);
+    }
+
+    /**
+     * Delivers one batch over a single connection and records the outcome of every message.
+     * Messages to the same recipient go out as one digest. The batch gets its own span, linked
+     * to the spans that queued its messages, e.g. the completion of a scan.
+     */
+    void send(List<OutboxMessage> batch) {
+        Set<String> traceparents = new LinkedHashSet<>();
+        for (OutboxMessage outboxMessage : batch) {
+            if (outboxMessage.getTraceparent() != null) {
+                traceparents.add(outboxMessage.getTraceparent());
+            }
+        }
+        Span span = TraceLinks.startLinked(tracer, "notification.batch", traceparents);
+        try (Tracer.SpanInScope ignored = tracer.withSpan(span)) {
+            deliver(batch);
+        } finally {
+            span.end();
+        }
+    }
+
+    private void deliver(List<OutboxMessage> batch) {
+        Map<String, List<OutboxMessage>> byRecipient = new LinkedHashMap<>();
+        for (OutboxMessage outboxMessage : batch) {
+            byRecipient.computeIfAbsent(outboxMessage.getRecipient(), recipient -> new ArrayList<>()).add(outboxMessage);
+        }
+        Map<SimpleMailMessage, List<OutboxMessage>> mails = new IdentityHashMap<>();
+        for (List<OutboxMessage> messages : byRecipient.values()) {
+            mails.put(NotificationDigest.compose(messages), messages);
+        }
+
+        Map<Object, Exception> failed = Map.of();
+        try {
+            Observation.createNotStarted("notification.email.send", observationRegistry)
+                    .observe(() -> mailSender.send(mails.keySet().toArray(new SimpleMailMessage[0])));
+        } catch (MailSendException e) {
+            // Only the listed mails failed, the server accepted the others
+            failed = e.getFailedMessages();
+        } catch (MailException e) {
+            // Nothing was sent, for example because authentication failed
+            failed = new IdentityHashMap<>();
+            for (SimpleMailMessage mail : mails.keySet()) {
+                failed.put(mail, e);
+            }
+        }
+
+        List<Long> sent = new ArrayList<>();
+        for (Map.Entry<SimpleMailMessage, List<OutboxMessage>> entry : mails.entrySet()) {
+            Exception error = failed.get(entry.getKey());
+            for (OutboxMessage outboxMessage : entry.getValue()) {
+                if (error == null) {
+                    sent.add(outboxMessage.getId());
+                } else {
+                    retryLater(outboxMessage, error);
+                }
+            }
+        }
+        if (!sent.isEmpty()) {
+            outboxRepository.markSent(sent, OutboxMessage.State.SENT, Instant.now());
+        }
+        if (mails.size() < batch.size()) {
+            System.out.println("Merged " + batch.size() + " notifications into " + mails.size() + " emails");
+        }
+    }
+
+    private void retryLater(OutboxMessage message, Exception error) {
+        int attempts = message.getAttempts() + 1;
+        String lastError = String.valueOf(error.getMessage());
+        if (lastError.length() > 1024) {
+            lastError = lastError.substring(0, 1024);
+        }
+        if (attempts >= maxAttempts) {
+            System.out.println("Giving up on notification " + message.getId() + " to " + message.getRecipient()
+                    + " after " + attempts + " attempts: " + lastError);
+            outboxRepository.markFailedAttempt(message.getId(), OutboxMessage.State.FAILED, attempts,
+                    message.getNextAttemptAt(), lastError);
+            return;
+        }
+        outboxRepository.markFailedAttempt(message.getId(), OutboxMessage.State.PENDING, attempts,
+                Instant.now().plus(backoff(attempts)), lastError);
+    }
+
+    // retryBaseSeconds, then doubling with every attempt, capped at retryMaxSeconds
+    private Duration backoff(int attempts) {
+        long seconds = retryBaseSeconds << Math.min(attempts - 1, 20);
+        return Duration.ofSeconds(Math.min(seconds, retryMaxSeconds));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.ruleengine.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Decides when the scan status of an upload should be checked next.
+ *
+ * Scans that make no progress are checked exponentially less often, scans whose progress
+ * is moving are checked again around half of their estimated remaining time, and scans
+ * close to completion are checked at the shortest interval.
+ */
+@Component
+public class PollSchedule {
+
+    // Shortest time between two checks of the same upload
+    @Value("${debricked.poll.min-interval-seconds:5}")
+    private long minIntervalSeconds = 5;
+
+    // Longest time between two checks of the same upload
+    @Value("${debricked.poll.max-interval-seconds:300}")
+    private long maxIntervalSeconds = 300;
+
+    // From this progress on the upload is checked at the shortest interval
+    @Value("${debricked.poll.near-complete-progress:90}")
+    private int nearCompleteProgress = 90;
+
+    // Uploads still in progress after this long are marked stale
+    @Value("${debricked.poll.max-age-minutes:360}")
+    private long maxAgeMinutes = 360;
+
+    /**
+     * Returns the time to wait before the next check of an upload that is not complete yet.
+     *
+     * @param previousProgress   Progress seen at the previous change, or null if never checked
+     * @param previousProgressAt When that progress was first seen
+     * @param progress           Progress reported by the current check
+     * @param unchangedChecks    Number of consecutive checks that saw no progress, including this one
+     * @param now                The current time
+     */
+    public Duration nextInterval(Integer previousProgress, Instant previousProgressAt, int progress,
+                                 int unchangedChecks, Instant now) {
+        Duration min = Duration.ofSeconds(minIntervalSeconds);
+        Duration max = Duration.ofSeconds(maxIntervalSeconds);
+        if (progress >= nearCompleteProgress) {
+            return min;
+        }
+
+        if (previousProgress == null || previousProgressAt == null || progress <= previousProgress) {
+            // No progress, back off exponentially
+            long factor = 1L << Math.min(unchangedChecks, 20);
+            return clamp(min.multipliedBy(factor), min, max);
+        }
+
+        // Progress is moving: estimate the remaining time from the observed rate
+        double elapsedSeconds = Math.max(1, Duration.between(previousProgressAt, now).toSeconds());
+        double percentPerSecond = (progress - previousProgress) / elapsedSeconds;
+        double remainingSeconds = (100 - progress) / percentPerSecond;
+        return clamp(Duration.ofSeconds((long) (remainingSeconds / 2)), min, max);
+    }
+
+    /**
+     * Returns whether an upload created at the given time has been in progress for too long.
+     */
+    public boolean isStale(Instant createdAt, Instant now) {
+        return createdAt != null && createdAt.plus(Duration.ofMinutes(maxAgeMinutes)).isBefore(now);
+    }
+
+    private static Duration clamp(Duration value, Duration min, Duration max) {
+        if (value.compareTo(min) < 0) {
+            return min;
+        }
+        return value.compareTo(max) > 0 ? max : value;
+    }
+}
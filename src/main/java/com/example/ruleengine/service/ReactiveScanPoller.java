@@ -0,0 +1,149 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.client.DebrickedRateGovernor;
+import com.example.ruleengine.client.ReactiveDebrickedClient;
+import com.example.ruleengine.repository.PendingUpload;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Scan status poller of the "reactive" profile, replacing the scheduled cycle of
+ * {@link ScanStatusCheckerService} (which is switched off with debricked.poll.blocking=false).
+ *
+ * The status calls of a page are in flight together on the event loop, up to the configured
+ * concurrency, instead of each holding a worker thread for its round trip. What is done with a
+ * status is left to the checker, on the bounded elastic scheduler, since it blocks on the
+ * database and, for finished scans, on the findings fetch.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveScanPoller {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveScanPoller.class);
+
+    @Autowired
+    private ScanStatusCheckerService checker; // Pages, rules and completions of the poll cycle
+
+    @Autowired
+    private ReactiveDebrickedClient debrickedClient; // Non-blocking calls to the Debricked API
+
+    @Autowired
+    private ReactiveTokenProvider tokenProvider; // Cached source of JWT tokens
+
+    @Autowired
+    private DebrickedRateGovernor governor; // Rate limit and circuit breaker of the Debricked calls
+
+    @Autowired
+    private UploadClaimer claimer; // Leases due uploads to this instance so replicas do not check the same ones
+
+    // Period of the poll cycles; a cycle that overruns it delays the next one instead of overlapping it
+    @Value("${debricked.poll.interval-ms:1000}")
+    private long pollIntervalMs = 1000;
+
+    // Status calls in flight at a time
+    @Value("${debricked.reactive.poll-concurrency:256}")
+    private int pollConcurrency = 256;
+
+    private Disposable cycles;
+
+    /**
+     * Starts the poll cycles once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        cycles = Flux.interval(Duration.ofMillis(pollIntervalMs))
+                .onBackpressureDrop()
+                .concatMap(tick -> cycle().onErrorResume(e -> {
+                    log.warn("Scan status check cycle failed: {}", e.getMessage());
+                    return Mono.empty();
+                }), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (cycles != null) {
+            cycles.dispose();
+        }
+    }
+
+    /**
+     * One poll cycle: works through the due uploads one page at a time, checking those this
+     * instance manages to lease.
+     */
+    Mono<Void> cycle() {
+        if (!governor.isAvailable()) {
+            // Debricked is throttling us or down, the uploads stay due until it recovers
+            log.debug("Skipping scan status check, Debricked is unavailable");
+            return Mono.empty();
+        }
+        long cycleStart = System.nanoTime();
+        Instant now = Instant.now();
+        return Mono.fromCallable(() -> checker.duePage(now, null))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(page -> {
+                    if (page.isEmpty()) {
+                        return Mono.empty();
+                    }
+                    return tokenProvider.getToken()
+                            .onErrorResume(e -> {
+                                // Without a token no status can be fetched, try again in the next cycle
+                                log.debug("Skipping scan status check, JWT token retrieval failed: {}", e.getMessage());
+                                return Mono.empty();
+                            })
+                            // The calls below go through the provider, which logs in again if Debricked refuses this token
+                            .flatMap(token -> checkPages(page, now));
+                })
+                .then()
+                .doOnTerminate(() -> checker.recordCycle(System.nanoTime() - cycleStart));
+    }
+
+    private Mono<Void> checkPages(List<PendingUpload> page, Instant now) {
+        if (page.isEmpty()) {
+            return Mono.empty();
+        }
+        List<PendingUpload> servable = checker.servable(page);
+        Mono<Void> checked = checkPage(servable, now);
+        if (servable.size() < page.size()) {
+            return checked; // The governor has no permits for more, the rest stay due for the next cycle
+        }
+        return checked
+                .then(Mono.fromCallable(() -> checker.duePage(now, page)).subscribeOn(Schedulers.boundedElastic()))
+                .flatMap(next -> checkPages(next, now));
+    }
+
+    /**
+     * Checks the scans of the uploads of one page this instance can lease and, once all status calls are
+     * done, commits and notifies the scans found complete.
+     */
+    private Mono<Void> checkPage(List<PendingUpload> page, Instant now) {
+        ScanStatusCheckerService.PageResults results = new ScanStatusCheckerService.PageResults();
+        return Mono.fromCallable(() -> ScanStatusCheckerService.byScan(claimer.claim(page, now)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(Flux::fromIterable)
+                .flatMap(uploads -> tokenProvider.withToken(token -> debrickedClient.getScanStatus(uploads.get(0).ciUploadId(), token))
+                        .publishOn(Schedulers.boundedElastic())
+                        .doOnNext(status -> checker.handleStatus(uploads, status, results))
+                        .onErrorResume(e -> Mono.fromRunnable(() -> {
+                            // A failing scan must not affect the others; errors leave its uploads due
+                            checker.handleCheckError(uploads, e);
+                        }).subscribeOn(Schedulers.boundedElastic()).then(Mono.empty())), pollConcurrency)
+                .then(Mono.fromRunnable(() -> checker.completePage(results)).subscribeOn(Schedulers.boundedElastic()))
+                .then();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.client.DebrickedApiException;
+import com.example.ruleengine.client.DebrickedJson;
+import com.example.ruleengine.client.ReactiveDebrickedClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Function;
+
+/**
+ * Source of Debricked JWT tokens for the "reactive" profile.
+ *
+ * The token is cached until shortly before it expires; subscribers arriving while a login is
+ * running share it, and a failed login is not cached so the next subscriber tries again. A
+ * token Debricked refuses is dropped from the cache, see {@link #withToken(Function)}.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveTokenProvider {
+
+    // A cached token is not handed out during its last few seconds of validity
+    private static final Duration EXPIRY_SKEW = Duration.ofSeconds(5);
+
+    // Username for API access, loaded from application properties
+    @Value("${debricked.api.username}")
+    private String apiUsername;
+
+    // Password for API access, loaded from application properties
+    @Value("${debricked.api.password}")
+    private String apiPassword;
+
+    // Lifetime assumed when the token carries no readable "exp" claim
+    @Value("${debricked.token.default-ttl-seconds:3600}")
+    private long defaultTtlSeconds = 3600;
+
+    @Autowired
+    private ReactiveDebrickedClient debrickedClient; // Non-blocking calls to the Debricked API
+
+    private Clock clock = Clock.systemUTC();
+
+    private volatile Mono<String> token;
+
+    /**
+     * Emits a valid JWT token, logging in only if no usable token is cached.
+     */
+    public Mono<String> getToken() {
+        Mono<String> current = token;
+        if (current == null) {
+            synchronized (this) {
+                current = token;
+                if (current == null) {
+                    current = Mono.defer(() -> debrickedClient.login(apiUsername, apiPassword))
+                            .cache(this::timeToLive, e -> Duration.ZERO, () -> Duration.ZERO);
+                    token = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Makes a Debricked call with the cached token. If Debricked answers 401, the token is
+     * dropped from the cache and the call is made once more with a freshly logged-in one.
+     */
+    public <T> Mono<T> withToken(Function<String, Mono<T>> call) {
+        Mono<String> current = getToken();
+        return current.flatMap(value -> call.apply(value)
+                .onErrorResume(e -> e instanceof DebrickedApiException api && api.isUnauthorized(), e -> {
+                    invalidate(current);
+                    return getToken().flatMap(call);
+                }));
+    }
+
+    // Drops the given cached token, unless it has been replaced already
+    private synchronized void invalidate(Mono<String> refused) {
+        if (token == refused) {
+            System.out.println("Debricked refused the cached JWT token, logging in again");
+            token = null;
+        }
+    }
+
+    /**
+     * How long a token is handed out: until its "exp" claim, or the configured default
+     * lifetime, minus the skew.
+     */
+    Duration timeToLive(String value) {
+        Instant now = clock.instant();
+        Instant expiry = DebrickedJson.tokenExpiry(value);
+        Duration ttl = Duration.between(now, expiry != null ? expiry : now.plusSeconds(defaultTtlSeconds)).minus(EXPIRY_SKEW);
+        return ttl.isNegative() ? Duration.ZERO : ttl;
+    }
+
+    void setClock(Clock clock) { this.clock = clock; }
+}
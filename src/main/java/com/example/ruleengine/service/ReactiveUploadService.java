@@ -0,0 +1,278 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.client.DebrickedApiException;
+import com.example.ruleengine.client.DebrickedUnavailableException;
+import com.example.ruleengine.client.ReactiveDebrickedClient;
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.entity.UploadFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Upload pipeline of the "reactive" profile: the upload is recorded in {@link UploadStateStore}
+ * and shares the scan of an identical recent upload like
+ * {@link DebrickedService#uploadDependencies(List, String, UploadTarget)}, but the calls to
+ * Debricked wait on the event loop instead of holding a thread for each file. Database and
+ * notification work, which is blocking, runs on the bounded elastic scheduler.
+ *
+ * An identical upload that is still being sent is not waited for, so two such requests arriving
+ * together each start a scan.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveUploadService.class);
+
+    @Autowired
+    private ReactiveDebrickedClient debrickedClient; // Non-blocking calls to the Debricked API
+
+    @Autowired
+    private ReactiveTokenProvider tokenProvider; // Cached source of JWT tokens
+
+    @Autowired
+    private DebrickedService debrickedService; // Records uploads and shares the scans of identical ones
+
+    @Autowired
+    private UploadStateStore uploadStore; // Persists each step of an upload so it can be resumed
+
+    @Autowired
+    private NotificationService notificationService; // Service for sending notifications
+
+    // Directory where the parts of a request are kept while they are uploaded
+    @Value("${debricked.upload.spool-dir:${java.io.tmpdir}/ruleengine-spool}")
+    private String spoolDir;
+
+    // Number of times a file upload is retried after an I/O error
+    @Value("${debricked.upload.retries:1}")
+    private int uploadRetries;
+
+    // Attempts at sending a file, across resumes, before it is given up like a rejected file
+    @Value("${debricked.upload.max-file-attempts:5}")
+    private int maxFileAttempts = 5;
+
+    // Maximum number of files uploaded in parallel, 1 uploads strictly one after another
+    @Value("${debricked.upload.concurrency:1}")
+    private int uploadConcurrency;
+
+    /**
+     * Spools the parts of a request to disk, uploads them to Debricked and starts the scan.
+     * The spooled files are deleted once the pipeline ends, however it ends.
+     *
+     * @param parts  The file parts of the request
+     * @param email  Email address for notifications
+     * @param target Repository and commit the files belong to
+     * @return The ciUploadId of the started scan; empty if no file could be uploaded
+     */
+    public Mono<String> upload(Flux<FilePart> parts, String email, UploadTarget target) {
+        Path requestDir = Path.of(spoolDir).resolve(UUID.randomUUID().toString());
+        return Mono.fromCallable(() -> Files.createDirectories(requestDir))
+                .subscribeOn(Schedulers.boundedElastic())
+                .thenMany(parts.index().concatMap(indexed -> {
+                    // Part files are numbered, the original name is only kept for the upload
+                    Path part = requestDir.resolve(indexed.getT1() + ".part");
+                    FilePart filePart = indexed.getT2();
+                    return filePart.transferTo(part)
+                            .then(Mono.fromCallable(() -> DependencyFile.of(filePart.filename(), part)));
+                }))
+                .collectList()
+                .flatMap(files -> uploadDependencies(files, email, target))
+                .doFinally(signal -> Schedulers.boundedElastic().schedule(() -> deleteSpool(requestDir)));
+    }
+
+    /**
+     * Records the files as an upload and, unless an identical upload was scanned recently,
+     * uploads them to Debricked and starts the scan.
+     *
+     * Files are uploaded one at a time until the first one succeeds; its ciUploadId is then
+     * used to upload the remaining files, up to the configured number at a time. The scan is
+     * only started once every file has been accepted or rejected. As in the blocking pipeline,
+     * the upload is FAILED if no file was accepted; once one was, a file that could not be sent
+     * or a scan that could not be started leaves the upload to {@link UploadRecoveryService}.
+     *
+     * @return The ciUploadId of the scan, or of the upload left to be resumed; empty if every
+     * file was rejected
+     */
+    public Mono<String> uploadDependencies(List<DependencyFile> files, String email, UploadTarget target) {
+        return blocking(() -> debrickedService.receive(files, email, target))
+                .flatMap(stored -> blocking(() -> debrickedService.shareRecentScan(stored))
+                        .flatMap(Mono::justOrEmpty)
+                        .switchIfEmpty(Mono.defer(() -> send(stored))));
+    }
+
+    /**
+     * Takes a received upload to a scan handed to the status poller.
+     */
+    private Mono<String> send(UploadStateStore.StoredUpload stored) {
+        DependencyUpload upload = stored.upload();
+        // Logs in before the first file, so a failed login is not taken for a rejected file; the calls
+        // below go through the provider, which logs in again if Debricked refuses this token
+        return tokenProvider.getToken()
+                .then(blocking(() -> uploadStore.advance(upload, DependencyUpload.Status.UPLOADING)))
+                .then(Mono.defer(() -> uploadFirst(stored.files(), 0, upload, null)))
+                .flatMap(first -> uploadRemainingFiles(stored.files().subList(first.next(), stored.files().size()), upload)
+                        .then(Mono.defer(() -> startScan(stored))))
+                // Debricked rejected every file, there is nothing to scan
+                .switchIfEmpty(blocking(() -> uploadStore.fail(upload)).then(Mono.empty()))
+                .onErrorResume(e -> blocking(() -> uploadStore.fail(upload)).then(Mono.error(e)));
+    }
+
+    /**
+     * Uploads the files from the given index on, one after another, until one succeeds, and
+     * records its ciUploadId. A file that could not be sent is left FAILED and the next one is
+     * tried; if none is accepted, the last such error is signalled.
+     */
+    private Mono<FirstUpload> uploadFirst(List<UploadFile> files, int index, DependencyUpload upload, Throwable sendError) {
+        if (index >= files.size()) {
+            return sendError != null ? Mono.error(sendError) : Mono.empty();
+        }
+        return sendFile(files.get(index), upload, null).materialize().flatMap(sent -> {
+            if (sent.hasValue()) {
+                String ciUploadId = sent.get();
+                // Persisted before anything else is sent
+                return blocking(() -> uploadStore.recordCiUploadId(upload, ciUploadId))
+                        .thenReturn(new FirstUpload(ciUploadId, index + 1));
+            }
+            Throwable error = sent.getThrowable();
+            if (error instanceof DebrickedUnavailableException) {
+                return Mono.error(error); // Every other file would wait for the governor as well
+            }
+            if (error != null && !(error instanceof IOException)) {
+                return Mono.error(error);
+            }
+            return uploadFirst(files, index + 1, upload, error != null ? error : sendError);
+        });
+    }
+
+    /**
+     * Uploads files that join the ciUploadId of the upload. A failure of one file does not
+     * affect the others; the file keeps its state and is sent again when the upload is resumed.
+     */
+    private Mono<Void> uploadRemainingFiles(List<UploadFile> files, DependencyUpload upload) {
+        return Flux.fromIterable(files)
+                .flatMap(file -> sendFile(file, upload, upload.getCiUploadId())
+                        .onErrorResume(IOException.class, e -> Mono.empty()), Math.max(1, uploadConcurrency))
+                .then();
+    }
+
+    /**
+     * Starts the scan once every file was accepted or rejected, and hands it to the status
+     * poller. Files still to be sent, or a scan Debricked could not be reached for, leave the
+     * upload to be resumed.
+     */
+    private Mono<String> startScan(UploadStateStore.StoredUpload stored) {
+        DependencyUpload upload = stored.upload();
+        String ciUploadId = upload.getCiUploadId();
+        long missing = stored.files().stream().filter(DebrickedService::isUnsent).count();
+        if (missing > 0) {
+            // The scan would miss these files, so it waits until they are sent on resume
+            log.info("{} files of ciUploadId {} are sent again later", missing, ciUploadId);
+            return blocking(() -> uploadStore.defer(upload)).thenReturn(ciUploadId);
+        }
+        Mono<Boolean> started = Mono.defer(() -> tokenProvider.withToken(token -> debrickedClient.startScan(ciUploadId, token)))
+                .thenReturn(true)
+                .onErrorResume(e -> e instanceof IOException && !(e instanceof DebrickedApiException api && !api.isRetryable()), e -> {
+                    // The files are with Debricked, only the scan start is repeated on resume
+                    log.info("Scan of ciUploadId {} is started later: {}", ciUploadId, e.getMessage());
+                    return Mono.just(false);
+                });
+        return blocking(() -> uploadStore.advance(upload, DependencyUpload.Status.UPLOADED))
+                .then(started)
+                .flatMap(scanStarted -> scanStarted
+                        ? blocking(() -> {
+                            uploadStore.advance(upload, DependencyUpload.Status.SCAN_STARTED);
+                            uploadStore.handOver(upload);
+                        })
+                        : blocking(() -> uploadStore.defer(upload)))
+                .thenReturn(ciUploadId);
+    }
+
+    /**
+     * Sends the spooled content of a file and records its outcome. A file that failed on its
+     * last allowed attempt is given up and recorded as REJECTED.
+     *
+     * @return The upload ID if Debricked accepted the file; empty if it was rejected or given up
+     */
+    private Mono<String> sendFile(UploadFile file, DependencyUpload upload, String ciUploadId) {
+        UploadTarget target = new UploadTarget(upload.getRepositoryName(), upload.getCommitName());
+        return uploadFile(uploadStore.content(file), ciUploadId, target)
+                .flatMap(uploadId -> blocking(() -> uploadStore.recordFile(file, UploadFile.Status.UPLOADED, null))
+                        .thenReturn(uploadId))
+                .switchIfEmpty(Mono.defer(() -> giveUp(file, upload, null)))
+                .onErrorResume(e -> e instanceof IOException && !(e instanceof DebrickedUnavailableException), e -> {
+                    if (file.getAttempts() + 1 >= maxFileAttempts) {
+                        log.info("Giving up {} after {} attempts: {}", file.getFilename(), maxFileAttempts, e.getMessage());
+                        return giveUp(file, upload, e.getMessage());
+                    }
+                    return blocking(() -> uploadStore.recordFile(file, UploadFile.Status.FAILED, e.getMessage()))
+                            .then(Mono.error(e));
+                });
+    }
+
+    // Records a file that will not be sent again as REJECTED and tells the requester
+    private Mono<String> giveUp(UploadFile file, DependencyUpload upload, String error) {
+        return blocking(() -> {
+            uploadStore.recordFile(file, UploadFile.Status.REJECTED, error);
+            notificationService.notifyUploadFailed(upload.getEmail(), file.getFilename());
+        }).then(Mono.empty());
+    }
+
+    /**
+     * Uploads a single file, retrying I/O errors and answers Debricked marks as temporary (429
+     * and 5xx); the content is re-read from disk for each attempt. A file rejected by Debricked
+     * is not retried and completes empty. A call the rate governor did not let through fails
+     * right away.
+     */
+    private Mono<String> uploadFile(DependencyFile file, String ciUploadId, UploadTarget target) {
+        return Mono.defer(() -> tokenProvider.withToken(token -> debrickedClient.uploadFile(file, ciUploadId, target, token)))
+                .retryWhen(Retry.max(uploadRetries)
+                        .filter(e -> e instanceof DebrickedApiException api ? api.isRetryable()
+                                : !(e instanceof DebrickedUnavailableException))
+                        .doBeforeRetry(retry -> log.info("Retrying upload of {} after: {}", file.filename(),
+                                retry.failure().getMessage()))
+                        .onRetryExhaustedThrow((spec, retry) -> retry.failure()))
+                .onErrorResume(e -> e instanceof DebrickedApiException api && !api.isRetryable(), e -> {
+                    // Rejected by Debricked, sending the same file again would not help
+                    log.info("Upload of {} rejected: {}", file.filename(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // Runs blocking database and notification work off the event loop
+    private static <T> Mono<T> blocking(Callable<T> work) {
+        return Mono.fromCallable(work).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static Mono<Void> blocking(Runnable work) {
+        return Mono.<Void>fromRunnable(work).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private void deleteSpool(Path requestDir) {
+        try {
+            FileSystemUtils.deleteRecursively(requestDir);
+        } catch (IOException e) {
+            log.warn("Failed to delete spooled files in {}: {}", requestDir, e.getMessage());
+        }
+    }
+
+    // The ciUploadId returned by the first successful upload and the index of the next file
+    private record FirstUpload(String ciUploadId, int next) {
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Commits the scans found complete in one poll cycle as a single status transition, together
+ * with the notifications about them.
+ */
+@Component
+public class ScanCompletionWriter {
+
+    @Autowired
+    private DependencyUploadRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate; // Batches the per-row result updates
+
+    /**
+     * Marks the given uploads COMPLETED in one transaction and stores their vulnerability
+     * counts in one JDBC batch. Uploads that are no longer in progress, for example because
+     * another instance completed them first, are left as they are.
+     *
+     * @param vulnerabilitiesById The vulnerabilities found, by id of the upload whose scan reported 100% progress
+     * @param onCompleted         Called in the same transaction for every upload this call completed,
+     *                            so notifications queued there commit together with the status change
+     * @return The ids that were actually moved to COMPLETED by this call
+     */
+    @Transactional
+    public List<Long> complete(Map<Long, Integer> vulnerabilitiesById, Consumer<Long> onCompleted) {
+        if (vulnerabilitiesById.isEmpty()) {
+            return List.of();
+        }
+        // Lock the rows that are still in progress so the caller knows exactly which ones it completed
+        List<Long> inProgress = repository.lockIdsInStatus(vulnerabilitiesById.keySet(), DependencyUpload.Status.IN_PROGRESS);
+        if (!inProgress.isEmpty()) {
+            repository.transitionAll(inProgress, DependencyUpload.Status.IN_PROGRESS, DependencyUpload.Status.COMPLETED);
+            jdbcTemplate.batchUpdate("UPDATE dependency_upload SET vulnerabilities_found = ? WHERE id = ?", inProgress,
+                    inProgress.size(), (statement, id) -> {
+                        statement.setInt(1, vulnerabilitiesById.get(id));
+                        statement.setLong(2, id);
+                    });
+            inProgress.forEach(onCompleted);
+        }
+        return inProgress;
+    }
+
+    /**
+     * Stores a new upload that needs no status check, because the scan it shares with an
+     * earlier upload of the same files has finished already.
+     *
+     * @param upload   The upload, with the status and vulnerability count of the finished scan
+     * @param onStored Called in the same transaction with the stored upload, so notifications
+     *                 queued there commit together with it
+     * @return The stored upload
+     */
+    @Transactional
+    public DependencyUpload store(DependencyUpload upload, Consumer<DependencyUpload> onStored) {
+        DependencyUpload stored = repository.save(upload);
+        onStored.accept(stored);
+        return stored;
+    }
+
+    /**
+     * Marks an upload that is still in progress STALE.
+     *
+     * @param id      The id of the upload
+     * @param onStale Called in the same transaction if this call changed the status
+     * @return Whether the upload was moved to STALE by this call
+     */
+    @Transactional
+    public boolean markStale(Long id, Runnable onStale) {
+        if (repository.transition(id, DependencyUpload.Status.IN_PROGRESS, DependencyUpload.Status.STALE) == 0) {
+            return false; // Already moved on by another instance
+        }
+        onStale.run();
+        return true;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.repository.ScanResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clients waiting for the outcome of a scan. The status poller completes them in memory when
+ * it moves the scan out of IN_PROGRESS, so a waiting client costs no Debricked call and no
+ * database query until its scan is done or its wait ends.
+ *
+ * Waiters are local to this instance. A scan completed by another replica is found when the
+ * wait ends and the state is read again, so the client learns of it one wait later at most.
+ */
+@Component
+public class ScanResultWaiters implements MeterBinder {
+
+    @Autowired
+    private DependencyUploadRepository repository; // Repository for accessing DependencyUpload data
+
+    @Autowired
+    @Qualifier("scanResultExecutor")
+    private Executor resultExecutor; // Answers the waiting clients, never on the poller's threads
+
+    // Longest a client is held before it is answered with the current state and asks again
+    @Value("${debricked.result.max-wait-seconds:60}")
+    private long maxWaitSeconds = 60;
+
+    private final ConcurrentMap<String, Set<CompletableFuture<ScanResult>>> waiters = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Reads the current state of a scan.
+     *
+     * @return The state of its newest upload, empty if the ciUploadId is unknown
+     */
+    public Optional<ScanResult> find(String ciUploadId) {
+        List<ScanResult> results = repository.findScanResults(ciUploadId, Limit.of(1));
+        return results.isEmpty() ? Optional.empty() : Optional.of(results.get(0));
+    }
+
+    /**
+     * Waits for a scan to be done.
+     *
+     * @param current The state of the scan as just read
+     * @param wait    How long to wait, capped at the maximum wait; zero answers right away
+     * @return The outcome once the scan is done, or the state read again when the wait ends
+     */
+    public CompletableFuture<ScanResult> await(ScanResult current, Duration wait) {
+        long waitMillis = Math.min(Math.max(0, wait.toMillis()), getMaxWait().toMillis());
+        if (current.done() || waitMillis == 0) {
+            return CompletableFuture.completedFuture(current);
+        }
+        String ciUploadId = current.ciUploadId();
+        CompletableFuture<ScanResult> waiter = new CompletableFuture<>();
+        waiters.compute(ciUploadId, (key, scanWaiters) -> {
+            Set<CompletableFuture<ScanResult>> registered = scanWaiters != null ? scanWaiters : ConcurrentHashMap.newKeySet();
+            registered.add(waiter);
+            return registered;
+        });
+        waiting.incrementAndGet();
+
+        // The scan may have been completed between reading its state and registering the waiter
+        find(ciUploadId).filter(ScanResult::done).ifPresent(waiter::complete);
+        return waiter.orTimeout(waitMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> {
+                    waiting.decrementAndGet();
+                    remove(ciUploadId, waiter);
+                })
+                .handleAsync((result, error) -> result != null ? result : find(ciUploadId).orElse(current), resultExecutor);
+    }
+
+    /**
+     * Answers the clients waiting for the given scans. Called once the scans' new state is
+     * committed, so a client reading it again sees the same.
+     */
+    public void complete(Collection<ScanResult> results) {
+        for (ScanResult result : results) {
+            Set<CompletableFuture<ScanResult>> scanWaiters = waiters.remove(result.ciUploadId());
+            if (scanWaiters != null) {
+                scanWaiters.forEach(waiter -> waiter.complete(result));
+            }
+        }
+    }
+
+    public Duration getMaxWait() {
+        return Duration.ofSeconds(maxWaitSeconds);
+    }
+
+    int waiting() {
+        return waiting.get();
+    }
+
+    private void remove(String ciUploadId, CompletableFuture<ScanResult> waiter) {
+        waiters.computeIfPresent(ciUploadId, (key, scanWaiters) -> {
+            scanWaiters.remove(waiter);
+            return scanWaiters.isEmpty() ? null : scanWaiters;
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ruleengine.result.waiters", waiting, AtomicInteger::get)
+                .description("Clients waiting for the outcome of a scan").register(registry);
+    }
+}
@@ -1,155 +1,603 @@
 package com.example.ruleengine.service;
 
+import com.example.ruleengine.client.DebrickedClient;
+import com.example.ruleengine.client.DebrickedRateGovernor;
+import com.example.ruleengine.client.DebrickedUnavailableException;
+import com.example.ruleengine.client.ScanStatus;
 import com.example.ruleengine.entity.DependencyUpload;
 import com.example.ruleengine.repository.DependencyUploadRepository;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.http.HttpStatus;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
+import com.example.ruleengine.repository.PendingUpload;
+import com.example.ruleengine.repository.PreviousScan;
+import com.example.ruleengine.repository.ScanResult;
+import com.example.ruleengine.rules.Rule;
+import com.example.ruleengine.rules.RuleRegistry;
+import com.example.ruleengine.rules.RuleSet;
+import com.example.ruleengine.rules.ScanFacts;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpHeaders;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Value;
 
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
-public class ScanStatusCheckerService {
+public class ScanStatusCheckerService implements MeterBinder {
 
-    // URL for Debricked API
-    @Value("${debricked.api.url}")
-    private String debrickedApiUrl;
+    // Runs every poll interval; failures that repeat each cycle are counted by the meters and
+    // only logged at debug level
+    private static final Logger log = LoggerFactory.getLogger(ScanStatusCheckerService.class);
 
-    // Threshold for the number of vulnerabilities
-    @Value("${debricked.api.vulnerabilities.threshold}")
-    private int vulnerabilitiesThreshold;
+    @Autowired
+    private DebrickedClient debrickedClient; // Typed calls to the Debricked API
 
-    // API username for authentication
-    @Value("${debricked.api.username}")
-    private String apiUsername;
+    @Autowired
+    private DependencyUploadRepository repository; // Repository for accessing DependencyUpload data
+
+    @Autowired
+    private NotificationService notificationService; // Service for sending notifications
 
-    // API password for authentication
-    @Value("${debricked.api.password}")
-    private String apiPassword;
+    @Autowired
+    private DebrickedTokenProvider tokenProvider; // Shared, cached source of JWT tokens
 
     @Autowired
-    private RestTemplate restTemplate; // REST client for making API calls
+    private DebrickedRateGovernor governor; // Rate limit and circuit breaker of the Debricked calls
 
     @Autowired
-    private DependencyUploadRepository repository; // Repository for accessing DependencyUpload data
+    @Qualifier("statusCheckExecutor")
+    private Executor statusCheckExecutor; // Bounded pool running the individual status checks
 
     @Autowired
-    private NotificationService notificationService; // Service for sending notifications
+    private PollSchedule pollSchedule; // Decides when each upload is checked next
+
+    @Autowired
+    private ScanCompletionWriter completionWriter; // Commits the completions of a page in one transaction
+
+    @Autowired
+    private UploadClaimer claimer; // Leases due uploads to this instance so replicas do not check the same ones
+
+    @Autowired
+    private RuleRegistry ruleRegistry; // Alerting rules deciding which completed scans are reported
+
+    @Autowired
+    private TenantPolicyIndex policyIndex; // In-memory tenant policies with the thresholds and recipients per team
+
+    @Autowired
+    private FindingsStore findingsStore; // Normalized storage of the vulnerability findings of completed scans
 
-    // Scheduled method to check scan status every minute
-    @Scheduled(fixedRate = 5000) // Check every minute
+    @Autowired
+    private ScanResultWaiters resultWaiters; // CI clients waiting for the outcome of a scan
+
+    @Autowired(required = false)
+    private ObservationRegistry observationRegistry = ObservationRegistry.NOOP; // Timers and spans of the checks and writes
+
+    @Autowired(required = false)
+    private Tracer tracer = Tracer.NOOP; // Links each completion to the trace of its upload request
+
+    // Whether the vulnerability list of a completed scan is fetched and stored
+    @Value("${debricked.findings.enabled:true}")
+    private boolean findingsEnabled = true;
+
+    // Findings parsed and stored at a time, which bounds the memory used for a report
+    @Value("${debricked.findings.chunk-size:500}")
+    private int findingsChunkSize = 500;
+
+    // Most severe findings listed in a notification
+    @Value("${debricked.findings.report-limit:10}")
+    private int findingsReportLimit = 10;
+
+    // Schedule period of the status check, used to report cycles that overrun it
+    @Value("${debricked.poll.interval-ms:1000}")
+    private long pollIntervalMs = 1000;
+
+    // Number of due uploads loaded and checked at a time
+    @Value("${debricked.poll.page-size:500}")
+    private int pageSize = 500;
+
+    // Whether this scheduled method runs the poll cycles; off when the reactive poller runs them
+    @Value("${debricked.poll.blocking:true}")
+    private boolean blockingPoller = true;
+
+    private final AtomicLong lastCycleNanos = new AtomicLong();
+    private final LongAdder cycles = new LongAdder();
+    private final LongAdder totalCycleNanos = new LongAdder();
+    private final LongAdder failedChecks = new LongAdder();
+    private final LongAdder deferredChecks = new LongAdder();
+    private final LongAdder completedScans = new LongAdder();
+    private final LongAdder totalCompletionNanos = new LongAdder();
+
+    // Scheduled method to check the scan status of in-progress uploads that are due
+    @Scheduled(fixedRateString = "${debricked.poll.interval-ms:1000}")
     public void checkScanStatus() {
-        // Retrieve all uploads with IN_PROGRESS status
-        List<DependencyUpload> uploads = repository.findAllByStatus(DependencyUpload.Status.IN_PROGRESS);
-        System.out.println("checkScanStatus started ");
+        if (!blockingPoller) {
+            return;
+        }
+        if (!governor.isAvailable()) {
+            // Debricked is throttling us or down, the uploads stay due until it recovers
+            log.debug("Skipping scan status check, Debricked is unavailable");
+            return;
+        }
+        long cycleStart = System.nanoTime();
+        Instant now = Instant.now();
+        // Retrieve the first page of uploads with IN_PROGRESS status whose next check is due
+        List<PendingUpload> page = duePage(now, null);
+        if (page.isEmpty()) {
+            recordCycle(System.nanoTime() - cycleStart);
+            return;
+        }
 
-        // Set up HTTP headers for the API request
-        HttpHeaders headers = new HttpHeaders();
-        String token = null;
         try {
-            // Obtain JWT token for authorization
-            token = getJwtToken(apiUsername, apiPassword);
+            // Obtain JWT token for authorization, reusing the cached one when still valid; the calls
+            // below go through the provider, which logs in again if Debricked refuses this token
+            tokenProvider.getToken();
         } catch (IOException e) {
-            throw new RuntimeException(e); // Rethrow exception if token retrieval fails
+            // Without a token no status can be fetched, try again in the next cycle
+            log.debug("Skipping scan status check, JWT token retrieval failed: {}", e.getMessage());
+            return;
+        }
+        // Work through the due uploads one page at a time, so memory stays bounded by the page size,
+        // checking only those this instance manages to lease
+        while (!page.isEmpty()) {
+            List<PendingUpload> servable = servable(page);
+            List<PendingUpload> claimed = claimer.claim(servable, now);
+            if (!claimed.isEmpty()) {
+                checkPage(claimed);
+            }
+            if (servable.size() < page.size()) {
+                break; // The governor has no permits for more, the rest stay due for the next cycle
+            }
+            page = duePage(now, page);
         }
-        headers.set("Authorization", "Bearer "+token); // Set authorization header
-        headers.set("accept", "*/*"); // Set accept header for response type
 
-        // Create HTTP entity with the headers
-        HttpEntity<String> entity = new HttpEntity<>(headers);
+        recordCycle(System.nanoTime() - cycleStart);
+    }
 
-        // Loop through each upload and check its scan status
-        for (DependencyUpload upload : uploads) {
-            String ciUploadId = upload.getCiUploadId();
+    /**
+     * Loads the page of uploads due at the given instant that follows the previous page, or the
+     * first page if there is no previous one.
+     *
+     * @return The uploads, empty once the previous page was the last
+     */
+    List<PendingUpload> duePage(Instant now, List<PendingUpload> previous) {
+        if (previous == null) {
+            return repository.findDueForCheck(DependencyUpload.Status.IN_PROGRESS, now,
+                    Instant.EPOCH, 0L, Limit.of(pageSize));
+        }
+        if (previous.size() < pageSize) {
+            return List.of();
+        }
+        PendingUpload last = previous.get(previous.size() - 1);
+        return repository.findDueForCheck(DependencyUpload.Status.IN_PROGRESS, now,
+                last.nextCheckAt(), last.id(), Limit.of(pageSize));
+    }
 
-            // Make the GET request to check the scan status
-            ResponseEntity<Map> response = restTemplate.exchange(debrickedApiUrl+"ci/upload/status?ciUploadId=" + ciUploadId,
-                    HttpMethod.GET, entity, Map.class);
+    /**
+     * The head of a page that the governor can serve in this cycle. Only these are claimed, so
+     * uploads that would time out waiting for a permit are not leased away from the next cycle.
+     */
+    List<PendingUpload> servable(List<PendingUpload> page) {
+        int capacity = governor.pollCapacity();
+        return capacity >= page.size() ? page : page.subList(0, capacity);
+    }
 
-            // Check if the response is successful
-            if (response.getStatusCode().is2xxSuccessful()) {
-                Map<String, Object> body = response.getBody();
-                int progress = (int) body.get("progress"); // Get progress percentage
-                int vulnerabilitiesFound = (int) body.get("vulnerabilitiesFound"); // Get number of vulnerabilities found
+    /**
+     * Checks every scan of one page on the worker pool and waits for all of them; each call
+     * waits for response data at most debricked.poll.call-timeout-ms at a time, on top of the
+     * pool acquire and connect timeouts. The scans found complete are then committed together
+     * and notified.
+     */
+    private void checkPage(List<PendingUpload> page) {
+        PageResults results = new PageResults();
+        List<CompletableFuture<Void>> checks = new ArrayList<>(page.size());
+        for (List<PendingUpload> uploads : byScan(page)) {
+            checks.add(CompletableFuture.runAsync(() -> checkScan(uploads, results), statusCheckExecutor)
+                    .exceptionally(e -> {
+                        // A failing scan must not affect the others
+                        recordFailedCheck(uploads.get(0).ciUploadId(), e);
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0])).join();
 
-                // If progress is 100%, update the upload status to COMPLETED
-                if (progress == 100) {
-                    upload.setStatus(DependencyUpload.Status.COMPLETED); // Update status to COMPLETED
-                    repository.save(upload); // Save the updated status to the database
+        completePage(results);
+    }
 
-                    // If vulnerabilities exceed the threshold, send a notification
-                    if (vulnerabilitiesFound > vulnerabilitiesThreshold) {
-                        String email = upload.getEmail(); // Get the user's email
-                        String subject = "Vulnerabilities Detected in Your Dependencies"; // Email subject
-                        String message = createVulnerabilityReport(vulnerabilitiesFound); // Create message body
+    /**
+     * Groups the uploads of a page by the scan they are attached to, in page order, so that
+     * each scan is asked about once however many identical uploads share it.
+     */
+    static Collection<List<PendingUpload>> byScan(List<PendingUpload> page) {
+        Map<String, List<PendingUpload>> scans = new LinkedHashMap<>();
+        for (PendingUpload upload : page) {
+            scans.computeIfAbsent(upload.ciUploadId(), ciUploadId -> new ArrayList<>()).add(upload);
+        }
+        return scans.values();
+    }
 
-                        notificationService.sendEmail(email, subject, message); // Send email notification
-                    }
-                }
-            } else {
-                // Handle error response
-                System.out.println("Error fetching scan status for ciUploadId: " + ciUploadId);
+    /**
+     * Fetches the status of one scan and records the uploads attached to it as complete when
+     * the scan has finished.
+     */
+    private void checkScan(List<PendingUpload> uploads, PageResults results) {
+        // Fetch the scan status; errors, including answers other than 2xx, leave the uploads due
+        ScanStatus status;
+        try {
+            status = Observation.createNotStarted("debricked.poll.check", observationRegistry)
+                    .observeChecked(() -> tokenProvider.withToken(
+                            token -> debrickedClient.getScanStatus(uploads.get(0).ciUploadId(), token)));
+        } catch (IOException e) {
+            handleCheckError(uploads, e);
+            return;
+        }
+        handleStatus(uploads, status, results);
+    }
+
+    /**
+     * Handles a status check that did not get an answer. A call the governor did not let
+     * through never reached Debricked: the uploads of the scan are released and checked again
+     * once calls are let through, without counting as a failed check. Any other error leaves
+     * them due.
+     */
+    void handleCheckError(List<PendingUpload> uploads, Throwable e) {
+        if (e instanceof DebrickedUnavailableException unavailable) {
+            deferredChecks.increment();
+            Instant retryAt = Instant.now().plus(unavailable.getRetryAfter());
+            for (PendingUpload upload : uploads) {
+                Observation.createNotStarted("ruleengine.db.write", observationRegistry)
+                        .lowCardinalityKeyValue("operation", "poll.reschedule")
+                        .observe(() -> repository.reschedule(upload.id(), retryAt, upload.checkAttempts(),
+                                upload.lastProgress(), upload.lastProgressAt(), claimer.getOwner()));
             }
+            return;
+        }
+        recordFailedCheck(uploads.get(0).ciUploadId(), e);
+    }
+
+    /**
+     * Acts on the fetched status of one scan for every upload attached to it: a finished scan
+     * is evaluated per upload and added to the completions of its page, any other is scheduled
+     * for its next check. Blocks on the database and, for finished scans, on the findings fetch.
+     */
+    void handleStatus(List<PendingUpload> uploads, ScanStatus status, PageResults results) {
+        if (!status.isComplete()) {
+            scheduleNextCheck(uploads, status.progress());
+            return;
+        }
+        // The scan has finished, its uploads are moved to COMPLETED with the rest of the page; the
+        // rules are evaluated here, on the worker thread, so the completing transaction stays short
+        int vulnerabilitiesFound = status.vulnerabilitiesFound();
+        for (PendingUpload upload : uploads) {
+            FindingsSummary findings = findings(upload.ciUploadId(), results.findingsByScan);
+            TenantPolicyIndex.Policy policy = policyIndex.lookup(upload.repositoryName(), upload.email());
+            results.completions.add(new ScanCompletion(upload, vulnerabilitiesFound,
+                    matchRule(upload, vulnerabilitiesFound, policy, findings), policy.recipients(), findings));
+        }
+    }
+
+    /**
+     * Stores an upload that repeats the files of a scan that has finished already and reports
+     * it without asking Debricked: a completed scan is evaluated against its stored count and
+     * findings, a stale one is reported as stale. The notifications are queued in the same
+     * transaction as the upload.
+     *
+     * @param upload A new upload with the status and vulnerability count of the finished scan
+     */
+    void completeRepeat(DependencyUpload upload) {
+        Observation.createNotStarted("ruleengine.db.write", observationRegistry)
+                .lowCardinalityKeyValue("operation", "upload.save")
+                .observe(() -> completionWriter.store(upload, stored -> {
+                    if (stored.getStatus() == DependencyUpload.Status.STALE) {
+                        notificationService.notifyScanStale(stored.getEmail(), stored.getCiUploadId());
+                        return;
+                    }
+                    PendingUpload pending = new PendingUpload(stored.getId(), stored.getCiUploadId(), stored.getEmail(),
+                            stored.getRepositoryName(), stored.getCommitName(), stored.getCreatedAt(), null, 0, 100,
+                            stored.getCreatedAt(), stored.getTraceparent());
+                    int vulnerabilitiesFound = stored.getVulnerabilitiesFound();
+                    FindingsSummary findings = findingsEnabled
+                            ? findingsStore.summarize(stored.getCiUploadId(), findingsReportLimit) : null;
+                    TenantPolicyIndex.Policy policy = policyIndex.lookup(pending.repositoryName(), pending.email());
+                    notifyCompleted(new ScanCompletion(pending, vulnerabilitiesFound,
+                            matchRule(pending, vulnerabilitiesFound, policy, findings), policy.recipients(), findings));
+                }));
+    }
+
+    /**
+     * Commits and notifies the scans a page found complete, once all of its checks are done.
+     */
+    void completePage(PageResults results) {
+        if (!results.completions.isEmpty()) {
+            completeScans(results.completions);
         }
     }
 
+    void recordFailedCheck(String ciUploadId, Throwable e) {
+        failedChecks.increment();
+        log.debug("Error checking scan status for ciUploadId {}: {}", ciUploadId, e.getMessage());
+    }
+
     /**
-     * Creates a report message based on the number of vulnerabilities found.
+     * Returns the findings of a completed scan, fetching them once per page for all uploads
+     * attached to the scan.
+     */
+    private FindingsSummary findings(String ciUploadId,
+                                     ConcurrentMap<String, CompletableFuture<FindingsSummary>> findingsByScan) {
+        if (!findingsEnabled) {
+            return null;
+        }
+        CompletableFuture<FindingsSummary> mine = new CompletableFuture<>();
+        CompletableFuture<FindingsSummary> running = findingsByScan.putIfAbsent(ciUploadId, mine);
+        if (running != null) {
+            return running.join();
+        }
+        FindingsSummary findings = fetchFindings(ciUploadId);
+        mine.complete(findings);
+        return findings;
+    }
+
+    /**
+     * Streams the vulnerability list of a scan from Debricked into the findings tables,
+     * chunk by chunk, and summarizes it for the rules and the notification. Findings stored
+     * by an earlier attempt are replaced, so a retried completion stores them once.
      *
-     * @param vulnerabilitiesFound The number of vulnerabilities detected
-     * @return A formatted report message
+     * @return The summary, or null if the findings could not be fetched; the scan is then
+     *         evaluated on its vulnerability count alone
      */
-    private String createVulnerabilityReport(int vulnerabilitiesFound) {
-        return "A total of " + vulnerabilitiesFound + " vulnerabilities were detected in your dependencies.";
+    private FindingsSummary fetchFindings(String ciUploadId) {
+        FindingsSummary summary = new FindingsSummary(findingsReportLimit);
+        try {
+            findingsStore.deleteFindings(ciUploadId);
+            tokenProvider.withToken(token -> debrickedClient.readFindings(ciUploadId, token,
+                    body -> FindingsParser.parse(body, findingsChunkSize, chunk -> {
+                        findingsStore.store(ciUploadId, chunk);
+                        summary.addAll(chunk);
+                    })));
+            return summary;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to fetch the findings of ciUploadId {}: {}", ciUploadId, e.getMessage());
+            return null;
+        }
     }
 
     /**
-     * Retrieves a JWT token for API authentication.
+     * Evaluates the alerting rules against a completed scan.
      *
-     * @param username The API username
-     * @param password The API password
-     * @return The JWT token as a string
-     * @throws IOException if the token retrieval fails
-     */
-    String getJwtToken(String username, String password) throws IOException {
-        // Set up the POST request to obtain the JWT token
-        HttpPost post = new HttpPost("https://debricked.com/api/login_check");
-        post.setHeader("Content-Type", "application/x-www-form-urlencoded");
-
-        // Set up form data for the request
-        StringEntity entity = new StringEntity("_username=" + username + "&_password=" + password);
-        post.setEntity(entity);
-
-        // Execute the request and obtain the response
-        try (CloseableHttpClient client = HttpClients.createDefault();
-             CloseableHttpResponse response = client.execute(post)) {
-            // Check if the response is successful
-            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                String jsonResponse = EntityUtils.toString(response.getEntity()); // Get the response body
-                ObjectMapper mapper = new ObjectMapper(); // JSON mapper
-                JsonNode node = mapper.readTree(jsonResponse); // Parse the JSON response
-                return node.get("token").asText(); // Extract and return the token
+     * @param policy   The tenant policy of the upload, which provides the threshold
+     * @param findings Summary of the scan's findings, null if they are not known
+     * @return The first matching rule, or null if the scan is not to be reported
+     */
+    private Rule matchRule(PendingUpload upload, int vulnerabilitiesFound, TenantPolicyIndex.Policy policy,
+                           FindingsSummary findings) {
+        RuleSet rules = ruleRegistry.current();
+        PreviousScan previous = null;
+        if (rules.needsHistory() && upload.repositoryName() != null) {
+            // Only looked up when a rule compares against the previous scan of the repository
+            List<PreviousScan> previousScans = repository.findPreviousScans(upload.repositoryName(),
+                    DependencyUpload.Status.COMPLETED, upload.id(), Limit.of(1));
+            previous = previousScans.isEmpty() ? null : previousScans.get(0);
+        }
+        int previousVulnerabilities = previous == null ? -1 : previous.vulnerabilitiesFound();
+        if (findings == null) {
+            return rules.firstMatch(ScanFacts.of(vulnerabilitiesFound, previousVulnerabilities,
+                    policy.vulnerabilitiesThreshold(), upload.repositoryName(), upload.commitName(), upload.email()));
+        }
+        return rules.firstMatch(new ScanFacts(vulnerabilitiesFound, previousVulnerabilities,
+                newVulnerabilities(upload.ciUploadId(), vulnerabilitiesFound, previous), policy.vulnerabilitiesThreshold(),
+                findings.getCritical(), findings.getHigh(), findings.getMedium(), findings.getLow(), findings.getMaxCvss(),
+                findings.getLicenses(), upload.repositoryName(), upload.commitName(), upload.email()));
+    }
+
+    /**
+     * Counts the vulnerabilities of a completed scan, whose findings are stored, that the
+     * previous scan of its repository did not have. They are compared by CVE, so a scan that
+     * fixes one vulnerability and introduces another still has a new one; by count only if the
+     * findings of the previous scan are not stored.
+     */
+    private int newVulnerabilities(String ciUploadId, int vulnerabilitiesFound, PreviousScan previous) {
+        if (previous == null) {
+            return vulnerabilitiesFound;
+        }
+        if (previous.vulnerabilitiesFound() > 0) {
+            int byCve = findingsStore.countNewVulnerabilities(ciUploadId, previous.ciUploadId());
+            if (byCve >= 0) {
+                return byCve;
+            }
+        }
+        return ScanFacts.newByCount(vulnerabilitiesFound, previous.vulnerabilitiesFound());
+    }
+
+    /**
+     * Moves the completed uploads of a page to COMPLETED in one transaction and queues the
+     * notifications for those this cycle completed in the same transaction. If the write fails
+     * the uploads stay due and are checked again in the next cycle.
+     */
+    private void completeScans(Collection<ScanCompletion> completions) {
+        Map<Long, ScanCompletion> byId = new HashMap<>();
+        Map<Long, Integer> vulnerabilitiesById = new HashMap<>();
+        for (ScanCompletion completion : completions) {
+            byId.put(completion.upload().id(), completion);
+            vulnerabilitiesById.put(completion.upload().id(), completion.vulnerabilitiesFound());
+        }
+        try {
+            // Uploads already completed elsewhere are skipped, their users have been notified
+            List<Long> completed = Observation.createNotStarted("ruleengine.db.write", observationRegistry)
+                    .lowCardinalityKeyValue("operation", "scan.complete")
+                    .observe(() -> completionWriter.complete(vulnerabilitiesById, id -> notifyCompleted(byId.get(id))));
+            recordCompletions(completed.stream().map(byId::get).toList(), Instant.now());
+            resultWaiters.complete(completed.stream().map(byId::get)
+                    .map(completion -> new ScanResult(completion.upload().ciUploadId(), DependencyUpload.Status.COMPLETED,
+                            completion.vulnerabilitiesFound(), 100))
+                    .toList());
+        } catch (RuntimeException e) {
+            log.warn("Failed to store {} scan completions: {}", byId.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Queues the notifications of a completed scan within a span that links to the trace of
+     * its upload request; the queued messages carry that span on to the mail delivery.
+     */
+    private void notifyCompleted(ScanCompletion completion) {
+        Span span = TraceLinks.startLinked(tracer, "debricked.scan.completed",
+                        completion.upload().traceparent() != null ? List.of(completion.upload().traceparent()) : List.of())
+                .tag("ciUploadId", completion.upload().ciUploadId());
+        try (Tracer.SpanInScope ignored = tracer.withSpan(span)) {
+            queueNotifications(completion);
+        } finally {
+            span.end();
+        }
+    }
+
+    private void queueNotifications(ScanCompletion completion) {
+        // If an alerting rule matched the scan, send a notification
+        if (completion.matchedRule() != null) {
+            String email = completion.upload().email(); // Get the user's email
+            String message = VulnerabilityReport.compose(completion.vulnerabilitiesFound(), completion.matchedRule(),
+                    completion.findings()); // Create message body
+
+            // The uploader and the recipients of the tenant policy, each notified once
+            Set<String> recipients = new LinkedHashSet<>();
+            recipients.add(email);
+            recipients.addAll(completion.recipients());
+            for (String recipient : recipients) {
+                notificationService.notifyScanCompleted(recipient, completion.upload().ciUploadId(),
+                        completion.vulnerabilitiesFound(), message); // Send email notification
+            }
+        }
+    }
+
+    /**
+     * Works out when the uploads attached to a scan that is not complete yet should be checked
+     * again, or marks those stale that have been in progress for longer than the maximum age.
+     */
+    private void scheduleNextCheck(List<PendingUpload> uploads, int progress) {
+        Instant now = Instant.now();
+        List<PendingUpload> running = new ArrayList<>(uploads.size());
+        for (PendingUpload upload : uploads) {
+            if (pollSchedule.isStale(upload.createdAt(), now)) {
+                markStale(upload, progress);
             } else {
-                throw new IOException("Failed to retrieve JWT token: " + response.getStatusLine().getReasonPhrase()); // Handle errors
+                running.add(upload);
+            }
+        }
+        if (running.isEmpty()) {
+            return;
+        }
+
+        // All uploads of the scan follow the progress history of the one attached first, so
+        // they stay due together and the scan keeps being asked about once per check
+        PendingUpload first = running.stream().min(Comparator.comparing(PendingUpload::id)).orElseThrow();
+        boolean changed = first.lastProgress() == null || progress != first.lastProgress();
+        int unchangedChecks = changed ? 0 : first.checkAttempts() + 1;
+        Duration interval = pollSchedule.nextInterval(first.lastProgress(), first.lastProgressAt(),
+                progress, unchangedChecks, now);
+        Integer lastProgress = changed ? progress : first.lastProgress();
+        Instant lastProgressAt = changed ? now : first.lastProgressAt();
+        for (PendingUpload upload : running) {
+            Observation.createNotStarted("ruleengine.db.write", observationRegistry)
+                    .lowCardinalityKeyValue("operation", "poll.reschedule")
+                    .observe(() -> repository.reschedule(upload.id(), now.plus(interval), unchangedChecks,
+                            lastProgress, lastProgressAt, claimer.getOwner()));
+        }
+    }
+
+    private void markStale(PendingUpload upload, int progress) {
+        boolean marked = completionWriter.markStale(upload.id(),
+                () -> notificationService.notifyScanStale(upload.email(), upload.ciUploadId()));
+        if (marked) {
+            log.info("Scan for ciUploadId {} marked stale at {}%", upload.ciUploadId(), progress);
+            resultWaiters.complete(List.of(new ScanResult(upload.ciUploadId(), DependencyUpload.Status.STALE, null, progress)));
+        }
+    }
+
+    /**
+     * Records how long the given uploads took from their upload to the completion of their scan.
+     */
+    void recordCompletions(List<ScanCompletion> completions, Instant now) {
+        for (ScanCompletion completion : completions) {
+            if (completion.upload().createdAt() != null) {
+                completedScans.increment();
+                totalCompletionNanos.add(Duration.between(completion.upload().createdAt(), now).toNanos());
             }
         }
     }
+
+    void recordCycle(long durationNanos) {
+        lastCycleNanos.set(durationNanos);
+        cycles.increment();
+        totalCycleNanos.add(durationNanos);
+        if (TimeUnit.NANOSECONDS.toMillis(durationNanos) > pollIntervalMs) {
+            log.warn("checkScanStatus took {} ms, longer than the {} ms schedule period",
+                    TimeUnit.NANOSECONDS.toMillis(durationNanos), pollIntervalMs);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer.builder("debricked.poll.cycle", this,
+                        service -> service.cycles.sum(), service -> service.totalCycleNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Duration of scan status check cycles").register(registry);
+        Gauge.builder("debricked.poll.cycle.last", lastCycleNanos, nanos -> nanos.get() / 1e9)
+                .baseUnit("seconds").description("Duration of the last scan status check cycle").register(registry);
+        Gauge.builder("debricked.poll.cycle.period.ratio", lastCycleNanos,
+                        nanos -> TimeUnit.NANOSECONDS.toMillis(nanos.get()) / (double) pollIntervalMs)
+                .description("Last cycle duration relative to the schedule period, above 1 means cycles overrun")
+                .register(registry);
+        FunctionCounter.builder("debricked.poll.check.failures", failedChecks, LongAdder::sum)
+                .description("Scan status checks that failed or timed out").register(registry);
+        FunctionCounter.builder("debricked.poll.check.deferred", deferredChecks, LongAdder::sum)
+                .description("Scan status checks postponed because the governor let no call through").register(registry);
+        FunctionTimer.builder("debricked.scan.completion", this,
+                        service -> service.completedScans.sum(), service -> service.totalCompletionNanos.sum(),
+                        TimeUnit.NANOSECONDS)
+                .description("Time from an upload to the completion of its scan").register(registry);
+    }
+
+    /**
+     * The results of the status checks of one page, filled concurrently while they run.
+     */
+    static final class PageResults {
+        private final Queue<ScanCompletion> completions = new ConcurrentLinkedQueue<>();
+        // Uploads attached to the same scan share one fetch of its findings
+        private final ConcurrentMap<String, CompletableFuture<FindingsSummary>> findingsByScan = new ConcurrentHashMap<>();
+    }
+
+    // A scan that reported 100% progress in the current page, the rule it matched if any, the
+    // additional recipients of its tenant policy and the summary of its findings if known
+    private record ScanCompletion(PendingUpload upload, int vulnerabilitiesFound, Rule matchedRule, List<String> recipients,
+                                  FindingsSummary findings) {
+    }
 }
@@ -0,0 +1,140 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.TenantPolicy;
+import com.example.ruleengine.repository.TenantPolicyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of the tenant policies, hashed by tenant key, so that looking up the policy
+ * of a completed scan never costs a database round trip. The index is refreshed
+ * incrementally: only rows stamped with a revision newer than the last one seen are read.
+ */
+@Component
+public class TenantPolicyIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantPolicyIndex.class);
+
+    // Global threshold, used when neither a matching policy nor the wildcard policy sets one
+    @Value("${debricked.api.vulnerabilities.threshold}")
+    private int defaultThreshold;
+
+    @Autowired
+    private TenantPolicyRepository repository; // Repository for the policy table
+
+    // Policies by scope and key, e.g. "REPOSITORY:payments" or "EMAIL_DOMAIN:example.com"
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Highest revision applied to the index, -1 before the first load
+    private volatile long loadedRevision = -1;
+
+    /**
+     * Looks up the policy for a scan: a policy for its repository wins over one for the
+     * uploader's email domain, which wins over the wildcard policy. Settings a policy leaves
+     * open are taken from the wildcard policy and finally from the global threshold.
+     *
+     * @param repositoryName Repository of the upload, may be null
+     * @param email          Address of the uploader
+     */
+    public Policy lookup(String repositoryName, String email) {
+        if (loadedRevision < 0) {
+            refresh();
+        }
+        Entry specific = repositoryName == null ? null : entries.get(key(TenantPolicy.Scope.REPOSITORY, repositoryName));
+        if (specific == null) {
+            String domain = emailDomain(email);
+            specific = domain.isEmpty() ? null : entries.get(key(TenantPolicy.Scope.EMAIL_DOMAIN, domain));
+        }
+        Entry wildcard = entries.get(key(TenantPolicy.Scope.DEFAULT, TenantPolicy.WILDCARD));
+
+        Integer threshold = specific != null ? specific.vulnerabilitiesThreshold() : null;
+        if (threshold == null && wildcard != null) {
+            threshold = wildcard.vulnerabilitiesThreshold();
+        }
+        List<String> recipients = specific != null && !specific.recipients().isEmpty() ? specific.recipients()
+                : wildcard != null ? wildcard.recipients() : List.of();
+        return new Policy(threshold != null ? threshold : defaultThreshold, recipients);
+    }
+
+    // Scheduled method applying the policy changes made since the last refresh, here or on other instances
+    @Scheduled(fixedDelayString = "${tenant-policy.refresh-interval-ms:10000}")
+    public synchronized void refresh() {
+        List<TenantPolicy> changed;
+        try {
+            changed = repository.findByRevisionGreaterThanOrderByRevisionAsc(loadedRevision);
+        } catch (RuntimeException e) {
+            // Keep serving the policies already loaded
+            log.warn("Failed to refresh tenant policies: {}", e.getMessage());
+            return;
+        }
+        long revision = loadedRevision;
+        for (TenantPolicy policy : changed) {
+            String key = key(policy.getScope(), policy.getTenantKey());
+            if (policy.isDeleted()) {
+                entries.remove(key);
+            } else {
+                entries.put(key, new Entry(policy.getVulnerabilitiesThreshold(), parseRecipients(policy.getRecipients())));
+            }
+            revision = Math.max(revision, policy.getRevision());
+        }
+        // An empty table still counts as loaded
+        loadedRevision = Math.max(revision, 0);
+        if (!changed.isEmpty()) {
+            log.debug("Applied {} tenant policy changes up to revision {}", changed.size(), revision);
+        }
+    }
+
+    /**
+     * Number of policies in the index.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    static String key(TenantPolicy.Scope scope, String tenantKey) {
+        // Domains are case insensitive, repository names are matched as given
+        String normalized = scope == TenantPolicy.Scope.EMAIL_DOMAIN ? tenantKey.toLowerCase(Locale.ROOT) : tenantKey;
+        return scope.name() + ":" + normalized;
+    }
+
+    private static String emailDomain(String email) {
+        int at = email == null ? -1 : email.lastIndexOf('@');
+        return at < 0 ? "" : email.substring(at + 1);
+    }
+
+    static List<String> parseRecipients(String recipients) {
+        if (recipients == null || recipients.isBlank()) {
+            return List.of();
+        }
+        List<String> parsed = new ArrayList<>();
+        for (String recipient : recipients.split(",")) {
+            if (!recipient.isBlank()) {
+                parsed.add(recipient.strip());
+            }
+        }
+        return List.copyOf(parsed);
+    }
+
+    // One policy as held in the index
+    private record Entry(Integer vulnerabilitiesThreshold, List<String> recipients) {
+    }
+
+    /**
+     * The settings that apply to a scan.
+     *
+     * @param vulnerabilitiesThreshold Scans with more vulnerabilities are reported
+     * @param recipients               Addresses notified in addition to the uploader
+     */
+    public record Policy(int vulnerabilitiesThreshold, List<String> recipients) {
+    }
+}
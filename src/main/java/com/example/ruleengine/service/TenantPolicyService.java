@@ -0,0 +1,131 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.TenantPolicy;
+import com.example.ruleengine.repository.TenantPolicyRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Creates, changes and deletes tenant policies, stamping every change with the next revision
+ * so that {@link TenantPolicyIndex} instances pick it up on their next refresh.
+ */
+@Service
+public class TenantPolicyService {
+
+    @Autowired
+    private TenantPolicyRepository repository; // Repository for the policy table
+
+    @Autowired
+    private TenantPolicyIndex policyIndex; // This instance's index, refreshed once a change has committed
+
+    /**
+     * Lists the policies that are in effect.
+     */
+    public List<TenantPolicy> findAll() {
+        return repository.findAllByDeletedFalseOrderByScopeAscTenantKeyAsc();
+    }
+
+    /**
+     * Creates or replaces the policy of a tenant.
+     *
+     * @param scope                    Whether the key is a repository or an email domain, or the wildcard
+     * @param tenantKey                The repository name or email domain, '*' for the wildcard
+     * @param vulnerabilitiesThreshold Scans with more vulnerabilities are reported, null inherits
+     * @param recipients               Comma separated addresses notified in addition to the uploader
+     * @return The stored policy
+     */
+    @Transactional
+    public TenantPolicy save(TenantPolicy.Scope scope, String tenantKey, Integer vulnerabilitiesThreshold, String recipients) {
+        return write(scope, tenantKey, policy -> {
+            policy.setVulnerabilitiesThreshold(vulnerabilitiesThreshold);
+            policy.setRecipients(recipients);
+            policy.setDeleted(false);
+        });
+    }
+
+    /**
+     * Deletes the policy of a tenant, which then falls back to the wildcard policy.
+     *
+     * @return Whether there was a policy to delete
+     */
+    @Transactional
+    public boolean delete(TenantPolicy.Scope scope, String tenantKey) {
+        if (scope == TenantPolicy.Scope.DEFAULT) {
+            throw new IllegalArgumentException("The wildcard policy cannot be deleted, clear its settings instead");
+        }
+        Optional<TenantPolicy> existing = repository.findByScopeAndTenantKey(scope, normalize(scope, tenantKey));
+        if (existing.isEmpty() || existing.get().isDeleted()) {
+            return false;
+        }
+        write(scope, tenantKey, policy -> policy.setDeleted(true));
+        return true;
+    }
+
+    /**
+     * Applies a change to a policy row under the next revision. Writers serialize on the lock of
+     * the wildcard row, so revisions become visible in the order they were handed out and a
+     * refresh that has seen revision n never misses a later commit of a revision below n.
+     */
+    private TenantPolicy write(TenantPolicy.Scope scope, String tenantKey, Consumer<TenantPolicy> change) {
+        String key = normalize(scope, tenantKey);
+        TenantPolicy wildcard = repository.lockByScopeAndTenantKey(TenantPolicy.Scope.DEFAULT, TenantPolicy.WILDCARD)
+                .orElseGet(this::createWildcard);
+        long revision = repository.findMaxRevision() + 1;
+
+        TenantPolicy policy;
+        if (scope == TenantPolicy.Scope.DEFAULT) {
+            policy = wildcard;
+        } else {
+            policy = repository.findByScopeAndTenantKey(scope, key).orElseGet(() -> {
+                TenantPolicy created = new TenantPolicy();
+                created.setScope(scope);
+                created.setTenantKey(key);
+                return created;
+            });
+        }
+        change.accept(policy);
+        policy.setRevision(revision);
+        policy.setUpdatedAt(Instant.now());
+        TenantPolicy saved = repository.save(policy);
+
+        // The change is visible to this instance right away, other instances see it on their next refresh
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    policyIndex.refresh();
+                }
+            });
+        }
+        return saved;
+    }
+
+    // The wildcard row is normally created by schema.sql; a concurrent creation fails on uk_tenant_policy
+    private TenantPolicy createWildcard() {
+        TenantPolicy wildcard = new TenantPolicy();
+        wildcard.setScope(TenantPolicy.Scope.DEFAULT);
+        wildcard.setTenantKey(TenantPolicy.WILDCARD);
+        wildcard.setUpdatedAt(Instant.now());
+        return repository.saveAndFlush(wildcard);
+    }
+
+    private static String normalize(TenantPolicy.Scope scope, String tenantKey) {
+        if (scope == TenantPolicy.Scope.DEFAULT) {
+            return TenantPolicy.WILDCARD;
+        }
+        if (tenantKey == null || tenantKey.isBlank()) {
+            throw new IllegalArgumentException("A tenant key is required for " + scope + " policies");
+        }
+        String key = tenantKey.strip();
+        return scope == TenantPolicy.Scope.EMAIL_DOMAIN ? key.toLowerCase(Locale.ROOT) : key;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.ruleengine.service;
+
+import io.micrometer.tracing.Link;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.TraceContext;
+import io.micrometer.tracing.Tracer;
+
+import java.util.Collection;
+
+/**
+ * Connects the traces of one upload across the points where it is picked up again later, by
+ * another thread or instance: the upload request, the poll cycle that sees its scan complete
+ * and the batch that emails the result. The trace context is stored with the row in W3C
+ * traceparent form, and the later span links back to it instead of continuing it, so each
+ * poll cycle and mail batch stays its own trace.
+ */
+final class TraceLinks {
+
+    private TraceLinks() {
+    }
+
+    /**
+     * Returns the current span as a traceparent, or null if there is none.
+     */
+    static String traceparent(Tracer tracer) {
+        Span span = tracer.currentSpan();
+        if (span == null || span.context() == null || span.context().traceId().isEmpty()) {
+            return null; // No tracing, or the no-op tracer
+        }
+        TraceContext context = span.context();
+        return "00-" + context.traceId() + "-" + context.spanId() + "-"
+                + (Boolean.TRUE.equals(context.sampled()) ? "01" : "00");
+    }
+
+    /**
+     * Starts a span that links to the spans the given traceparents name; malformed or missing
+     * ones are skipped. The caller puts it in scope and ends it.
+     */
+    static Span startLinked(Tracer tracer, String name, Collection<String> traceparents) {
+        Span.Builder builder = tracer.spanBuilder().name(name);
+        for (String traceparent : traceparents) {
+            TraceContext context = parse(tracer, traceparent);
+            if (context != null) {
+                builder.addLink(new Link(context));
+            }
+        }
+        return builder.start();
+    }
+
+    // version-traceId-spanId-flags, e.g. 00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01
+    private static TraceContext parse(Tracer tracer, String traceparent) {
+        if (traceparent == null || traceparent.length() != 55) {
+            return null;
+        }
+        String[] parts = traceparent.split("-");
+        if (parts.length != 4 || parts[1].length() != 32 || parts[2].length() != 16) {
+            return null;
+        }
+        return tracer.traceContextBuilder().traceId(parts[1]).spanId(parts[2])
+                .sampled(parts[3].endsWith("1")).build();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.repository.UploadBacklog;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes how many scans are waiting for the status poller and how long the oldest of them
+ * has been waiting. Both come from one aggregate query that runs on a schedule, so scraping
+ * the gauges never touches the database.
+ */
+@Component
+public class UploadBacklogMetrics implements MeterBinder {
+
+    @Autowired
+    private DependencyUploadRepository repository; // Repository for accessing DependencyUpload data
+
+    private final AtomicLong inProgress = new AtomicLong();
+    private final AtomicReference<Instant> oldestCreatedAt = new AtomicReference<>();
+
+    // Scheduled method refreshing the backlog the gauges report
+    @Scheduled(fixedDelayString = "${debricked.metrics.backlog-refresh-ms:15000}")
+    public void refresh() {
+        try {
+            UploadBacklog backlog = repository.findBacklog(DependencyUpload.Status.IN_PROGRESS);
+            inProgress.set(backlog.count() != null ? backlog.count() : 0);
+            oldestCreatedAt.set(backlog.oldestCreatedAt());
+        } catch (RuntimeException e) {
+            // The gauges keep the last known values until the database answers again
+            System.out.println("Failed to refresh the upload backlog metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Seconds the oldest in-progress upload has been waiting for its scan, 0 if there is none.
+     */
+    double oldestAgeSeconds(Instant now) {
+        Instant oldest = oldestCreatedAt.get();
+        return oldest == null ? 0 : Math.max(0, Duration.between(oldest, now).toMillis() / 1e3);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("debricked.uploads.in_progress", inProgress, AtomicLong::get)
+                .description("Uploads whose scan the status poller is waiting for").register(registry);
+        Gauge.builder("debricked.uploads.in_progress.oldest.age", this, metrics -> metrics.oldestAgeSeconds(Instant.now()))
+                .baseUnit("seconds").description("Time the oldest in-progress upload has been waiting for its scan")
+                .register(registry);
+    }
+}
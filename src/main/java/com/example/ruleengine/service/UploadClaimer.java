@@ -0,0 +1,92 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.repository.PendingUpload;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Leases due uploads to this poller instance, so that with several replicas polling the same
+ * table every upload is checked by exactly one of them. A lease that is not released, for
+ * example because the instance crashed, expires and the upload becomes claimable again.
+ */
+@Component
+public class UploadClaimer {
+
+    @Autowired
+    private DependencyUploadRepository repository;
+
+    // Identifies this instance in lease_owner; a random id unless configured
+    @Value("${debricked.poll.instance-id:#{T(java.util.UUID).randomUUID().toString()}}")
+    private String owner;
+
+    // How long a claim holds; must be longer than checking one page takes
+    @Value("${debricked.poll.lease-seconds:120}")
+    private long leaseSeconds = 120;
+
+    /**
+     * Claims the given due uploads for this instance.
+     *
+     * @param candidates Uploads found due and unleased
+     * @param now        The time the candidates were found due at
+     * @return The candidates this instance won, followed by the other in-progress uploads
+     *         attached to their scans that it could lease too; the others are being checked elsewhere
+     */
+    public List<PendingUpload> claim(List<PendingUpload> candidates, Instant now) {
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+        List<Long> ids = candidates.stream().map(PendingUpload::id).toList();
+        Instant leaseExpiresAt = now.plusSeconds(leaseSeconds).truncatedTo(ChronoUnit.MICROS);
+        int claimed = repository.claim(ids, DependencyUpload.Status.IN_PROGRESS, owner, leaseExpiresAt, now);
+        if (claimed == 0) {
+            return List.of();
+        }
+        if (claimed == ids.size()) {
+            return withAttached(candidates, leaseExpiresAt, now);
+        }
+        // Some rows went to another instance in between, keep only the ones leased to us
+        Set<Long> won = new HashSet<>(repository.findIdsLeasedBy(ids, owner));
+        return withAttached(candidates.stream().filter(upload -> won.contains(upload.id())).toList(), leaseExpiresAt, now);
+    }
+
+    /**
+     * Adds the other in-progress uploads attached to the scans of the won ones, due or not, so
+     * that a scan shared by identical uploads is asked about once for all of them and their
+     * next checks stay together.
+     */
+    private List<PendingUpload> withAttached(List<PendingUpload> won, Instant leaseExpiresAt, Instant now) {
+        if (won.isEmpty()) {
+            return won;
+        }
+        Set<String> scans = new HashSet<>();
+        Set<Long> wonIds = new HashSet<>();
+        for (PendingUpload upload : won) {
+            scans.add(upload.ciUploadId());
+            wonIds.add(upload.id());
+        }
+        if (repository.claimAttached(scans, DependencyUpload.Status.IN_PROGRESS, owner, leaseExpiresAt, now) == 0) {
+            return won;
+        }
+        List<PendingUpload> all = new ArrayList<>(won);
+        for (PendingUpload attached : repository.findAttachedLeasedBy(scans, DependencyUpload.Status.IN_PROGRESS, owner)) {
+            if (!wonIds.contains(attached.id())) {
+                all.add(attached);
+            }
+        }
+        return all;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+}
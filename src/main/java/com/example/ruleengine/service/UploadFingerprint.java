@@ -0,0 +1,65 @@
+package com.example.ruleengine.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Computes a content address for a set of dependency files, so that identical uploads
+ * can be recognised regardless of the order in which the files were sent.
+ */
+final class UploadFingerprint {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private UploadFingerprint() {
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 over the names and contents of the files, sorted by name.
+     *
+     * @throws IOException If a file cannot be read
+     */
+    static String sha256(List<DependencyFile> files) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        List<DependencyFile> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparing(file -> String.valueOf(file.filename())));
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (DependencyFile file : sorted) {
+            // Name and content are separated by their lengths so that boundaries cannot shift
+            byte[] name = String.valueOf(file.filename()).getBytes(StandardCharsets.UTF_8);
+            updateLength(digest, name.length);
+            digest.update(name);
+
+            long length = 0;
+            try (InputStream in = file.content().getInputStream()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    length += read;
+                }
+            }
+            updateLength(digest, length);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void updateLength(MessageDigest digest, long length) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            digest.update((byte) (length >>> shift));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.entity.UploadJob;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.repository.UploadJobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Accepts uploads for background processing so that the request thread is released
+ * as soon as the files are spooled to disk.
+ *
+ * The files are recorded as an upload before the request returns, and the job reports the
+ * progress of that upload: if this instance stops before the job has run, or the upload has
+ * to wait for Debricked, {@link UploadRecoveryService} resumes it and the job follows.
+ */
+@Service
+public class UploadJobService {
+
+    static final String PENDING_MESSAGE = "Upload is pending, it is resumed once Debricked can be reached";
+
+    @Autowired
+    private UploadJobRepository jobRepository; // Repository for upload jobs
+
+    @Autowired
+    private DependencyUploadRepository uploadRepository; // The uploads the jobs report on
+
+    @Autowired
+    private DebrickedService debrickedService; // Service for handling dependency uploads
+
+    @Autowired
+    private UploadStateStore uploadStore; // Persisted uploads and their leases
+
+    @Autowired
+    private NotificationService notificationService; // Service for sending notifications
+
+    @Autowired
+    @Qualifier("uploadJobExecutor")
+    private Executor jobExecutor; // Bounded pool running the Debricked pipeline
+
+    /**
+     * Records the files as an upload and queues a job that uploads them to Debricked.
+     *
+     * @param files The files of the request
+     * @param email Email address for notifications
+     * @param target Repository and commit the files belong to
+     * @return The queued job
+     * @throws IOException If the files cannot be spooled
+     * @throws RejectedExecutionException If the job queue is full
+     */
+    public UploadJob submit(MultipartFile[] files, String email, UploadTarget target) throws IOException {
+        List<DependencyFile> dependencyFiles = new ArrayList<>();
+        for (MultipartFile file : files) {
+            dependencyFiles.add(DependencyFile.of(file));
+        }
+        UploadStateStore.StoredUpload stored = debrickedService.receive(dependencyFiles, email, target);
+
+        UploadJob job = new UploadJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setEmail(email);
+        job.setUploadId(stored.upload().getId());
+        updateState(job, UploadJob.State.QUEUED, null, null);
+        try {
+            jobExecutor.execute(() -> run(job, stored));
+        } catch (RejectedExecutionException e) {
+            // The client is told to retry, so the upload must not be resumed as well
+            updateState(job, UploadJob.State.FAILED, null, e.getMessage());
+            uploadStore.discard(stored.upload());
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * Looks up a job by its id, with the state of its upload: an upload resumed after a restart
+     * or a wait for Debricked is reported as it gets on.
+     */
+    public Optional<UploadJob> findJob(String id) {
+        Optional<UploadJob> job = jobRepository.findById(id);
+        job.filter(found -> found.getUploadId() != null)
+                .ifPresent(found -> uploadRepository.findById(found.getUploadId())
+                        .ifPresent(upload -> reportUpload(found, upload)));
+        return job;
+    }
+
+    /**
+     * Runs the Debricked pipeline for a queued job and records its outcome.
+     */
+    void run(UploadJob job, UploadStateStore.StoredUpload stored) {
+        if (!uploadStore.renew(stored.upload())) {
+            // Queued for longer than the lease, the recovery may have resumed the upload already
+            System.out.println("Upload of job " + job.getId() + " is left to the recovery");
+            return;
+        }
+        updateState(job, UploadJob.State.RUNNING, null, null);
+        try {
+            String ciUploadId = debrickedService.uploadReceived(stored);
+            if (isPending(stored.upload(), Instant.now())) {
+                updateState(job, UploadJob.State.QUEUED, ciUploadId, PENDING_MESSAGE);
+            } else if (ciUploadId == null) {
+                updateState(job, UploadJob.State.FAILED, null, "File Upload Failed");
+            } else {
+                updateState(job, UploadJob.State.SUCCEEDED, ciUploadId, "Files uploaded successfully");
+            }
+        } catch (Exception e) {
+            // Log error message for debugging
+            System.out.println("File upload failed: " + e.getMessage());
+
+            // Send email notification about the failure
+            notificationService.sendEmail(job.getEmail(), "File upload failed", e.getMessage());
+            updateState(job, UploadJob.State.FAILED, null, e.getMessage());
+        }
+    }
+
+    // Reports the stored state of the job's upload, which may have moved on since the job ran
+    private void reportUpload(UploadJob job, DependencyUpload upload) {
+        switch (upload.getStatus()) {
+            case IN_PROGRESS, COMPLETED, STALE -> {
+                job.setState(UploadJob.State.SUCCEEDED);
+                job.setCiUploadId(upload.getCiUploadId());
+                job.setMessage("Files uploaded successfully");
+            }
+            case FAILED -> {
+                if (job.getState() != UploadJob.State.FAILED) {
+                    job.setState(UploadJob.State.FAILED);
+                    job.setMessage("File Upload Failed");
+                }
+            }
+            default -> {
+                if (isPending(upload, Instant.now())) {
+                    job.setState(UploadJob.State.QUEUED);
+                    job.setCiUploadId(upload.getCiUploadId());
+                    job.setMessage(PENDING_MESSAGE);
+                }
+            }
+        }
+    }
+
+    // Whether an upload waits to be resumed: released for later, or left behind by a stopped instance
+    private static boolean isPending(DependencyUpload upload, Instant now) {
+        return UploadStateStore.RESUMABLE.contains(upload.getStatus())
+                && (upload.getLeaseExpiresAt() == null || !upload.getLeaseExpiresAt().isAfter(now));
+    }
+
+    private void updateState(UploadJob job, UploadJob.State state, String ciUploadId, String message) {
+        Instant now = Instant.now();
+        if (job.getCreatedAt() == null) {
+            job.setCreatedAt(now);
+        }
+        job.setState(state);
+        job.setCiUploadId(ciUploadId);
+        job.setMessage(message);
+        job.setUpdatedAt(now);
+        jobRepository.save(job);
+    }
+}
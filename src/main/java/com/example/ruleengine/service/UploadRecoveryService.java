@@ -0,0 +1,96 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.client.DebrickedApiException;
+import com.example.ruleengine.client.DebrickedRateGovernor;
+import com.example.ruleengine.entity.DependencyUpload;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Resumes uploads whose instance stopped before their scan reached the status poller, for
+ * example because it was restarted halfway through sending the files. Each upload continues
+ * from its last persisted state: files already accepted are not sent again, and an upload whose
+ * scan was already started is only handed over.
+ *
+ * Runs right after startup and then periodically, which also picks up the uploads of a replica
+ * that went away. An upload is only taken over once the lease of its instance has expired.
+ */
+@Service
+public class UploadRecoveryService {
+
+    @Autowired
+    private UploadStateStore uploadStore; // Persisted uploads and their leases
+
+    @Autowired
+    private DebrickedService debrickedService; // Sends the files and starts the scan
+
+    @Autowired
+    private NotificationService notificationService; // Service for sending notifications
+
+    @Autowired
+    private DebrickedRateGovernor governor; // Rate limit and circuit breaker of the Debricked calls
+
+    // Uploads resumed per run, one after another
+    @Value("${debricked.upload.recovery-batch-size:20}")
+    private int batchSize = 20;
+
+    @Scheduled(fixedDelayString = "${debricked.upload.recovery-interval-ms:60000}")
+    public void recoverUploads() {
+        if (!governor.isAvailable()) {
+            return; // Debricked is throttling us or down, the uploads wait for a later run
+        }
+        Instant now = Instant.now();
+        List<Long> ids = uploadStore.findResumable(now, batchSize);
+        int resumed = 0;
+        for (Long id : ids) {
+            Optional<UploadStateStore.StoredUpload> claimed = uploadStore.claim(id, now);
+            if (claimed.isPresent()) {
+                resume(claimed.get());
+                resumed++;
+            }
+        }
+        if (resumed > 0) {
+            System.out.println("Resumed " + resumed + " interrupted uploads");
+        }
+    }
+
+    /**
+     * Resumes one claimed upload. If Debricked is unavailable or a call can be retried, the
+     * upload keeps its state and is released for the next run; a failure that would repeat
+     * gives it up and tells the requester.
+     */
+    void resume(UploadStateStore.StoredUpload stored) {
+        DependencyUpload upload = stored.upload();
+        System.out.println("Resuming upload " + upload.getId() + " from " + upload.getStatus());
+        try {
+            String ciUploadId = debrickedService.resume(stored);
+            if (ciUploadId == null) {
+                System.out.println("Upload " + upload.getId() + " failed, Debricked accepted none of its files");
+            }
+        } catch (IOException e) {
+            if (e instanceof DebrickedApiException apiError && !apiError.isRetryable()) {
+                giveUp(upload, e);
+                return;
+            }
+            System.out.println("Upload " + upload.getId() + " stays " + upload.getStatus() + ": " + e.getMessage());
+            uploadStore.defer(upload);
+        } catch (Exception e) {
+            giveUp(upload, e);
+        }
+    }
+
+    // Fails the upload and tells the requester, unless another instance has taken it over
+    private void giveUp(DependencyUpload upload, Exception e) {
+        System.out.println("Resuming upload " + upload.getId() + " failed: " + e.getMessage());
+        if (uploadStore.fail(upload)) {
+            notificationService.sendEmail(upload.getEmail(), "File upload failed", e.getMessage());
+        }
+    }
+}
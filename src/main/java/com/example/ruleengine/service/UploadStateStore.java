@@ -0,0 +1,314 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.entity.UploadFile;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.repository.UploadFileRepository;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.Tracer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Persists every step of an upload before the scan is handed to the status poller: the upload
+ * row with its state, and one row per file with its spooled content and outcome. An instance
+ * holds a lease on the uploads it is working on and extends it with every step; an upload whose
+ * lease ran out, because its instance crashed or was restarted, can be claimed and resumed.
+ *
+ * Transitions are conditional on the lease, so an instance that lost it cannot overwrite the
+ * progress of the instance that took the upload over.
+ */
+@Component
+public class UploadStateStore {
+
+    // States an upload can be resumed from
+    public static final Set<DependencyUpload.Status> RESUMABLE = EnumSet.of(DependencyUpload.Status.RECEIVED,
+            DependencyUpload.Status.UPLOADING, DependencyUpload.Status.UPLOADED, DependencyUpload.Status.SCAN_STARTED);
+
+    // Files are spooled to <spool-dir>/uploads/<upload id> until the scan has started
+    @Value("${debricked.upload.spool-dir:${java.io.tmpdir}/ruleengine-spool}")
+    private String spoolDir;
+
+    // How long an upload stays with its instance without progress before another one may resume it
+    @Value("${debricked.upload.lease-seconds:600}")
+    private long leaseSeconds = 600;
+
+    @Autowired
+    private DependencyUploadRepository repository;
+
+    @Autowired
+    private UploadFileRepository fileRepository;
+
+    @Autowired
+    private UploadClaimer claimer; // Names this instance in lease_owner
+
+    @Autowired(required = false)
+    private ObservationRegistry observationRegistry = ObservationRegistry.NOOP; // Timers and spans of the writes
+
+    @Autowired(required = false)
+    private Tracer tracer = Tracer.NOOP; // Trace of the request, stored with the upload
+
+    /**
+     * An upload together with its files, in request order.
+     */
+    public record StoredUpload(DependencyUpload upload, List<UploadFile> files) {
+    }
+
+    /**
+     * Records a new upload as RECEIVED, leased to this instance, and spools its files so they
+     * can still be sent after a restart.
+     *
+     * @param contentHash The content hash of the files, null if deduplication is off
+     * @throws IOException If a file cannot be spooled; the upload is then FAILED
+     */
+    public StoredUpload receive(List<DependencyFile> files, String email, String contentHash, UploadTarget target)
+            throws IOException {
+        Instant now = Instant.now();
+        DependencyUpload upload = new DependencyUpload();
+        upload.setEmail(email);
+        upload.setRepositoryName(target.repositoryName());
+        upload.setCommitName(target.commitName());
+        upload.setContentHash(contentHash);
+        upload.setStatus(DependencyUpload.Status.RECEIVED);
+        upload.setCreatedAt(now);
+        upload.setLeaseOwner(claimer.getOwner());
+        upload.setLeaseExpiresAt(leaseUntil(now));
+        upload.setTraceparent(TraceLinks.traceparent(tracer));
+        observeWrite("upload.save", () -> repository.save(upload));
+
+        Path uploadDir = uploadDir(upload.getId());
+        List<UploadFile> stored = new ArrayList<>();
+        try {
+            Files.createDirectories(uploadDir);
+            for (int i = 0; i < files.size(); i++) {
+                DependencyFile file = files.get(i);
+                Path part = uploadDir.resolve(i + ".part");
+                spool(file, part);
+                UploadFile uploadFile = new UploadFile();
+                uploadFile.setUploadId(upload.getId());
+                uploadFile.setFileIndex(i);
+                uploadFile.setFilename(file.filename());
+                uploadFile.setSpoolPath(part.toString());
+                uploadFile.setSize(file.size() >= 0 ? file.size() : Files.size(part));
+                uploadFile.setStatus(UploadFile.Status.PENDING);
+                uploadFile.setUpdatedAt(now);
+                stored.add(uploadFile);
+            }
+            observeWrite("upload.files.save", () -> fileRepository.saveAll(stored));
+        } catch (IOException | RuntimeException e) {
+            fail(upload);
+            throw e;
+        }
+        return new StoredUpload(upload, stored);
+    }
+
+    // Moves a multipart file out of the request, links a file spooled elsewhere and copies anything else
+    private void spool(DependencyFile file, Path part) throws IOException {
+        if (file.content() instanceof MultipartFile multipartFile) {
+            // The File variant lets the container rename its temp file; the path must be absolute for that
+            multipartFile.transferTo(part.toAbsolutePath().toFile());
+            return;
+        }
+        if (file.content() instanceof FileSystemResource resource) {
+            try {
+                // A second name for the same content, which outlives the deletion of the original
+                Files.createLink(part, resource.getFile().toPath());
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                // Another file system or no hard links, copy instead
+            }
+        }
+        try (InputStream content = file.content().getInputStream()) {
+            Files.copy(content, part);
+        }
+    }
+
+    /**
+     * The spooled content of a file, ready to be sent.
+     */
+    public DependencyFile content(UploadFile file) {
+        return new DependencyFile(file.getFilename(), new FileSystemResource(Path.of(file.getSpoolPath())), file.getSize());
+    }
+
+    /**
+     * Moves an upload leased to this instance on to the given state.
+     *
+     * @throws IllegalStateException If the upload was taken over by another instance
+     */
+    public void advance(DependencyUpload upload, DependencyUpload.Status to) {
+        advance(upload, to, upload.getCiUploadId());
+    }
+
+    /**
+     * Stores the ciUploadId Debricked assigned to the first accepted file.
+     *
+     * @throws IllegalStateException If the upload was taken over by another instance
+     */
+    public void recordCiUploadId(DependencyUpload upload, String ciUploadId) {
+        advance(upload, upload.getStatus(), ciUploadId);
+    }
+
+    private void advance(DependencyUpload upload, DependencyUpload.Status to, String ciUploadId) {
+        Instant leaseExpiresAt = leaseUntil(Instant.now());
+        int advanced = Observation.createNotStarted("ruleengine.db.write", observationRegistry)
+                .lowCardinalityKeyValue("operation", "upload.advance")
+                .observe(() -> repository.advance(upload.getId(), upload.getStatus(), to, ciUploadId, claimer.getOwner(),
+                        leaseExpiresAt));
+        if (advanced == 0) {
+            throw new IllegalStateException("Upload " + upload.getId() + " is no longer leased to this instance");
+        }
+        upload.setStatus(to);
+        upload.setCiUploadId(ciUploadId);
+        upload.setLeaseExpiresAt(leaseExpiresAt);
+    }
+
+    /**
+     * Records the outcome of one attempt to send a file.
+     */
+    public void recordFile(UploadFile file, UploadFile.Status status, String error) {
+        file.setStatus(status);
+        file.setAttempts(file.getAttempts() + 1);
+        file.setLastError(error != null && error.length() > 1024 ? error.substring(0, 1024) : error);
+        file.setUpdatedAt(Instant.now());
+        fileRepository.save(file);
+    }
+
+    /**
+     * Hands a started scan to the status poller, due for its first check right away, and
+     * releases the spooled files.
+     *
+     * @throws IllegalStateException If the upload was taken over by another instance
+     */
+    public void handOver(DependencyUpload upload) {
+        Instant now = Instant.now();
+        if (repository.release(upload.getId(), DependencyUpload.Status.SCAN_STARTED, DependencyUpload.Status.IN_PROGRESS,
+                now, claimer.getOwner()) == 0) {
+            throw new IllegalStateException("Upload " + upload.getId() + " is no longer leased to this instance");
+        }
+        upload.setStatus(DependencyUpload.Status.IN_PROGRESS);
+        upload.setNextCheckAt(now);
+        deleteSpool(upload.getId());
+    }
+
+    /**
+     * Extends the lease of an upload that waited to be worked on, for example in a job queue.
+     *
+     * @return Whether the lease was extended; false if it ran out meanwhile, as the upload may
+     *         then be resumed by {@link UploadRecoveryService} already
+     */
+    public boolean renew(DependencyUpload upload) {
+        Instant now = Instant.now();
+        Instant leaseExpiresAt = leaseUntil(now);
+        if (repository.renewLease(upload.getId(), claimer.getOwner(), leaseExpiresAt, now) == 0) {
+            return false;
+        }
+        upload.setLeaseExpiresAt(leaseExpiresAt);
+        return true;
+    }
+
+    /**
+     * Removes an upload leased to this instance with its files, for one that turned out not to
+     * be needed, because it shares the scan of an identical upload or was never queued.
+     *
+     * @return Whether the upload was removed by this call; false if another instance took it over
+     */
+    public boolean discard(DependencyUpload upload) {
+        if (repository.deleteLeased(upload.getId(), claimer.getOwner()) == 0) {
+            return false;
+        }
+        fileRepository.deleteAllByUploadId(upload.getId());
+        deleteSpool(upload.getId());
+        return true;
+    }
+
+    /**
+     * Releases an upload that cannot get further for now, keeping its state, files and
+     * ciUploadId, so {@link UploadRecoveryService} resumes it on its next run.
+     *
+     * @return Whether the upload was released by this call; false if another instance took it over
+     */
+    public boolean defer(DependencyUpload upload) {
+        if (repository.release(upload.getId(), upload.getStatus(), upload.getStatus(), null, claimer.getOwner()) == 0) {
+            return false;
+        }
+        upload.setLeaseOwner(null);
+        upload.setLeaseExpiresAt(null);
+        return true;
+    }
+
+    /**
+     * Gives up an upload leased to this instance and releases its spooled files.
+     *
+     * @return Whether the upload was FAILED by this call; false if another instance took it over
+     */
+    public boolean fail(DependencyUpload upload) {
+        if (repository.release(upload.getId(), upload.getStatus(), DependencyUpload.Status.FAILED, null,
+                claimer.getOwner()) == 0) {
+            return false; // The files now belong to the instance that resumed the upload
+        }
+        upload.setStatus(DependencyUpload.Status.FAILED);
+        deleteSpool(upload.getId());
+        return true;
+    }
+
+    /**
+     * Ids of resumable uploads no instance holds a live lease on, oldest first.
+     */
+    public List<Long> findResumable(Instant now, int limit) {
+        return repository.findUnleasedIds(RESUMABLE, now, Limit.of(limit));
+    }
+
+    /**
+     * Leases a resumable upload to this instance and loads it with its files.
+     *
+     * @return The upload, empty if another instance claimed it first or it moved on meanwhile
+     */
+    public Optional<StoredUpload> claim(Long id, Instant now) {
+        if (repository.claimUpload(id, RESUMABLE, claimer.getOwner(), leaseUntil(now), now) == 0) {
+            return Optional.empty();
+        }
+        return repository.findById(id)
+                .map(upload -> new StoredUpload(upload, fileRepository.findAllByUploadIdOrderByFileIndex(id)));
+    }
+
+    private void observeWrite(String operation, Runnable write) {
+        Observation.createNotStarted("ruleengine.db.write", observationRegistry)
+                .lowCardinalityKeyValue("operation", operation)
+                .observe(write);
+    }
+
+    private Instant leaseUntil(Instant now) {
+        return now.plusSeconds(leaseSeconds).truncatedTo(ChronoUnit.MICROS);
+    }
+
+    private Path uploadDir(Long uploadId) {
+        return Path.of(spoolDir, "uploads", String.valueOf(uploadId));
+    }
+
+    private void deleteSpool(Long uploadId) {
+        Path uploadDir = uploadDir(uploadId);
+        try {
+            FileSystemUtils.deleteRecursively(uploadDir);
+        } catch (IOException e) {
+            System.out.println("Failed to delete spooled files in " + uploadDir + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.ruleengine.service;
+
+/**
+ * The repository and commit an upload is reported to Debricked under.
+ *
+ * @param repositoryName Name of the repository the files belong to
+ * @param commitName     Name of the commit the files belong to
+ */
+public record UploadTarget(String repositoryName, String commitName) {
+
+    // Sample names used when the request does not name a repository or commit
+    public static final UploadTarget DEFAULT = new UploadTarget("repo6", "commit6");
+
+    /**
+     * Target from optional request parameters, using the defaults for missing ones.
+     */
+    public static UploadTarget of(String repositoryName, String commitName) {
+        return new UploadTarget(
+                repositoryName == null || repositoryName.isBlank() ? DEFAULT.repositoryName() : repositoryName,
+                commitName == null || commitName.isBlank() ? DEFAULT.commitName() : commitName);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.rules.Rule;
+
+/**
+ * The body of the notification about a completed scan that an alerting rule reported.
+ */
+public final class VulnerabilityReport {
+
+    private VulnerabilityReport() {
+    }
+
+    /**
+     * Creates a report message based on the number of vulnerabilities found.
+     *
+     * @param vulnerabilitiesFound The number of vulnerabilities detected
+     * @param matchedRule          The alerting rule that matched the scan
+     * @param findings             Summary of the findings, null if they are not known
+     * @return A formatted report message
+     */
+    public static String compose(int vulnerabilitiesFound, Rule matchedRule, FindingsSummary findings) {
+        StringBuilder report = new StringBuilder("A total of " + vulnerabilitiesFound
+                + " vulnerabilities were detected in your dependencies.");
+        report.append(" Reported by rule '").append(matchedRule.name()).append("': ").append(matchedRule.expression());
+        if (findings != null && findings.getFindings() > 0) {
+            report.append("\n\nCritical: ").append(findings.getCritical()).append(", high: ").append(findings.getHigh())
+                    .append(", medium: ").append(findings.getMedium()).append(", low: ").append(findings.getLow())
+                    .append("\nMost severe findings:");
+            for (Finding finding : findings.getTopFindings()) {
+                report.append("\n  - ").append(finding.cveId());
+                if (finding.cvss() != null) {
+                    report.append(" (CVSS ").append(finding.cvss()).append(", ").append(finding.severity()).append(')');
+                }
+                if (finding.packageName() != null) {
+                    report.append(" in ").append(finding.packageName());
+                    if (finding.packageVersion() != null) {
+                        report.append(' ').append(finding.packageVersion());
+                    }
+                }
+            }
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,89 @@
+--brings tables created by an older schema.sql up to date; runs after schema.sql on every start and
+--changes nothing once applied. MySQL has no ADD COLUMN IF NOT EXISTS, so each statement is built from
+--what information_schema reports missing and runs as 'DO 0' when there is nothing to do
+
+--columns added to dependency_upload since the first version
+SET @ddl = COALESCE((SELECT CONCAT('ALTER TABLE dependency_upload ', GROUP_CONCAT('ADD COLUMN ', wanted.definition SEPARATOR ', '))
+    FROM (SELECT 'repository_name' AS name, 'repository_name VARCHAR(255)' AS definition
+          UNION ALL SELECT 'commit_name', 'commit_name VARCHAR(255)'
+          UNION ALL SELECT 'content_hash', 'content_hash CHAR(64)'
+          UNION ALL SELECT 'created_at', 'created_at TIMESTAMP(6)'
+          UNION ALL SELECT 'next_check_at', 'next_check_at TIMESTAMP(6)'
+          UNION ALL SELECT 'check_attempts', 'check_attempts INT NOT NULL DEFAULT 0'
+          UNION ALL SELECT 'last_progress', 'last_progress INT'
+          UNION ALL SELECT 'last_progress_at', 'last_progress_at TIMESTAMP(6)'
+          UNION ALL SELECT 'lease_owner', 'lease_owner VARCHAR(64)'
+          UNION ALL SELECT 'lease_expires_at', 'lease_expires_at TIMESTAMP(6)'
+          UNION ALL SELECT 'vulnerabilities_found', 'vulnerabilities_found INT'
+          UNION ALL SELECT 'traceparent', 'traceparent VARCHAR(55)') wanted
+    WHERE wanted.name NOT IN (SELECT column_name FROM information_schema.columns
+                              WHERE table_schema = DATABASE() AND table_name = 'dependency_upload')), 'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+
+--the statuses of the upload lifecycle, and uploads that have no scan yet; ddl-auto=update widens neither
+SET @ddl = (SELECT IF(COUNT(*) = 0, 'DO 0', 'ALTER TABLE dependency_upload MODIFY ci_upload_id VARCHAR(255),'
+        ' MODIFY status ENUM(''RECEIVED'', ''UPLOADING'', ''UPLOADED'', ''SCAN_STARTED'', ''IN_PROGRESS'', ''COMPLETED'', ''STALE'', ''FAILED'') NOT NULL')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'dependency_upload'
+      AND ((column_name = 'status'
+            AND column_type <> 'enum(''RECEIVED'',''UPLOADING'',''UPLOADED'',''SCAN_STARTED'',''IN_PROGRESS'',''COMPLETED'',''STALE'',''FAILED'')')
+           OR (column_name = 'ci_upload_id' AND is_nullable = 'NO')));
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+
+--the keyset pages need id in idx_status_next_check, which was first created without it; it is
+--dropped here and added again with the other indexes
+SET @ddl = (SELECT IF(COUNT(*) > 0 AND SUM(column_name = 'id') = 0,
+        'ALTER TABLE dependency_upload DROP INDEX idx_status_next_check', 'DO 0')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'dependency_upload' AND index_name = 'idx_status_next_check');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+
+--indexes added to dependency_upload since the first version
+SET @ddl = COALESCE((SELECT CONCAT('ALTER TABLE dependency_upload ', GROUP_CONCAT('ADD INDEX ', wanted.definition SEPARATOR ', '))
+    FROM (SELECT 'idx_content_hash' AS name, 'idx_content_hash (content_hash, created_at)' AS definition
+          UNION ALL SELECT 'idx_status_next_check', 'idx_status_next_check (status, next_check_at, id)'
+          UNION ALL SELECT 'idx_repository_status', 'idx_repository_status (repository_name, status, id)'
+          UNION ALL SELECT 'idx_ci_upload_id', 'idx_ci_upload_id (ci_upload_id, id)') wanted
+    WHERE wanted.name NOT IN (SELECT index_name FROM information_schema.statistics
+                              WHERE table_schema = DATABASE() AND table_name = 'dependency_upload')), 'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+
+--rows created before next_check_at was set on insert are due right away
+UPDATE dependency_upload SET next_check_at = COALESCE(created_at, CURRENT_TIMESTAMP(6)) WHERE status = 'IN_PROGRESS' AND next_check_at IS NULL;
+
+--the upload a job reports on, added when jobs started to record their files as uploads
+SET @ddl = (SELECT IF(COUNT(*) > 0, 'DO 0', 'ALTER TABLE upload_job ADD COLUMN upload_id BIGINT')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'upload_job' AND column_name = 'upload_id');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+
+--columns added to notification_outbox since the first version
+SET @ddl = COALESCE((SELECT CONCAT('ALTER TABLE notification_outbox ', GROUP_CONCAT('ADD COLUMN ', wanted.definition SEPARATOR ', '))
+    FROM (SELECT 'kind' AS name, 'kind ENUM(''GENERAL'', ''UPLOAD_FAILED'', ''SCAN_COMPLETED'', ''SCAN_STALE'')' AS definition
+          UNION ALL SELECT 'detail', 'detail VARCHAR(255)'
+          UNION ALL SELECT 'vulnerabilities', 'vulnerabilities INT'
+          UNION ALL SELECT 'traceparent', 'traceparent VARCHAR(55)') wanted
+    WHERE wanted.name NOT IN (SELECT column_name FROM information_schema.columns
+                              WHERE table_schema = DATABASE() AND table_name = 'notification_outbox')), 'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+
+--open coalescing window of a recipient, added with the digests
+SET @ddl = (SELECT IF(COUNT(*) > 0, 'DO 0',
+        'ALTER TABLE notification_outbox ADD INDEX idx_outbox_recipient_state (recipient, state, next_attempt_at)')
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'notification_outbox' AND index_name = 'idx_outbox_recipient_state');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
@@ -1,7 +1,109 @@
 CREATE TABLE IF NOT EXISTS dependency_upload (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
-    ci_upload_id VARCHAR(255) NOT NULL,
+    ci_upload_id VARCHAR(255),
+    email VARCHAR(255) NOT NULL,
+    repository_name VARCHAR(255),
+    commit_name VARCHAR(255),
+    status ENUM('RECEIVED', 'UPLOADING', 'UPLOADED', 'SCAN_STARTED', 'IN_PROGRESS', 'COMPLETED', 'STALE', 'FAILED') NOT NULL,
+    content_hash CHAR(64),
+    created_at TIMESTAMP(6),
+    next_check_at TIMESTAMP(6),
+    check_attempts INT NOT NULL DEFAULT 0,
+    last_progress INT,
+    last_progress_at TIMESTAMP(6),
+    lease_owner VARCHAR(64),
+    lease_expires_at TIMESTAMP(6),
+    vulnerabilities_found INT,
+    traceparent VARCHAR(55),
+    INDEX idx_status (status),  --create an index on the status column
+    INDEX idx_content_hash (content_hash, created_at),  --lookup of recent identical uploads
+    INDEX idx_status_next_check (status, next_check_at, id),  --keyset pages of uploads due for a status check
+    INDEX idx_repository_status (repository_name, status, id),  --previous scans of a repository
+    INDEX idx_ci_upload_id (ci_upload_id, id)  --state of a scan for the result endpoint
+);
+
+CREATE TABLE IF NOT EXISTS upload_file (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    upload_id BIGINT NOT NULL,
+    file_index INT NOT NULL,
+    filename VARCHAR(255),
+    spool_path VARCHAR(1024),
+    size BIGINT NOT NULL,
+    status ENUM('PENDING', 'UPLOADED', 'REJECTED', 'FAILED') NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    last_error VARCHAR(1024),
+    updated_at TIMESTAMP(6),
+    INDEX idx_upload_file_upload (upload_id, file_index)  --files of an upload in request order
+);
+
+CREATE TABLE IF NOT EXISTS upload_job (
+    id VARCHAR(36) PRIMARY KEY,
     email VARCHAR(255) NOT NULL,
-    status ENUM('IN_PROGRESS', 'COMPLETED') NOT NULL,
-    INDEX idx_status (status)  --create an index on the status column
+    state ENUM('QUEUED', 'RUNNING', 'SUCCEEDED', 'FAILED') NOT NULL,
+    ci_upload_id VARCHAR(255),
+    upload_id BIGINT,
+    message VARCHAR(1024),
+    created_at TIMESTAMP(6) NOT NULL,
+    updated_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS notification_outbox (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    recipient VARCHAR(255) NOT NULL,
+    subject VARCHAR(255),
+    body LONGTEXT,
+    kind ENUM('GENERAL', 'UPLOAD_FAILED', 'SCAN_COMPLETED', 'SCAN_STALE'),
+    detail VARCHAR(255),
+    vulnerabilities INT,
+    state ENUM('PENDING', 'SENDING', 'SENT', 'FAILED') NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP(6) NOT NULL,
+    batch_id VARCHAR(36),
+    last_error VARCHAR(1024),
+    created_at TIMESTAMP(6) NOT NULL,
+    sent_at TIMESTAMP(6),
+    traceparent VARCHAR(55),
+    INDEX idx_outbox_state_next_attempt (state, next_attempt_at, id),  --due messages in send order
+    INDEX idx_outbox_batch (batch_id),  --messages claimed by one sender batch
+    INDEX idx_outbox_recipient_state (recipient, state, next_attempt_at)  --open coalescing window of a recipient
+);
+
+CREATE TABLE IF NOT EXISTS tenant_policy (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    scope ENUM('REPOSITORY', 'EMAIL_DOMAIN', 'DEFAULT') NOT NULL,
+    tenant_key VARCHAR(255) NOT NULL,
+    vulnerabilities_threshold INT,
+    recipients VARCHAR(1024),
+    revision BIGINT NOT NULL,
+    deleted BOOLEAN NOT NULL DEFAULT FALSE,
+    updated_at TIMESTAMP(6),
+    UNIQUE KEY uk_tenant_policy (scope, tenant_key),  --one policy per tenant
+    INDEX idx_tenant_policy_revision (revision)  --incremental refresh of the in-memory index
+);
+
+--the wildcard policy; its row is also the lock that serializes policy changes
+INSERT IGNORE INTO tenant_policy (scope, tenant_key, revision, deleted, updated_at) VALUES ('DEFAULT', '*', 0, FALSE, CURRENT_TIMESTAMP(6));
+
+CREATE TABLE IF NOT EXISTS vulnerability (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    cve_id VARCHAR(64) NOT NULL,
+    cvss DOUBLE,
+    severity VARCHAR(16),
+    UNIQUE KEY uk_vulnerability_cve (cve_id)  --each vulnerability is stored once
+);
+
+CREATE TABLE IF NOT EXISTS dependency_package (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    version VARCHAR(128),
+    licenses VARCHAR(512),
+    UNIQUE KEY uk_dependency_package (name, version)  --each package version is stored once
+);
+
+CREATE TABLE IF NOT EXISTS scan_finding (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    ci_upload_id VARCHAR(255) NOT NULL,
+    vulnerability_id BIGINT NOT NULL,
+    package_id BIGINT,
+    INDEX idx_scan_finding_upload (ci_upload_id)  --findings of a scan
 );
@@ -0,0 +1,41 @@
+package com.example.ruleengine;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+class AppConfigTest {
+
+    private static AppConfig appConfig(boolean virtualThreadsEnabled) {
+        AppConfig appConfig = new AppConfig();
+        ReflectionTestUtils.setField(appConfig, "environment",
+                new MockEnvironment().withProperty("spring.threads.virtual.enabled", String.valueOf(virtualThreadsEnabled)));
+        return appConfig;
+    }
+
+    @Test
+    void testVirtualProfile_VirtualThreadsOnlyWhereTheRuntimeHasThem() {
+        AsyncTaskExecutor executor = appConfig(true).statusCheckExecutor(8);
+
+        // Java 17 has no virtual threads, so the profile falls back to the platform pool instead of failing
+        boolean virtualThreadsAvailable = Runtime.version().feature() >= 21;
+        assertEquals(virtualThreadsAvailable, executor instanceof SimpleAsyncTaskExecutor);
+        assertEquals(!virtualThreadsAvailable, executor instanceof ThreadPoolTaskExecutor);
+    }
+
+    @Test
+    void testDefault_PlatformThreadPools() {
+        AppConfig appConfig = appConfig(false);
+
+        assertInstanceOf(ThreadPoolTaskExecutor.class, appConfig.statusCheckExecutor(8));
+        assertInstanceOf(ThreadPoolTaskExecutor.class, appConfig.debrickedUploadExecutor(4, 100));
+        assertInstanceOf(ThreadPoolTaskExecutor.class, appConfig.notificationSenderExecutor(2));
+        assertInstanceOf(ThreadPoolTaskExecutor.class, appConfig.scanResultExecutor(2));
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.ruleengine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VirtualThreadPinningMonitorTest {
+
+    @Test
+    void testPathOf_InnermostKnownFrameDecides() {
+        // A socket read of the MySQL driver below a Hibernate flush is a JDBC pin
+        assertEquals("jdbc", VirtualThreadPinningMonitor.pathOf(List.of(
+                "java.net.SocketInputStream.read:107",
+                "com.mysql.cj.protocol.ReadAheadInputStream.fill:107",
+                "org.hibernate.engine.jdbc.batch.internal.BatchImpl.execute:215",
+                "com.example.ruleengine.service.ScanCompletionWriter.complete:60")));
+        assertEquals("http-client", VirtualThreadPinningMonitor.pathOf(List.of(
+                "sun.nio.ch.NioSocketImpl.read:320",
+                "org.apache.hc.core5.http.impl.io.SessionInputBufferImpl.fillBuffer:149",
+                "com.example.ruleengine.client.DebrickedClient.getScanStatus:142")));
+        assertEquals("other", VirtualThreadPinningMonitor.pathOf(List.of(
+                "com.example.ruleengine.service.NotificationDigest.add:40")));
+    }
+
+    @Test
+    void testRecord_CountsPerPath() {
+        VirtualThreadPinningMonitor monitor = new VirtualThreadPinningMonitor();
+
+        monitor.record(List.of("org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager.lease:280"),
+                Duration.ofMillis(30));
+        monitor.record(List.of("org.apache.hc.core5.pool.StrictConnPool.lease:180"), Duration.ofMillis(25));
+        monitor.record(List.of("org.h2.engine.SessionLocal.lock:100"), Duration.ofMillis(40));
+
+        assertEquals(2, monitor.getPinnedCount("http-client"));
+        assertEquals(1, monitor.getPinnedCount("jdbc"));
+        assertEquals(0, monitor.getPinnedCount("other"));
+    }
+}
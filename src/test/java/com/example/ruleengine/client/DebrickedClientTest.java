@@ -0,0 +1,234 @@
+package com.example.ruleengine.client;
+
+import com.example.ruleengine.service.DependencyFile;
+import com.example.ruleengine.service.UploadTarget;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class DebrickedClientTest {
+
+    private static final String API_URL = "https://debricked.com/api/";
+
+    private DebrickedClient debrickedClient;
+
+    private CloseableHttpClient httpClient;
+
+    @BeforeEach
+    void setUp() {
+        httpClient = mock(CloseableHttpClient.class);
+        debrickedClient = new DebrickedClient();
+        ReflectionTestUtils.setField(debrickedClient, "debrickedApiUrl", API_URL);
+        ReflectionTestUtils.setField(debrickedClient, "httpClient", httpClient);
+        ReflectionTestUtils.setField(debrickedClient, "governor", new DebrickedRateGovernor());
+    }
+
+    /**
+     * Makes the mocked pooled client answer every request with the given status and body.
+     */
+    private void respondWith(int statusCode, String body) throws IOException {
+        respondWith(statusCode, body, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void respondWith(int statusCode, String body, String retryAfter) throws IOException {
+        when(httpClient.execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class)))
+                .thenAnswer(invocation -> {
+                    BasicClassicHttpResponse response = new BasicClassicHttpResponse(statusCode);
+                    if (retryAfter != null) {
+                        response.setHeader("Retry-After", retryAfter);
+                    }
+                    response.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+                    HttpClientResponseHandler<?> handler = invocation.getArgument(1);
+                    return handler.handleResponse(response);
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private ClassicHttpRequest sentRequest() throws IOException {
+        ArgumentCaptor<ClassicHttpRequest> request = ArgumentCaptor.forClass(ClassicHttpRequest.class);
+        verify(httpClient).execute(request.capture(), any(HttpClientResponseHandler.class));
+        return request.getValue();
+    }
+
+    @Test
+    void testGetScanStatus_ReadsTypedStatus() throws IOException {
+        // Fields the client does not know are ignored
+        respondWith(HttpStatus.SC_OK, "{\"progress\": 100, \"vulnerabilitiesFound\": 7, \"detailsUrl\": \"https://x\","
+                + " \"automationRules\": [{\"ruleDescription\": \"r\"}]}");
+
+        ScanStatus status = debrickedClient.getScanStatus("12345", "token");
+
+        assertEquals(new ScanStatus(100, 7), status);
+        assertTrue(status.isComplete());
+        ClassicHttpRequest request = sentRequest();
+        assertEquals("GET", request.getMethod());
+        assertEquals("Bearer token", request.getFirstHeader("Authorization").getValue());
+    }
+
+    @Test
+    void testGetScanStatus_ErrorStatusIsMapped() throws IOException {
+        respondWith(HttpStatus.SC_SERVICE_UNAVAILABLE, "<html>maintenance</html>");
+
+        DebrickedApiException e = assertThrows(DebrickedApiException.class,
+                () -> debrickedClient.getScanStatus("12345", "token"));
+        assertEquals(503, e.getStatusCode());
+        assertEquals("scan status", e.getOperation());
+        assertTrue(e.isRetryable());
+    }
+
+    @Test
+    void testUploadFile_TooManyRequestsPausesLaterCalls() throws IOException {
+        respondWith(429, "{}", "60");
+
+        DebrickedApiException e = assertThrows(DebrickedApiException.class, () -> debrickedClient.uploadFile(
+                new DependencyFile("a.lock", () -> InputStream.nullInputStream(), 0), null, UploadTarget.DEFAULT, "token"));
+        assertTrue(e.isRetryable());
+        assertEquals(Duration.ofSeconds(60), e.getRetryAfter());
+
+        // The pause outlasts the wait a poll accepts, so it gives up without sending anything
+        assertThrows(DebrickedUnavailableException.class, () -> debrickedClient.getScanStatus("12345", "token"));
+        verify(httpClient, times(1)).execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class));
+    }
+
+    @Test
+    void testLogin_SendsUrlEncodedForm() throws Exception {
+        respondWith(HttpStatus.SC_OK, "{\"token\": \"jwt\"}");
+
+        assertEquals("jwt", debrickedClient.login("api@example.com", "p&ss=word"));
+
+        // Special characters in the credentials cannot break the form
+        assertEquals("_username=api%40example.com&_password=p%26ss%3Dword", EntityUtils.toString(sentRequest().getEntity()));
+    }
+
+    @Test
+    void testLogin_RejectedCredentials() throws IOException {
+        respondWith(HttpStatus.SC_UNAUTHORIZED, "{\"code\": 401, \"message\": \"Invalid credentials.\"}");
+
+        DebrickedApiException e = assertThrows(DebrickedApiException.class, () -> debrickedClient.login("api", "wrong"));
+        assertFalse(e.isRetryable());
+    }
+
+    @Test
+    void testUploadFile_ReturnsCiUploadId() throws IOException {
+        respondWith(HttpStatus.SC_OK, "{\"ciUploadId\": 4711, \"uploadProgramsFileId\": 1}");
+
+        String ciUploadId = debrickedClient.uploadFile(new DependencyFile("a.lock", () -> InputStream.nullInputStream(), 0),
+                null, UploadTarget.DEFAULT, "token");
+
+        assertEquals("4711", ciUploadId);
+    }
+
+    @Test
+    void testReadFindings_StreamsBodyToReader() throws IOException {
+        respondWith(HttpStatus.SC_OK, "[1, 2, 3]");
+
+        String body = debrickedClient.readFindings("12345", "token",
+                in -> new String(in.readAllBytes(), StandardCharsets.UTF_8));
+
+        assertEquals("[1, 2, 3]", body);
+    }
+
+    @Test
+    void testTokenExpiry_ReadsExpClaim() {
+        String payload = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"exp\":1727787600,\"roles\":[\"ROLE_USER\"]}".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(Instant.ofEpochSecond(1727787600), DebrickedJson.tokenExpiry("header." + payload + ".signature"));
+        assertNull(DebrickedJson.tokenExpiry("not-a-jwt"));
+        assertNull(DebrickedJson.tokenExpiry("header.!!!.signature"));
+    }
+
+    @Test
+    void testBuildUploadEntity_LargeFileKeepsHeapFlat() throws IOException {
+        // A 200 MB file whose content is generated on the fly, so only the upload path can use heap
+        long size = 200L * 1024 * 1024;
+        InputStreamSource generated = () -> new InputStream() {
+            private long remaining = size;
+
+            @Override
+            public int read() {
+                return remaining-- > 0 ? 'x' : -1;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int count = (int) Math.min(length, remaining);
+                Arrays.fill(buffer, offset, offset + count, (byte) 'x');
+                remaining -= count;
+                return count;
+            }
+        };
+        HttpEntity entity = debrickedClient.buildUploadEntity(new DependencyFile("sbom.json", generated, size), "uploadId",
+                UploadTarget.DEFAULT);
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long baseline = runtime.totalMemory() - runtime.freeMemory();
+        AtomicLong peak = new AtomicLong(baseline);
+        AtomicLong written = new AtomicLong();
+
+        // Write the body to a sink that only counts bytes and samples the used heap
+        entity.writeTo(new OutputStream() {
+            @Override
+            public void write(int b) {
+                written.incrementAndGet();
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) {
+                written.addAndGet(length);
+                peak.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+            }
+        });
+
+        assertTrue(written.get() > size);
+        assertEquals(written.get(), entity.getContentLength()); // Length is known up front, no buffering
+        assertTrue(peak.get() - baseline < 64L * 1024 * 1024,
+                "Heap grew by " + (peak.get() - baseline) / (1024 * 1024) + " MB while streaming 200 MB");
+    }
+
+    @Test
+    void testStartScan_Success() throws IOException {
+        // Mocking scan start success
+        respondWith(HttpStatus.SC_OK, "{}");
+
+        assertDoesNotThrow(() -> debrickedClient.startScan("uploadId", "testToken"));
+    }
+
+    @Test
+    void testStartScan_Failure() throws IOException {
+        // Mocking scan start failure
+        respondWith(HttpStatus.SC_BAD_REQUEST, "{}");
+
+        assertThrows(IOException.class, () -> debrickedClient.startScan("uploadId", "testToken"));
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.ruleengine.client;
+
+import com.example.ruleengine.client.DebrickedRateGovernor.CircuitState;
+import com.example.ruleengine.client.DebrickedRateGovernor.Priority;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DebrickedRateGovernorTest {
+
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000L);
+
+    private DebrickedRateGovernor governor;
+
+    @BeforeEach
+    void setUp() {
+        governor = new DebrickedRateGovernor();
+        governor.setNanoClock(nanos::get);
+        ReflectionTestUtils.setField(governor, "permitsPerSecond", 10.0);
+        ReflectionTestUtils.setField(governor, "burst", 4);
+        ReflectionTestUtils.setField(governor, "uploadReserve", 2);
+        ReflectionTestUtils.setField(governor, "failureThreshold", 3);
+        ReflectionTestUtils.setField(governor, "openSeconds", 30L);
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    void testTryAcquire_BurstThenRefillRate() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, governor.tryAcquire(Priority.UPLOAD));
+        }
+
+        // The bucket is empty; at 10 permits per second the next one is 100 ms away
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), governor.tryAcquire(Priority.UPLOAD));
+        advance(Duration.ofMillis(100));
+        assertEquals(0, governor.tryAcquire(Priority.UPLOAD));
+    }
+
+    @Test
+    void testTryAcquire_PollsLeaveTheReserveForUploads() throws IOException {
+        // Polls stop once only the two reserved permits are left
+        assertEquals(0, governor.tryAcquire(Priority.POLL));
+        assertEquals(0, governor.tryAcquire(Priority.POLL));
+        assertTrue(governor.tryAcquire(Priority.POLL) > 0);
+
+        assertEquals(0, governor.tryAcquire(Priority.UPLOAD));
+        assertEquals(0, governor.tryAcquire(Priority.UPLOAD));
+    }
+
+    @Test
+    void testPollCapacity_PermitsLeftPlusRefillWithinThePollWait() throws IOException {
+        // Two permits above the reserve now, and ten more within the one second a poll waits
+        assertEquals(12, governor.pollCapacity());
+        governor.tryAcquire(Priority.POLL);
+        governor.tryAcquire(Priority.POLL);
+        assertEquals(10, governor.pollCapacity());
+
+        governor.recordFailure(new DebrickedApiException("scan status", 429, "Too Many Requests", Duration.ofSeconds(20)));
+        assertEquals(0, governor.pollCapacity());
+    }
+
+    @Test
+    void testRecordFailure_TooManyRequestsPausesEveryCall() throws IOException {
+        governor.recordFailure(new DebrickedApiException("upload", 429, "Too Many Requests", Duration.ofSeconds(20)));
+
+        assertFalse(governor.isAvailable());
+        assertEquals(Duration.ofSeconds(20).toNanos(), governor.tryAcquire(Priority.UPLOAD));
+        // Throttling says nothing about the health of Debricked
+        assertEquals(CircuitState.CLOSED, governor.getCircuitState());
+
+        advance(Duration.ofSeconds(20));
+        assertTrue(governor.isAvailable());
+        assertEquals(0, governor.tryAcquire(Priority.UPLOAD));
+    }
+
+    @Test
+    void testRecordFailure_ConsecutiveServerErrorsOpenTheCircuit() throws IOException {
+        DebrickedApiException serverError = new DebrickedApiException("scan status", 503, "Service Unavailable");
+        governor.recordFailure(serverError);
+        governor.recordFailure(serverError);
+        governor.recordSuccess(); // An answer in between resets the run
+        governor.recordFailure(serverError);
+        governor.recordFailure(serverError);
+        assertEquals(CircuitState.CLOSED, governor.getCircuitState());
+
+        governor.recordFailure(new IOException("Connection reset"));
+
+        assertEquals(CircuitState.OPEN, governor.getCircuitState());
+        assertFalse(governor.isAvailable());
+        DebrickedUnavailableException shed = assertThrows(DebrickedUnavailableException.class,
+                () -> governor.tryAcquire(Priority.UPLOAD));
+        assertEquals(Duration.ofSeconds(30), shed.getRetryAfter());
+    }
+
+    @Test
+    void testCircuit_HalfOpenTrialDecides() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            governor.recordFailure(new IOException("Connection refused"));
+        }
+        advance(Duration.ofSeconds(30));
+        assertTrue(governor.isAvailable());
+
+        // One trial call is let through, the others are shed until it has an outcome
+        assertEquals(0, governor.tryAcquire(Priority.POLL));
+        assertEquals(CircuitState.HALF_OPEN, governor.getCircuitState());
+        assertThrows(DebrickedUnavailableException.class, () -> governor.tryAcquire(Priority.UPLOAD));
+
+        // A failed trial opens the circuit again right away
+        governor.recordFailure(new IOException("Connection refused"));
+        assertEquals(CircuitState.OPEN, governor.getCircuitState());
+
+        advance(Duration.ofSeconds(30));
+        assertEquals(0, governor.tryAcquire(Priority.UPLOAD));
+        governor.recordSuccess();
+        assertEquals(CircuitState.CLOSED, governor.getCircuitState());
+        assertEquals(0, governor.tryAcquire(Priority.UPLOAD));
+    }
+
+    @Test
+    void testRecordFailure_RejectedCallKeepsTheCircuitClosed() {
+        for (int i = 0; i < 5; i++) {
+            governor.recordFailure(new DebrickedApiException("upload", 400, "Bad Request"));
+        }
+
+        assertEquals(CircuitState.CLOSED, governor.getCircuitState());
+        assertTrue(governor.isAvailable());
+    }
+
+    @Test
+    void testAcquire_GivesUpWhenTheWaitExceedsTheLimit() {
+        ReflectionTestUtils.setField(governor, "pollMaxWaitMs", 1000L);
+        governor.recordFailure(new DebrickedApiException("scan status", 429, "Too Many Requests", Duration.ofSeconds(5)));
+
+        DebrickedUnavailableException e = assertThrows(DebrickedUnavailableException.class,
+                () -> governor.acquire(Priority.POLL));
+        assertEquals(Duration.ofSeconds(5), e.getRetryAfter());
+    }
+
+    @Test
+    void testParseRetryAfter_SecondsOrHttpDate() {
+        Instant now = Instant.parse("2024-10-01T12:00:00Z");
+
+        assertEquals(Duration.ofSeconds(120), DebrickedRateGovernor.parseRetryAfter("120", now));
+        assertEquals(Duration.ofSeconds(90), DebrickedRateGovernor.parseRetryAfter("Tue, 01 Oct 2024 12:01:30 GMT", now));
+        assertEquals(Duration.ZERO, DebrickedRateGovernor.parseRetryAfter("Tue, 01 Oct 2024 11:00:00 GMT", now));
+        assertNull(DebrickedRateGovernor.parseRetryAfter(null, now));
+        assertNull(DebrickedRateGovernor.parseRetryAfter("soon", now));
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.ruleengine.client;
+
+import com.example.ruleengine.service.DependencyFile;
+import com.example.ruleengine.service.UploadTarget;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactiveDebrickedClientTest {
+
+    private static final String API_URL = "https://debricked.com/api/";
+
+    private final List<ClientRequest> requests = new ArrayList<>();
+
+    /**
+     * A client whose transport answers every request with the given status and body.
+     */
+    private ReactiveDebrickedClient clientRespondingWith(HttpStatus status, String body) {
+        return clientRespondingWith(status, body, null);
+    }
+
+    private ReactiveDebrickedClient clientRespondingWith(HttpStatus status, String body, String retryAfter) {
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    requests.add(request);
+                    ClientResponse.Builder response = ClientResponse.create(status)
+                            .header(HttpHeaders.CONTENT_TYPE, "application/json");
+                    if (retryAfter != null) {
+                        response.header(HttpHeaders.RETRY_AFTER, retryAfter);
+                    }
+                    return Mono.just(response.body(body).build());
+                })
+                .build();
+        ReactiveDebrickedClient client = new ReactiveDebrickedClient();
+        ReflectionTestUtils.setField(client, "debrickedApiUrl", API_URL);
+        ReflectionTestUtils.setField(client, "webClient", webClient);
+        ReflectionTestUtils.setField(client, "governor", new DebrickedRateGovernor());
+        return client;
+    }
+
+    /**
+     * The exception a blocking subscriber receives, unwrapped from the runtime exception that
+     * carries checked ones out of {@code block()}.
+     */
+    private static DebrickedApiException failure(Executable call) {
+        RuntimeException thrown = assertThrows(RuntimeException.class, call);
+        return assertInstanceOf(DebrickedApiException.class, Exceptions.unwrap(thrown));
+    }
+
+    @Test
+    void testGetScanStatus_ReadsTypedStatus() {
+        ReactiveDebrickedClient client = clientRespondingWith(HttpStatus.OK,
+                "{\"progress\": 100, \"vulnerabilitiesFound\": 7, \"detailsUrl\": \"https://x\"}");
+
+        ScanStatus status = client.getScanStatus("12345", "token").block();
+
+        assertEquals(new ScanStatus(100, 7), status);
+        ClientRequest request = requests.get(0);
+        assertEquals(HttpMethod.GET, request.method());
+        assertEquals(API_URL + "ci/upload/status?ciUploadId=12345", request.url().toString());
+        assertEquals("Bearer token", request.headers().getFirst(HttpHeaders.AUTHORIZATION));
+    }
+
+    @Test
+    void testGetScanStatus_ErrorStatusBecomesApiException() {
+        ReactiveDebrickedClient client = clientRespondingWith(HttpStatus.SERVICE_UNAVAILABLE, "{}");
+
+        DebrickedApiException e = failure(() -> client.getScanStatus("12345", "token").block());
+
+        assertEquals("scan status", e.getOperation());
+        assertEquals(503, e.getStatusCode());
+        assertTrue(e.isRetryable());
+    }
+
+    @Test
+    void testGetScanStatus_TooManyRequestsPausesLaterCalls() {
+        ReactiveDebrickedClient client = clientRespondingWith(HttpStatus.TOO_MANY_REQUESTS, "{}", "60");
+
+        DebrickedApiException e = failure(() -> client.getScanStatus("12345", "token").block());
+        assertEquals(Duration.ofSeconds(60), e.getRetryAfter());
+
+        // The pause outlasts the wait a poll accepts, so it gives up without sending anything
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> client.getScanStatus("12345", "token").block());
+        assertInstanceOf(DebrickedUnavailableException.class, Exceptions.unwrap(thrown));
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void testUploadFile_ReturnsCiUploadId() {
+        ReactiveDebrickedClient client = clientRespondingWith(HttpStatus.OK, "{\"ciUploadId\": 4711}");
+        DependencyFile file = new DependencyFile("pom.xml",
+                new ByteArrayResource("<project/>".getBytes(StandardCharsets.UTF_8)), 10);
+
+        String ciUploadId = client.uploadFile(file, null, UploadTarget.DEFAULT, "token").block();
+
+        assertEquals("4711", ciUploadId);
+        ClientRequest request = requests.get(0);
+        assertEquals(HttpMethod.POST, request.method());
+        assertEquals(API_URL + "uploads/dependencies/files", request.url().toString());
+    }
+
+    @Test
+    void testUploadFile_RejectedFileIsNotRetryable() {
+        ReactiveDebrickedClient client = clientRespondingWith(HttpStatus.BAD_REQUEST, "{\"message\": \"bad file\"}");
+        DependencyFile file = new DependencyFile("pom.xml",
+                new ByteArrayResource("<project/>".getBytes(StandardCharsets.UTF_8)), 10);
+
+        DebrickedApiException e = failure(() -> client.uploadFile(file, "4711", UploadTarget.DEFAULT, "token").block());
+
+        assertEquals(400, e.getStatusCode());
+        assertFalse(e.isRetryable());
+    }
+
+    @Test
+    void testLogin_ReturnsToken() {
+        ReactiveDebrickedClient client = clientRespondingWith(HttpStatus.OK, "{\"token\": \"jwt\"}");
+        ReflectionTestUtils.setField(client, "loginUrl", "https://debricked.com/api/login_check");
+
+        assertEquals("jwt", client.login("user", "p&ss=word").block());
+        assertEquals("https://debricked.com/api/login_check", requests.get(0).url().toString());
+    }
+}
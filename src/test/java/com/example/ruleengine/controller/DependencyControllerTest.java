@@ -1,16 +1,32 @@
 package com.example.ruleengine.controller;
 
+import com.example.ruleengine.client.DebrickedUnavailableException;
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.entity.UploadJob;
+import com.example.ruleengine.repository.ScanResult;
 import com.example.ruleengine.service.DebrickedService;
 import com.example.ruleengine.service.NotificationService;
+import com.example.ruleengine.service.ScanResultWaiters;
+import com.example.ruleengine.service.UploadJobService;
+import com.example.ruleengine.service.UploadTarget;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 
@@ -22,6 +38,12 @@ class DependencyControllerTest {
     @Mock
     private NotificationService notificationService;
 
+    @Mock
+    private UploadJobService uploadJobService;
+
+    @Mock
+    private ScanResultWaiters resultWaiters;
+
     @InjectMocks
     private DependencyController dependencyController;
 
@@ -37,17 +59,19 @@ class DependencyControllerTest {
         String email = "test@example.com";
 
         // Mock the behavior of the service method
-        when(debrickedService.uploadDependencies(files, email)).thenReturn(true);
+        when(debrickedService.uploadDependencies(files, email, UploadTarget.DEFAULT)).thenReturn("12345");
 
         // Act
-        ResponseEntity<String> response = dependencyController.uploadFiles(files, email);
+        ResponseEntity<String> response = dependencyController.uploadFiles(files, email, null, null);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals("Files uploaded successfully", response.getBody());
+        // The CI client waits for the outcome of the scan at the result URL
+        assertEquals(URI.create("/api/dependencies/12345/result"), response.getHeaders().getLocation());
 
         // Verify that the service method was called
-        verify(debrickedService, times(1)).uploadDependencies(files, email);
+        verify(debrickedService, times(1)).uploadDependencies(files, email, UploadTarget.DEFAULT);
         verifyNoInteractions(notificationService); // No email notification for success
     }
 
@@ -58,17 +82,17 @@ class DependencyControllerTest {
         String email = "test@example.com";
 
         // Mock the behavior of the service method to return false
-        when(debrickedService.uploadDependencies(files, email)).thenReturn(false);
+        when(debrickedService.uploadDependencies(files, email, UploadTarget.DEFAULT)).thenReturn(null);
 
         // Act
-        ResponseEntity<String> response = dependencyController.uploadFiles(files, email);
+        ResponseEntity<String> response = dependencyController.uploadFiles(files, email, null, null);
 
         // Assert
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
         assertEquals("File Upload Failed", response.getBody());
 
         // Verify the service method was called and no email notification was sent
-        verify(debrickedService, times(1)).uploadDependencies(files, email);
+        verify(debrickedService, times(1)).uploadDependencies(files, email, UploadTarget.DEFAULT);
         verifyNoInteractions(notificationService); // No email notification for failed upload
     }
 
@@ -80,17 +104,116 @@ class DependencyControllerTest {
         String errorMessage = "An error occurred";
 
         // Mock the behavior of the service method to throw an exception
-        when(debrickedService.uploadDependencies(files, email)).thenThrow(new RuntimeException(errorMessage));
+        when(debrickedService.uploadDependencies(files, email, UploadTarget.DEFAULT)).thenThrow(new RuntimeException(errorMessage));
 
         // Act
-        ResponseEntity<String> response = dependencyController.uploadFiles(files, email);
+        ResponseEntity<String> response = dependencyController.uploadFiles(files, email, null, null);
 
         // Assert
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
         assertEquals("File upload failed: " + errorMessage, response.getBody());
 
         // Verify that the service method was called and email notification was sent
-        verify(debrickedService, times(1)).uploadDependencies(files, email);
+        verify(debrickedService, times(1)).uploadDependencies(files, email, UploadTarget.DEFAULT);
         verify(notificationService, times(1)).sendEmail(email, "File upload failed", errorMessage);
     }
+
+    @Test
+    void uploadFiles_DebrickedUnavailable_ReturnsServiceUnavailableWithRetryAfter() throws Exception {
+        MultipartFile[] files = new MultipartFile[1];
+        String email = "test@example.com";
+        when(debrickedService.uploadDependencies(files, email, UploadTarget.DEFAULT))
+                .thenThrow(new DebrickedUnavailableException("circuit open", Duration.ofSeconds(30)));
+
+        ResponseEntity<String> response = dependencyController.uploadFiles(files, email, null, null);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("30", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        verifyNoInteractions(notificationService); // Nothing was lost, the client retries
+    }
+
+    @Test
+    void uploadFiles_RepositoryAndCommitArePassedOn() throws Exception {
+        MultipartFile[] files = new MultipartFile[1];
+        String email = "test@example.com";
+        UploadTarget target = new UploadTarget("payments", "a1b2c3");
+        when(debrickedService.uploadDependencies(files, email, target)).thenReturn("12345");
+
+        ResponseEntity<String> response = dependencyController.uploadFiles(files, email, "payments", "a1b2c3");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(debrickedService, times(1)).uploadDependencies(files, email, target);
+    }
+
+    @Test
+    void uploadFiles_AsyncMode_ReturnsAcceptedWithJobId() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(dependencyController, "asyncUploads", true);
+        MultipartFile[] files = new MultipartFile[1];
+        String email = "test@example.com";
+        UploadJob job = new UploadJob();
+        job.setId("job-1");
+        when(uploadJobService.submit(files, email, UploadTarget.DEFAULT)).thenReturn(job);
+
+        // Act
+        ResponseEntity<String> response = dependencyController.uploadFiles(files, email, null, null);
+
+        // Assert
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals("job-1", response.getBody());
+        assertEquals("/api/dependencies/jobs/job-1", response.getHeaders().getLocation().toString());
+        verifyNoInteractions(debrickedService); // Debricked is only called by the background job
+    }
+
+    @Test
+    void uploadFiles_AsyncModeQueueFull_ReturnsServiceUnavailable() throws Exception {
+        ReflectionTestUtils.setField(dependencyController, "asyncUploads", true);
+        MultipartFile[] files = new MultipartFile[1];
+        String email = "test@example.com";
+        when(uploadJobService.submit(files, email, UploadTarget.DEFAULT)).thenThrow(new RejectedExecutionException("queue full"));
+
+        ResponseEntity<String> response = dependencyController.uploadFiles(files, email, null, null);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void getJob_KnownAndUnknownIds() {
+        UploadJob job = new UploadJob();
+        job.setId("job-1");
+        job.setState(UploadJob.State.SUCCEEDED);
+        job.setCiUploadId("12345");
+        when(uploadJobService.findJob("job-1")).thenReturn(Optional.of(job));
+        when(uploadJobService.findJob("missing")).thenReturn(Optional.empty());
+
+        ResponseEntity<UploadJob> found = dependencyController.getJob("job-1");
+        ResponseEntity<UploadJob> missing = dependencyController.getJob("missing");
+
+        assertEquals(HttpStatus.OK, found.getStatusCode());
+        assertEquals("12345", found.getBody().getCiUploadId());
+        assertEquals(HttpStatus.NOT_FOUND, missing.getStatusCode());
+    }
+
+    @Test
+    void getResult_AnswersWhenTheScanIsDoneOrTheWaitEnds() {
+        ScanResult running = new ScanResult("12345", DependencyUpload.Status.IN_PROGRESS, null, 40);
+        ScanResult completed = new ScanResult("12345", DependencyUpload.Status.COMPLETED, 7, 100);
+        when(resultWaiters.getMaxWait()).thenReturn(Duration.ofSeconds(60));
+        when(resultWaiters.find("12345")).thenReturn(Optional.of(running));
+        when(resultWaiters.find("missing")).thenReturn(Optional.empty());
+        when(resultWaiters.await(running, Duration.ofSeconds(30)))
+                .thenReturn(CompletableFuture.completedFuture(completed));
+        when(resultWaiters.await(running, Duration.ZERO)).thenReturn(CompletableFuture.completedFuture(running));
+
+        DeferredResult<ResponseEntity<ScanResult>> done = dependencyController.getResult("12345", 30);
+        DeferredResult<ResponseEntity<ScanResult>> stillRunning = dependencyController.getResult("12345", 0);
+        DeferredResult<ResponseEntity<ScanResult>> missing = dependencyController.getResult("missing", 30);
+
+        assertEquals(HttpStatus.OK, ((ResponseEntity<?>) done.getResult()).getStatusCode());
+        assertEquals(completed, ((ResponseEntity<?>) done.getResult()).getBody());
+        assertEquals(HttpStatus.ACCEPTED, ((ResponseEntity<?>) stillRunning.getResult()).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, ((ResponseEntity<?>) missing.getResult()).getStatusCode());
+        verify(resultWaiters, never()).await(any(), eq(Duration.ofSeconds(60)));
+    }
 }
@@ -0,0 +1,82 @@
+package com.example.ruleengine.rules;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RuleRegistryTest {
+
+    private RuleRegistry ruleRegistry;
+
+    @TempDir
+    Path rulesDir;
+
+    @BeforeEach
+    void setUp() {
+        ruleRegistry = new RuleRegistry();
+    }
+
+    private static ScanFacts scan(int vulnerabilities) {
+        // The tenant policy of the scan sets a threshold of 5
+        return ScanFacts.of(vulnerabilities, -1, 5, "payments", "main", "dev@example.com");
+    }
+
+    @Test
+    void testWithoutRuleFileTheThresholdApplies() {
+        RuleSet rules = ruleRegistry.current();
+
+        assertEquals("threshold", rules.firstMatch(scan(6)).name());
+        assertNull(rules.firstMatch(scan(5)));
+    }
+
+    @Test
+    void testRuleFileIsReloadedWhenItChanges() throws IOException {
+        Path file = rulesDir.resolve("rules.txt");
+        Files.writeString(file, "any: vulnerabilities > 0\n");
+        ReflectionTestUtils.setField(ruleRegistry, "rulesFile", file.toString());
+
+        assertEquals("any", ruleRegistry.current().firstMatch(scan(1)).name());
+
+        // Unchanged file, the compiled rules are kept
+        RuleSet loaded = ruleRegistry.current();
+        ruleRegistry.reloadIfChanged();
+        assertSame(loaded, ruleRegistry.current());
+
+        // Edited file, picked up without a restart
+        Files.writeString(file, "many: vulnerabilities > 100\n# only large scans\n");
+        ruleRegistry.reloadIfChanged();
+        assertNull(ruleRegistry.current().firstMatch(scan(1)));
+        assertEquals("many", ruleRegistry.current().firstMatch(scan(101)).name());
+    }
+
+    @Test
+    void testBrokenRuleFileKeepsThePreviousRules() throws IOException {
+        Path file = rulesDir.resolve("rules.txt");
+        Files.writeString(file, "any: vulnerabilities > 0\n");
+        ReflectionTestUtils.setField(ruleRegistry, "rulesFile", file.toString());
+        RuleSet loaded = ruleRegistry.current();
+
+        Files.writeString(file, "any: vulnerabilities >\n");
+        ruleRegistry.reloadIfChanged();
+
+        assertSame(loaded, ruleRegistry.current());
+    }
+
+    @Test
+    void testBrokenRuleFileAtStartupFallsBackToTheThreshold() throws IOException {
+        Path file = rulesDir.resolve("rules.txt");
+        Files.writeString(file, "any: vulnerabilities >>> 0\n");
+        ReflectionTestUtils.setField(ruleRegistry, "rulesFile", file.toString());
+
+        assertEquals("threshold", ruleRegistry.current().firstMatch(scan(6)).name());
+    }
+}
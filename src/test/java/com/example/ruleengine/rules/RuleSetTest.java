@@ -0,0 +1,83 @@
+package com.example.ruleengine.rules;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleSetTest {
+
+    private static ScanFacts scan(int vulnerabilities, int previous, String repository) {
+        return ScanFacts.of(vulnerabilities, previous, 5, repository, "main", "dev@payments.example.com");
+    }
+
+    @Test
+    void testFirstMatch_ReturnsTheFirstMatchingRuleInFileOrder() {
+        RuleSet rules = RuleSet.parse("""
+                # Sandbox repositories are never reported
+                sandbox: repository == "sandbox" and vulnerabilities < 0
+                payments: repository in ["payments", "billing"] and vulnerabilities > 0
+                default: vulnerabilities > 5
+                """);
+
+        assertEquals(3, rules.size());
+        assertEquals("payments", rules.firstMatch(scan(1, -1, "payments")).name());
+        assertEquals("default", rules.firstMatch(scan(6, -1, "web")).name());
+        assertNull(rules.firstMatch(scan(5, -1, "web")));
+    }
+
+    @Test
+    void testOperatorsAndPrecedence() {
+        // 'and' binds tighter than 'or'
+        RuleSet rules = RuleSet.parse("r: vulnerabilities >= 10 or vulnerabilities == 3 and not commit != \"main\"");
+        ScanFacts three = scan(3, -1, "web");
+        assertEquals("r", rules.firstMatch(three).name());
+        assertNull(rules.firstMatch(scan(4, -1, "web")));
+
+        RuleSet grouped = RuleSet.parse("r: (vulnerabilities >= 10 or vulnerabilities == 3) and email.domain == \"other.com\"");
+        assertNull(grouped.firstMatch(three));
+        assertEquals("payments.example.com", three.emailDomain());
+    }
+
+    @Test
+    void testNewVulnerabilitiesComparesWithThePreviousScan() {
+        RuleSet rules = RuleSet.parse("regression: new_vulnerabilities > 0");
+
+        assertTrue(rules.needsHistory());
+        assertEquals("regression", rules.firstMatch(scan(4, 3, "web")).name());
+        assertNull(rules.firstMatch(scan(3, 3, "web")));
+        assertNull(rules.firstMatch(scan(2, 3, "web")));
+        // Without an earlier scan every vulnerability is new
+        assertEquals("regression", rules.firstMatch(scan(1, -1, "web")).name());
+        assertFalse(RuleSet.parse("default: vulnerabilities > vulnerabilities").needsHistory());
+    }
+
+    @Test
+    void testLicenseMatchesAnyPackage() {
+        RuleSet rules = RuleSet.parse("copyleft: license in [\"GPL-3.0-only\", \"AGPL-3.0-only\"] or cvss.max >= 9.0");
+        ScanFacts gpl = new ScanFacts(0, -1, 5, 0, 0, 0, 0, 0, List.of("MIT", "GPL-3.0-only"), "web", "main", "dev@example.com");
+        ScanFacts critical = new ScanFacts(1, -1, 5, 1, 0, 0, 0, 9.8, List.of("MIT"), "web", "main", "dev@example.com");
+
+        assertEquals("copyleft", rules.firstMatch(gpl).name());
+        assertEquals("copyleft", rules.firstMatch(critical).name());
+        assertNull(rules.firstMatch(scan(10, -1, "web")));
+    }
+
+    @Test
+    void testSyntaxErrorsReportLineAndColumn() {
+        RuleSyntaxException unknownFact = assertThrows(RuleSyntaxException.class,
+                () -> RuleSet.parse("ok: vulnerabilities > 1\nbad: vulnerabilites > 1"));
+        assertEquals("line 2, column 6: unknown fact 'vulnerabilites'", unknownFact.getMessage());
+
+        assertThrows(RuleSyntaxException.class, () -> RuleSet.parse("bad: repository > \"x\""));
+        assertThrows(RuleSyntaxException.class, () -> RuleSet.parse("bad: vulnerabilities > 1 and"));
+        assertThrows(RuleSyntaxException.class, () -> RuleSet.parse("bad: (vulnerabilities > 1"));
+        assertThrows(RuleSyntaxException.class, () -> RuleSet.parse("a: vulnerabilities > 1\na: vulnerabilities > 2"));
+        assertThrows(RuleSyntaxException.class, () -> RuleSet.parse("no expression"));
+    }
+}
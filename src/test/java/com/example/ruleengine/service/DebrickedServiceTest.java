@@ -1,26 +1,44 @@
 package com.example.ruleengine.service;
 
+import com.example.ruleengine.client.DebrickedClient;
+import com.example.ruleengine.client.DebrickedRateGovernor;
 import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.entity.UploadFile;
 import com.example.ruleengine.repository.DependencyUploadRepository;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpStatus;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
+import com.example.ruleengine.repository.UploadFileRepository;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -37,6 +55,9 @@ class DebrickedServiceTest {
     @Mock
     private DependencyUploadRepository repository;
 
+    @Mock
+    private DebrickedTokenProvider tokenProvider;
+
     @Mock
     private MultipartFile multipartFile;
 
@@ -44,23 +65,66 @@ class DebrickedServiceTest {
     private CloseableHttpClient httpClient;
 
     @Mock
-    private CloseableHttpResponse httpResponse;
+    private UploadFileRepository fileRepository;
 
     @Mock
-    private InputStream inputStream;
+    private UploadClaimer claimer;
 
-    @Value("${debricked.api.url}")
-    private String debrickedApiUrl = "https://debricked.com/api/";
+    @Mock
+    private ScanStatusCheckerService scanStatusChecker;
 
-    @Value("${debricked.api.username}")
-    private String apiUsername = "testUser";
+    @TempDir
+    private Path spoolDir;
 
-    @Value("${debricked.api.password}")
-    private String apiPassword = "testPass";
+    private final AtomicLong uploadIds = new AtomicLong();
+
+    private String debrickedApiUrl = "https://debricked.com/api/";
 
     @BeforeEach
-    public void setUp() {
-        MockitoAnnotations.initMocks(this);
+    public void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        // The real client on top of the mocked transport, so requests and responses are exercised
+        DebrickedClient debrickedClient = new DebrickedClient();
+        ReflectionTestUtils.setField(debrickedClient, "debrickedApiUrl", debrickedApiUrl);
+        ReflectionTestUtils.setField(debrickedClient, "httpClient", httpClient);
+        ReflectionTestUtils.setField(debrickedClient, "governor", new DebrickedRateGovernor());
+        ReflectionTestUtils.setField(debrickedService, "debrickedClient", debrickedClient);
+        when(tokenProvider.getToken()).thenReturn("testToken");
+        // Calls made through the provider get the token the test hands out
+        when(tokenProvider.withToken(any())).thenAnswer(invocation ->
+                invocation.<DebrickedTokenProvider.TokenCall<?>>getArgument(0).call("testToken"));
+
+        // The real state store on top of the mocked repositories; this instance keeps every lease
+        UploadStateStore uploadStore = new UploadStateStore();
+        ReflectionTestUtils.setField(uploadStore, "repository", repository);
+        ReflectionTestUtils.setField(uploadStore, "fileRepository", fileRepository);
+        ReflectionTestUtils.setField(uploadStore, "claimer", claimer);
+        ReflectionTestUtils.setField(uploadStore, "spoolDir", spoolDir.toString());
+        ReflectionTestUtils.setField(debrickedService, "uploadStore", uploadStore);
+        when(claimer.getOwner()).thenReturn("node-a");
+        when(repository.save(any(DependencyUpload.class))).thenAnswer(invocation -> {
+            DependencyUpload upload = invocation.getArgument(0);
+            if (upload.getId() == null) {
+                upload.setId(uploadIds.incrementAndGet());
+            }
+            return upload;
+        });
+        when(repository.advance(anyLong(), any(), any(), any(), anyString(), any())).thenReturn(1);
+        when(repository.release(anyLong(), any(), any(), any(), anyString())).thenReturn(1);
+    }
+
+    /**
+     * Makes the mocked pooled client answer every request with the given status and body.
+     */
+    @SuppressWarnings("unchecked")
+    private void respondWith(int statusCode, String body) throws IOException {
+        when(httpClient.execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class)))
+                .thenAnswer(invocation -> {
+                    BasicClassicHttpResponse response = new BasicClassicHttpResponse(statusCode);
+                    response.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+                    HttpClientResponseHandler<?> handler = invocation.getArgument(1);
+                    return handler.handleResponse(response);
+                });
     }
 
     @Test
@@ -72,38 +136,31 @@ class DebrickedServiceTest {
         when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream("test data".getBytes()));
         when(multipartFile.getOriginalFilename()).thenReturn("testfile");
 
-        // Mocking CloseableHttpResponse and its associated objects
-        CloseableHttpResponse httpResponse = mock(CloseableHttpResponse.class);
-        org.apache.http.StatusLine statusLine = mock(org.apache.http.StatusLine.class);
-        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
-        when(httpResponse.getStatusLine()).thenReturn(statusLine);
-
-        // Mocking HttpEntity
-        HttpEntity httpEntity = mock(HttpEntity.class);
-        when(httpResponse.getEntity()).thenReturn(httpEntity); // Mock the entity
-
-        // Set up InputStream for the HttpEntity content
-        InputStream inputStream = new ByteArrayInputStream("{\"ciUploadId\": \"uploadId\"}".getBytes());
-        when(httpEntity.getContent()).thenReturn(inputStream); // Return InputStream
-
-        // Ensure getContentLength returns a long value
-        long contentLength = "{\"ciUploadId\": \"uploadId\"}".getBytes().length; // Calculate length as long
-        when(httpEntity.getContentLength()).thenReturn(contentLength); // Correctly returns long
-
-        // Mock EntityUtils to return a String from the HttpEntity
-        when(EntityUtils.toString(httpEntity)).thenReturn("{\"ciUploadId\": \"uploadId\"}");
-
-        // Mock the repository save method
-        doNothing().when(repository).save(any(DependencyUpload.class));
+        // Both the upload and the scan start succeed
+        respondWith(HttpStatus.SC_OK, "{\"ciUploadId\": \"uploadId\"}");
 
         // Act
-        boolean result = debrickedService.uploadDependencies(files, "test@example.com");
+        String ciUploadId = debrickedService.uploadDependencies(files, "test@example.com");
 
         // Assert
-        assertTrue(result);
+        assertEquals("uploadId", ciUploadId);
         verify(repository, times(1)).save(any(DependencyUpload.class));
+        // The started scan is handed to the status poller, due right away
+        verify(repository).release(anyLong(), eq(DependencyUpload.Status.SCAN_STARTED),
+                eq(DependencyUpload.Status.IN_PROGRESS), any(Instant.class), eq("node-a"));
     }
 
+    @Test
+    void testUploadDependencies_StoresRepositoryAndCommit() throws IOException {
+        MultipartFile[] files = {mockFile("a.lock")};
+        respondWith(HttpStatus.SC_OK, "{\"ciUploadId\": \"uploadId\"}");
+
+        assertEquals("uploadId", debrickedService.uploadDependencies(files, "test@example.com", new UploadTarget("payments", "a1b2c3")));
+
+        // The rules evaluated on completion see the repository and commit of the upload
+        verify(repository, times(1)).save(argThat(upload ->
+                "payments".equals(upload.getRepositoryName()) && "a1b2c3".equals(upload.getCommitName())));
+    }
 
     @Test
     void testUploadDependencies_FailedUpload() throws IOException {
@@ -111,62 +168,355 @@ class DebrickedServiceTest {
         when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream("test data".getBytes()));
         when(multipartFile.getOriginalFilename()).thenReturn("testfile");
 
-        // Mocking JWT token retrieval failure
-        org.apache.http.StatusLine statusLine = mock(org.apache.http.StatusLine.class);
-        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_BAD_REQUEST);
-        when(httpResponse.getStatusLine()).thenReturn(statusLine); // Return the mocked StatusLine
+        // Mocking upload failure
+        respondWith(HttpStatus.SC_BAD_REQUEST, "{}");
+
+        String ciUploadId = debrickedService.uploadDependencies(files, "test@example.com");
+
+        assertNull(ciUploadId);
+        verify(notificationService, times(1)).notifyUploadFailed("test@example.com", "testfile");
+        verify(repository).release(anyLong(), eq(DependencyUpload.Status.UPLOADING), eq(DependencyUpload.Status.FAILED),
+                isNull(), eq("node-a"));
+    }
+
+    @Test
+    void testUploadDependencies_ParallelUpload() throws IOException {
+        // Arrange: three files uploaded with up to three in parallel
+        MultipartFile[] files = {mockFile("a.lock"), mockFile("b.lock"), mockFile("c.lock")};
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        ReflectionTestUtils.setField(debrickedService, "uploadExecutor", executor);
+        ReflectionTestUtils.setField(debrickedService, "uploadConcurrency", 3);
+        respondWith(HttpStatus.SC_OK, "{\"ciUploadId\": \"uploadId\"}");
+
+        try {
+            // Act
+            String ciUploadId = debrickedService.uploadDependencies(files, "test@example.com");
+
+            // Assert: three uploads plus one scan start, and a single saved upload
+            assertEquals("uploadId", ciUploadId);
+            verify(httpClient, times(4)).execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class));
+            verify(repository, times(1)).save(any(DependencyUpload.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testUploadDependencies_LaterFileFails_ScanStillStarts() throws IOException {
+        MultipartFile[] files = {mockFile("a.lock"), mockFile("b.lock")};
+        AtomicInteger calls = new AtomicInteger();
+        when(httpClient.execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class)))
+                .thenAnswer(invocation -> {
+                    // The second request (upload of b.lock) is rejected, the others succeed
+                    int status = calls.incrementAndGet() == 2 ? HttpStatus.SC_BAD_REQUEST : HttpStatus.SC_OK;
+                    BasicClassicHttpResponse response = new BasicClassicHttpResponse(status);
+                    response.setEntity(new StringEntity("{\"ciUploadId\": \"uploadId\"}", ContentType.APPLICATION_JSON));
+                    HttpClientResponseHandler<?> handler = invocation.getArgument(1);
+                    return handler.handleResponse(response);
+                });
+
+        assertEquals("uploadId", debrickedService.uploadDependencies(files, "test@example.com"));
+        verify(notificationService, times(1)).notifyUploadFailed("test@example.com", "b.lock");
+        verify(repository, times(1)).save(any(DependencyUpload.class));
+    }
+
+    @Test
+    void testUploadDependencies_ServerErrorIsRetried() throws IOException {
+        MultipartFile[] files = {mockFile("a.lock")};
+        ReflectionTestUtils.setField(debrickedService, "uploadRetries", 1);
+        AtomicInteger calls = new AtomicInteger();
+        when(httpClient.execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class)))
+                .thenAnswer(invocation -> {
+                    // Debricked fails the first upload, the retry and the scan start succeed
+                    int status = calls.incrementAndGet() == 1 ? HttpStatus.SC_SERVICE_UNAVAILABLE : HttpStatus.SC_OK;
+                    BasicClassicHttpResponse response = new BasicClassicHttpResponse(status);
+                    response.setEntity(new StringEntity("{\"ciUploadId\": \"uploadId\"}", ContentType.APPLICATION_JSON));
+                    HttpClientResponseHandler<?> handler = invocation.getArgument(1);
+                    return handler.handleResponse(response);
+                });
+
+        assertEquals("uploadId", debrickedService.uploadDependencies(files, "test@example.com"));
+        assertEquals(3, calls.get());
+        verify(notificationService, never()).notifyUploadFailed(anyString(), anyString());
+    }
 
-        boolean result = debrickedService.uploadDependencies(files, "test@example.com");
+    /**
+     * Answers the requests in order with the given statuses, a negative one breaking the connection instead.
+     */
+    @SuppressWarnings("unchecked")
+    private AtomicInteger respondInTurn(int... statusCodes) throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        when(httpClient.execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class)))
+                .thenAnswer(invocation -> {
+                    int status = statusCodes[Math.min(calls.getAndIncrement(), statusCodes.length - 1)];
+                    if (status < 0) {
+                        throw new IOException("Connection reset");
+                    }
+                    BasicClassicHttpResponse response = new BasicClassicHttpResponse(status);
+                    response.setEntity(new StringEntity("{\"ciUploadId\": \"uploadId\"}", ContentType.APPLICATION_JSON));
+                    HttpClientResponseHandler<?> handler = invocation.getArgument(1);
+                    return handler.handleResponse(response);
+                });
+        return calls;
+    }
 
-        assertFalse(result);
-        verify(notificationService, times(1)).sendEmail(eq("test@example.com"), anyString(), anyString());
+    @Test
+    void testUploadDependencies_FileNotSentHoldsBackTheScan() throws IOException {
+        MultipartFile[] files = {mockFile("a.lock"), mockFile("b.lock")};
+        // a.lock is accepted, b.lock hits a server error
+        AtomicInteger calls = respondInTurn(HttpStatus.SC_OK, HttpStatus.SC_SERVICE_UNAVAILABLE);
+
+        assertEquals("uploadId", debrickedService.uploadDependencies(files, "test@example.com"));
+
+        // No scan without b.lock; the upload is released as it is for the recovery to send b.lock
+        assertEquals(2, calls.get());
+        verify(repository).release(anyLong(), eq(DependencyUpload.Status.UPLOADING), eq(DependencyUpload.Status.UPLOADING),
+                isNull(), eq("node-a"));
+        verify(repository, never()).release(anyLong(), any(), eq(DependencyUpload.Status.FAILED), any(), anyString());
+        verify(notificationService, never()).notifyUploadFailed(anyString(), anyString());
     }
 
     @Test
-    void testGetJwtToken_Success() throws IOException {
-        // Mocking JWT token retrieval
-        org.apache.http.StatusLine statusLine = mock(org.apache.http.StatusLine.class);
-        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
-        when(httpResponse.getStatusLine()).thenReturn(statusLine); // Return the mocked StatusLine
+    void testUploadDependencies_TransportErrorOnFirstFileMovesOnToTheNext() throws IOException {
+        MultipartFile[] files = {mockFile("a.lock"), mockFile("b.lock")};
+        respondInTurn(-1, HttpStatus.SC_OK);
+
+        assertEquals("uploadId", debrickedService.uploadDependencies(files, "test@example.com"));
+
+        // b.lock yields the ciUploadId; a.lock is left to be sent on resume
+        verify(repository).advance(anyLong(), eq(DependencyUpload.Status.UPLOADING), eq(DependencyUpload.Status.UPLOADING),
+                eq("uploadId"), eq("node-a"), any(Instant.class));
+        verify(repository).release(anyLong(), eq(DependencyUpload.Status.UPLOADING), eq(DependencyUpload.Status.UPLOADING),
+                isNull(), eq("node-a"));
+    }
 
-        // Mocking HttpEntity
-        org.apache.http.HttpEntity httpEntity = mock(org.apache.http.HttpEntity.class);
-        when(httpResponse.getEntity()).thenReturn(httpEntity); // Mock the entity
+    @Test
+    void testUploadDependencies_FailedScanStartIsLeftToTheRecovery() throws IOException {
+        MultipartFile[] files = {mockFile("a.lock")};
+        respondInTurn(HttpStatus.SC_OK, HttpStatus.SC_BAD_GATEWAY);
 
-        when(EntityUtils.toString(httpEntity)).thenReturn("{\"token\": \"testToken\"}");
+        assertEquals("uploadId", debrickedService.uploadDependencies(files, "test@example.com"));
 
-        String token = debrickedService.getJwtToken(apiUsername, apiPassword);
+        // The file stays with Debricked under its ciUploadId, only the scan start is repeated
+        verify(repository).release(anyLong(), eq(DependencyUpload.Status.UPLOADED), eq(DependencyUpload.Status.UPLOADED),
+                isNull(), eq("node-a"));
+        verify(repository, never()).release(anyLong(), any(), eq(DependencyUpload.Status.FAILED), any(), anyString());
+    }
 
-        assertEquals("testToken", token);
+    @Test
+    void testUploadReceived_FileNotSentIsLeftToTheRecovery() throws IOException {
+        when(httpClient.execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class)))
+                .thenThrow(new IOException("Connection reset"));
+        UploadStateStore.StoredUpload stored = debrickedService.receive(
+                List.of(DependencyFile.of(mockFile("a.lock"))), "test@example.com", UploadTarget.DEFAULT);
+
+        assertNull(debrickedService.uploadReceived(stored));
+
+        // Nobody waits for the answer, so the upload is released with its files instead of given up
+        verify(repository).release(anyLong(), eq(DependencyUpload.Status.UPLOADING), eq(DependencyUpload.Status.UPLOADING),
+                isNull(), eq("node-a"));
+        verify(repository, never()).release(anyLong(), any(), eq(DependencyUpload.Status.FAILED), any(), anyString());
     }
 
     @Test
-    void testGetJwtToken_Failure() throws IOException {
-        // Mocking JWT token retrieval failure
-        org.apache.http.StatusLine statusLine = mock(org.apache.http.StatusLine.class);
-        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_BAD_REQUEST);
-        when(httpResponse.getStatusLine()).thenReturn(statusLine); // Return the mocked StatusLine
+    void testResume_FileIsGivenUpAfterMaxAttempts() throws IOException {
+        ReflectionTestUtils.setField(debrickedService, "maxFileAttempts", 2);
+        DependencyUpload upload = new DependencyUpload();
+        upload.setId(7L);
+        upload.setEmail("test@example.com");
+        upload.setRepositoryName("payments");
+        upload.setCommitName("main");
+        upload.setCiUploadId("uploadId");
+        upload.setStatus(DependencyUpload.Status.UPLOADING);
+        UploadFile accepted = uploadFile("a.lock", UploadFile.Status.UPLOADED);
+        UploadFile failed = uploadFile("b.lock", UploadFile.Status.FAILED);
+        respondInTurn(-1, HttpStatus.SC_OK);
+
+        assertEquals("uploadId", debrickedService.resume(new UploadStateStore.StoredUpload(upload, List.of(accepted, failed))));
+
+        // b.lock failed its second and last attempt, the scan goes ahead without it
+        assertEquals(UploadFile.Status.REJECTED, failed.getStatus());
+        verify(notificationService).notifyUploadFailed("test@example.com", "b.lock");
+        assertEquals(DependencyUpload.Status.IN_PROGRESS, upload.getStatus());
+    }
 
-        assertThrows(IOException.class, () -> debrickedService.getJwtToken(apiUsername, apiPassword));
+    @Test
+    void testResume_SendsOnlyFilesNotUploadedYet() throws IOException {
+        // An upload interrupted after its first file was accepted and its second one failed
+        DependencyUpload upload = new DependencyUpload();
+        upload.setId(7L);
+        upload.setEmail("test@example.com");
+        upload.setRepositoryName("payments");
+        upload.setCommitName("main");
+        upload.setCiUploadId("uploadId");
+        upload.setStatus(DependencyUpload.Status.UPLOADING);
+        UploadFile accepted = uploadFile("a.lock", UploadFile.Status.UPLOADED);
+        UploadFile failed = uploadFile("b.lock", UploadFile.Status.FAILED);
+        respondWith(HttpStatus.SC_OK, "{\"ciUploadId\": \"uploadId\"}");
+
+        String ciUploadId = debrickedService.resume(new UploadStateStore.StoredUpload(upload, List.of(accepted, failed)));
+
+        // One upload for b.lock and the scan start
+        assertEquals("uploadId", ciUploadId);
+        verify(httpClient, times(2)).execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class));
+        assertEquals(1, accepted.getAttempts()); // Not sent again
+        assertEquals(2, failed.getAttempts());
+        assertEquals(UploadFile.Status.UPLOADED, failed.getStatus());
+        assertEquals(DependencyUpload.Status.IN_PROGRESS, upload.getStatus());
     }
 
     @Test
-    void testStartScan_Success() throws IOException {
-        // Mocking scan start success
-        org.apache.http.StatusLine statusLine = mock(org.apache.http.StatusLine.class);
-        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
-        when(httpResponse.getStatusLine()).thenReturn(statusLine); // Return the mocked StatusLine
+    void testResume_StartedScanIsOnlyHandedOver() throws IOException {
+        DependencyUpload upload = new DependencyUpload();
+        upload.setId(7L);
+        upload.setCiUploadId("uploadId");
+        upload.setStatus(DependencyUpload.Status.SCAN_STARTED);
+
+        assertEquals("uploadId", debrickedService.resume(new UploadStateStore.StoredUpload(upload, List.of())));
 
-        assertDoesNotThrow(() -> debrickedService.startScan("uploadId", "testToken"));
+        verifyNoInteractions(httpClient);
+        verify(repository).release(eq(7L), eq(DependencyUpload.Status.SCAN_STARTED),
+                eq(DependencyUpload.Status.IN_PROGRESS), any(Instant.class), eq("node-a"));
+    }
+
+    private UploadFile uploadFile(String name, UploadFile.Status status) throws IOException {
+        Path part = Files.writeString(spoolDir.resolve(name), "test data");
+        UploadFile file = new UploadFile();
+        file.setFilename(name);
+        file.setSpoolPath(part.toString());
+        file.setSize(Files.size(part));
+        file.setStatus(status);
+        file.setAttempts(1);
+        return file;
+    }
+
+    private MultipartFile mockFile(String name) throws IOException {
+        MultipartFile file = mock(MultipartFile.class);
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream("test data".getBytes()));
+        when(file.getOriginalFilename()).thenReturn(name);
+        return file;
     }
 
     @Test
-    void testStartScan_Failure() throws IOException {
-        // Mocking scan start failure
-        org.apache.http.StatusLine statusLine = mock(org.apache.http.StatusLine.class);
-        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_BAD_REQUEST);
-        when(httpResponse.getStatusLine()).thenReturn(statusLine); // Return the mocked StatusLine
+    void testUploadDependencies_RecentIdenticalUploadIsReused() throws IOException {
+        ReflectionTestUtils.setField(debrickedService, "dedupTtlMinutes", 60L);
+        DependencyUpload recent = new DependencyUpload();
+        recent.setCiUploadId("existingId");
+        recent.setStatus(DependencyUpload.Status.IN_PROGRESS);
+        when(repository.findFirstByContentHashAndStatusInAndCreatedAtAfterOrderByIdDesc(anyString(), anyCollection(),
+                any(Instant.class)))
+                .thenReturn(Optional.of(recent));
+
+        List<DependencyFile> files = List.of(DependencyFile.of(new MockMultipartFile("files", "a.lock", null, "test data".getBytes())));
+        String ciUploadId = debrickedService.uploadDependencies(files, "other@example.com");
+
+        // Nothing is sent to Debricked, the new requester is attached to the earlier scan
+        assertEquals("existingId", ciUploadId);
+        verifyNoInteractions(httpClient);
+        verify(repository, times(1)).save(argThat(upload ->
+                "existingId".equals(upload.getCiUploadId()) && "other@example.com".equals(upload.getEmail())
+                        && upload.getStatus() == DependencyUpload.Status.IN_PROGRESS));
+        verifyNoInteractions(scanStatusChecker);
+    }
 
-        assertThrows(IOException.class, () -> debrickedService.startScan("uploadId", "testToken"));
+    @Test
+    void testShareRecentScan_ReceivedUploadIsAttachedAndDiscarded() {
+        ReflectionTestUtils.setField(debrickedService, "dedupTtlMinutes", 60L);
+        DependencyUpload recent = new DependencyUpload();
+        recent.setCiUploadId("existingId");
+        recent.setStatus(DependencyUpload.Status.IN_PROGRESS);
+        when(repository.findFirstByContentHashAndStatusInAndCreatedAtAfterOrderByIdDesc(eq("hash"), anyCollection(),
+                any(Instant.class)))
+                .thenReturn(Optional.of(recent));
+        DependencyUpload received = new DependencyUpload();
+        received.setId(42L);
+        received.setEmail("other@example.com");
+        received.setContentHash("hash");
+        when(repository.deleteLeased(42L, "node-a")).thenReturn(1);
+
+        Optional<String> shared = debrickedService.shareRecentScan(new UploadStateStore.StoredUpload(received, List.of()));
+
+        assertEquals(Optional.of("existingId"), shared);
+        verify(repository).save(argThat(upload -> "existingId".equals(upload.getCiUploadId())
+                && "other@example.com".equals(upload.getEmail())));
+        // The received upload is not needed, so it is not resumed either
+        verify(fileRepository).deleteAllByUploadId(42L);
+
+        // Without a content hash the files are always sent
+        received.setContentHash(null);
+        assertEquals(Optional.empty(), debrickedService.shareRecentScan(new UploadStateStore.StoredUpload(received, List.of())));
+    }
+
+    @Test
+    void testUploadDependencies_RepeatOfACompletedScanMakesNoDebrickedCall() throws IOException {
+        ReflectionTestUtils.setField(debrickedService, "dedupTtlMinutes", 60L);
+        respondWith(HttpStatus.SC_OK, "{\"ciUploadId\": \"uploadId\"}");
+        List<DependencyFile> files = List.of(DependencyFile.of(new MockMultipartFile("files", "a.lock", null, "test data".getBytes())));
+
+        assertEquals("uploadId", debrickedService.uploadDependencies(files, "test@example.com"));
+        // One file upload and one scan start
+        verify(httpClient, times(2)).execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class));
+
+        // The poller has completed the scan since
+        ArgumentCaptor<DependencyUpload> saved = ArgumentCaptor.forClass(DependencyUpload.class);
+        verify(repository).save(saved.capture());
+        DependencyUpload first = saved.getValue();
+        first.setStatus(DependencyUpload.Status.COMPLETED);
+        first.setVulnerabilitiesFound(7);
+        when(repository.findFirstByContentHashAndStatusInAndCreatedAtAfterOrderByIdDesc(eq(first.getContentHash()),
+                anyCollection(), any(Instant.class))).thenReturn(Optional.of(first));
+
+        assertEquals("uploadId", debrickedService.uploadDependencies(files, "other@example.com"));
+
+        // The repeat is reported from the stored outcome, with no call to Debricked and nothing left to poll
+        verify(httpClient, times(2)).execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class));
+        verify(scanStatusChecker).completeRepeat(argThat(upload -> "uploadId".equals(upload.getCiUploadId())
+                && "other@example.com".equals(upload.getEmail()) && upload.getStatus() == DependencyUpload.Status.COMPLETED
+                && upload.getVulnerabilitiesFound() == 7));
+        verify(repository, times(1)).save(any(DependencyUpload.class));
+    }
+
+    @Test
+    void testUploadDependencies_ConcurrentIdenticalUploadsShareOneScan() throws Exception {
+        ReflectionTestUtils.setField(debrickedService, "dedupTtlMinutes", 60L);
+        CountDownLatch uploadStarted = new CountDownLatch(1);
+        CountDownLatch releaseUpload = new CountDownLatch(1);
+        when(httpClient.execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class)))
+                .thenAnswer(invocation -> {
+                    uploadStarted.countDown();
+                    releaseUpload.await(5, TimeUnit.SECONDS);
+                    BasicClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+                    response.setEntity(new StringEntity("{\"ciUploadId\": \"uploadId\"}", ContentType.APPLICATION_JSON));
+                    HttpClientResponseHandler<?> handler = invocation.getArgument(1);
+                    return handler.handleResponse(response);
+                });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> debrickedService.uploadDependencies(
+                    List.of(DependencyFile.of(new MockMultipartFile("files", "a.lock", null, "test data".getBytes()))), "test@example.com"));
+            assertTrue(uploadStarted.await(5, TimeUnit.SECONDS));
+            AtomicReference<Thread> secondThread = new AtomicReference<>();
+            Future<String> second = executor.submit(() -> {
+                secondThread.set(Thread.currentThread());
+                return debrickedService.uploadDependencies(
+                        List.of(DependencyFile.of(new MockMultipartFile("files", "a.lock", null, "test data".getBytes()))), "test@example.com");
+            });
+            // Let the first upload finish only once the second one is waiting for it
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while ((secondThread.get() == null || secondThread.get().getState() != Thread.State.WAITING)
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            releaseUpload.countDown();
+
+            assertEquals("uploadId", first.get(5, TimeUnit.SECONDS));
+            assertEquals("uploadId", second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // One upload and one scan start for both requests
+        verify(httpClient, times(2)).execute(any(ClassicHttpRequest.class), any(HttpClientResponseHandler.class));
     }
 }
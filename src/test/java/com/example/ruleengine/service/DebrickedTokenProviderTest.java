@@ -0,0 +1,170 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.client.DebrickedApiException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DebrickedTokenProviderTest {
+
+    private static final Instant NOW = Instant.parse("2024-10-01T12:00:00Z");
+
+    private DebrickedTokenProvider tokenProvider;
+
+    @BeforeEach
+    void setUp() {
+        tokenProvider = spy(new DebrickedTokenProvider());
+        tokenProvider.setClock(Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void testGetToken_CachedUntilExpiry() throws IOException {
+        doReturn(new DebrickedTokenProvider.CachedToken("testToken", NOW.plusSeconds(3600))).when(tokenProvider).login();
+
+        assertEquals("testToken", tokenProvider.getToken());
+        assertEquals("testToken", tokenProvider.getToken());
+
+        // Only the first call logs in, the second one is served from the cache
+        verify(tokenProvider, times(1)).login();
+        assertEquals(1, tokenProvider.getMissCount());
+        assertEquals(1, tokenProvider.getHitCount());
+        assertEquals(1, tokenProvider.getRefreshCount());
+    }
+
+    @Test
+    void testGetToken_ExpiredTokenIsReplaced() throws IOException {
+        doReturn(new DebrickedTokenProvider.CachedToken("oldToken", NOW.plusSeconds(2)),
+                new DebrickedTokenProvider.CachedToken("newToken", NOW.plusSeconds(3600))).when(tokenProvider).login();
+
+        assertEquals("oldToken", tokenProvider.getToken());
+        // The first token is inside the expiry skew, so it must not be handed out again
+        assertEquals("newToken", tokenProvider.getToken());
+        verify(tokenProvider, times(2)).login();
+    }
+
+    @Test
+    void testGetToken_Failure() throws IOException {
+        doThrow(new IOException("Failed to retrieve JWT token: Bad Request")).when(tokenProvider).login();
+
+        assertThrows(IOException.class, () -> tokenProvider.getToken());
+        assertEquals(1, tokenProvider.getFailureCount());
+    }
+
+    @Test
+    void testRefresh_TokenReplacedMeanwhileIsNotLoggedInAgain() throws IOException {
+        doReturn(new DebrickedTokenProvider.CachedToken("testToken", NOW.plusSeconds(3600))).when(tokenProvider).login();
+        // A caller found no token, then another caller's login completed before this one started its own
+        String token = tokenProvider.getToken();
+
+        assertEquals(token, tokenProvider.refresh(null).join().value());
+        verify(tokenProvider, times(1)).login();
+    }
+
+    @Test
+    void testWithToken_RefusedTokenIsReplacedAndTheCallRetriedOnce() throws IOException {
+        doReturn(new DebrickedTokenProvider.CachedToken("oldToken", NOW.plusSeconds(3600)),
+                new DebrickedTokenProvider.CachedToken("newToken", NOW.plusSeconds(3600))).when(tokenProvider).login();
+        tokenProvider.getToken();
+        List<String> calledWith = new ArrayList<>();
+
+        // Debricked revoked the cached token before it expired
+        String result = tokenProvider.withToken(token -> {
+            calledWith.add(token);
+            if (token.equals("oldToken")) {
+                throw new DebrickedApiException("scan status", 401, "Unauthorized");
+            }
+            return "status";
+        });
+
+        assertEquals("status", result);
+        assertEquals(List.of("oldToken", "newToken"), calledWith);
+        assertEquals("newToken", tokenProvider.getToken());
+        verify(tokenProvider, times(2)).login();
+    }
+
+    @Test
+    void testWithToken_OtherErrorsKeepTheToken() throws IOException {
+        doReturn(new DebrickedTokenProvider.CachedToken("testToken", NOW.plusSeconds(3600))).when(tokenProvider).login();
+
+        DebrickedApiException e = assertThrows(DebrickedApiException.class, () -> tokenProvider.withToken(token -> {
+            throw new DebrickedApiException("upload", 400, "Bad Request");
+        }));
+
+        assertEquals(400, e.getStatusCode());
+        assertEquals("testToken", tokenProvider.getToken());
+        verify(tokenProvider, times(1)).login();
+    }
+
+    @Test
+    void testGetToken_ConcurrentCallersShareOneLogin() throws Exception {
+        CountDownLatch loginStarted = new CountDownLatch(1);
+        CountDownLatch releaseLogin = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            loginStarted.countDown();
+            releaseLogin.await(5, TimeUnit.SECONDS);
+            return new DebrickedTokenProvider.CachedToken("testToken", NOW.plusSeconds(3600));
+        }).when(tokenProvider).login();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(tokenProvider::getToken));
+            }
+            assertTrue(loginStarted.await(5, TimeUnit.SECONDS));
+            releaseLogin.countDown();
+            for (Future<String> result : results) {
+                assertEquals("testToken", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(tokenProvider, times(1)).login();
+    }
+
+    @Test
+    void testRefreshAheadOfExpiry_RefreshesTokenCloseToExpiry() throws IOException {
+        doReturn(new DebrickedTokenProvider.CachedToken("oldToken", NOW.plusSeconds(30)),
+                new DebrickedTokenProvider.CachedToken("newToken", NOW.plusSeconds(3600))).when(tokenProvider).login();
+        tokenProvider.getToken();
+
+        // 30 seconds left is inside the default 60 second refresh-ahead window
+        tokenProvider.refreshAheadOfExpiry();
+
+        assertEquals("newToken", tokenProvider.getToken());
+        verify(tokenProvider, times(2)).login();
+    }
+
+    @Test
+    void testRefreshAheadOfExpiry_NoTokenYet() throws IOException {
+        tokenProvider.refreshAheadOfExpiry();
+
+        verify(tokenProvider, never()).login();
+    }
+
+    @Test
+    void testExpiryOf_ReadsExpClaim() {
+        String payload = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"exp\":1727787600}".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(Instant.ofEpochSecond(1727787600), tokenProvider.expiryOf("header." + payload + ".signature"));
+        assertEquals(NOW.plusSeconds(3600), tokenProvider.expiryOf("not-a-jwt"));
+    }
+}
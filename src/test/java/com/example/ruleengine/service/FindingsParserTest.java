@@ -0,0 +1,102 @@
+package com.example.ruleengine.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FindingsParserTest {
+
+    private static InputStream json(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testParse_FindingPerAffectedDependency() throws IOException {
+        String report = """
+                {"total": 2, "meta": {"page": [1, 2]}, "vulnerabilities": [
+                  {"cveId": "CVE-2021-44228", "cvss": {"score": 10.0, "vector": "AV:N"}, "description": "Log4Shell",
+                   "dependencies": [
+                     {"name": "log4j-core", "version": "2.14.1", "licenses": ["Apache-2.0"]},
+                     {"name": "log4j-api", "version": "2.14.1", "licenses": [{"name": "Apache-2.0"}]}]},
+                  {"name": "CVE-2020-0001", "cvss": 5.3, "severity": "MEDIUM"},
+                  {"description": "no identifier, ignored"}
+                ]}
+                """;
+        List<Finding> findings = new ArrayList<>();
+
+        int count = FindingsParser.parse(json(report), 100, findings::addAll);
+
+        assertEquals(3, count);
+        assertEquals(new Finding("CVE-2021-44228", 10.0, "critical", "log4j-core", "2.14.1", List.of("Apache-2.0")), findings.get(0));
+        assertEquals(new Finding("CVE-2021-44228", 10.0, "critical", "log4j-api", "2.14.1", List.of("Apache-2.0")), findings.get(1));
+        // Reported severity wins over the CVSS band, a finding without dependencies has no package
+        assertEquals(new Finding("CVE-2020-0001", 5.3, "medium", null, null, List.of()), findings.get(2));
+    }
+
+    @Test
+    void testParse_TopLevelArrayAndEmptyReports() throws IOException {
+        List<Finding> findings = new ArrayList<>();
+        assertEquals(1, FindingsParser.parse(json("[{\"cveId\": \"CVE-1\"}]"), 10, findings::addAll));
+        assertNull(findings.get(0).cvss());
+        assertEquals("unknown", findings.get(0).severity());
+
+        assertEquals(0, FindingsParser.parse(json("{\"vulnerabilities\": []}"), 10, chunk -> { }));
+        assertEquals(0, FindingsParser.parse(json("{\"message\": \"not ready\"}"), 10, chunk -> { }));
+    }
+
+    @Test
+    void testParse_LargeReportIsHandedOutInBoundedChunks() throws IOException {
+        // 20,000 findings generated while they are read, so the report is never in memory as a whole
+        int total = 20_000;
+        Enumeration<InputStream> parts = new Enumeration<>() {
+            private int next = -1;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next <= total;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                int i = next++;
+                if (i < 0) {
+                    return json("{\"vulnerabilities\": [");
+                }
+                if (i == total) {
+                    return json("]}");
+                }
+                return json((i > 0 ? "," : "") + "{\"cveId\": \"CVE-2024-" + i + "\", \"cvss\": " + (i % 100) / 10.0
+                        + ", \"dependencies\": [{\"name\": \"pkg-" + (i % 50) + "\", \"version\": \"1.0\"}]}");
+            }
+        };
+        AtomicInteger chunks = new AtomicInteger();
+        AtomicInteger largestChunk = new AtomicInteger();
+        FindingsSummary summary = new FindingsSummary(3);
+
+        int count = FindingsParser.parse(new SequenceInputStream(parts), 500, chunk -> {
+            chunks.incrementAndGet();
+            largestChunk.accumulateAndGet(chunk.size(), Math::max);
+            summary.addAll(chunk);
+        });
+
+        assertEquals(total, count);
+        assertEquals(40, chunks.get());
+        assertTrue(largestChunk.get() <= 500);
+        assertEquals(total, summary.getFindings());
+        assertEquals(9.9, summary.getMaxCvss());
+        assertEquals(3, summary.getTopFindings().size());
+        assertEquals(9.9, summary.getTopFindings().get(0).cvss());
+    }
+}
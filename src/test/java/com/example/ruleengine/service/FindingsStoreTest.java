@@ -0,0 +1,103 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.repository.FindingView;
+import com.example.ruleengine.repository.ScanFindingRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@Import(FindingsStore.class)
+class FindingsStoreTest {
+
+    private static final Finding LOG4SHELL_CORE =
+            new Finding("CVE-2021-44228", 10.0, "critical", "log4j-core", "2.14.1", List.of("Apache-2.0"));
+    private static final Finding LOG4SHELL_API =
+            new Finding("CVE-2021-44228", 10.0, "critical", "log4j-api", "2.14.1", List.of("Apache-2.0"));
+    private static final Finding TEXT4SHELL =
+            new Finding("CVE-2022-42889", 9.8, "critical", "commons-text", "1.9", List.of("Apache-2.0"));
+    private static final Finding UNNAMED_PACKAGE = new Finding("CVE-2020-0001", null, "unknown", null, null, List.of());
+
+    @Autowired
+    private FindingsStore findingsStore;
+
+    @Autowired
+    private ScanFindingRepository findingRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void vulnerabilitiesAndPackagesAreStoredOnceAcrossScans() {
+        findingsStore.store("scan-1", List.of(LOG4SHELL_CORE, LOG4SHELL_API));
+        findingsStore.store("scan-1", List.of(TEXT4SHELL, UNNAMED_PACKAGE));
+        findingsStore.store("scan-2", List.of(LOG4SHELL_CORE, TEXT4SHELL));
+
+        assertEquals(3, count("vulnerability"));
+        assertEquals(3, count("dependency_package"));
+        assertEquals(6, count("scan_finding"));
+        assertEquals(List.of(
+                new FindingView("CVE-2021-44228", 10.0, "critical", "log4j-core", "2.14.1", "Apache-2.0"),
+                new FindingView("CVE-2022-42889", 9.8, "critical", "commons-text", "1.9", "Apache-2.0")),
+                findingsStore.findFindings("scan-2"));
+        // Most severe first, the finding without a score and package last
+        List<FindingView> first = findingsStore.findFindings("scan-1");
+        assertEquals(4, first.size());
+        assertEquals("log4j-api", first.get(0).packageName());
+        assertEquals(new FindingView("CVE-2020-0001", null, "unknown", null, null, null), first.get(3));
+    }
+
+    @Test
+    void deletedFindingsCanBeStoredAgain() {
+        findingsStore.store("scan-1", List.of(LOG4SHELL_CORE, TEXT4SHELL));
+
+        findingsStore.deleteFindings("scan-1");
+        assertFalse(findingRepository.existsByCiUploadId("scan-1"));
+
+        findingsStore.store("scan-1", List.of(LOG4SHELL_CORE));
+        assertTrue(findingRepository.existsByCiUploadId("scan-1"));
+        assertEquals(1, findingsStore.findFindings("scan-1").size());
+        // The shared details stay for other scans
+        assertEquals(2, count("vulnerability"));
+    }
+
+    @Test
+    void newVulnerabilitiesAreComparedByCve() {
+        findingsStore.store("scan-1", List.of(LOG4SHELL_CORE, UNNAMED_PACKAGE));
+        // One fixed and one introduced: the same count, but one new vulnerability
+        findingsStore.store("scan-2", List.of(LOG4SHELL_CORE, LOG4SHELL_API, TEXT4SHELL));
+
+        assertEquals(1, findingsStore.countNewVulnerabilities("scan-2", "scan-1"));
+        assertEquals(0, findingsStore.countNewVulnerabilities("scan-2", "scan-2"));
+        // Nothing to compare with when the other scan's findings were never stored
+        assertEquals(-1, findingsStore.countNewVulnerabilities("scan-2", "scan-unknown"));
+    }
+
+    @Test
+    void storedFindingsAreSummarizedAgain() {
+        findingsStore.store("scan-1", List.of(LOG4SHELL_CORE, TEXT4SHELL, UNNAMED_PACKAGE));
+
+        FindingsSummary summary = findingsStore.summarize("scan-1", 1);
+
+        assertEquals(3, summary.getFindings());
+        assertEquals(2, summary.getCritical());
+        assertEquals(10.0, summary.getMaxCvss());
+        assertEquals(List.of("Apache-2.0"), summary.getLicenses());
+        assertEquals(List.of(LOG4SHELL_CORE), summary.getTopFindings());
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.OutboxMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.SimpleMailMessage;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NotificationDigestTest {
+
+    private static OutboxMessage message(OutboxMessage.Kind kind, String subject, String body, String detail, Integer vulnerabilities) {
+        OutboxMessage message = new OutboxMessage();
+        message.setRecipient("test@example.com");
+        message.setKind(kind);
+        message.setSubject(subject);
+        message.setBody(body);
+        message.setDetail(detail);
+        message.setVulnerabilities(vulnerabilities);
+        return message;
+    }
+
+    @Test
+    void testCompose_SingleMessageIsSentUnchanged() {
+        SimpleMailMessage mail = NotificationDigest.compose(List.of(
+                message(OutboxMessage.Kind.UPLOAD_FAILED, "Failed to upload file ", "a.lock", "a.lock", null)));
+
+        assertArrayEquals(new String[]{"test@example.com"}, mail.getTo());
+        assertEquals("Failed to upload file ", mail.getSubject());
+        assertEquals("a.lock", mail.getText());
+    }
+
+    @Test
+    void testCompose_SeveralMessagesBecomeOneDigest() {
+        SimpleMailMessage mail = NotificationDigest.compose(List.of(
+                message(OutboxMessage.Kind.UPLOAD_FAILED, "Failed to upload file ", "a.lock", "a.lock", null),
+                message(OutboxMessage.Kind.UPLOAD_FAILED, "Failed to upload file ", "b.lock", "b.lock", null),
+                message(OutboxMessage.Kind.SCAN_COMPLETED, "Vulnerabilities Detected in Your Dependencies", "report", "42", 12),
+                message(OutboxMessage.Kind.SCAN_STALE, "Dependency scan did not complete", "late", "43", null),
+                message(OutboxMessage.Kind.GENERAL, "File upload failed", "Disk full", null, null)));
+
+        assertEquals("Dependency scan notifications (5)", mail.getSubject());
+        String text = mail.getText();
+        assertTrue(text.contains("Files that failed to upload:\n  - a.lock\n  - b.lock"));
+        assertTrue(text.contains("  - ciUploadId 42: 12 vulnerabilities"));
+        assertTrue(text.contains("Scans that did not complete in time:\n  - ciUploadId 43"));
+        assertTrue(text.contains("File upload failed\nDisk full"));
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.OutboxMessage;
+import com.example.ruleengine.repository.OutboxMessageRepository;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Delivers the outbox to an in-process SMTP server.
+ */
+@DataJpaTest(properties = {
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "notification.coalesce-window-seconds=0" // Messages are due as soon as they are queued, unless a test opens a window
+})
+@Import(NotificationService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // The sender sees what the service committed
+class OutboxSenderTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Autowired
+    private OutboxMessageRepository outboxRepository;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    private OutboxSender outboxSender;
+
+    private JavaMailSenderImpl mailSender;
+
+    @BeforeEach
+    void setUp() {
+        outboxRepository.deleteAll();
+        // The service is shared by the tests of this context, so undo a window a previous test opened
+        setCoalesceWindow(0);
+        mailSender = spy(new JavaMailSenderImpl());
+        mailSender.setHost("localhost");
+        mailSender.setPort(greenMail.getSmtp().getPort());
+
+        outboxSender = new OutboxSender();
+        ReflectionTestUtils.setField(outboxSender, "outboxRepository", outboxRepository);
+        ReflectionTestUtils.setField(outboxSender, "mailSender", mailSender);
+        ReflectionTestUtils.setField(outboxSender, "senderExecutor", (Executor) Runnable::run);
+    }
+
+    @Test
+    void testDrain_SendsQueuedMessagesOnceOverOneConnection() {
+        for (int i = 0; i < 5; i++) {
+            notificationService.sendEmail("user" + i + "@example.com", "Subject " + i, "Body " + i);
+        }
+
+        outboxSender.drain();
+        outboxSender.drain();
+
+        // All five went out in a single batch and none was sent twice
+        assertEquals(5, greenMail.getReceivedMessages().length);
+        verify(mailSender, times(1)).send(any(SimpleMailMessage[].class));
+        assertTrue(outboxRepository.findAll().stream().allMatch(message -> message.getState() == OutboxMessage.State.SENT));
+    }
+
+    @Test
+    void testDrain_UnreachableServerIsRetriedWithBackoff() throws IOException {
+        mailSender.setPort(unusedPort());
+        notificationService.sendEmail("test@example.com", "Subject", "Body");
+
+        outboxSender.drain();
+
+        OutboxMessage message = outboxRepository.findAll().get(0);
+        assertEquals(OutboxMessage.State.PENDING, message.getState());
+        assertEquals(1, message.getAttempts());
+        assertTrue(message.getNextAttemptAt().isAfter(Instant.now()));
+
+        // Not due yet, so the next drain leaves it alone
+        outboxSender.drain();
+        verify(mailSender, times(1)).send(any(SimpleMailMessage[].class));
+
+        // Once the server is back and the retry is due, it goes out
+        mailSender.setPort(greenMail.getSmtp().getPort());
+        message.setNextAttemptAt(Instant.now());
+        outboxRepository.save(message);
+        outboxSender.drain();
+        assertEquals(1, greenMail.getReceivedMessages().length);
+    }
+
+    @Test
+    void testDrain_GivesUpAfterMaxAttempts() throws IOException {
+        mailSender.setPort(unusedPort());
+        ReflectionTestUtils.setField(outboxSender, "maxAttempts", 1);
+        notificationService.sendEmail("test@example.com", "Subject", "Body");
+
+        outboxSender.drain();
+
+        assertEquals(OutboxMessage.State.FAILED, outboxRepository.findAll().get(0).getState());
+    }
+
+    @Test
+    void testDrain_ClaimedMessageIsNeverSentAgain() {
+        notificationService.sendEmail("test@example.com", "Subject", "Body");
+        // A sender claimed it and died before recording the outcome
+        OutboxMessage message = outboxRepository.findAll().get(0);
+        message.setState(OutboxMessage.State.SENDING);
+        outboxRepository.save(message);
+
+        outboxSender.drain();
+
+        assertEquals(0, greenMail.getReceivedMessages().length);
+        assertEquals(List.of(OutboxMessage.State.SENDING),
+                outboxRepository.findAll().stream().map(OutboxMessage::getState).toList());
+    }
+
+    @Test
+    void testDrain_MessagesWithinTheWindowGoOutAsOneDigest() throws Exception {
+        setCoalesceWindow(30);
+        notificationService.notifyUploadFailed("ci@example.com", "a.lock");
+        notificationService.notifyUploadFailed("ci@example.com", "b.lock");
+        notificationService.notifyScanCompleted("ci@example.com", "42", 12, "report");
+        notificationService.sendEmail("other@example.com", "Subject", "Body");
+
+        // The window is still open, nothing goes out yet, and the recipient's messages share one due time
+        outboxSender.drain();
+        assertEquals(0, greenMail.getReceivedMessages().length);
+        List<OutboxMessage> queued = outboxRepository.findAll();
+        assertEquals(1, queued.stream().filter(message -> message.getRecipient().equals("ci@example.com"))
+                .map(OutboxMessage::getNextAttemptAt).distinct().count());
+
+        // Close the window
+        Instant now = Instant.now();
+        queued.forEach(message -> message.setNextAttemptAt(now));
+        outboxRepository.saveAll(queued);
+        outboxSender.drain();
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertEquals(2, received.length);
+        MimeMessage digest = received[0].getAllRecipients()[0].toString().equals("ci@example.com") ? received[0] : received[1];
+        assertEquals("Dependency scan notifications (3)", digest.getSubject());
+        String text = GreenMailUtil.getBody(digest);
+        assertTrue(text.contains("a.lock") && text.contains("b.lock"));
+        assertTrue(text.contains("ciUploadId 42: 12 vulnerabilities"));
+        assertTrue(outboxRepository.findAll().stream().allMatch(message -> message.getState() == OutboxMessage.State.SENT));
+    }
+
+    @Test
+    void testDrain_DigestWaitsForItsWindowToClose() throws Exception {
+        setCoalesceWindow(1);
+        notificationService.notifyUploadFailed("ci@example.com", "a.lock");
+        notificationService.notifyUploadFailed("ci@example.com", "b.lock");
+        Instant windowClosesAt = outboxRepository.findAll().get(0).getNextAttemptAt();
+
+        // Drained while the window is open, nothing goes out and nothing is claimed
+        outboxSender.drain();
+        assertEquals(0, greenMail.getReceivedMessages().length);
+        assertTrue(outboxRepository.findAll().stream().allMatch(message -> message.getState() == OutboxMessage.State.PENDING));
+
+        // The first drain after the window closes sends both messages as one digest
+        Thread.sleep(Math.max(0, windowClosesAt.toEpochMilli() - System.currentTimeMillis()) + 50);
+        outboxSender.drain();
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertEquals(1, received.length);
+        assertEquals("Dependency scan notifications (2)", received[0].getSubject());
+        verify(mailSender, times(1)).send(any(SimpleMailMessage[].class));
+        assertTrue(outboxRepository.findAll().stream().allMatch(message -> message.getState() == OutboxMessage.State.SENT));
+    }
+
+    private void setCoalesceWindow(long seconds) {
+        NotificationService target = AopTestUtils.getTargetObject(notificationService);
+        ReflectionTestUtils.setField(target, "coalesceWindowSeconds", seconds);
+    }
+
+    private static int unusedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.ruleengine.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollScheduleTest {
+
+    private static final Instant NOW = Instant.parse("2024-10-01T12:00:00Z");
+
+    private final PollSchedule pollSchedule = new PollSchedule();
+
+    @Test
+    void testNextInterval_BacksOffWithoutProgress() {
+        Instant seen = NOW.minusSeconds(60);
+
+        assertEquals(Duration.ofSeconds(10), pollSchedule.nextInterval(20, seen, 20, 1, NOW));
+        assertEquals(Duration.ofSeconds(40), pollSchedule.nextInterval(20, seen, 20, 3, NOW));
+        // Capped at the maximum interval
+        assertEquals(Duration.ofSeconds(300), pollSchedule.nextInterval(20, seen, 20, 10, NOW));
+    }
+
+    @Test
+    void testNextInterval_FollowsProgressRate() {
+        // 10% in 100 seconds leaves 50% for roughly 500 seconds, checked again halfway (capped)
+        assertEquals(Duration.ofSeconds(250), pollSchedule.nextInterval(40, NOW.minusSeconds(100), 50, 0, NOW));
+        // Fast progress never goes below the minimum interval
+        assertEquals(Duration.ofSeconds(5), pollSchedule.nextInterval(10, NOW.minusSeconds(5), 60, 0, NOW));
+    }
+
+    @Test
+    void testNextInterval_NearCompletionUsesMinimum() {
+        assertEquals(Duration.ofSeconds(5), pollSchedule.nextInterval(95, NOW.minusSeconds(600), 95, 8, NOW));
+    }
+
+    @Test
+    void testIsStale() {
+        assertTrue(pollSchedule.isStale(NOW.minus(Duration.ofHours(7)), NOW));
+        assertFalse(pollSchedule.isStale(NOW.minus(Duration.ofHours(1)), NOW));
+        assertFalse(pollSchedule.isStale(null, NOW));
+    }
+}
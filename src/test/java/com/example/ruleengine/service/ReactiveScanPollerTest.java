@@ -0,0 +1,140 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.client.DebrickedApiException;
+import com.example.ruleengine.client.DebrickedRateGovernor;
+import com.example.ruleengine.client.ReactiveDebrickedClient;
+import com.example.ruleengine.client.ScanStatus;
+import com.example.ruleengine.repository.PendingUpload;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class ReactiveScanPollerTest {
+
+    @Mock
+    private ScanStatusCheckerService checker;
+
+    @Mock
+    private ReactiveDebrickedClient debrickedClient;
+
+    @Mock
+    private ReactiveTokenProvider tokenProvider;
+
+    @Mock
+    private UploadClaimer claimer;
+
+    @Mock
+    private DebrickedRateGovernor governor;
+
+    @InjectMocks
+    private ReactiveScanPoller poller;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(tokenProvider.getToken()).thenReturn(Mono.just("token"));
+        when(tokenProvider.withToken(any())).thenAnswer(invocation ->
+                invocation.<Function<String, Mono<?>>>getArgument(0).apply("token"));
+        when(governor.isAvailable()).thenReturn(true);
+        // This instance leases every upload it is offered
+        when(claimer.claim(anyList(), any(Instant.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        // The governor can serve every page unless a test says otherwise
+        when(checker.servable(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    private static PendingUpload upload(long id) {
+        Instant createdAt = Instant.now();
+        return new PendingUpload(id, "ci-" + id, "user@example.com", "repo", "commit", createdAt, createdAt,
+                0, null, null, null);
+    }
+
+    @Test
+    void testCycle_HandsEveryStatusToTheCheckerAndCompletesEachPage() {
+        List<PendingUpload> first = List.of(upload(1), upload(2));
+        List<PendingUpload> second = List.of(upload(3));
+        when(checker.duePage(any(Instant.class), isNull())).thenReturn(first);
+        when(checker.duePage(any(Instant.class), eq(first))).thenReturn(second);
+        when(checker.duePage(any(Instant.class), eq(second))).thenReturn(List.of());
+        when(debrickedClient.getScanStatus(anyString(), eq("token"))).thenReturn(Mono.just(new ScanStatus(100, 3)));
+        // One status call fails, which must not affect the others
+        when(debrickedClient.getScanStatus(eq("ci-2"), eq("token")))
+                .thenReturn(Mono.error(new DebrickedApiException("scan status", 503, "Service Unavailable")));
+
+        poller.cycle().block();
+
+        verify(checker).handleStatus(eq(List.of(first.get(0))), eq(new ScanStatus(100, 3)), any());
+        verify(checker).handleStatus(eq(List.of(second.get(0))), eq(new ScanStatus(100, 3)), any());
+        verify(checker).handleCheckError(eq(List.of(first.get(1))), any(DebrickedApiException.class));
+        verify(checker, times(2)).completePage(any());
+        verify(checker).recordCycle(anyLong());
+    }
+
+    @Test
+    void testCycle_StatusCallsOfAPageRunConcurrently() {
+        List<PendingUpload> page = List.of(upload(1), upload(2), upload(3), upload(4));
+        when(checker.duePage(any(Instant.class), isNull())).thenReturn(page);
+        when(checker.duePage(any(Instant.class), eq(page))).thenReturn(List.of());
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenAnswer(invocation -> Mono.defer(() -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return Mono.delay(Duration.ofMillis(100)).map(tick -> new ScanStatus(50, 0));
+        }).doFinally(signal -> inFlight.decrementAndGet()));
+
+        poller.cycle().block(Duration.ofSeconds(5));
+
+        // All four calls wait for Debricked together instead of one after another
+        assertEquals(4, maxInFlight.get());
+        verify(checker, times(4)).handleStatus(any(), eq(new ScanStatus(50, 0)), any());
+    }
+
+    @Test
+    void testCycle_WithoutTokenNoStatusIsFetched() {
+        when(checker.duePage(any(Instant.class), isNull())).thenReturn(List.of(upload(1)));
+        when(tokenProvider.getToken()).thenReturn(Mono.error(new IOException("login failed")));
+
+        poller.cycle().block();
+
+        verifyNoInteractions(debrickedClient);
+        verify(checker, never()).completePage(any());
+        verify(checker).recordCycle(anyLong());
+    }
+
+    @Test
+    void testCycle_ConcurrencyIsBounded() {
+        ReflectionTestUtils.setField(poller, "pollConcurrency", 2);
+        List<PendingUpload> page = List.of(upload(1), upload(2), upload(3), upload(4));
+        when(checker.duePage(any(Instant.class), isNull())).thenReturn(page);
+        when(checker.duePage(any(Instant.class), eq(page))).thenReturn(List.of());
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenAnswer(invocation -> Mono.defer(() -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return Mono.delay(Duration.ofMillis(50)).map(tick -> new ScanStatus(50, 0));
+        }).doFinally(signal -> inFlight.decrementAndGet()));
+
+        poller.cycle().block(Duration.ofSeconds(5));
+
+        assertEquals(2, maxInFlight.get());
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.client.DebrickedApiException;
+import com.example.ruleengine.client.ReactiveDebrickedClient;
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.entity.UploadFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class ReactiveUploadServiceTest {
+
+    @Mock
+    private ReactiveDebrickedClient debrickedClient;
+
+    @Mock
+    private ReactiveTokenProvider tokenProvider;
+
+    @Mock
+    private DebrickedService debrickedService;
+
+    @Mock
+    private UploadStateStore uploadStore;
+
+    @Mock
+    private NotificationService notificationService;
+
+    @InjectMocks
+    private ReactiveUploadService uploadService;
+
+    private DependencyUpload upload;
+
+    // Spooled content of the recorded files
+    private final Map<UploadFile, DependencyFile> contents = new HashMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(uploadService, "uploadRetries", 1);
+        ReflectionTestUtils.setField(uploadService, "uploadConcurrency", 4);
+        when(tokenProvider.getToken()).thenReturn(Mono.just("token"));
+        when(tokenProvider.withToken(any())).thenAnswer(invocation ->
+                invocation.<Function<String, Mono<?>>>getArgument(0).apply("token"));
+        when(debrickedClient.startScan(anyString(), anyString())).thenReturn(Mono.empty());
+
+        // The files are recorded as an upload leased to this instance, with nothing to share
+        upload = new DependencyUpload();
+        upload.setId(7L);
+        upload.setEmail("user@example.com");
+        upload.setStatus(DependencyUpload.Status.RECEIVED);
+        when(debrickedService.receive(anyList(), eq("user@example.com"), eq(UploadTarget.DEFAULT))).thenAnswer(invocation -> {
+            List<UploadFile> files = new ArrayList<>();
+            for (DependencyFile file : invocation.<List<DependencyFile>>getArgument(0)) {
+                UploadFile uploadFile = new UploadFile();
+                uploadFile.setFilename(file.filename());
+                uploadFile.setStatus(UploadFile.Status.PENDING);
+                contents.put(uploadFile, file);
+                files.add(uploadFile);
+            }
+            return new UploadStateStore.StoredUpload(upload, files);
+        });
+        when(debrickedService.shareRecentScan(any())).thenReturn(Optional.empty());
+        when(uploadStore.content(any())).thenAnswer(invocation -> contents.get(invocation.<UploadFile>getArgument(0)));
+        doAnswer(invocation -> {
+            upload.setCiUploadId(invocation.getArgument(1));
+            return null;
+        }).when(uploadStore).recordCiUploadId(eq(upload), anyString());
+        doAnswer(invocation -> {
+            UploadFile file = invocation.getArgument(0);
+            file.setStatus(invocation.getArgument(1));
+            file.setAttempts(file.getAttempts() + 1);
+            return null;
+        }).when(uploadStore).recordFile(any(), any(), any());
+    }
+
+    private static DependencyFile file(String name) {
+        return new DependencyFile(name, new ByteArrayResource("{}".getBytes(StandardCharsets.UTF_8)), 2);
+    }
+
+    private static DebrickedApiException rejected() {
+        return new DebrickedApiException("upload", 400, "Bad Request");
+    }
+
+    @Test
+    void testUploadDependencies_FirstSuccessfulFileYieldsTheIdForTheRest() {
+        DependencyFile bad = file("bad.json");
+        DependencyFile first = file("package.json");
+        DependencyFile second = file("composer.json");
+        when(debrickedClient.uploadFile(eq(bad), isNull(), any(), eq("token"))).thenReturn(Mono.error(rejected()));
+        when(debrickedClient.uploadFile(eq(first), isNull(), any(), eq("token"))).thenReturn(Mono.just("4711"));
+        when(debrickedClient.uploadFile(eq(second), eq("4711"), any(), eq("token"))).thenReturn(Mono.just("4711"));
+
+        String ciUploadId = uploadService.uploadDependencies(List.of(bad, first, second), "user@example.com",
+                UploadTarget.DEFAULT).block();
+
+        assertEquals("4711", ciUploadId);
+        verify(notificationService).notifyUploadFailed("user@example.com", "bad.json");
+        verify(debrickedClient).startScan("4711", "token");
+        verify(uploadStore).recordCiUploadId(upload, "4711");
+        verify(uploadStore).handOver(upload);
+    }
+
+    @Test
+    void testUploadDependencies_TransportErrorIsRetriedRejectionIsNot() {
+        DependencyFile first = file("package.json");
+        DependencyFile flaky = file("composer.json");
+        DependencyFile bad = file("bad.json");
+        AtomicInteger flakyAttempts = new AtomicInteger();
+        when(debrickedClient.uploadFile(eq(first), isNull(), any(), anyString())).thenReturn(Mono.just("4711"));
+        when(debrickedClient.uploadFile(eq(flaky), eq("4711"), any(), anyString())).thenAnswer(invocation ->
+                flakyAttempts.incrementAndGet() == 1 ? Mono.error(new IOException("Connection reset")) : Mono.just("4711"));
+        when(debrickedClient.uploadFile(eq(bad), eq("4711"), any(), anyString())).thenReturn(Mono.error(rejected()));
+
+        String ciUploadId = uploadService.uploadDependencies(List.of(first, flaky, bad), "user@example.com",
+                UploadTarget.DEFAULT).block();
+
+        assertEquals("4711", ciUploadId);
+        assertEquals(2, flakyAttempts.get());
+        verify(debrickedClient, times(1)).uploadFile(eq(bad), eq("4711"), any(), anyString());
+        verify(notificationService).notifyUploadFailed("user@example.com", "bad.json");
+        verify(notificationService, never()).notifyUploadFailed("user@example.com", "composer.json");
+    }
+
+    @Test
+    void testUploadDependencies_NoFileUploadedStartsNoScan() {
+        when(debrickedClient.uploadFile(any(), isNull(), any(), anyString())).thenReturn(Mono.error(rejected()));
+
+        String ciUploadId = uploadService.uploadDependencies(List.of(file("a.json"), file("b.json")), "user@example.com",
+                UploadTarget.DEFAULT).block();
+
+        assertNull(ciUploadId);
+        verify(notificationService, times(2)).notifyUploadFailed(eq("user@example.com"), anyString());
+        verify(debrickedClient, never()).startScan(anyString(), anyString());
+        verify(uploadStore).fail(upload);
+        verify(uploadStore, never()).handOver(any());
+    }
+
+    @Test
+    void testUploadDependencies_RecentIdenticalUploadSharesItsScan() {
+        when(debrickedService.shareRecentScan(any())).thenReturn(Optional.of("4711"));
+
+        String ciUploadId = uploadService.uploadDependencies(List.of(file("package.json")), "user@example.com",
+                UploadTarget.DEFAULT).block();
+
+        assertEquals("4711", ciUploadId);
+        verifyNoInteractions(debrickedClient);
+    }
+
+    @Test
+    void testUploadDependencies_FileNotSentIsLeftToTheRecovery() {
+        DependencyFile first = file("package.json");
+        DependencyFile lost = file("composer.json");
+        when(debrickedClient.uploadFile(eq(first), isNull(), any(), anyString())).thenReturn(Mono.just("4711"));
+        when(debrickedClient.uploadFile(eq(lost), eq("4711"), any(), anyString()))
+                .thenReturn(Mono.error(new IOException("Connection reset")));
+
+        String ciUploadId = uploadService.uploadDependencies(List.of(first, lost), "user@example.com",
+                UploadTarget.DEFAULT).block();
+
+        // The scan waits for the missing file, which the recovery sends
+        assertEquals("4711", ciUploadId);
+        verify(uploadStore).recordFile(any(), eq(UploadFile.Status.FAILED), eq("Connection reset"));
+        verify(uploadStore).defer(upload);
+        verify(debrickedClient, never()).startScan(anyString(), anyString());
+        verify(notificationService, never()).notifyUploadFailed(anyString(), anyString());
+    }
+}
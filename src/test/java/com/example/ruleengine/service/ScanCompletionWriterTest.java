@@ -0,0 +1,84 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ScanCompletionWriterTest {
+
+    @InjectMocks
+    private ScanCompletionWriter completionWriter;
+
+    @Mock
+    private DependencyUploadRepository repository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testComplete_TransitionsOnlyUploadsStillInProgress() {
+        // Upload 2 is already COMPLETED, so only 1 and 3 are locked
+        Map<Long, Integer> vulnerabilities = new LinkedHashMap<>();
+        vulnerabilities.put(1L, 4);
+        vulnerabilities.put(2L, 0);
+        vulnerabilities.put(3L, 9);
+        when(repository.lockIdsInStatus(vulnerabilities.keySet(), DependencyUpload.Status.IN_PROGRESS))
+                .thenReturn(List.of(1L, 3L));
+        List<Long> notified = new ArrayList<>();
+
+        List<Long> completed = completionWriter.complete(vulnerabilities, notified::add);
+
+        assertEquals(List.of(1L, 3L), completed);
+        assertEquals(List.of(1L, 3L), notified);
+        verify(repository, times(1)).transitionAll(List.of(1L, 3L),
+                DependencyUpload.Status.IN_PROGRESS, DependencyUpload.Status.COMPLETED);
+        // The results of the completed uploads are stored in one batch
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), eq(List.of(1L, 3L)), eq(2), any());
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void testComplete_NothingLeftToTransition() {
+        when(repository.lockIdsInStatus(Set.of(1L), DependencyUpload.Status.IN_PROGRESS)).thenReturn(List.of());
+        List<Long> notified = new ArrayList<>();
+
+        assertEquals(List.of(), completionWriter.complete(Map.of(1L, 3), notified::add));
+        assertTrue(notified.isEmpty());
+        verify(repository, never()).transitionAll(any(), any(), any());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testMarkStale_OnlyNotifiesWhenThisCallChangedTheStatus() {
+        Runnable onStale = mock(Runnable.class);
+        when(repository.transition(1L, DependencyUpload.Status.IN_PROGRESS, DependencyUpload.Status.STALE)).thenReturn(1);
+        when(repository.transition(2L, DependencyUpload.Status.IN_PROGRESS, DependencyUpload.Status.STALE)).thenReturn(0);
+
+        assertTrue(completionWriter.markStale(1L, onStale));
+        assertFalse(completionWriter.markStale(2L, onStale));
+        verify(onStale, times(1)).run();
+    }
+}
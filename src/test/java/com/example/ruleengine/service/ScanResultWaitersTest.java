@@ -0,0 +1,82 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.repository.ScanResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ScanResultWaitersTest {
+
+    private static final ScanResult RUNNING = new ScanResult("12345", DependencyUpload.Status.IN_PROGRESS, null, 40);
+    private static final ScanResult COMPLETED = new ScanResult("12345", DependencyUpload.Status.COMPLETED, 7, 100);
+
+    @InjectMocks
+    private ScanResultWaiters resultWaiters;
+
+    @Mock
+    private DependencyUploadRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(resultWaiters, "resultExecutor", (Executor) Runnable::run);
+    }
+
+    @Test
+    void testAwait_CompletedByThePoller() throws Exception {
+        when(repository.findScanResults("12345", Limit.of(1))).thenReturn(List.of(RUNNING));
+
+        CompletableFuture<ScanResult> first = resultWaiters.await(RUNNING, Duration.ofSeconds(30));
+        CompletableFuture<ScanResult> second = resultWaiters.await(RUNNING, Duration.ofSeconds(30));
+        assertFalse(first.isDone());
+        assertEquals(2, resultWaiters.waiting());
+
+        resultWaiters.complete(List.of(COMPLETED));
+
+        assertEquals(COMPLETED, first.get(1, TimeUnit.SECONDS));
+        assertEquals(COMPLETED, second.get(1, TimeUnit.SECONDS));
+        assertEquals(0, resultWaiters.waiting());
+        // Only the check right after registering, the wait itself reads nothing
+        verify(repository, times(2)).findScanResults("12345", Limit.of(1));
+    }
+
+    @Test
+    void testAwait_WaitEndsWithTheStateReadAgain() throws Exception {
+        // Completed by another replica while this one waited
+        when(repository.findScanResults("12345", Limit.of(1))).thenReturn(List.of(RUNNING), List.of(COMPLETED));
+
+        ScanResult result = resultWaiters.await(RUNNING, Duration.ofMillis(50)).get(1, TimeUnit.SECONDS);
+
+        assertEquals(COMPLETED, result);
+        assertEquals(0, resultWaiters.waiting());
+    }
+
+    @Test
+    void testAwait_DoneOrNoWaitAnswersRightAway() {
+        assertTrue(resultWaiters.await(COMPLETED, Duration.ofSeconds(30)).isDone());
+        assertTrue(resultWaiters.await(RUNNING, Duration.ZERO).isDone());
+
+        assertEquals(0, resultWaiters.waiting());
+        verify(repository, times(0)).findScanResults(any(), any());
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.client.DebrickedClient;
+import com.example.ruleengine.client.DebrickedRateGovernor;
+import com.example.ruleengine.client.ScanStatus;
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.repository.PendingUpload;
+import com.example.ruleengine.rules.RuleRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Several poller instances in one JVM sharing an embedded database, the way replicas share
+ * the dependency_upload table.
+ */
+@DataJpaTest(properties = {
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@Import(ScanCompletionWriter.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Every instance commits its own claims
+class ScanStatusCheckerMultiInstanceTest {
+
+    @Autowired
+    private DependencyUploadRepository repository;
+
+    @Autowired
+    private ScanCompletionWriter completionWriter;
+
+    private NotificationService notificationService;
+
+    // Status check workers shared by all instances
+    private final ExecutorService workers = Executors.newFixedThreadPool(8);
+
+    // Status calls made per ciUploadId, across all instances
+    private final Map<String, AtomicInteger> statusCalls = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll();
+        notificationService = mock(NotificationService.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        workers.shutdownNow();
+    }
+
+    private void insertDueUploads(int count) {
+        List<DependencyUpload> uploads = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DependencyUpload upload = new DependencyUpload();
+            upload.setCiUploadId("upload-" + i);
+            upload.setEmail("user" + i + "@example.com");
+            upload.setStatus(DependencyUpload.Status.IN_PROGRESS);
+            upload.setCreatedAt(Instant.now().minusSeconds(3600));
+            upload.setNextCheckAt(upload.getCreatedAt());
+            uploads.add(upload);
+        }
+        repository.saveAll(uploads);
+    }
+
+    private UploadClaimer claimer(String owner) {
+        UploadClaimer claimer = new UploadClaimer();
+        ReflectionTestUtils.setField(claimer, "repository", repository);
+        ReflectionTestUtils.setField(claimer, "owner", owner);
+        return claimer;
+    }
+
+    // One poller instance; every scan it asks about reports complete with vulnerabilities
+    private ScanStatusCheckerService instance(UploadClaimer claimer) throws IOException {
+        DebrickedClient debrickedClient = mock(DebrickedClient.class);
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenAnswer(invocation -> {
+            statusCalls.computeIfAbsent(invocation.getArgument(0), id -> new AtomicInteger()).incrementAndGet();
+            return new ScanStatus(100, 10);
+        });
+        DebrickedTokenProvider tokenProvider = mock(DebrickedTokenProvider.class);
+        when(tokenProvider.getToken()).thenReturn("token");
+        when(tokenProvider.withToken(any())).thenAnswer(invocation ->
+                invocation.<DebrickedTokenProvider.TokenCall<?>>getArgument(0).call("token"));
+
+        ScanStatusCheckerService service = new ScanStatusCheckerService();
+        ReflectionTestUtils.setField(service, "ruleRegistry", new RuleRegistry());
+        TenantPolicyIndex policyIndex = mock(TenantPolicyIndex.class);
+        when(policyIndex.lookup(any(), anyString())).thenReturn(new TenantPolicyIndex.Policy(5, List.of()));
+        ReflectionTestUtils.setField(service, "policyIndex", policyIndex);
+        ReflectionTestUtils.setField(service, "debrickedClient", debrickedClient);
+        ReflectionTestUtils.setField(service, "repository", repository);
+        ReflectionTestUtils.setField(service, "notificationService", notificationService);
+        ReflectionTestUtils.setField(service, "tokenProvider", tokenProvider);
+        // Status calls are mocked, so the rate limit must not hold back the claims of one cycle
+        DebrickedRateGovernor governor = new DebrickedRateGovernor();
+        ReflectionTestUtils.setField(governor, "permitsPerSecond", 1_000_000.0);
+        ReflectionTestUtils.setField(governor, "burst", 1_000_000);
+        ReflectionTestUtils.setField(service, "governor", governor);
+        ReflectionTestUtils.setField(service, "statusCheckExecutor", workers);
+        ReflectionTestUtils.setField(service, "pollSchedule", new PollSchedule());
+        ReflectionTestUtils.setField(service, "completionWriter", completionWriter);
+        ReflectionTestUtils.setField(service, "claimer", claimer);
+        ReflectionTestUtils.setField(service, "resultWaiters", new ScanResultWaiters());
+        ReflectionTestUtils.setField(service, "pageSize", 20);
+        // The findings fetch is covered by ScanStatusCheckerServiceTest and FindingsStoreTest
+        ReflectionTestUtils.setField(service, "findingsEnabled", false);
+        return service;
+    }
+
+    @Test
+    void concurrentInstancesCheckEveryUploadExactlyOnce() throws Exception {
+        int uploads = 300;
+        insertDueUploads(uploads);
+        List<ScanStatusCheckerService> instances = List.of(
+                instance(claimer("node-a")), instance(claimer("node-b")), instance(claimer("node-c")));
+
+        // Start one poll cycle on every instance at the same moment
+        CyclicBarrier start = new CyclicBarrier(instances.size());
+        ExecutorService nodes = Executors.newFixedThreadPool(instances.size());
+        try {
+            List<Future<?>> cycles = new ArrayList<>();
+            for (ScanStatusCheckerService instance : instances) {
+                cycles.add(nodes.submit(() -> {
+                    start.await(5, TimeUnit.SECONDS);
+                    instance.checkScanStatus();
+                    return null;
+                }));
+            }
+            for (Future<?> cycle : cycles) {
+                cycle.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            nodes.shutdownNow();
+        }
+
+        assertEquals(uploads, statusCalls.size());
+        assertTrue(statusCalls.values().stream().allMatch(calls -> calls.get() == 1), "An upload was checked twice");
+        assertEquals(uploads, repository.findAllByStatus(DependencyUpload.Status.COMPLETED).size());
+        // One vulnerability mail per upload, none duplicated
+        verify(notificationService, times(uploads)).notifyScanCompleted(anyString(), anyString(), anyInt(), anyString());
+    }
+
+    @Test
+    void identicalUploadsAreCheckedWithOneStatusCall() throws Exception {
+        insertDueUploads(1);
+        // Two more requesters attached to the same scan, not due yet
+        for (int i = 1; i <= 2; i++) {
+            DependencyUpload attached = new DependencyUpload();
+            attached.setCiUploadId("upload-0");
+            attached.setEmail("attached" + i + "@example.com");
+            attached.setStatus(DependencyUpload.Status.IN_PROGRESS);
+            attached.setCreatedAt(Instant.now());
+            attached.setNextCheckAt(attached.getCreatedAt().plusSeconds(60));
+            repository.save(attached);
+        }
+
+        instance(claimer("node-a")).checkScanStatus();
+
+        assertEquals(1, statusCalls.get("upload-0").get());
+        assertEquals(3, repository.findAllByStatus(DependencyUpload.Status.COMPLETED).size());
+        verify(notificationService, times(3)).notifyScanCompleted(anyString(), eq("upload-0"), anyInt(), anyString());
+    }
+
+    @Test
+    void liveLeaseOfAnotherInstanceIsRespected() throws Exception {
+        insertDueUploads(10);
+        Instant now = Instant.now();
+        List<PendingUpload> due = repository.findDueForCheck(DependencyUpload.Status.IN_PROGRESS, now,
+                Instant.EPOCH, 0L, Limit.of(100));
+        assertEquals(10, claimer("node-a").claim(due, now).size());
+
+        // node-a holds the leases, so node-b finds nothing to check
+        instance(claimer("node-b")).checkScanStatus();
+
+        assertTrue(statusCalls.isEmpty());
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void leasesOfACrashedInstanceAreTakenOver() throws Exception {
+        insertDueUploads(10);
+        // node-a claimed everything long enough ago for the leases to have expired, then died
+        Instant past = Instant.now().minusSeconds(600);
+        List<PendingUpload> due = repository.findDueForCheck(DependencyUpload.Status.IN_PROGRESS, Instant.now(),
+                Instant.EPOCH, 0L, Limit.of(100));
+        assertEquals(10, claimer("node-a").claim(due, past).size());
+
+        instance(claimer("node-b")).checkScanStatus();
+
+        assertEquals(10, statusCalls.size());
+        assertEquals(10, repository.findAllByStatus(DependencyUpload.Status.COMPLETED).size());
+        assertTrue(repository.findAll().stream().allMatch(upload -> upload.getLeaseOwner() == null));
+        // The result is stored with the completion, for rules comparing against earlier scans
+        assertTrue(repository.findAll().stream().allMatch(upload -> upload.getVulnerabilitiesFound() == 10));
+    }
+}
@@ -1,26 +1,48 @@
 package com.example.ruleengine.service;
 
+import com.example.ruleengine.client.DebrickedClient;
+import com.example.ruleengine.client.DebrickedRateGovernor;
+import com.example.ruleengine.client.DebrickedUnavailableException;
+import com.example.ruleengine.client.ScanStatus;
 import com.example.ruleengine.entity.DependencyUpload;
 import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.repository.PendingUpload;
+import com.example.ruleengine.repository.PreviousScan;
+import com.example.ruleengine.repository.ScanResult;
+import com.example.ruleengine.rules.RuleRegistry;
+import com.example.ruleengine.rules.RuleSet;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.util.ReflectionTestUtils;
-import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.mockito.AdditionalMatchers.and;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.Mockito.*;
 
 class ScanStatusCheckerServiceTest {
@@ -29,7 +51,7 @@ class ScanStatusCheckerServiceTest {
     private ScanStatusCheckerService scanStatusCheckerService;
 
     @Mock
-    private RestTemplate restTemplate;
+    private DebrickedClient debrickedClient;
 
     @Mock
     private DependencyUploadRepository repository;
@@ -37,70 +59,425 @@ class ScanStatusCheckerServiceTest {
     @Mock
     private NotificationService notificationService;
 
-    private String apiUsername = "testUsername";
-    private String apiPassword = "testPassword";
-    private String debrickedApiUrl = "https://debricked.com/api/";
-    private int vulnerabilitiesThreshold = 5; // Set your threshold
+    @Mock
+    private DebrickedTokenProvider tokenProvider;
+
+    @Mock
+    private ScanCompletionWriter completionWriter;
+
+    @Mock
+    private UploadClaimer claimer;
+
+    @Mock
+    private RuleRegistry ruleRegistry;
+
+    @Mock
+    private TenantPolicyIndex policyIndex;
+
+    @Mock
+    private FindingsStore findingsStore;
+
+    @Mock
+    private DebrickedRateGovernor governor;
+
+    @Mock
+    private ScanResultWaiters resultWaiters;
 
     @BeforeEach
-    void setUp() {
+    void setUp() throws IOException {
         MockitoAnnotations.openMocks(this);
+        // Calls made through the provider get the token the test hands out
+        when(tokenProvider.withToken(any())).thenAnswer(invocation ->
+                invocation.<DebrickedTokenProvider.TokenCall<?>>getArgument(0).call("mocked-jwt-token"));
+        when(governor.isAvailable()).thenReturn(true);
+        when(governor.pollCapacity()).thenReturn(Integer.MAX_VALUE);
 
-        // Set the private fields
-        ReflectionTestUtils.setField(scanStatusCheckerService, "debrickedApiUrl", debrickedApiUrl);
-        ReflectionTestUtils.setField(scanStatusCheckerService, "vulnerabilitiesThreshold", vulnerabilitiesThreshold);
-        ReflectionTestUtils.setField(scanStatusCheckerService, "apiUsername", apiUsername);
-        ReflectionTestUtils.setField(scanStatusCheckerService, "apiPassword", apiPassword);
+        // Run the status checks on the calling thread
+        ReflectionTestUtils.setField(scanStatusCheckerService, "statusCheckExecutor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(scanStatusCheckerService, "pollSchedule", new PollSchedule());
+        // Every upload handed to the writer is still in progress unless a test says otherwise
+        when(completionWriter.complete(anyMap(), any())).thenAnswer(invocation -> completeAll(invocation.getArgument(0),
+                invocation.getArgument(1), null));
+        when(completionWriter.markStale(anyLong(), any())).thenAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(1)).run();
+            return true;
+        });
+        // This instance wins every lease unless a test says otherwise
+        when(claimer.claim(anyList(), any(Instant.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(claimer.getOwner()).thenReturn("node-a");
+        // Scans above the tenant threshold of 5 are reported unless a test says otherwise
+        when(ruleRegistry.current()).thenReturn(RuleSet.parse("threshold: vulnerabilities > threshold"));
+        when(policyIndex.lookup(any(), any())).thenReturn(new TenantPolicyIndex.Policy(5, List.of()));
+    }
+
+    private static PendingUpload pending(long id, String ciUploadId, Instant createdAt) {
+        return new PendingUpload(id, ciUploadId, "test@example.com", "payments", "main", createdAt, createdAt, 0, null, null, null);
+    }
+
+    // Completes every given upload except the one already completed elsewhere, like ScanCompletionWriter
+    private static List<Long> completeAll(Map<Long, Integer> vulnerabilitiesById, Consumer<Long> onCompleted, Long completedElsewhere) {
+        List<Long> completed = vulnerabilitiesById.keySet().stream().sorted()
+                .filter(id -> !id.equals(completedElsewhere)).toList();
+        completed.forEach(onCompleted);
+        return completed;
+    }
+
+    // Answers the first page query with the given uploads and every later page with nothing
+    private void dueUploads(List<PendingUpload> uploads) {
+        when(repository.findDueForCheck(eq(DependencyUpload.Status.IN_PROGRESS), any(Instant.class),
+                eq(Instant.EPOCH), eq(0L), any(Limit.class))).thenReturn(uploads);
     }
 
     @Test
     void testCheckScanStatus_SuccessfulUpload() throws Exception {
         // Mock the behavior of the repository
-        DependencyUpload upload = new DependencyUpload();
-        upload.setCiUploadId("12345");
-        upload.setEmail("test@example.com");
-        upload.setStatus(DependencyUpload.Status.IN_PROGRESS);
-
-        when(repository.findAllByStatus(DependencyUpload.Status.IN_PROGRESS))
-                .thenReturn(Arrays.asList(upload));
+        dueUploads(Arrays.asList(pending(1L, "12345", Instant.now())));
 
         // Mock the JWT token retrieval
         String mockToken = "mocked-jwt-token"; // Create a mock token
-        ReflectionTestUtils.setField(scanStatusCheckerService, "apiUsername", apiUsername);
-        ReflectionTestUtils.setField(scanStatusCheckerService, "apiPassword", apiPassword);
-        // Instead of calling getJwtToken(), directly set the expected behavior for a successful call
-        when(scanStatusCheckerService.getJwtToken(apiUsername, apiPassword)).thenReturn(mockToken);
-
-        // Mock the behavior of the RestTemplate
-        Map<String, Object> responseBody = new HashMap<>();
-        responseBody.put("progress", 100);
-        responseBody.put("vulnerabilitiesFound", 10);
-
-        ResponseEntity responseEntity = mock(ResponseEntity.class);
-        when(responseEntity.getStatusCode()).thenReturn(HttpStatus.OK);
-        when(responseEntity.getBody()).thenReturn(responseBody);
-
-        when(restTemplate.exchange(
-                any(String.class),
-                any(),
-                any(HttpEntity.class),
-                eq(Map.class)))
-                .thenReturn(responseEntity);
+        when(tokenProvider.getToken()).thenReturn(mockToken);
+
+        // Mock the behavior of the Debricked client
+        when(debrickedClient.getScanStatus("12345", mockToken)).thenReturn(new ScanStatus(100, 10));
 
         // Call the method under test
         scanStatusCheckerService.checkScanStatus();
 
-        // Verify the repository and notification service interactions
-        verify(repository, times(1)).save(upload);
-        verify(notificationService, times(1)).sendEmail(
+        // Verify the status transition and notification service interactions
+        verify(completionWriter, times(1)).complete(eq(Map.of(1L, 10)), any());
+        verify(repository, never()).save(any());
+        // Clients waiting for the scan are answered once the completion is stored
+        verify(resultWaiters, times(1)).complete(List.of(new ScanResult("12345", DependencyUpload.Status.COMPLETED, 10, 100)));
+        verify(notificationService, times(1)).notifyScanCompleted(
                 eq("test@example.com"),
-                any(String.class),
+                eq("12345"),
+                eq(10),
                 any(String.class)
         );
+    }
+
+    @Test
+    void testCheckScanStatus_SkippedWhileDebrickedIsUnavailable() throws Exception {
+        dueUploads(List.of(pending(1L, "12345", Instant.now())));
+        when(governor.isAvailable()).thenReturn(false);
+
+        scanStatusCheckerService.checkScanStatus();
+
+        // Nothing is claimed, so the uploads stay due for the first cycle after Debricked recovers
+        verifyNoInteractions(claimer, debrickedClient, tokenProvider);
+    }
+
+    @Test
+    void testCheckScanStatus_FailingUploadDoesNotStopOthers() throws Exception {
+        dueUploads(Arrays.asList(pending(1L, "broken", Instant.now()), pending(2L, "12345", Instant.now())));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+
+        when(debrickedClient.getScanStatus(eq("broken"), anyString())).thenThrow(new SocketTimeoutException("Read timed out"));
+        when(debrickedClient.getScanStatus(eq("12345"), anyString())).thenReturn(new ScanStatus(100, 0));
+
+        // The timed out call is isolated, the cycle still completes the other upload
+        assertDoesNotThrow(() -> scanStatusCheckerService.checkScanStatus());
+        verify(completionWriter, times(1)).complete(eq(Map.of(2L, 0)), any());
+    }
+
+    @Test
+    void testCheckScanStatus_ClaimsOnlyWhatTheGovernorCanServe() throws Exception {
+        ReflectionTestUtils.setField(scanStatusCheckerService, "pageSize", 2);
+        List<PendingUpload> page = List.of(pending(1L, "a", Instant.now()), pending(2L, "b", Instant.now()));
+        dueUploads(page);
+        when(governor.pollCapacity()).thenReturn(1);
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(40, 0));
+
+        scanStatusCheckerService.checkScanStatus();
+
+        // Upload 2 is neither leased nor checked, and no further page is loaded in this cycle
+        verify(claimer, times(1)).claim(eq(page.subList(0, 1)), any(Instant.class));
+        verify(debrickedClient, times(1)).getScanStatus(eq("a"), anyString());
+        verify(repository, times(1)).findDueForCheck(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testCheckScanStatus_NoPermitReleasesTheUploadWithoutAFailedAttempt() throws Exception {
+        PendingUpload upload = new PendingUpload(1L, "12345", "test@example.com", "payments", "main", Instant.now(),
+                Instant.now(), 3, 40, Instant.now().minusSeconds(60), null);
+        dueUploads(List.of(upload));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        when(debrickedClient.getScanStatus(anyString(), anyString()))
+                .thenThrow(new DebrickedUnavailableException("No Debricked permit for poll within 1000 ms", Duration.ofSeconds(2)));
+
+        Instant before = Instant.now();
+        scanStatusCheckerService.checkScanStatus();
+
+        // Released and due again once a permit is likely, with its attempts and progress unchanged
+        verify(repository, times(1)).reschedule(eq(1L), argThat(next -> !next.isBefore(before.plusSeconds(2))), eq(3),
+                eq(40), eq(upload.lastProgressAt()), eq("node-a"));
+        verifyNoInteractions(completionWriter);
+    }
+
+    @Test
+    void testCheckScanStatus_InProgressUploadIsRescheduled() throws Exception {
+        dueUploads(List.of(pending(1L, "12345", Instant.now())));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(40, 0));
+
+        Instant before = Instant.now();
+        scanStatusCheckerService.checkScanStatus();
+
+        // Still in progress, with the next check pushed into the future
+        verify(completionWriter, never()).markStale(anyLong(), any());
+        verify(completionWriter, never()).complete(anyMap(), any());
+        verify(repository, times(1)).reschedule(eq(1L), argThat(next -> next.isAfter(before)), eq(0), eq(40),
+                any(Instant.class), eq("node-a"));
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void testCheckScanStatus_UploadsOfOneScanShareOneStatusCall() throws Exception {
+        // Two identical uploads attached to one scan; the first one has seen it at 30% before
+        Instant progressAt = Instant.now().minusSeconds(60);
+        PendingUpload first = new PendingUpload(1L, "12345", "test@example.com", "payments", "main", Instant.now(),
+                Instant.now(), 2, 30, progressAt, null);
+        PendingUpload attached = new PendingUpload(2L, "12345", "other@example.com", "payments", "main", Instant.now(),
+                Instant.now(), 0, null, null, null);
+        dueUploads(List.of(attached, first));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(30, 0));
+
+        scanStatusCheckerService.checkScanStatus();
+
+        // Asked about once, and both follow the first upload's history so they stay due together
+        verify(debrickedClient, times(1)).getScanStatus(eq("12345"), anyString());
+        ArgumentCaptor<Instant> nextCheckAt = ArgumentCaptor.forClass(Instant.class);
+        verify(repository, times(1)).reschedule(eq(1L), nextCheckAt.capture(), eq(3), eq(30), eq(progressAt), eq("node-a"));
+        verify(repository, times(1)).reschedule(eq(2L), eq(nextCheckAt.getValue()), eq(3), eq(30), eq(progressAt),
+                eq("node-a"));
+    }
+
+    @Test
+    void testCheckScanStatus_CompletedScanCompletesEveryAttachedUpload() throws Exception {
+        dueUploads(List.of(pending(1L, "12345", Instant.now()), pending(2L, "12345", Instant.now())));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(100, 10));
+
+        scanStatusCheckerService.checkScanStatus();
+
+        verify(debrickedClient, times(1)).getScanStatus(eq("12345"), anyString());
+        verify(completionWriter, times(1)).complete(eq(Map.of(1L, 10, 2L, 10)), any());
+    }
+
+    @Test
+    void testCheckScanStatus_OldUploadIsMarkedStale() throws Exception {
+        dueUploads(List.of(pending(1L, "12345", Instant.now().minus(Duration.ofDays(1)))));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(90, 0));
+
+        scanStatusCheckerService.checkScanStatus();
+
+        verify(completionWriter, times(1)).markStale(eq(1L), any());
+        verify(notificationService, times(1)).notifyScanStale("test@example.com", "12345");
+        verify(resultWaiters, times(1)).complete(List.of(new ScanResult("12345", DependencyUpload.Status.STALE, null, 90)));
+    }
+
+    @Test
+    void testCheckScanStatus_WalksAllPages() throws Exception {
+        ReflectionTestUtils.setField(scanStatusCheckerService, "pageSize", 2);
+        Instant due = Instant.now().minusSeconds(60);
+        List<PendingUpload> firstPage = List.of(pending(1L, "a", due), pending(2L, "b", due));
+        List<PendingUpload> secondPage = List.of(pending(3L, "c", due));
+        dueUploads(firstPage);
+        // The second page starts after the last row of the first one
+        when(repository.findDueForCheck(eq(DependencyUpload.Status.IN_PROGRESS), any(Instant.class),
+                eq(due), eq(2L), any(Limit.class))).thenReturn(secondPage);
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(100, 0));
+
+        scanStatusCheckerService.checkScanStatus();
+
+        verify(debrickedClient, times(3)).getScanStatus(anyString(), anyString());
+        verify(repository, times(2)).findDueForCheck(any(), any(), any(), any(), any());
+        // One bulk transition per page
+        verify(completionWriter, times(1)).complete(eq(Map.of(1L, 0, 2L, 0)), any());
+        verify(completionWriter, times(1)).complete(eq(Map.of(3L, 0)), any());
+    }
+
+    @Test
+    void testCheckScanStatus_CompletionsOfAPageAreWrittenTogether() throws Exception {
+        dueUploads(List.of(pending(1L, "a", Instant.now()), pending(2L, "b", Instant.now()), pending(3L, "c", Instant.now())));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(100, 10));
+        // Upload 2 was completed by someone else in the meantime
+        doAnswer(invocation -> completeAll(invocation.getArgument(0), invocation.getArgument(1), 2L))
+                .when(completionWriter).complete(anyMap(), any());
+
+        scanStatusCheckerService.checkScanStatus();
+
+        verify(completionWriter, times(1)).complete(eq(Map.of(1L, 10, 2L, 10, 3L, 10)), any());
+        // Only the uploads completed by this cycle are notified
+        verify(notificationService, times(1)).notifyScanCompleted(eq("test@example.com"), eq("a"), eq(10), any(String.class));
+        verify(notificationService, times(1)).notifyScanCompleted(eq("test@example.com"), eq("c"), eq(10), any(String.class));
+        verify(notificationService, never()).notifyScanCompleted(any(), eq("b"), anyInt(), any());
+    }
+
+    @Test
+    void testCheckScanStatus_FailedCompletionWriteSendsNothing() throws Exception {
+        dueUploads(List.of(pending(1L, "12345", Instant.now())));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(100, 10));
+        doThrow(new IllegalStateException("Connection lost")).when(completionWriter).complete(anyMap(), any());
+
+        // The upload stays due and is checked again in the next cycle
+        assertDoesNotThrow(() -> scanStatusCheckerService.checkScanStatus());
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void testCheckScanStatus_UploadsLeasedElsewhereAreSkipped() throws Exception {
+        dueUploads(List.of(pending(1L, "a", Instant.now()), pending(2L, "b", Instant.now())));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        // Another replica claimed upload 1 first
+        when(claimer.claim(anyList(), any(Instant.class))).thenReturn(List.of(pending(2L, "b", Instant.now())));
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(100, 0));
+
+        scanStatusCheckerService.checkScanStatus();
+
+        verify(debrickedClient, times(1)).getScanStatus(eq("b"), anyString());
+        verify(debrickedClient, never()).getScanStatus(eq("a"), anyString());
+        verify(completionWriter, times(1)).complete(eq(Map.of(2L, 0)), any());
+    }
+
+    @Test
+    void testCheckScanStatus_ScanBelowEveryRuleIsNotReported() throws Exception {
+        dueUploads(List.of(pending(1L, "12345", Instant.now())));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(100, 3));
+
+        scanStatusCheckerService.checkScanStatus();
 
-        // Verify that the upload status was changed
-        assertEquals(DependencyUpload.Status.COMPLETED, upload.getStatus());
+        // Completed and stored, but no rule matched
+        verify(completionWriter, times(1)).complete(eq(Map.of(1L, 3)), any());
+        verifyNoInteractions(notificationService);
+        // The threshold rule does not look at earlier scans
+        verify(repository, never()).findPreviousScans(any(), any(), any(), any());
     }
 
-    // Add more test cases as needed
+    @Test
+    void testCheckScanStatus_RuleComparingWithThePreviousScan() throws Exception {
+        when(ruleRegistry.current()).thenReturn(RuleSet.parse(
+                "regression: repository == \"payments\" and new_vulnerabilities > 0"));
+        dueUploads(List.of(pending(7L, "12345", Instant.now())));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        // The previous scan of the repository found 2
+        when(repository.findPreviousScans(eq("payments"), eq(DependencyUpload.Status.COMPLETED), eq(7L),
+                any(Limit.class))).thenReturn(List.of(new PreviousScan("12000", 2)));
+        // Its findings were not stored, so the counts are compared
+        when(findingsStore.countNewVulnerabilities("12345", "12000")).thenReturn(-1);
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(100, 3));
+
+        scanStatusCheckerService.checkScanStatus();
+
+        // 3 is below the old threshold, but one more than last time; the report names the rule
+        verify(notificationService, times(1)).notifyScanCompleted(eq("test@example.com"), eq("12345"), eq(3),
+                contains("regression"));
+    }
+
+    @Test
+    void testCheckScanStatus_NewVulnerabilitiesAreComparedByCve() throws Exception {
+        when(ruleRegistry.current()).thenReturn(RuleSet.parse("regression: new_vulnerabilities > 0"));
+        dueUploads(List.of(pending(7L, "12345", Instant.now())));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        // The previous scan found as many vulnerabilities, but one of this scan's CVEs is not among them
+        when(repository.findPreviousScans(eq("payments"), eq(DependencyUpload.Status.COMPLETED), eq(7L),
+                any(Limit.class))).thenReturn(List.of(new PreviousScan("12000", 2)));
+        when(findingsStore.countNewVulnerabilities("12345", "12000")).thenReturn(1);
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(100, 2));
+        String report = "{\"vulnerabilities\": [{\"cveId\": \"CVE-2020-0001\"}, {\"cveId\": \"CVE-2022-42889\"}]}";
+        InputStream findingsBody = new ByteArrayInputStream(report.getBytes(StandardCharsets.UTF_8));
+        when(debrickedClient.readFindings(eq("12345"), anyString(), any()))
+                .thenAnswer(invocation -> ((DebrickedClient.BodyReader<?>) invocation.getArgument(2)).read(findingsBody));
+
+        scanStatusCheckerService.checkScanStatus();
+
+        verify(notificationService, times(1)).notifyScanCompleted(eq("test@example.com"), eq("12345"), eq(2),
+                contains("regression"));
+    }
+
+    @Test
+    void testCheckScanStatus_TenantPolicyThresholdAndRecipients() throws Exception {
+        // The payments team reports every vulnerability, to its own list as well
+        when(policyIndex.lookup("payments", "test@example.com"))
+                .thenReturn(new TenantPolicyIndex.Policy(0, List.of("security@example.com", "test@example.com")));
+        dueUploads(List.of(pending(1L, "12345", Instant.now())));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(100, 1));
+
+        scanStatusCheckerService.checkScanStatus();
+
+        // The uploader is in the list too, but gets one message
+        verify(notificationService, times(1)).notifyScanCompleted(eq("test@example.com"), eq("12345"), eq(1), any(String.class));
+        verify(notificationService, times(1)).notifyScanCompleted(eq("security@example.com"), eq("12345"), eq(1), any(String.class));
+    }
+
+    @Test
+    void testCheckScanStatus_FindingsAreStoredAndDriveTheRules() throws Exception {
+        when(ruleRegistry.current()).thenReturn(RuleSet.parse("critical: severity.critical > 0 and license in [\"GPL-3.0\"]"));
+        dueUploads(List.of(pending(1L, "12345", Instant.now())));
+        when(tokenProvider.getToken()).thenReturn("mocked-jwt-token");
+        when(debrickedClient.getScanStatus(anyString(), anyString())).thenReturn(new ScanStatus(100, 2));
+        // The vulnerability list is read from the response body as it streams in
+        String report = "{\"vulnerabilities\": ["
+                + "{\"cveId\": \"CVE-2021-44228\", \"cvss\": 10.0,"
+                + " \"dependencies\": [{\"name\": \"log4j-core\", \"version\": \"2.14.1\", \"licenses\": [\"GPL-3.0\"]}]},"
+                + "{\"cveId\": \"CVE-2020-0001\", \"cvss\": 5.3}]}";
+        InputStream findingsBody = new ByteArrayInputStream(report.getBytes(StandardCharsets.UTF_8));
+        when(debrickedClient.readFindings(eq("12345"), anyString(), any()))
+                .thenAnswer(invocation -> ((DebrickedClient.BodyReader<?>) invocation.getArgument(2)).read(findingsBody));
+
+        scanStatusCheckerService.checkScanStatus();
+
+        verify(findingsStore).deleteFindings("12345");
+        verify(findingsStore).store(eq("12345"), argThat(chunk -> chunk.size() == 2));
+        verify(notificationService, times(1)).notifyScanCompleted(eq("test@example.com"), eq("12345"), eq(2),
+                and(contains("Critical: 1"), contains("CVE-2021-44228 (CVSS 10.0, critical) in log4j-core 2.14.1")));
+    }
+
+    @Test
+    void testCompleteRepeat_ReportsTheStoredOutcomeWithoutDebricked() throws Exception {
+        when(completionWriter.store(any(DependencyUpload.class), any())).thenAnswer(invocation -> {
+            DependencyUpload upload = invocation.getArgument(0);
+            upload.setId(2L);
+            invocation.<Consumer<DependencyUpload>>getArgument(1).accept(upload);
+            return upload;
+        });
+        FindingsSummary findings = new FindingsSummary(10);
+        findings.add(new Finding("CVE-2021-44228", 10.0, "critical", "log4j-core", "2.14.1", List.of()));
+        when(findingsStore.summarize(eq("12345"), anyInt())).thenReturn(findings);
+        DependencyUpload completed = new DependencyUpload();
+        completed.setCiUploadId("12345");
+        completed.setEmail("other@example.com");
+        completed.setStatus(DependencyUpload.Status.COMPLETED);
+        completed.setVulnerabilitiesFound(7);
+        DependencyUpload stale = new DependencyUpload();
+        stale.setCiUploadId("67890");
+        stale.setEmail("other@example.com");
+        stale.setStatus(DependencyUpload.Status.STALE);
+
+        scanStatusCheckerService.completeRepeat(completed);
+        scanStatusCheckerService.completeRepeat(stale);
+
+        // The rules see the stored count and findings of the scan
+        verify(notificationService, times(1)).notifyScanCompleted(eq("other@example.com"), eq("12345"), eq(7),
+                contains("CVE-2021-44228"));
+        verify(notificationService, times(1)).notifyScanStale("other@example.com", "67890");
+        verifyNoInteractions(debrickedClient, tokenProvider);
+    }
+
+    @Test
+    void testCheckScanStatus_TokenFailureSkipsCycle() throws Exception {
+        dueUploads(List.of(pending(1L, "12345", Instant.now())));
+        when(tokenProvider.getToken()).thenThrow(new IOException("Failed to retrieve JWT token"));
+
+        assertDoesNotThrow(() -> scanStatusCheckerService.checkScanStatus());
+        verifyNoInteractions(debrickedClient);
+    }
 }
@@ -0,0 +1,98 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.TenantPolicy;
+import com.example.ruleengine.repository.TenantPolicyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class TenantPolicyIndexTest {
+
+    @InjectMocks
+    private TenantPolicyIndex policyIndex;
+
+    @Mock
+    private TenantPolicyRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(policyIndex, "defaultThreshold", 5);
+    }
+
+    private static TenantPolicy policy(TenantPolicy.Scope scope, String key, Integer threshold, String recipients, long revision) {
+        TenantPolicy policy = new TenantPolicy();
+        policy.setScope(scope);
+        policy.setTenantKey(key);
+        policy.setVulnerabilitiesThreshold(threshold);
+        policy.setRecipients(recipients);
+        policy.setRevision(revision);
+        return policy;
+    }
+
+    @Test
+    void testLookup_MostSpecificPolicyWins() {
+        when(repository.findByRevisionGreaterThanOrderByRevisionAsc(-1L)).thenReturn(List.of(
+                policy(TenantPolicy.Scope.DEFAULT, "*", null, "appsec@example.com", 0),
+                policy(TenantPolicy.Scope.EMAIL_DOMAIN, "payments.example.com", 2, null, 1),
+                policy(TenantPolicy.Scope.REPOSITORY, "payments/api", 0, "oncall@example.com, lead@example.com", 2)));
+
+        // Repository policy, over the domain policy of the uploader
+        assertEquals(new TenantPolicyIndex.Policy(0, List.of("oncall@example.com", "lead@example.com")),
+                policyIndex.lookup("payments/api", "dev@payments.example.com"));
+        // Domain policy, matched case insensitively, recipients from the wildcard policy
+        assertEquals(new TenantPolicyIndex.Policy(2, List.of("appsec@example.com")),
+                policyIndex.lookup("payments/web", "dev@Payments.Example.com"));
+        // Nothing specific: wildcard policy without a threshold, so the global one
+        assertEquals(new TenantPolicyIndex.Policy(5, List.of("appsec@example.com")),
+                policyIndex.lookup(null, "dev@other.com"));
+
+        // All lookups were served by the single initial load
+        verify(repository, times(1)).findByRevisionGreaterThanOrderByRevisionAsc(anyLong());
+    }
+
+    @Test
+    void testRefresh_OnlyReadsChangesAfterTheLastRevision() {
+        when(repository.findByRevisionGreaterThanOrderByRevisionAsc(-1L)).thenReturn(List.of(
+                policy(TenantPolicy.Scope.REPOSITORY, "payments/api", 0, null, 3),
+                policy(TenantPolicy.Scope.REPOSITORY, "web", 10, null, 4)));
+        policyIndex.refresh();
+        assertEquals(2, policyIndex.size());
+
+        // payments/api was deleted and web changed since revision 4
+        TenantPolicy deleted = policy(TenantPolicy.Scope.REPOSITORY, "payments/api", 0, null, 5);
+        deleted.setDeleted(true);
+        when(repository.findByRevisionGreaterThanOrderByRevisionAsc(4L)).thenReturn(List.of(
+                deleted, policy(TenantPolicy.Scope.REPOSITORY, "web", 20, null, 6)));
+        policyIndex.refresh();
+
+        assertEquals(1, policyIndex.size());
+        assertEquals(5, policyIndex.lookup("payments/api", "dev@example.com").vulnerabilitiesThreshold());
+        assertEquals(20, policyIndex.lookup("web", "dev@example.com").vulnerabilitiesThreshold());
+
+        // Nothing changed since revision 6
+        policyIndex.refresh();
+        verify(repository, times(1)).findByRevisionGreaterThanOrderByRevisionAsc(6L);
+    }
+
+    @Test
+    void testRefresh_FailureKeepsTheLoadedPolicies() {
+        when(repository.findByRevisionGreaterThanOrderByRevisionAsc(-1L)).thenReturn(List.of(
+                policy(TenantPolicy.Scope.REPOSITORY, "web", 10, null, 1)));
+        policyIndex.refresh();
+        when(repository.findByRevisionGreaterThanOrderByRevisionAsc(1L)).thenThrow(new IllegalStateException("Connection lost"));
+
+        policyIndex.refresh();
+
+        assertEquals(10, policyIndex.lookup("web", "dev@example.com").vulnerabilitiesThreshold());
+    }
+}
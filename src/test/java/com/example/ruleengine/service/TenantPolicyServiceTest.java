@@ -0,0 +1,69 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.TenantPolicy;
+import com.example.ruleengine.repository.TenantPolicyRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "debricked.api.vulnerabilities.threshold=5"
+})
+@Import({TenantPolicyService.class, TenantPolicyIndex.class})
+class TenantPolicyServiceTest {
+
+    @Autowired
+    private TenantPolicyService policyService;
+
+    @Autowired
+    private TenantPolicyIndex policyIndex;
+
+    @Autowired
+    private TenantPolicyRepository repository;
+
+    @Test
+    void everyChangeGetsTheNextRevision() {
+        TenantPolicy web = policyService.save(TenantPolicy.Scope.REPOSITORY, "acme/web", 10, null);
+        TenantPolicy domain = policyService.save(TenantPolicy.Scope.EMAIL_DOMAIN, "Payments.Example.com", 0, "sec@example.com");
+        TenantPolicy changed = policyService.save(TenantPolicy.Scope.REPOSITORY, "acme/web", 20, null);
+
+        // The wildcard row was created on the first change
+        assertTrue(repository.findByScopeAndTenantKey(TenantPolicy.Scope.DEFAULT, TenantPolicy.WILDCARD).isPresent());
+        assertEquals(web.getId(), changed.getId());
+        assertTrue(domain.getRevision() > 0);
+        assertTrue(changed.getRevision() > domain.getRevision());
+        assertEquals("payments.example.com", domain.getTenantKey());
+        assertEquals(List.of(changed), repository.findByRevisionGreaterThanOrderByRevisionAsc(domain.getRevision()));
+    }
+
+    @Test
+    void deletedPolicyFallsBackToTheWildcard() {
+        policyService.save(TenantPolicy.Scope.DEFAULT, null, 3, null);
+        policyService.save(TenantPolicy.Scope.REPOSITORY, "acme/web", 10, null);
+        policyIndex.refresh();
+        assertEquals(10, policyIndex.lookup("acme/web", "dev@example.com").vulnerabilitiesThreshold());
+
+        assertTrue(policyService.delete(TenantPolicy.Scope.REPOSITORY, "acme/web"));
+        assertFalse(policyService.delete(TenantPolicy.Scope.REPOSITORY, "acme/web"));
+        policyIndex.refresh();
+
+        assertEquals(3, policyIndex.lookup("acme/web", "dev@example.com").vulnerabilitiesThreshold());
+        assertEquals(1, policyService.findAll().size()); // Only the wildcard policy is left
+    }
+
+    @Test
+    void wildcardPolicyCannotBeDeleted() {
+        assertThrows(IllegalArgumentException.class, () -> policyService.delete(TenantPolicy.Scope.DEFAULT, "*"));
+        assertThrows(IllegalArgumentException.class, () -> policyService.save(TenantPolicy.Scope.REPOSITORY, " ", 1, null));
+    }
+}
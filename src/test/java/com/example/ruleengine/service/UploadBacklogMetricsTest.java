@@ -0,0 +1,62 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.repository.UploadBacklog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+class UploadBacklogMetricsTest {
+
+    @InjectMocks
+    private UploadBacklogMetrics backlogMetrics;
+
+    @Mock
+    private DependencyUploadRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testRefresh_OldestAgeIsMeasuredFromTheOldestUpload() {
+        Instant now = Instant.now();
+        when(repository.findBacklog(DependencyUpload.Status.IN_PROGRESS))
+                .thenReturn(new UploadBacklog(3L, now.minusSeconds(90)));
+
+        backlogMetrics.refresh();
+
+        assertEquals(90.0, backlogMetrics.oldestAgeSeconds(now), 0.001);
+    }
+
+    @Test
+    void testRefresh_EmptyBacklogHasNoAge() {
+        when(repository.findBacklog(DependencyUpload.Status.IN_PROGRESS)).thenReturn(new UploadBacklog(0L, null));
+
+        backlogMetrics.refresh();
+
+        assertEquals(0.0, backlogMetrics.oldestAgeSeconds(Instant.now()));
+    }
+
+    @Test
+    void testRefresh_FailedQueryKeepsTheLastValues() {
+        Instant now = Instant.now();
+        when(repository.findBacklog(DependencyUpload.Status.IN_PROGRESS))
+                .thenReturn(new UploadBacklog(1L, now.minusSeconds(30)))
+                .thenThrow(new IllegalStateException("Connection refused"));
+
+        backlogMetrics.refresh();
+        backlogMetrics.refresh();
+
+        assertEquals(30.0, backlogMetrics.oldestAgeSeconds(now), 0.001);
+    }
+}
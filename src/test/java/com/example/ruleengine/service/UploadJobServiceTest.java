@@ -0,0 +1,161 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.entity.UploadJob;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.repository.UploadJobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UploadJobServiceTest {
+
+    @InjectMocks
+    private UploadJobService uploadJobService;
+
+    @Mock
+    private UploadJobRepository jobRepository;
+
+    @Mock
+    private DependencyUploadRepository uploadRepository;
+
+    @Mock
+    private DebrickedService debrickedService;
+
+    @Mock
+    private UploadStateStore uploadStore;
+
+    @Mock
+    private NotificationService notificationService;
+
+    private DependencyUpload upload;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        // Run jobs on the calling thread
+        ReflectionTestUtils.setField(uploadJobService, "jobExecutor", (Executor) Runnable::run);
+
+        // The files are recorded as an upload leased to this instance
+        upload = new DependencyUpload();
+        upload.setId(7L);
+        upload.setStatus(DependencyUpload.Status.RECEIVED);
+        upload.setLeaseOwner("node-a");
+        upload.setLeaseExpiresAt(Instant.now().plusSeconds(600));
+        when(debrickedService.receive(anyList(), eq("test@example.com"), eq(UploadTarget.DEFAULT)))
+                .thenReturn(new UploadStateStore.StoredUpload(upload, List.of()));
+        when(uploadStore.renew(upload)).thenReturn(true);
+    }
+
+    private static MultipartFile[] files() {
+        return new MultipartFile[]{new MockMultipartFile("files", "package-lock.json", null, "{}".getBytes())};
+    }
+
+    @Test
+    void testSubmit_SuccessfulJob() throws IOException {
+        when(debrickedService.uploadReceived(any())).thenAnswer(invocation -> {
+            upload.setStatus(DependencyUpload.Status.IN_PROGRESS); // Handed to the status poller
+            upload.setLeaseOwner(null);
+            upload.setLeaseExpiresAt(null);
+            return "12345";
+        });
+
+        UploadJob job = uploadJobService.submit(files(), "test@example.com", UploadTarget.DEFAULT);
+
+        assertEquals(UploadJob.State.SUCCEEDED, job.getState());
+        assertEquals("12345", job.getCiUploadId());
+        assertEquals(7L, job.getUploadId());
+        // The request's files are spooled once, by the upload the job runs
+        verify(debrickedService, times(1)).receive(argThat(files -> files.size() == 1
+                && "package-lock.json".equals(files.get(0).filename())), eq("test@example.com"), eq(UploadTarget.DEFAULT));
+    }
+
+    @Test
+    void testSubmit_DeferredUploadIsPending() throws IOException {
+        when(debrickedService.uploadReceived(any())).thenAnswer(invocation -> {
+            upload.setStatus(DependencyUpload.Status.UPLOADING); // No file could be sent, the upload waits
+            upload.setLeaseOwner(null);
+            upload.setLeaseExpiresAt(null);
+            return null;
+        });
+
+        UploadJob job = uploadJobService.submit(files(), "test@example.com", UploadTarget.DEFAULT);
+
+        assertEquals(UploadJob.State.QUEUED, job.getState());
+        assertEquals(UploadJobService.PENDING_MESSAGE, job.getMessage());
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void testSubmit_FailingJobNotifiesUser() throws IOException {
+        when(debrickedService.uploadReceived(any())).thenThrow(new IOException("Failed to start scan"));
+
+        UploadJob job = uploadJobService.submit(files(), "test@example.com", UploadTarget.DEFAULT);
+
+        assertEquals(UploadJob.State.FAILED, job.getState());
+        verify(notificationService, times(1)).sendEmail("test@example.com", "File upload failed", "Failed to start scan");
+    }
+
+    @Test
+    void testSubmit_QueueFull() throws IOException {
+        ReflectionTestUtils.setField(uploadJobService, "jobExecutor", (Executor) command -> {
+            throw new RejectedExecutionException("queue full");
+        });
+
+        assertThrows(RejectedExecutionException.class, () -> uploadJobService.submit(files(), "test@example.com", UploadTarget.DEFAULT));
+        // The client retries, so the recorded upload must not be resumed
+        verify(uploadStore).discard(upload);
+        verify(debrickedService, never()).uploadReceived(any());
+    }
+
+    @Test
+    void testRun_UploadQueuedPastItsLeaseIsLeftToTheRecovery() throws IOException {
+        when(uploadStore.renew(upload)).thenReturn(false);
+
+        UploadJob job = uploadJobService.submit(files(), "test@example.com", UploadTarget.DEFAULT);
+
+        assertEquals(UploadJob.State.QUEUED, job.getState());
+        verify(debrickedService, never()).uploadReceived(any());
+    }
+
+    @Test
+    void testFindJob_ReportsTheUploadResumedAfterARestart() {
+        // The instance stopped while the job was running; another one resumed the upload since
+        UploadJob job = new UploadJob();
+        job.setId("job-1");
+        job.setState(UploadJob.State.RUNNING);
+        job.setUploadId(7L);
+        when(jobRepository.findById("job-1")).thenReturn(Optional.of(job));
+        upload.setStatus(DependencyUpload.Status.IN_PROGRESS);
+        upload.setCiUploadId("12345");
+        when(uploadRepository.findById(7L)).thenReturn(Optional.of(upload));
+
+        UploadJob found = uploadJobService.findJob("job-1").orElseThrow();
+
+        assertEquals(UploadJob.State.SUCCEEDED, found.getState());
+        assertEquals("12345", found.getCiUploadId());
+
+        // An upload whose instance stopped is pending until its lease runs out and it is resumed
+        upload.setStatus(DependencyUpload.Status.UPLOADING);
+        upload.setLeaseExpiresAt(Instant.now().minusSeconds(1));
+        job.setState(UploadJob.State.RUNNING);
+
+        assertEquals(UploadJob.State.QUEUED, uploadJobService.findJob("job-1").orElseThrow().getState());
+    }
+}
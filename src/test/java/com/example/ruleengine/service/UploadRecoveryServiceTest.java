@@ -0,0 +1,115 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.client.DebrickedApiException;
+import com.example.ruleengine.client.DebrickedRateGovernor;
+import com.example.ruleengine.client.DebrickedUnavailableException;
+import com.example.ruleengine.entity.DependencyUpload;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class UploadRecoveryServiceTest {
+
+    @InjectMocks
+    private UploadRecoveryService uploadRecoveryService;
+
+    @Mock
+    private UploadStateStore uploadStore;
+
+    @Mock
+    private DebrickedService debrickedService;
+
+    @Mock
+    private NotificationService notificationService;
+
+    @Mock
+    private DebrickedRateGovernor governor;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(governor.isAvailable()).thenReturn(true);
+    }
+
+    private UploadStateStore.StoredUpload stored(Long id) {
+        DependencyUpload upload = new DependencyUpload();
+        upload.setId(id);
+        upload.setEmail("user@example.com");
+        upload.setStatus(DependencyUpload.Status.UPLOADING);
+        return new UploadStateStore.StoredUpload(upload, List.of());
+    }
+
+    @Test
+    void testRecoverUploads_ResumesOnlyClaimedUploads() throws IOException {
+        UploadStateStore.StoredUpload first = stored(1L);
+        when(uploadStore.findResumable(any(Instant.class), anyInt())).thenReturn(List.of(1L, 2L));
+        when(uploadStore.claim(eq(1L), any(Instant.class))).thenReturn(Optional.of(first));
+        when(uploadStore.claim(eq(2L), any(Instant.class))).thenReturn(Optional.empty()); // Claimed by another instance
+        when(debrickedService.resume(first)).thenReturn("4711");
+
+        uploadRecoveryService.recoverUploads();
+
+        verify(debrickedService, times(1)).resume(any());
+        verify(uploadStore, never()).fail(any());
+    }
+
+    @Test
+    void testRecoverUploads_SkippedWhileDebrickedIsUnavailable() {
+        when(governor.isAvailable()).thenReturn(false);
+
+        uploadRecoveryService.recoverUploads();
+
+        verifyNoInteractions(uploadStore, debrickedService);
+    }
+
+    @Test
+    void testResume_UnavailableDebrickedKeepsTheUpload() throws IOException {
+        UploadStateStore.StoredUpload stored = stored(1L);
+        when(debrickedService.resume(stored))
+                .thenThrow(new DebrickedUnavailableException("Debricked rate limit reached", Duration.ofSeconds(30)));
+
+        uploadRecoveryService.resume(stored);
+
+        // Released right away for the next run, instead of waiting for the lease to expire
+        verify(uploadStore).defer(stored.upload());
+        verify(uploadStore, never()).fail(any());
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void testResume_TransportErrorKeepsTheUpload() throws IOException {
+        UploadStateStore.StoredUpload stored = stored(1L);
+        when(debrickedService.resume(stored)).thenThrow(new IOException("Connection reset"));
+
+        uploadRecoveryService.resume(stored);
+
+        verify(uploadStore).defer(stored.upload());
+        verify(uploadStore, never()).fail(any());
+    }
+
+    @Test
+    void testResume_FailureGivesUpTheUploadAndNotifies() throws IOException {
+        UploadStateStore.StoredUpload stored = stored(1L);
+        when(debrickedService.resume(stored)).thenThrow(new DebrickedApiException("scan start", 400, "Bad Request"));
+        when(uploadStore.fail(stored.upload())).thenReturn(true);
+
+        uploadRecoveryService.resume(stored);
+
+        verify(notificationService).sendEmail(eq("user@example.com"), eq("File upload failed"), anyString());
+        verify(uploadStore, never()).defer(any());
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.ruleengine.service;
+
+import com.example.ruleengine.entity.DependencyUpload;
+import com.example.ruleengine.entity.UploadFile;
+import com.example.ruleengine.repository.DependencyUploadRepository;
+import com.example.ruleengine.repository.UploadFileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two instances sharing an embedded database, one of which stops halfway through an upload.
+ */
+@DataJpaTest(properties = {
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Every step commits on its own, like in production
+class UploadStateStoreTest {
+
+    @Autowired
+    private DependencyUploadRepository repository;
+
+    @Autowired
+    private UploadFileRepository fileRepository;
+
+    @TempDir
+    private Path spoolDir;
+
+    @BeforeEach
+    void setUp() {
+        fileRepository.deleteAll();
+        repository.deleteAll();
+    }
+
+    private UploadStateStore store(String owner, long leaseSeconds) {
+        UploadClaimer claimer = new UploadClaimer();
+        ReflectionTestUtils.setField(claimer, "owner", owner);
+        UploadStateStore store = new UploadStateStore();
+        ReflectionTestUtils.setField(store, "repository", repository);
+        ReflectionTestUtils.setField(store, "fileRepository", fileRepository);
+        ReflectionTestUtils.setField(store, "claimer", claimer);
+        ReflectionTestUtils.setField(store, "spoolDir", spoolDir.toString());
+        ReflectionTestUtils.setField(store, "leaseSeconds", leaseSeconds);
+        return store;
+    }
+
+    private List<DependencyFile> files() throws IOException {
+        Path jobFile = Files.writeString(spoolDir.resolve("job.part"), "{\"lockfileVersion\": 3}");
+        return List.of(
+                DependencyFile.of(new MockMultipartFile("files", "pom.xml", null, "<project/>".getBytes(StandardCharsets.UTF_8))),
+                new DependencyFile("package-lock.json", new FileSystemResource(jobFile), Files.size(jobFile)));
+    }
+
+    @Test
+    void testReceive_PersistsTheUploadAndSpoolsEveryFile() throws IOException {
+        UploadStateStore store = store("node-a", 600);
+
+        UploadStateStore.StoredUpload stored = store.receive(files(), "user@example.com", null, UploadTarget.DEFAULT);
+        // The spooled copy outlives the file it was spooled from, like a job directory that is cleaned up
+        Files.delete(spoolDir.resolve("job.part"));
+
+        DependencyUpload upload = repository.findById(stored.upload().getId()).orElseThrow();
+        assertEquals(DependencyUpload.Status.RECEIVED, upload.getStatus());
+        assertEquals("node-a", upload.getLeaseOwner());
+        List<UploadFile> files = fileRepository.findAllByUploadIdOrderByFileIndex(upload.getId());
+        assertEquals(List.of("pom.xml", "package-lock.json"), files.stream().map(UploadFile::getFilename).toList());
+        assertTrue(files.stream().allMatch(file -> file.getStatus() == UploadFile.Status.PENDING));
+        assertEquals("{\"lockfileVersion\": 3}", new String(store.content(files.get(1)).content().getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testClaim_UploadOfAStoppedInstanceIsTakenOverOnceItsLeaseExpires() throws IOException {
+        // node-a records its first accepted file and stops; its lease has run out right away
+        UploadStateStore nodeA = store("node-a", 0);
+        UploadStateStore.StoredUpload stored = nodeA.receive(files(), "user@example.com", null, UploadTarget.DEFAULT);
+        nodeA.advance(stored.upload(), DependencyUpload.Status.UPLOADING);
+        nodeA.recordCiUploadId(stored.upload(), "4711");
+        nodeA.recordFile(stored.files().get(0), UploadFile.Status.UPLOADED, null);
+
+        UploadStateStore nodeB = store("node-b", 600);
+        Instant now = Instant.now();
+        assertEquals(List.of(stored.upload().getId()), nodeB.findResumable(now, 10));
+        UploadStateStore.StoredUpload resumed = nodeB.claim(stored.upload().getId(), now).orElseThrow();
+
+        // node-b continues with the ciUploadId and the file outcomes node-a persisted
+        assertEquals(DependencyUpload.Status.UPLOADING, resumed.upload().getStatus());
+        assertEquals("4711", resumed.upload().getCiUploadId());
+        assertEquals(List.of(UploadFile.Status.UPLOADED, UploadFile.Status.PENDING),
+                resumed.files().stream().map(UploadFile::getStatus).toList());
+        assertTrue(nodeB.findResumable(now, 10).isEmpty());
+
+        // node-a comes back and can neither move the upload on nor give it up
+        assertThrows(IllegalStateException.class, () -> nodeA.advance(stored.upload(), DependencyUpload.Status.UPLOADED));
+        assertFalse(nodeA.fail(stored.upload()));
+        assertTrue(Files.exists(Path.of(resumed.files().get(1).getSpoolPath())));
+    }
+
+    @Test
+    void testRenew_UploadQueuedPastItsLeaseIsNotTakenBack() throws IOException {
+        UploadStateStore nodeA = store("node-a", 0);
+        UploadStateStore.StoredUpload stored = nodeA.receive(files(), "user@example.com", null, UploadTarget.DEFAULT);
+
+        // The recovery may claim the upload once its lease ran out, so the queued job must not run it
+        assertFalse(nodeA.renew(stored.upload()));
+
+        UploadStateStore nodeB = store("node-b", 600);
+        UploadStateStore.StoredUpload received = nodeB.receive(files(), "user@example.com", null, UploadTarget.DEFAULT);
+        assertTrue(nodeB.renew(received.upload()));
+    }
+
+    @Test
+    void testDiscard_RemovesTheUploadWithItsFiles() throws IOException {
+        UploadStateStore store = store("node-a", 600);
+        UploadStateStore.StoredUpload stored = store.receive(files(), "user@example.com", null, UploadTarget.DEFAULT);
+
+        assertTrue(store.discard(stored.upload()));
+
+        assertFalse(repository.existsById(stored.upload().getId()));
+        assertTrue(fileRepository.findAllByUploadIdOrderByFileIndex(stored.upload().getId()).isEmpty());
+        assertFalse(Files.exists(Path.of(stored.files().get(0).getSpoolPath())));
+        assertFalse(store("node-b", 600).discard(stored.upload()));
+    }
+
+    @Test
+    void testHandOver_StartedScanBecomesDueForTheStatusPoller() throws IOException {
+        UploadStateStore store = store("node-a", 600);
+        UploadStateStore.StoredUpload stored = store.receive(files(), "user@example.com", null, UploadTarget.DEFAULT);
+        store.advance(stored.upload(), DependencyUpload.Status.UPLOADING);
+        store.recordCiUploadId(stored.upload(), "4711");
+        store.advance(stored.upload(), DependencyUpload.Status.UPLOADED);
+        store.advance(stored.upload(), DependencyUpload.Status.SCAN_STARTED);
+
+        store.handOver(stored.upload());
+
+        DependencyUpload upload = repository.findById(stored.upload().getId()).orElseThrow();
+        assertEquals(DependencyUpload.Status.IN_PROGRESS, upload.getStatus());
+        assertNull(upload.getLeaseOwner()); // Free for the poller to claim
+        assertNotNull(upload.getNextCheckAt());
+        assertFalse(Files.exists(Path.of(stored.files().get(0).getSpoolPath())));
+    }
+}